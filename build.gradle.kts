@@ -19,6 +19,7 @@ plugins {
     id("org.asciidoctor.jvm.convert").version(Versions.Plugins.asciiDoctor)
     id("org.flywaydb.flyway").version(Versions.Plugins.flyway)
     id("nu.studer.jooq").version(Versions.Plugins.jooq)
+    id("me.champeau.jmh").version(Versions.Plugins.jmh)
     id("application")
 
     idea
@@ -96,9 +97,10 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-security")
     implementation("com.fasterxml.jackson.module:jackson-module-kotlin")
     implementation("org.flywaydb:flyway-core")
+    implementation("com.github.ben-manes.caffeine:caffeine")
     runtimeOnly("io.micrometer:micrometer-registry-prometheus")
     runtimeOnly("ch.qos.logback:logback-classic")
-    runtimeOnly("org.postgresql:postgresql")
+    implementation("org.postgresql:postgresql")
     flywayMigration(Configurations.Database.driverDependency)
     jooqGenerator(Configurations.Database.driverDependency)
 
@@ -235,6 +237,10 @@ tasks.withType<JacocoCoverageVerification> {
     mustRunAfter(tasks.jacocoTestReport)
 }
 
+jmh {
+    jmhVersion.set(Versions.Tools.jmh)
+}
+
 detekt {
     source = files("src/main/kotlin")
     config = files("detekt-config.yml")
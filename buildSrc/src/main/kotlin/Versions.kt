@@ -22,12 +22,14 @@ object Versions {
         const val jooq = "6.0.1"
         const val jib = "3.1.4"
         const val asciiDoctor = "3.3.2"
+        const val jmh = "0.6.6"
     }
 
     object Tools {
         const val ktlint = "0.43.2"
         const val jacoco = "0.8.7"
         const val solidity = "0.8.0"
+        const val jmh = "1.34"
     }
 
     object Dependencies {
@@ -4,6 +4,8 @@ import com.ampnet.payoutservice.ManualFixedScheduler
 import com.ampnet.payoutservice.service.ScheduledExecutorServiceProvider
 import com.ampnet.payoutservice.service.SnapshotQueueServiceImpl
 import mu.KLogging
+import org.mockito.kotlin.any
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.given
 import org.mockito.kotlin.mock
 import org.springframework.boot.test.context.TestConfiguration
@@ -25,7 +27,7 @@ class TestSchedulerConfiguration {
     ): ScheduledExecutorServiceProvider {
         logger.info { "Using manual schedulers for tests" }
         return mock {
-            given(it.newSingleThreadScheduledExecutor(SnapshotQueueServiceImpl.QUEUE_NAME))
+            given(it.newScheduledThreadPool(eq(SnapshotQueueServiceImpl.QUEUE_NAME), any()))
                 .willReturn(snapshotQueueScheduler)
         }
     }
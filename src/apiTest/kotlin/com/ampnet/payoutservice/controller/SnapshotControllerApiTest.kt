@@ -8,8 +8,15 @@ import com.ampnet.payoutservice.controller.response.CreateSnapshotResponse
 import com.ampnet.payoutservice.controller.response.SnapshotResponse
 import com.ampnet.payoutservice.controller.response.SnapshotsResponse
 import com.ampnet.payoutservice.exception.ErrorCode
+import com.ampnet.payoutservice.generated.jooq.tables.AssetHolderIndex
+import com.ampnet.payoutservice.generated.jooq.tables.AssetHolderIndexHolder
+import com.ampnet.payoutservice.generated.jooq.tables.ContractDeploymentBlock
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeaf
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeRoot
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpoint
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpointHolder
+import com.ampnet.payoutservice.generated.jooq.tables.records.SnapshotRecord
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
 import com.ampnet.payoutservice.model.result.FullSnapshot
 import com.ampnet.payoutservice.model.result.FullSnapshotData
@@ -48,12 +55,17 @@ import org.web3j.protocol.core.DefaultBlockParameterName
 import org.web3j.protocol.core.methods.request.EthFilter
 import org.web3j.tx.gas.DefaultGasProvider
 import java.math.BigInteger
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.util.UUID
+import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus as DbSnapshotStatus
 import com.ampnet.payoutservice.generated.jooq.tables.Snapshot as SnapshotTable
 
 @Import(TestSchedulerConfiguration::class)
 class SnapshotControllerApiTest : ControllerTestBase() {
 
     private val accounts = HardhatTestContainer.accounts
+    private val createdAt = OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)
 
     @Autowired
     private lateinit var merkleTreeRepository: MerkleTreeRepository
@@ -75,6 +87,12 @@ class SnapshotControllerApiTest : ControllerTestBase() {
         dslContext.deleteFrom(SnapshotTable.SNAPSHOT).execute()
         dslContext.deleteFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE).execute()
         dslContext.deleteFrom(MerkleTreeRoot.MERKLE_TREE_ROOT).execute()
+        dslContext.deleteFrom(MerkleTreeLeaf.MERKLE_TREE_LEAF).execute()
+        dslContext.deleteFrom(SnapshotCheckpointHolder.SNAPSHOT_CHECKPOINT_HOLDER).execute()
+        dslContext.deleteFrom(SnapshotCheckpoint.SNAPSHOT_CHECKPOINT).execute()
+        dslContext.deleteFrom(AssetHolderIndexHolder.ASSET_HOLDER_INDEX_HOLDER).execute()
+        dslContext.deleteFrom(AssetHolderIndex.ASSET_HOLDER_INDEX).execute()
+        dslContext.deleteFrom(ContractDeploymentBlock.CONTRACT_DEPLOYMENT_BLOCK).execute()
 
         WireMock.start()
     }
@@ -472,6 +490,112 @@ class SnapshotControllerApiTest : ControllerTestBase() {
         }
     }
 
+    @Test
+    @WithMockUser
+    fun mustReturnSnapshotsInPages() {
+        val snapshotIds = suppose("some snapshots are stored into database") {
+            (0L until 5L).map { storePendingSnapshot(createdAt.minusMinutes(it)) }
+        }
+
+        verify("all snapshots are returned when page size is not specified") {
+            val response = mockMvc.perform(MockMvcRequestBuilders.get("/snapshots"))
+                .andExpect(MockMvcResultMatchers.status().isOk)
+                .andReturn()
+            val allSnapshots = objectMapper.readValue(response.response.contentAsString, SnapshotsResponse::class.java)
+
+            assertThat(allSnapshots.snapshots.map { it.id }).withMessage()
+                .isEqualTo(snapshotIds)
+            assertThat(allSnapshots.nextCursor).withMessage()
+                .isNull()
+        }
+
+        val firstPage = suppose("first page of snapshots is fetched") {
+            val response = mockMvc.perform(
+                MockMvcRequestBuilders.get("/snapshots")
+                    .queryParam("limit", "2")
+            )
+                .andExpect(MockMvcResultMatchers.status().isOk)
+                .andReturn()
+
+            objectMapper.readValue(response.response.contentAsString, SnapshotsResponse::class.java)
+        }
+
+        verify("first page contains newest snapshots") {
+            assertThat(firstPage.snapshots.map { it.id }).withMessage()
+                .isEqualTo(snapshotIds.subList(0, 2))
+            assertThat(firstPage.nextCursor).withMessage()
+                .isNotNull()
+        }
+
+        val secondPage = suppose("second page of snapshots is fetched") {
+            val response = mockMvc.perform(
+                MockMvcRequestBuilders.get("/snapshots")
+                    .queryParam("cursor", firstPage.nextCursor)
+                    .queryParam("limit", "2")
+            )
+                .andExpect(MockMvcResultMatchers.status().isOk)
+                .andReturn()
+
+            objectMapper.readValue(response.response.contentAsString, SnapshotsResponse::class.java)
+        }
+
+        verify("second page contains next snapshots") {
+            val expectedSnapshots = snapshotIds.subList(2, 4)
+                .map { snapshotQueueService.getSnapshotById(it)!!.toSnapshotResponse() }
+
+            assertThat(secondPage.snapshots).withMessage()
+                .isEqualTo(expectedSnapshots)
+            assertThat(secondPage.nextCursor).withMessage()
+                .isNotNull()
+        }
+    }
+
+    @Test
+    @WithMockUser
+    fun mustReturnCorrectErrorForInvalidSnapshotCursor() {
+        verify("error is returned for invalid cursor") {
+            val response = mockMvc.perform(
+                MockMvcRequestBuilders.get("/snapshots")
+                    .queryParam("cursor", "invalid-cursor")
+            )
+                .andExpect(MockMvcResultMatchers.status().isBadRequest)
+                .andReturn()
+
+            verifyResponseErrorCode(response, ErrorCode.INVALID_SNAPSHOT_CURSOR)
+        }
+    }
+
+    @Test
+    @WithMockUser
+    fun mustStreamSnapshotsForSomeChainIdAndOwner() {
+        val snapshotIds = suppose("some snapshots are stored into database") {
+            (0L until 3L).map { storePendingSnapshot(createdAt.minusMinutes(it)) }
+        }
+
+        val streamedSnapshots = suppose("snapshots are streamed for chainId and owner") {
+            val asyncResult = mockMvc.perform(
+                MockMvcRequestBuilders.get("/snapshots/stream")
+                    .queryParam("chainId", chainId.value.toString())
+            )
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn()
+            val response = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(asyncResult))
+                .andExpect(MockMvcResultMatchers.status().isOk)
+                .andReturn()
+
+            objectMapper.readValue(response.response.contentAsString, SnapshotsResponse::class.java)
+        }
+
+        verify("all snapshots are streamed from newest to oldest") {
+            assertThat(streamedSnapshots).withMessage()
+                .isEqualTo(
+                    SnapshotsResponse(
+                        snapshotIds.map { snapshotQueueService.getSnapshotById(it)!!.toSnapshotResponse() }
+                    )
+                )
+        }
+    }
+
     @Test
     @WithMockUser
     fun mustBeAbleToCreateAndProcessSameSnapshotTwiceAndGetTheSameResponse() {
@@ -761,6 +885,30 @@ class SnapshotControllerApiTest : ControllerTestBase() {
         }
     }
 
+    private fun storePendingSnapshot(createdAt: OffsetDateTime): UUID {
+        val snapshotId = UUID.randomUUID()
+
+        dslContext.executeInsert(
+            SnapshotRecord(
+                id = snapshotId,
+                name = "snapshot-$snapshotId",
+                chainId = chainId.value,
+                assetAddress = contractAddress.rawValue,
+                blockNumber = BigInteger.TEN,
+                ignoredHolderAddresses = emptyArray(),
+                ownerAddress = WalletAddress(HardhatTestContainer.accountAddress1).rawValue,
+                status = DbSnapshotStatus.PENDING,
+                failureCause = null,
+                resultTree = null,
+                treeIpfsHash = null,
+                totalAssetAmount = null,
+                createdAt = createdAt
+            )
+        )
+
+        return snapshotId
+    }
+
     private fun SimpleERC20.transferAndMine(address: String, amount: BigInteger) {
         transfer(address, amount).sendAsync()
         hardhatContainer.mineUntil {
@@ -7,6 +7,7 @@ import com.ampnet.payoutservice.config.ApplicationProperties
 import com.ampnet.payoutservice.exception.InternalException
 import com.ampnet.payoutservice.model.params.GetPayoutsForAdminParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForInvestorParams
+import com.ampnet.payoutservice.model.result.ContractDeploymentBlock
 import com.ampnet.payoutservice.model.result.Payout
 import com.ampnet.payoutservice.model.result.PayoutForInvestor
 import com.ampnet.payoutservice.testcontainers.HardhatTestContainer
@@ -75,7 +76,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                 erc20ContractAddress = ContractAddress(contract.contractAddress),
                 ignoredErc20Addresses = emptySet(),
                 startBlock = startBlock,
-                endBlock = endBlock1
+                endBlock = endBlock1,
+                checkpoint = InMemoryErc20BalancesCheckpoint()
             )
 
             assertThat(balances).withMessage().containsExactlyInAnyOrder(
@@ -96,7 +98,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                 erc20ContractAddress = ContractAddress(contract.contractAddress),
                 ignoredErc20Addresses = emptySet(),
                 startBlock = startBlock,
-                endBlock = endBlock2
+                endBlock = endBlock2,
+                checkpoint = InMemoryErc20BalancesCheckpoint()
             )
 
             assertThat(balances).withMessage().containsExactlyInAnyOrder(
@@ -157,7 +160,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                 erc20ContractAddress = ContractAddress(contract.contractAddress),
                 ignoredErc20Addresses = ignoredAddresses,
                 startBlock = startBlock,
-                endBlock = endBlock
+                endBlock = endBlock,
+                checkpoint = InMemoryErc20BalancesCheckpoint()
             )
 
             assertThat(balances).withMessage().containsExactlyInAnyOrder(
@@ -207,7 +211,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                 erc20ContractAddress = ContractAddress(contract.contractAddress),
                 ignoredErc20Addresses = emptySet(),
                 startBlock = startBlock,
-                endBlock = endBlock1
+                endBlock = endBlock1,
+                checkpoint = InMemoryErc20BalancesCheckpoint()
             )
 
             assertThat(balances).withMessage().containsExactlyInAnyOrder(
@@ -228,7 +233,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                 erc20ContractAddress = ContractAddress(contract.contractAddress),
                 ignoredErc20Addresses = emptySet(),
                 startBlock = startBlock,
-                endBlock = endBlock2
+                endBlock = endBlock2,
+                checkpoint = InMemoryErc20BalancesCheckpoint()
             )
 
             assertThat(balances).withMessage().containsExactlyInAnyOrder(
@@ -243,6 +249,110 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
         }
     }
 
+    @Test
+    fun mustResumeFetchingBalancesFromCheckpoint() {
+        val mainAccount = accounts[0]
+
+        val contract = suppose("simple ERC20 contract is deployed") {
+            SimpleERC20.deploy(
+                hardhatContainer.web3j,
+                mainAccount,
+                DefaultGasProvider(),
+                listOf(mainAccount.address),
+                listOf(BigInteger("10000")),
+                mainAccount.address
+            ).sendAndMine()
+        }
+
+        suppose("some accounts get ERC20 tokens") {
+            contract.transferAndMine(accounts[1].address, BigInteger("100"))
+            contract.transferAndMine(accounts[2].address, BigInteger("200"))
+        }
+
+        val endBlock = hardhatContainer.blockNumber()
+        val checkpoint = InMemoryErc20BalancesCheckpoint(
+            scannedToBlock = endBlock,
+            holders = setOf(WalletAddress(accounts[1].address), WalletAddress(accounts[2].address)),
+            balances = mapOf(Pair(WalletAddress(accounts[1].address), Balance(BigInteger("150"))))
+        )
+
+        verify("only missing balances are fetched") {
+            val service = Web3jBlockchainService(hardhatProperties())
+            val balances = service.fetchErc20AccountBalances(
+                chainId = Chain.HARDHAT_TESTNET.id,
+                erc20ContractAddress = ContractAddress(contract.contractAddress),
+                ignoredErc20Addresses = emptySet(),
+                startBlock = BlockNumber(BigInteger.ZERO),
+                endBlock = endBlock,
+                checkpoint = checkpoint
+            )
+
+            assertThat(balances).withMessage().containsExactlyInAnyOrder(
+                AccountBalance(WalletAddress(accounts[1].address), Balance(BigInteger("150"))),
+                AccountBalance(WalletAddress(accounts[2].address), Balance(BigInteger("200")))
+            )
+            assertThat(checkpoint.balances).withMessage().containsEntry(
+                WalletAddress(accounts[2].address),
+                Balance(BigInteger("200"))
+            )
+        }
+    }
+
+    @Test
+    fun mustCorrectlyDeriveBalancesFromTransferEvents() {
+        val mainAccount = accounts[0]
+
+        val contract = suppose("simple ERC20 contract is deployed") {
+            SimpleERC20.deploy(
+                hardhatContainer.web3j,
+                mainAccount,
+                DefaultGasProvider(),
+                listOf(mainAccount.address),
+                listOf(BigInteger("10000")),
+                mainAccount.address
+            ).sendAndMine()
+        }
+
+        suppose("some accounts get ERC20 tokens") {
+            contract.transferAndMine(accounts[1].address, BigInteger("100"))
+            contract.transferAndMine(accounts[2].address, BigInteger("200"))
+            contract.transferAndMine(accounts[1].address, BigInteger("300"))
+        }
+
+        val startBlock = BlockNumber(BigInteger.ZERO)
+        val endBlock = hardhatContainer.blockNumber()
+
+        contract.applyWeb3jFilterFix(startBlock, endBlock)
+
+        verify("balances derived from transfer events are fetched and stored into the checkpoint") {
+            val service = Web3jBlockchainService(
+                hardhatProperties().apply {
+                    erc20Balances.balanceSource = Erc20BalanceSource.TRANSFER_EVENTS
+                    erc20Balances.transferBalanceCheckSampleSize = 2
+                }
+            )
+            val checkpoint = InMemoryErc20BalancesCheckpoint()
+            val balances = service.fetchErc20AccountBalances(
+                chainId = Chain.HARDHAT_TESTNET.id,
+                erc20ContractAddress = ContractAddress(contract.contractAddress),
+                ignoredErc20Addresses = emptySet(),
+                startBlock = startBlock,
+                endBlock = endBlock,
+                checkpoint = checkpoint
+            )
+
+            assertThat(balances).withMessage().containsExactlyInAnyOrder(
+                AccountBalance(WalletAddress(mainAccount.address), Balance(BigInteger("9400"))),
+                AccountBalance(WalletAddress(accounts[1].address), Balance(BigInteger("400"))),
+                AccountBalance(WalletAddress(accounts[2].address), Balance(BigInteger("200")))
+            )
+            assertThat(checkpoint.balances).withMessage().containsEntry(
+                WalletAddress(accounts[1].address),
+                Balance(BigInteger("400"))
+            )
+        }
+    }
+
     @Test
     fun mustThrowExceptionForNonExistentContract() {
         verify("exception is thrown for non-existent contract") {
@@ -253,7 +363,8 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
                     erc20ContractAddress = ContractAddress(accounts[0].address),
                     ignoredErc20Addresses = emptySet(),
                     startBlock = null,
-                    endBlock = BlockNumber(BigInteger.TEN)
+                    endBlock = BlockNumber(BigInteger.TEN),
+                    checkpoint = InMemoryErc20BalancesCheckpoint()
                 )
             }
         }
@@ -605,10 +716,47 @@ class Web3jBlockchainServiceIntegTest : TestBase() {
             )
 
             // it's okay to have either the exact deployment block number or one block BEFORE deployment, but not after
-            val diff = deploymentBlockNumber - foundDeploymentBlock.value
+            val diff = deploymentBlockNumber - foundDeploymentBlock.blockNumber.value
 
             assertThat(diff).withMessage()
                 .isBetween(BigInteger.ZERO, BigInteger.ONE)
+            assertThat(foundDeploymentBlock.isFound).withMessage()
+                .isTrue()
+        }
+    }
+
+    @Test
+    fun mustNotSearchForContractDeploymentBlockNumberBelowChainStartBlock() {
+        val mainAccount = accounts[0]
+
+        val contract = suppose("simple ERC20 contract is deployed") {
+            SimpleERC20.deploy(
+                hardhatContainer.web3j,
+                mainAccount,
+                DefaultGasProvider(),
+                listOf(mainAccount.address),
+                listOf(BigInteger("10000")),
+                mainAccount.address
+            ).sendAndMine()
+        }
+
+        suppose("50 blocks will be mined") {
+            hardhatContainer.mineUntil(maxAttempts = 50) { false }
+        }
+
+        val startBlockNumber = hardhatContainer.blockNumber().value - BigInteger.TEN
+
+        verify("chain start block number is returned as not found for contract deployed before it") {
+            val service = Web3jBlockchainService(
+                hardhatProperties().apply { chainHardhatTestnet.startBlockNumber = startBlockNumber }
+            )
+            val foundDeploymentBlock = service.findContractDeploymentBlockNumber(
+                chainId = Chain.HARDHAT_TESTNET.id,
+                contractAddress = ContractAddress(contract.contractAddress)
+            )
+
+            assertThat(foundDeploymentBlock).withMessage()
+                .isEqualTo(ContractDeploymentBlock(BlockNumber(startBlockNumber), isFound = false))
         }
     }
 
@@ -0,0 +1,63 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jooq.JooqTest
+import org.springframework.context.annotation.Import
+import java.math.BigInteger
+
+@JooqTest
+@Import(JooqContractDeploymentBlockRepository::class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JooqContractDeploymentBlockRepositoryIntegTest : TestBase() {
+
+    companion object {
+        private val CHAIN_ID = ChainId(1L)
+        private val CONTRACT_ADDRESS = ContractAddress("a")
+    }
+
+    @Suppress("unused")
+    private val postgresContainer = PostgresTestContainer()
+
+    @Autowired
+    private lateinit var repository: ContractDeploymentBlockRepository
+
+    @Test
+    fun mustReturnNullWhenDeploymentBlockIsNotStored() {
+        verify("null is returned for non-stored deployment block") {
+            assertThat(repository.getDeploymentBlock(CHAIN_ID, CONTRACT_ADDRESS)).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustReturnStoredDeploymentBlock() {
+        suppose("deployment block is stored") {
+            repository.storeDeploymentBlock(CHAIN_ID, CONTRACT_ADDRESS, BlockNumber(BigInteger.TEN))
+        }
+
+        verify("stored deployment block is returned for the same contract") {
+            assertThat(repository.getDeploymentBlock(CHAIN_ID, CONTRACT_ADDRESS)).withMessage()
+                .isEqualTo(BlockNumber(BigInteger.TEN))
+        }
+
+        verify("storing deployment block again does not change it") {
+            repository.storeDeploymentBlock(CHAIN_ID, CONTRACT_ADDRESS, BlockNumber(BigInteger("11")))
+
+            assertThat(repository.getDeploymentBlock(CHAIN_ID, CONTRACT_ADDRESS)).withMessage()
+                .isEqualTo(BlockNumber(BigInteger.TEN))
+        }
+
+        verify("deployment block is not returned for different chain") {
+            assertThat(repository.getDeploymentBlock(ChainId(2L), CONTRACT_ADDRESS)).withMessage()
+                .isNull()
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.service.UuidProvider
+import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.mockito.kotlin.given
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jooq.JooqTest
+import org.springframework.boot.test.mock.mockito.MockBean
+import org.springframework.context.annotation.Import
+import java.math.BigInteger
+import java.util.UUID
+
+@JooqTest
+@Import(JooqErc20HolderIndexRepository::class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JooqErc20HolderIndexRepositoryIntegTest : TestBase() {
+
+    companion object {
+        private val CHAIN_ID = ChainId(1L)
+        private val ASSET_ADDRESS = ContractAddress("a")
+    }
+
+    @Suppress("unused")
+    private val postgresContainer = PostgresTestContainer()
+
+    @Autowired
+    private lateinit var repository: Erc20HolderIndexRepository
+
+    @MockBean
+    private lateinit var uuidProvider: UuidProvider
+
+    @Test
+    fun mustReturnEmptyHolderIndexWhenNothingIsIndexed() {
+        suppose("some UUID will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID())
+        }
+
+        verify("empty holder index is returned") {
+            val index = repository.getHolderIndex(CHAIN_ID, ASSET_ADDRESS)
+
+            assertThat(index.fromBlock).withMessage()
+                .isNull()
+            assertThat(index.indexedToBlock).withMessage()
+                .isNull()
+            assertThat(index.holders).withMessage()
+                .isEmpty()
+        }
+    }
+
+    @Test
+    fun mustReturnStoredHolderIndexForSameAsset() {
+        suppose("some UUIDs will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID())
+        }
+
+        val holder1 = WalletAddress("1")
+        val holder2 = WalletAddress("2")
+        val holder3 = WalletAddress("3")
+
+        suppose("some block ranges are indexed") {
+            val index = repository.getHolderIndex(CHAIN_ID, ASSET_ADDRESS)
+
+            index.storeIndexedBlocks(BlockNumber(BigInteger.ONE), BlockNumber(BigInteger("5")), setOf(holder1, holder2))
+            index.storeIndexedBlocks(BlockNumber(BigInteger.ONE), BlockNumber(BigInteger("8")), setOf(holder3))
+        }
+
+        verify("indexed holders are returned for the same asset") {
+            val index = repository.getHolderIndex(CHAIN_ID, ASSET_ADDRESS)
+
+            assertThat(index.fromBlock).withMessage()
+                .isEqualTo(BlockNumber(BigInteger.ONE))
+            assertThat(index.indexedToBlock).withMessage()
+                .isEqualTo(BlockNumber(BigInteger("8")))
+            assertThat(index.holders).withMessage()
+                .containsExactlyInAnyOrder(holder1, holder2, holder3)
+        }
+
+        verify("indexed block is not lowered by an outdated index") {
+            repository.getHolderIndex(CHAIN_ID, ASSET_ADDRESS)
+                .storeIndexedBlocks(BlockNumber(BigInteger.ONE), BlockNumber(BigInteger("6")), emptySet())
+
+            assertThat(repository.getHolderIndex(CHAIN_ID, ASSET_ADDRESS).indexedToBlock).withMessage()
+                .isEqualTo(BlockNumber(BigInteger("8")))
+        }
+
+        verify("holder index is not returned for different asset") {
+            val index = repository.getHolderIndex(CHAIN_ID, ContractAddress("b"))
+
+            assertThat(index.indexedToBlock).withMessage()
+                .isNull()
+            assertThat(index.holders).withMessage()
+                .isEmpty()
+        }
+    }
+}
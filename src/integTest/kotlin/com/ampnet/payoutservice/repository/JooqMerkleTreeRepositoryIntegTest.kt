@@ -1,12 +1,16 @@
 package com.ampnet.payoutservice.repository
 
 import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeaf
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeRoot
 import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeLeafNodeRecord
 import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeRootRecord
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
 import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
+import com.ampnet.payoutservice.model.result.MerkleTreeWithId
 import com.ampnet.payoutservice.service.UuidProvider
 import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
 import com.ampnet.payoutservice.util.AccountBalance
@@ -14,6 +18,7 @@ import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.FlatMerkleTree
 import com.ampnet.payoutservice.util.Hash
 import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.MerkleTree
@@ -33,7 +38,7 @@ import java.util.UUID
 import com.ampnet.payoutservice.generated.jooq.enums.HashFunction as DbHashFunction
 
 @JooqTest
-@Import(JooqMerkleTreeRepository::class)
+@Import(JooqMerkleTreeRepository::class, ApplicationProperties::class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class JooqMerkleTreeRepositoryIntegTest : TestBase() {
 
@@ -52,13 +57,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     @Test
     fun mustCorrectlyFetchAndReconstructMerkleTreeById() {
         val treeRootUuid = UUID.randomUUID()
-        val leaf1Uuid = UUID.randomUUID()
-        val leaf2Uuid = UUID.randomUUID()
-        val leaf3Uuid = UUID.randomUUID()
-        val leaf4Uuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leaf1Uuid, leaf2Uuid, leaf3Uuid, leaf4Uuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
         val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
@@ -107,10 +108,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     @Test
     fun mustCorrectlyStoreSimpleMerkleTreeIntoDatabase() {
         val treeRootUuid = UUID.randomUUID()
-        val leafUuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leafUuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
         val leafNode = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
@@ -144,7 +144,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
                         assetAddress = contractAddress.rawValue,
                         blockNumber = BigInteger("123"),
                         hash = merkleTree.root.hash.value,
-                        hashFn = DbHashFunction.IDENTITY
+                        hashFn = DbHashFunction.IDENTITY,
+                        depth = merkleTree.depth,
+                        leafCount = merkleTree.leafCount
                     )
                 )
         }
@@ -158,15 +160,15 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
                 .isOne()
 
             val leafRecord = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leafUuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(treeRootUuid))
                 .fetchOne()
             assertThat(leafRecord).withMessage()
                 .isEqualTo(
                     MerkleTreeLeafNodeRecord(
-                        id = leafUuid,
                         merkleRoot = treeRootUuid,
-                        address = leafNode.address.rawValue,
-                        balance = leafNode.balance.rawValue
+                        leafPosition = merkleTree.leafNodesByAddress[leafNode.address]?.index,
+                        address = leafNode.address.bytes,
+                        balance = leafNode.balance.bytes
                     )
                 )
         }
@@ -175,13 +177,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     @Test
     fun mustCorrectlyStoreMultiNodeMerkleTreeIntoDatabase() {
         val treeRootUuid = UUID.randomUUID()
-        val leaf1Uuid = UUID.randomUUID()
-        val leaf2Uuid = UUID.randomUUID()
-        val leaf3Uuid = UUID.randomUUID()
-        val leaf4Uuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leaf1Uuid, leaf2Uuid, leaf3Uuid, leaf4Uuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
         val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
@@ -218,7 +216,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
                         assetAddress = contractAddress.rawValue,
                         blockNumber = BigInteger("123"),
                         hash = merkleTree.root.hash.value,
-                        hashFn = DbHashFunction.IDENTITY
+                        hashFn = DbHashFunction.IDENTITY,
+                        depth = merkleTree.depth,
+                        leafCount = merkleTree.leafCount
                     )
                 )
         }
@@ -232,54 +232,54 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
                 .isEqualTo(4)
 
             val leaf1Record = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leaf1Uuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(leafNode1.address.bytes))
                 .fetchOne()
             assertThat(leaf1Record).withMessage()
                 .isEqualTo(
                     MerkleTreeLeafNodeRecord(
-                        id = leaf1Uuid,
                         merkleRoot = treeRootUuid,
-                        address = leafNode1.address.rawValue,
-                        balance = leafNode1.balance.rawValue
+                        leafPosition = merkleTree.leafNodesByAddress[leafNode1.address]?.index,
+                        address = leafNode1.address.bytes,
+                        balance = leafNode1.balance.bytes
                     )
                 )
 
             val leaf2Record = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leaf2Uuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(leafNode2.address.bytes))
                 .fetchOne()
             assertThat(leaf2Record).withMessage()
                 .isEqualTo(
                     MerkleTreeLeafNodeRecord(
-                        id = leaf2Uuid,
                         merkleRoot = treeRootUuid,
-                        address = leafNode2.address.rawValue,
-                        balance = leafNode2.balance.rawValue
+                        leafPosition = merkleTree.leafNodesByAddress[leafNode2.address]?.index,
+                        address = leafNode2.address.bytes,
+                        balance = leafNode2.balance.bytes
                     )
                 )
 
             val leaf3Record = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leaf3Uuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(leafNode3.address.bytes))
                 .fetchOne()
             assertThat(leaf3Record).withMessage()
                 .isEqualTo(
                     MerkleTreeLeafNodeRecord(
-                        id = leaf3Uuid,
                         merkleRoot = treeRootUuid,
-                        address = leafNode3.address.rawValue,
-                        balance = leafNode3.balance.rawValue
+                        leafPosition = merkleTree.leafNodesByAddress[leafNode3.address]?.index,
+                        address = leafNode3.address.bytes,
+                        balance = leafNode3.balance.bytes
                     )
                 )
 
             val leaf4Record = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leaf4Uuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(leafNode4.address.bytes))
                 .fetchOne()
             assertThat(leaf4Record).withMessage()
                 .isEqualTo(
                     MerkleTreeLeafNodeRecord(
-                        id = leaf4Uuid,
                         merkleRoot = treeRootUuid,
-                        address = leafNode4.address.rawValue,
-                        balance = leafNode4.balance.rawValue
+                        leafPosition = merkleTree.leafNodesByAddress[leafNode4.address]?.index,
+                        address = leafNode4.address.bytes,
+                        balance = leafNode4.balance.bytes
                     )
                 )
         }
@@ -303,13 +303,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     @Test
     fun mustReturnNullWhenMerkleTreeReconstructionFailsDuringFetchByHash() {
         val treeRootUuid = UUID.randomUUID()
-        val leaf1Uuid = UUID.randomUUID()
-        val leaf2Uuid = UUID.randomUUID()
-        val leaf3Uuid = UUID.randomUUID()
-        val leaf4Uuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leaf1Uuid, leaf2Uuid, leaf3Uuid, leaf4Uuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
         val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
@@ -334,7 +330,7 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
 
         suppose("Merkle tree leaf node was deleted without updating root hash") {
             dslContext.deleteFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ID.eq(leaf4Uuid))
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(leafNode4.address.bytes))
                 .execute()
         }
 
@@ -354,13 +350,9 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     @Test
     fun mustCorrectlyFetchAndReconstructMerkleTreeByHash() {
         val treeRootUuid = UUID.randomUUID()
-        val leaf1Uuid = UUID.randomUUID()
-        val leaf2Uuid = UUID.randomUUID()
-        val leaf3Uuid = UUID.randomUUID()
-        val leaf4Uuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leaf1Uuid, leaf2Uuid, leaf3Uuid, leaf4Uuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
         val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
@@ -405,24 +397,16 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
     }
 
     @Test
-    fun mustCorrectlyCheckIfLeafNodeExists() {
+    fun mustStoreNodeHashesAndRestoreMerkleTreeFromThem() {
         val treeRootUuid = UUID.randomUUID()
-        val leaf1Uuid = UUID.randomUUID()
-        val leaf2Uuid = UUID.randomUUID()
-        val leaf3Uuid = UUID.randomUUID()
-        val leaf4Uuid = UUID.randomUUID()
 
         suppose("UUID provider will return specified UUIDs") {
-            given(uuidProvider.getUuid()).willReturn(treeRootUuid, leaf1Uuid, leaf2Uuid, leaf3Uuid, leaf4Uuid)
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
         }
 
-        val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
-        val leafNode2 = AccountBalance(WalletAddress("b"), Balance(BigInteger("100")))
-        val leafNode3 = AccountBalance(WalletAddress("c"), Balance(BigInteger("200")))
-        val leafNode4 = AccountBalance(WalletAddress("d"), Balance(BigInteger("300")))
-        val merkleTree = MerkleTree(listOf(leafNode1, leafNode2, leafNode3, leafNode4), HashFunction.IDENTITY)
+        val merkleTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256) as FlatMerkleTree
 
-        val storedTreeId = suppose("multi-node Merkle tree is stored into database") {
+        suppose("Keccak-256 Merkle tree is stored into database") {
             repository.storeTree(
                 merkleTree,
                 ChainId(1L),
@@ -431,90 +415,500 @@ class JooqMerkleTreeRepositoryIntegTest : TestBase() {
             )
         }
 
-        verify("correct tree ID is returned") {
-            assertThat(storedTreeId).withMessage()
-                .isEqualTo(treeRootUuid)
+        verify("node hashes and leaf positions are stored into database") {
+            val rootRecord = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .fetchOne()
+            assertThat(rootRecord?.nodeHashes).withMessage()
+                .isEqualTo(merkleTree.nodeHashes)
+
+            val leafPositions = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(treeRootUuid))
+                .fetch { Pair(WalletAddress.fromBytes(it.address!!), it.leafPosition) }
+                .toSet()
+            assertThat(leafPositions).withMessage()
+                .isEqualTo(List(merkleTree.leafCount) { Pair(merkleTree.leafAt(it).address, it) }.toSet())
         }
 
-        verify("multi-node Merkle tree leaves are correctly contained within the tree") {
-            val leaf1Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
+        verify("Merkle tree is correctly restored from stored node hashes") {
+            val result = repository.fetchTree(
+                FetchMerkleTreeParams(
+                    merkleTree.rootHash,
                     ChainId(1L),
-                    ContractAddress("b"),
-                    leafNode1.address
+                    ContractAddress("b")
                 )
             )
-            assertThat(leaf1Result).withMessage()
-                .isTrue()
+            assertThat(result?.tree).withMessage()
+                .isInstanceOf(FlatMerkleTree::class.java)
+            assertThat(result?.tree?.root).withMessage()
+                .isEqualTo(merkleTree.root)
+            assertThat(result?.tree?.leafNodesByHash).withMessage()
+                .isEqualTo(merkleTree.leafNodesByHash)
+        }
+    }
 
-            val leaf2Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
-                    ChainId(1L),
-                    ContractAddress("b"),
-                    leafNode2.address
+    @Test
+    fun mustBackfillNodeHashesOfMerkleTreeStoredWithoutThem() {
+        val treeRootUuid = UUID.randomUUID()
+        val leafNodes = keccakLeafNodes()
+        val merkleTree = MerkleTree(leafNodes, HashFunction.KECCAK_256) as FlatMerkleTree
+
+        suppose("Merkle tree without node hashes and leaf positions is stored into database") {
+            dslContext.executeInsert(
+                MerkleTreeRootRecord(
+                    id = treeRootUuid,
+                    chainId = 1L,
+                    assetAddress = ContractAddress("b").rawValue,
+                    blockNumber = BigInteger("123"),
+                    hash = merkleTree.rootHash.value,
+                    hashFn = DbHashFunction.KECCAK_256,
+                    depth = merkleTree.depth,
+                    leafCount = merkleTree.leafCount
                 )
             )
-            assertThat(leaf2Result).withMessage()
-                .isTrue()
-
-            val leaf3Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
-                    ChainId(1L),
-                    ContractAddress("b"),
-                    leafNode3.address
+            leafNodes.forEachIndexed { index, leafNode ->
+                dslContext.executeInsert(
+                    MerkleTreeLeafNodeRecord(
+                        merkleRoot = treeRootUuid,
+                        leafPosition = index,
+                        address = leafNode.address.bytes,
+                        balance = leafNode.balance.bytes
+                    )
                 )
+            }
+        }
+
+        verify("Merkle tree is correctly fetched and reconstructed") {
+            val result = repository.getById(treeRootUuid)
+            assertThat(result).withMessage()
+                .isEqualTo(merkleTree)
+        }
+
+        verify("node hashes are not stored while fetching Merkle tree") {
+            val rootRecord = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .fetchOne()
+            assertThat(rootRecord?.nodeHashes).withMessage()
+                .isNull()
+        }
+
+        verify("all Merkle trees without node hashes are backfilled") {
+            val repository = JooqMerkleTreeRepository(dslContext, uuidProvider, ApplicationProperties())
+
+            assertThat(repository.backfillNodeHashes(null, 10)).withMessage()
+                .isEqualTo(treeRootUuid)
+            assertThat(repository.backfillNodeHashes(treeRootUuid, 10)).withMessage()
+                .isNull()
+            assertThat(repository.backfillNodeHashes(null, 10)).withMessage()
+                .isNull()
+        }
+
+        verify("node hashes and leaf positions are stored into database") {
+            val rootRecord = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .fetchOne()
+            assertThat(rootRecord?.nodeHashes).withMessage()
+                .isEqualTo(merkleTree.nodeHashes)
+
+            val leafPositions = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(treeRootUuid))
+                .fetch { Pair(WalletAddress.fromBytes(it.address!!), it.leafPosition) }
+                .toSet()
+            assertThat(leafPositions).withMessage()
+                .isEqualTo(List(merkleTree.leafCount) { Pair(merkleTree.leafAt(it).address, it) }.toSet())
+        }
+
+        verify("leaf paths are stored into database") {
+            val leafPaths = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+                .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(treeRootUuid))
+                .fetch()
+                .associate { Pair(it.leafPosition!!, it.pathDirections) }
+            assertThat(leafPaths).withMessage()
+                .isEqualTo(List(merkleTree.leafCount) { Pair(it, merkleTree.packedPathAt(it).directions) }.toMap())
+        }
+    }
+
+    @Test
+    fun mustRebuildMerkleTreeWhenStoredNodeHashesDoNotMatchRootHash() {
+        val treeRootUuid = UUID.randomUUID()
+
+        suppose("UUID provider will return specified UUIDs") {
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
+        }
+
+        val merkleTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256) as FlatMerkleTree
+
+        suppose("Keccak-256 Merkle tree is stored into database") {
+            repository.storeTree(
+                merkleTree,
+                ChainId(1L),
+                ContractAddress("b"),
+                BlockNumber(BigInteger("123"))
             )
-            assertThat(leaf3Result).withMessage()
-                .isTrue()
+        }
 
-            val leaf4Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
-                    ChainId(1L),
-                    ContractAddress("b"),
-                    leafNode4.address
-                )
+        suppose("stored node hashes are corrupted") {
+            dslContext.update(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .set(MerkleTreeRoot.MERKLE_TREE_ROOT.NODE_HASHES, ByteArray(merkleTree.nodeHashes.size))
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .execute()
+        }
+
+        verify("Merkle tree is correctly fetched and reconstructed") {
+            val result = repository.getById(treeRootUuid)
+            assertThat(result).withMessage()
+                .isEqualTo(merkleTree)
+        }
+
+        verify("stored node hashes are not overwritten while fetching Merkle tree") {
+            val rootRecord = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .fetchOne()
+            assertThat(rootRecord?.nodeHashes).withMessage()
+                .isEqualTo(ByteArray(merkleTree.nodeHashes.size))
+        }
+    }
+
+    @Test
+    fun mustRestoreAndRebuildMerkleTreeWhenLeafNodesAreFetchedInMultipleBatches() {
+        val properties = ApplicationProperties().apply { merkleTree.leafFetchSize = 2 }
+        val repository = JooqMerkleTreeRepository(dslContext, uuidProvider, properties)
+        val merkleTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256)
+
+        suppose("UUID provider will return random UUIDs") {
+            given(uuidProvider.getUuid()).willAnswer { UUID.randomUUID() }
+        }
+
+        val storedTreeId = suppose("Merkle tree is stored into database") {
+            repository.storeTree(merkleTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("123")))
+        }
+
+        verify("Merkle tree is correctly restored from stored node hashes") {
+            assertThat(repository.getById(storedTreeId)).withMessage()
+                .isEqualTo(merkleTree)
+        }
+
+        suppose("stored node hashes are removed") {
+            dslContext.update(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .setNull(MerkleTreeRoot.MERKLE_TREE_ROOT.NODE_HASHES)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(storedTreeId))
+                .execute()
+        }
+
+        verify("Merkle tree is correctly rebuilt from leaf nodes") {
+            assertThat(repository.getById(storedTreeId)).withMessage()
+                .isEqualTo(merkleTree)
+        }
+    }
+
+    @Test
+    fun mustFetchStoredPathsOfMerkleTreeLeaves() {
+        val treeRootUuid = UUID.randomUUID()
+
+        suppose("UUID provider will return specified UUIDs") {
+            given(uuidProvider.getUuid()).willReturn(treeRootUuid)
+        }
+
+        val merkleTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256) as FlatMerkleTree
+
+        suppose("Keccak-256 Merkle tree is stored into database") {
+            repository.storeTree(
+                merkleTree,
+                ChainId(1L),
+                ContractAddress("b"),
+                BlockNumber(BigInteger("123"))
             )
-            assertThat(leaf4Result).withMessage()
-                .isTrue()
         }
 
-        verify("other leaves are not contained within the tree") {
-            val fakeLeaf1Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
-                    ChainId(2L),
-                    ContractAddress("b"),
-                    leafNode1.address
+        suppose("node hashes are not available for Merkle tree reconstruction") {
+            dslContext.update(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .setNull(MerkleTreeRoot.MERKLE_TREE_ROOT.NODE_HASHES)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .execute()
+        }
+
+        verify("stored paths are returned for all leaves") {
+            keccakLeafNodes().forEachIndexed { index, leaf ->
+                val result = repository.fetchPath(
+                    FetchMerkleTreePathParams(merkleTree.rootHash, ChainId(1L), ContractAddress("b"), leaf.address)
                 )
+                assertThat(result).withIndexedMessage(index)
+                    .isEqualTo(AccountBalanceWithPath(leaf, merkleTree.pathTo(leaf)!!))
+            }
+        }
+
+        verify("Merkle tree was not rebuilt") {
+            val rootRecord = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeRootUuid))
+                .fetchOne()
+            assertThat(rootRecord?.nodeHashes).withMessage()
+                .isNull()
+        }
+
+        verify("null is returned for address which is not contained in the tree") {
+            val result = repository.fetchPath(
+                FetchMerkleTreePathParams(merkleTree.rootHash, ChainId(1L), ContractAddress("b"), WalletAddress("ff"))
             )
-            assertThat(fakeLeaf1Result).withMessage()
-                .isFalse()
+            assertThat(result).withMessage()
+                .isNull()
+        }
 
-            val fakeLeaf2Result = repository.containsAddress(
-                FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
-                    ChainId(1L),
-                    ContractAddress("c"),
-                    leafNode1.address
+        verify("null is returned for non-existent tree") {
+            val result = repository.fetchPath(
+                FetchMerkleTreePathParams(merkleTree.rootHash, ChainId(2L), ContractAddress("b"), WalletAddress("1"))
+            )
+            assertThat(result).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustFetchPathOfMerkleTreeLeafWithoutStoredPath() {
+        val leafNode1 = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
+        val leafNode2 = AccountBalance(WalletAddress("b"), Balance(BigInteger("100")))
+        val leafNode3 = AccountBalance(WalletAddress("c"), Balance(BigInteger("200")))
+        val merkleTree = MerkleTree(listOf(leafNode1, leafNode2, leafNode3), HashFunction.IDENTITY)
+
+        suppose("UUID provider will return specified UUIDs") {
+            given(uuidProvider.getUuid()).willReturn(UUID.randomUUID())
+        }
+
+        suppose("Merkle tree is stored into database") {
+            repository.storeTree(
+                merkleTree,
+                ChainId(1L),
+                ContractAddress("b"),
+                BlockNumber(BigInteger("123"))
+            )
+        }
+
+        verify("path is computed from reconstructed Merkle tree") {
+            val result = repository.fetchPath(
+                FetchMerkleTreePathParams(merkleTree.rootHash, ChainId(1L), ContractAddress("b"), leafNode2.address)
+            )
+            assertThat(result).withMessage()
+                .isEqualTo(AccountBalanceWithPath(leafNode2, merkleTree.pathTo(leafNode2)!!))
+        }
+    }
+
+    @Test
+    fun mustFetchMultipleMerkleTreesAtOnce() {
+        val flatTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256)
+        val identityTree = MerkleTree(
+            listOf(
+                AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO)),
+                AccountBalance(WalletAddress("b"), Balance(BigInteger("100")))
+            ),
+            HashFunction.IDENTITY
+        )
+
+        suppose("UUID provider will return random UUIDs") {
+            given(uuidProvider.getUuid()).willAnswer { UUID.randomUUID() }
+        }
+
+        val flatTreeId = suppose("flat Merkle tree is stored into database") {
+            repository.storeTree(flatTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("123")))
+        }
+
+        val identityTreeId = suppose("identity Merkle tree is stored into database") {
+            repository.storeTree(identityTree, ChainId(1L), ContractAddress("c"), BlockNumber(BigInteger("123")))
+        }
+
+        verify("stored Merkle trees are fetched and non-existent one is ignored") {
+            val flatTreeParams = FetchMerkleTreeParams(flatTree.rootHash, ChainId(1L), ContractAddress("b"))
+            val identityTreeParams = FetchMerkleTreeParams(identityTree.rootHash, ChainId(1L), ContractAddress("c"))
+            val nonExistentParams = FetchMerkleTreeParams(flatTree.rootHash, ChainId(2L), ContractAddress("b"))
+
+            assertThat(repository.fetchTrees(listOf(flatTreeParams, identityTreeParams, nonExistentParams)))
+                .withMessage()
+                .isEqualTo(
+                    mapOf(
+                        Pair(flatTreeParams, MerkleTreeWithId(flatTreeId, flatTree)),
+                        Pair(identityTreeParams, MerkleTreeWithId(identityTreeId, identityTree))
+                    )
                 )
+        }
+    }
+
+    @Test
+    fun mustFetchPathsOfMultipleMerkleTreesAtOnce() {
+        val flatTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256)
+        val identityLeaf = AccountBalance(WalletAddress("a"), Balance(BigInteger.ZERO))
+        val identityTree = MerkleTree(
+            listOf(identityLeaf, AccountBalance(WalletAddress("b"), Balance(BigInteger("100")))),
+            HashFunction.IDENTITY
+        )
+
+        suppose("UUID provider will return random UUIDs") {
+            given(uuidProvider.getUuid()).willAnswer { UUID.randomUUID() }
+        }
+
+        suppose("Merkle trees are stored into database") {
+            repository.storeTree(flatTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("123")))
+            repository.storeTree(identityTree, ChainId(1L), ContractAddress("c"), BlockNumber(BigInteger("123")))
+        }
+
+        verify("paths are fetched for stored and reconstructed trees") {
+            val flatLeaf = keccakLeafNodes()[1]
+            val flatLeafParams = FetchMerkleTreePathParams(
+                flatTree.rootHash,
+                ChainId(1L),
+                ContractAddress("b"),
+                flatLeaf.address
+            )
+            val identityLeafParams = FetchMerkleTreePathParams(
+                identityTree.rootHash,
+                ChainId(1L),
+                ContractAddress("c"),
+                identityLeaf.address
             )
-            assertThat(fakeLeaf2Result).withMessage()
-                .isFalse()
+            val nonContainedParams = flatLeafParams.copy(walletAddress = WalletAddress("ff"))
 
-            val fakeLeaf3Result = repository.containsAddress(
+            assertThat(repository.fetchPaths(listOf(flatLeafParams, identityLeafParams, nonContainedParams)))
+                .withMessage()
+                .isEqualTo(
+                    mapOf(
+                        Pair(flatLeafParams, AccountBalanceWithPath(flatLeaf, flatTree.pathTo(flatLeaf)!!)),
+                        Pair(
+                            identityLeafParams,
+                            AccountBalanceWithPath(identityLeaf, identityTree.pathTo(identityLeaf)!!)
+                        )
+                    )
+                )
+        }
+    }
+
+    @Test
+    fun mustStoreLeavesSharedBetweenMerkleTreesOfSameAssetOnlyOnce() {
+        val properties = ApplicationProperties().apply { merkleTree.sharedLeaves = true }
+        val repository = JooqMerkleTreeRepository(dslContext, uuidProvider, properties)
+        val firstTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256)
+        val secondTreeLeaves = keccakLeafNodes().drop(1) + listOf(
+            AccountBalance(WalletAddress("0x${"a".padStart(40, '0')}"), Balance(BigInteger("1000")))
+        )
+        val secondTree = MerkleTree(secondTreeLeaves, HashFunction.KECCAK_256)
+        val identityTree = MerkleTree(keccakLeafNodes().take(2), HashFunction.IDENTITY)
+
+        suppose("UUID provider will return random UUIDs") {
+            given(uuidProvider.getUuid()).willAnswer { UUID.randomUUID() }
+        }
+
+        val firstTreeId = suppose("first Merkle tree is stored into database") {
+            repository.storeTree(firstTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("123")))
+        }
+
+        val secondTreeId = suppose("second Merkle tree of the same asset is stored into database") {
+            repository.storeTree(secondTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("124")))
+        }
+
+        val identityTreeId = suppose("non-flat Merkle tree of the same asset is stored into database") {
+            repository.storeTree(identityTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("125")))
+        }
+
+        verify("each distinct leaf is stored only once and no leaf nodes are stored") {
+            assertThat(dslContext.fetchCount(MerkleTreeLeaf.MERKLE_TREE_LEAF)).withMessage()
+                .isEqualTo(keccakLeafNodes().size + 1)
+            assertThat(dslContext.fetchCount(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)).withMessage()
+                .isZero()
+        }
+
+        verify("Merkle trees are correctly restored from shared leaves") {
+            assertThat(repository.getById(firstTreeId)).withMessage()
+                .isEqualTo(firstTree)
+            assertThat(repository.getById(secondTreeId)).withMessage()
+                .isEqualTo(secondTree)
+            assertThat(repository.getById(identityTreeId)).withMessage()
+                .isEqualTo(identityTree)
+        }
+
+        verify("Merkle tree is correctly fetched by hash") {
+            val params = FetchMerkleTreeParams(secondTree.rootHash, ChainId(1L), ContractAddress("b"))
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isEqualTo(MerkleTreeWithId(secondTreeId, secondTree))
+        }
+
+        verify("paths are returned for all leaves") {
+            secondTreeLeaves.forEachIndexed { index, leaf ->
+                val result = repository.fetchPath(
+                    FetchMerkleTreePathParams(secondTree.rootHash, ChainId(1L), ContractAddress("b"), leaf.address)
+                )
+                assertThat(result).withIndexedMessage(index)
+                    .isEqualTo(AccountBalanceWithPath(leaf, secondTree.pathTo(leaf)!!))
+            }
+        }
+
+        verify("null path is returned for address which is not contained in the tree") {
+            val result = repository.fetchPath(
                 FetchMerkleTreePathParams(
-                    merkleTree.root.hash,
+                    secondTree.rootHash,
                     ChainId(1L),
                     ContractAddress("b"),
-                    WalletAddress("5")
+                    keccakLeafNodes().first().address
                 )
             )
-            assertThat(fakeLeaf3Result).withMessage()
-                .isFalse()
+            assertThat(result).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustFetchPathsOfSharedLeafMerkleTreesFromTreesRestoredFromNodeHashes() {
+        val properties = ApplicationProperties().apply { merkleTree.sharedLeaves = true }
+        val repository = JooqMerkleTreeRepository(dslContext, uuidProvider, properties)
+        val firstTree = MerkleTree(keccakLeafNodes(), HashFunction.KECCAK_256)
+        val secondTree = MerkleTree(keccakLeafNodes().drop(2), HashFunction.KECCAK_256)
+
+        suppose("UUID provider will return random UUIDs") {
+            given(uuidProvider.getUuid()).willAnswer { UUID.randomUUID() }
+        }
+
+        suppose("Merkle trees with shared leaves are stored into database") {
+            repository.storeTree(firstTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("123")))
+            repository.storeTree(secondTree, ChainId(1L), ContractAddress("b"), BlockNumber(BigInteger("124")))
+        }
+
+        verify("node hashes are stored for Merkle trees and no per-leaf paths are stored") {
+            val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+            assertThat(dslContext.fetchCount(root, root.NODE_HASHES.isNull)).withMessage()
+                .isZero()
+            assertThat(dslContext.fetchCount(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)).withMessage()
+                .isZero()
+        }
+
+        verify("paths are fetched for leaves of all Merkle trees") {
+            val firstTreeLeaf = keccakLeafNodes().first()
+            val secondTreeLeaf = keccakLeafNodes().last()
+            val firstTreeParams = FetchMerkleTreePathParams(
+                firstTree.rootHash,
+                ChainId(1L),
+                ContractAddress("b"),
+                firstTreeLeaf.address
+            )
+            val secondTreeParams = firstTreeParams.copy(
+                rootHash = secondTree.rootHash,
+                walletAddress = secondTreeLeaf.address
+            )
+            val nonContainedParams = secondTreeParams.copy(walletAddress = firstTreeLeaf.address)
+
+            assertThat(repository.fetchPaths(listOf(firstTreeParams, secondTreeParams, nonContainedParams)))
+                .withMessage()
+                .isEqualTo(
+                    mapOf(
+                        Pair(firstTreeParams, AccountBalanceWithPath(firstTreeLeaf, firstTree.pathTo(firstTreeLeaf)!!)),
+                        Pair(
+                            secondTreeParams,
+                            AccountBalanceWithPath(secondTreeLeaf, secondTree.pathTo(secondTreeLeaf)!!)
+                        )
+                    )
+                )
         }
     }
+
+    private fun keccakLeafNodes(): List<AccountBalance> =
+        List(5) {
+            AccountBalance(
+                WalletAddress("0x${(it + 1).toString().padStart(40, '0')}"),
+                Balance(BigInteger.valueOf(100L * it))
+            )
+        }
 }
@@ -0,0 +1,205 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpointHolder
+import com.ampnet.payoutservice.generated.jooq.tables.records.SnapshotRecord
+import com.ampnet.payoutservice.service.UuidProvider
+import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import org.assertj.core.api.Assertions.assertThat
+import org.jooq.DSLContext
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.mockito.kotlin.given
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jooq.JooqTest
+import org.springframework.boot.test.mock.mockito.MockBean
+import org.springframework.context.annotation.Import
+import java.math.BigInteger
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.util.UUID
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpoint as SnapshotCheckpointTable
+
+@JooqTest
+@Import(JooqSnapshotCheckpointRepository::class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JooqSnapshotCheckpointRepositoryIntegTest : TestBase() {
+
+    companion object {
+        private val CHAIN_ID = ChainId(1L)
+        private val ASSET_ADDRESS = ContractAddress("a")
+        private val BLOCK_NUMBER = BlockNumber(BigInteger.TEN)
+    }
+
+    @Suppress("unused")
+    private val postgresContainer = PostgresTestContainer()
+
+    @Autowired
+    private lateinit var repository: SnapshotCheckpointRepository
+
+    @Autowired
+    private lateinit var dslContext: DSLContext
+
+    @MockBean
+    private lateinit var uuidProvider: UuidProvider
+
+    @Test
+    fun mustReturnEmptyCheckpointWhenThereIsNoStoredProgress() {
+        suppose("some UUID will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID())
+        }
+
+        verify("empty checkpoint is returned") {
+            val checkpoint = repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+
+            assertThat(checkpoint.deploymentBlock).withMessage()
+                .isNull()
+            assertThat(checkpoint.scannedToBlock).withMessage()
+                .isNull()
+            assertThat(checkpoint.holders).withMessage()
+                .isEmpty()
+            assertThat(checkpoint.balances).withMessage()
+                .isEmpty()
+        }
+    }
+
+    @Test
+    fun mustResumeFromStoredCheckpoint() {
+        suppose("some UUIDs will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID(), UUID.randomUUID())
+        }
+
+        val holder1 = WalletAddress("1")
+        val holder2 = WalletAddress("2")
+        val holder3 = WalletAddress("3")
+
+        suppose("some progress is stored into the checkpoint") {
+            val checkpoint = repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+
+            checkpoint.storeDeploymentBlock(BlockNumber(BigInteger.ONE))
+            checkpoint.storeScannedBlocks(BlockNumber(BigInteger("5")), setOf(holder1, holder2))
+            checkpoint.storeScannedBlocks(BlockNumber(BigInteger("8")), setOf(holder3))
+            checkpoint.storeBalances(listOf(AccountBalance(holder2, Balance(BigInteger("200")))))
+        }
+
+        verify("stored progress is returned for the same asset and block number") {
+            val checkpoint = repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+
+            assertThat(checkpoint.deploymentBlock).withMessage()
+                .isEqualTo(BlockNumber(BigInteger.ONE))
+            assertThat(checkpoint.scannedToBlock).withMessage()
+                .isEqualTo(BlockNumber(BigInteger("8")))
+            assertThat(checkpoint.holders).withMessage()
+                .containsExactlyInAnyOrder(holder1, holder2, holder3)
+            assertThat(checkpoint.balances).withMessage()
+                .isEqualTo(mapOf(Pair(holder2, Balance(BigInteger("200")))))
+        }
+
+        verify("stored progress is not returned for different block number") {
+            val checkpoint = repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BlockNumber(BigInteger("11")))
+
+            assertThat(checkpoint.scannedToBlock).withMessage()
+                .isNull()
+            assertThat(checkpoint.holders).withMessage()
+                .isEmpty()
+        }
+    }
+
+    @Test
+    fun mustDeleteCheckpoint() {
+        suppose("some UUIDs will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID(), UUID.randomUUID())
+        }
+
+        suppose("some progress is stored into the checkpoint") {
+            repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+                .storeScannedBlocks(BlockNumber(BigInteger("5")), setOf(WalletAddress("1")))
+        }
+
+        suppose("checkpoint is deleted") {
+            repository.deleteCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+        }
+
+        verify("empty checkpoint is returned") {
+            val checkpoint = repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+
+            assertThat(checkpoint.scannedToBlock).withMessage()
+                .isNull()
+            assertThat(checkpoint.holders).withMessage()
+                .isEmpty()
+            assertThat(dslContext.fetchCount(SnapshotCheckpointHolder.SNAPSHOT_CHECKPOINT_HOLDER)).withMessage()
+                .isZero()
+        }
+    }
+
+    @Test
+    fun mustDeleteStaleCheckpointsWhichAreNotUsedByPendingSnapshots() {
+        val usedBlockNumber = BlockNumber(BigInteger("11"))
+        val freshBlockNumber = BlockNumber(BigInteger("12"))
+
+        suppose("some UUIDs will be generated") {
+            given(uuidProvider.getUuid())
+                .willReturn(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID())
+        }
+
+        suppose("some checkpoints are stored") {
+            repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, BLOCK_NUMBER)
+                .storeScannedBlocks(BlockNumber(BigInteger("5")), setOf(WalletAddress("1")))
+            repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, usedBlockNumber)
+            repository.getCheckpoint(CHAIN_ID, ASSET_ADDRESS, freshBlockNumber)
+        }
+
+        suppose("first two checkpoints were not updated for a day") {
+            dslContext.update(SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT)
+                .set(SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT.UPDATED_AT, OffsetDateTime.now().minusDays(1L))
+                .where(SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT.BLOCK_NUMBER.ne(freshBlockNumber.value))
+                .execute()
+        }
+
+        suppose("second checkpoint is used by a pending snapshot") {
+            val snapshotId = UUID.randomUUID()
+
+            dslContext.executeInsert(
+                SnapshotRecord(
+                    id = snapshotId,
+                    name = "snapshot-$snapshotId",
+                    chainId = CHAIN_ID.value,
+                    assetAddress = ASSET_ADDRESS.rawValue,
+                    blockNumber = usedBlockNumber.value,
+                    ignoredHolderAddresses = emptyArray(),
+                    ownerAddress = WalletAddress("b").rawValue,
+                    status = SnapshotStatus.PENDING,
+                    failureCause = null,
+                    resultTree = null,
+                    treeIpfsHash = null,
+                    totalAssetAmount = null,
+                    createdAt = OffsetDateTime.now()
+                )
+            )
+        }
+
+        verify("only stale checkpoint which is not used by a pending snapshot is deleted") {
+            assertThat(repository.deleteStaleCheckpoints(Duration.ofHours(1L))).withMessage()
+                .isOne()
+
+            val remainingBlockNumbers = dslContext.select(SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT.BLOCK_NUMBER)
+                .from(SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT)
+                .fetch { BlockNumber(it.value1()!!) }
+
+            assertThat(remainingBlockNumbers).withMessage()
+                .containsExactlyInAnyOrder(usedBlockNumber, freshBlockNumber)
+            assertThat(dslContext.fetchCount(SnapshotCheckpointHolder.SNAPSHOT_CHECKPOINT_HOLDER)).withMessage()
+                .isZero()
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ampnet.payoutservice.repository
 
 import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.config.ApplicationProperties
 import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeRootRecord
 import com.ampnet.payoutservice.generated.jooq.tables.records.SnapshotRecord
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
@@ -8,6 +9,7 @@ import com.ampnet.payoutservice.model.result.OtherSnapshotData
 import com.ampnet.payoutservice.model.result.PendingSnapshot
 import com.ampnet.payoutservice.model.result.Snapshot
 import com.ampnet.payoutservice.model.result.SuccessfulSnapshotData
+import com.ampnet.payoutservice.service.UtcDateTimeProvider
 import com.ampnet.payoutservice.service.UuidProvider
 import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
 import com.ampnet.payoutservice.util.Balance
@@ -24,21 +26,32 @@ import org.assertj.core.api.Assertions.assertThat
 import org.jooq.DSLContext
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.assertThrows
 import org.mockito.kotlin.given
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.boot.test.autoconfigure.jooq.JooqTest
 import org.springframework.boot.test.mock.mockito.MockBean
 import org.springframework.context.annotation.Import
+import org.springframework.dao.DuplicateKeyException
 import java.math.BigInteger
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
 import java.util.UUID
 import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus as DbSnapshotStatus
 import com.ampnet.payoutservice.generated.jooq.tables.Snapshot as SnapshotTable
 
 @JooqTest
-@Import(JooqSnapshotRepository::class)
+@Import(JooqSnapshotRepository::class, ApplicationProperties::class)
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class JooqSnapshotRepositoryIntegTest : TestBase() {
 
+    companion object {
+        private const val WORKER_ID = "test-worker"
+        private val LEASE_DURATION = Duration.ofMinutes(5L)
+        private val CLOCK_TOLERANCE = Duration.ofMinutes(1L)
+    }
+
     @Suppress("unused")
     private val postgresContainer = PostgresTestContainer()
 
@@ -51,6 +64,11 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
     @MockBean
     private lateinit var uuidProvider: UuidProvider
 
+    @MockBean
+    private lateinit var utcDateTimeProvider: UtcDateTimeProvider
+
+    private val createdAt = OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC)
+
     @Test
     fun mustCorrectlyFetchSuccessfulSnapshotId() {
         val treeUuid = UUID.randomUUID()
@@ -60,6 +78,8 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         val payoutBlock = BlockNumber(BigInteger.TEN)
         val treeRootHash = Hash("tree-root-hash")
         val hashFn = HashFunction.IDENTITY
+        val treeDepth = 3
+        val treeLeafCount = 5
 
         suppose("some Merkle tree root exists in database") {
             dslContext.executeInsert(
@@ -69,7 +89,9 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     assetAddress = assetAddress.rawValue,
                     blockNumber = payoutBlock.value,
                     hash = treeRootHash.value,
-                    hashFn = hashFn.toDbEnum
+                    hashFn = hashFn.toDbEnum,
+                    depth = treeDepth,
+                    leafCount = treeLeafCount
                 )
             )
         }
@@ -94,7 +116,8 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     failureCause = null,
                     resultTree = treeUuid,
                     treeIpfsHash = treeIpfsHash.value,
-                    totalAssetAmount = totalAssetAmount.rawValue
+                    totalAssetAmount = totalAssetAmount.rawValue,
+                    createdAt = createdAt
                 )
             )
         }
@@ -114,6 +137,10 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                         ownerAddress = ownerAddress,
                         data = SuccessfulSnapshotData(
                             merkleTreeRootId = treeUuid,
+                            merkleRootHash = treeRootHash,
+                            merkleTreeDepth = treeDepth,
+                            merkleTreeLeafCount = treeLeafCount,
+                            hashFn = hashFn,
                             merkleTreeIpfsHash = treeIpfsHash,
                             totalAssetAmount = totalAssetAmount
                         )
@@ -146,7 +173,8 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     failureCause = null,
                     resultTree = null,
                     treeIpfsHash = null,
-                    totalAssetAmount = null
+                    totalAssetAmount = null,
+                    createdAt = createdAt
                 )
             )
         }
@@ -194,7 +222,8 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     failureCause = SnapshotFailureCause.OTHER.toDbEnum,
                     resultTree = null,
                     treeIpfsHash = null,
-                    totalAssetAmount = null
+                    totalAssetAmount = null,
+                    createdAt = createdAt
                 )
             )
         }
@@ -255,16 +284,16 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         }
 
         verify("snapshots are correctly fetched by owner and chainId") {
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId1, owner1, emptySet()))
+            assertThat(getAllSnapshots(chainId1, owner1, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner1chainId1Snapshots.toModels())
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId2, owner1, emptySet()))
+            assertThat(getAllSnapshots(chainId2, owner1, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner1chainId2Snapshots.toModels())
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId1, owner2, emptySet()))
+            assertThat(getAllSnapshots(chainId1, owner2, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner2chainId1Snapshots.toModels())
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId2, owner2, emptySet()))
+            assertThat(getAllSnapshots(chainId2, owner2, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner2chainId2Snapshots.toModels())
         }
@@ -273,26 +302,26 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         val chainId2Snapshots = owner1chainId2Snapshots + owner2chainId2Snapshots
 
         verify("snapshots are correctly fetched by chainId") {
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId1, null, emptySet()))
+            assertThat(getAllSnapshots(chainId1, null, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(chainId1Snapshots.toModels())
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(chainId2, null, emptySet()))
+            assertThat(getAllSnapshots(chainId2, null, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(chainId2Snapshots.toModels())
         }
 
         verify("snapshots are correctly fetched by owner") {
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(null, owner1, emptySet()))
+            assertThat(getAllSnapshots(null, owner1, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner1Snapshots.toModels())
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(null, owner2, emptySet()))
+            assertThat(getAllSnapshots(null, owner2, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(owner2Snapshots.toModels())
         }
 
         verify("snapshots are correctly fetched by status") {
             assertThat(
-                repository.getAllByChainIdOwnerAndStatuses(null, null, setOf(SnapshotStatus.PENDING))
+                getAllSnapshots(null, null, setOf(SnapshotStatus.PENDING))
             )
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(
@@ -300,7 +329,7 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                 )
 
             assertThat(
-                repository.getAllByChainIdOwnerAndStatuses(null, null, setOf(SnapshotStatus.FAILED))
+                getAllSnapshots(null, null, setOf(SnapshotStatus.FAILED))
             )
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(
@@ -309,12 +338,97 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         }
 
         verify("snapshots are correctly fetched with null filters") {
-            assertThat(repository.getAllByChainIdOwnerAndStatuses(null, null, emptySet()))
+            assertThat(getAllSnapshots(null, null, emptySet()))
                 .withMessage()
                 .containsExactlyInAnyOrderElementsOf(allSnapshots.toModels())
         }
     }
 
+    @Test
+    fun mustFetchSnapshotsInPagesOrderedFromNewestToOldest() {
+        val owner = WalletAddress("aaa1")
+        val chainId = ChainId(1L)
+        val snapshots = listOf(
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt.plusMinutes(3L)),
+            // snapshots with the same creation time are ordered by their ID
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt.plusMinutes(2L), UUID(0L, 2L)),
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt.plusMinutes(2L), UUID(0L, 1L)),
+            snapshotRecord(chainId, owner, SnapshotStatus.FAILED, null, createdAt.plusMinutes(1L)),
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt)
+        )
+        val otherOwnerSnapshot = snapshotRecord(chainId, WalletAddress("aaa2"), SnapshotStatus.PENDING, null)
+
+        suppose("all snapshots are stored into database") {
+            dslContext.batchInsert(snapshots.shuffled() + otherOwnerSnapshot).execute()
+        }
+
+        val firstPage = suppose("first page of snapshots is fetched") {
+            repository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, 2)
+        }
+
+        verify("first page contains newest snapshots") {
+            assertThat(firstPage.snapshots).withMessage()
+                .isEqualTo(snapshots.subList(0, 2).toModels())
+            assertThat(firstPage.nextCursor).withMessage()
+                .isNotNull()
+        }
+
+        val secondPage = suppose("second page of snapshots is fetched") {
+            repository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), firstPage.nextCursor, 2)
+        }
+
+        verify("second page contains next snapshots") {
+            assertThat(secondPage.snapshots).withMessage()
+                .isEqualTo(snapshots.subList(2, 4).toModels())
+            assertThat(secondPage.nextCursor).withMessage()
+                .isNotNull()
+        }
+
+        val lastPage = suppose("last page of snapshots is fetched") {
+            repository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), secondPage.nextCursor, 2)
+        }
+
+        verify("last page contains oldest snapshot and has no next page") {
+            assertThat(lastPage.snapshots).withMessage()
+                .isEqualTo(snapshots.subList(4, 5).toModels())
+            assertThat(lastPage.nextCursor).withMessage()
+                .isNull()
+        }
+
+        verify("all snapshots are returned when page size is not specified") {
+            val allSnapshots = repository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, null)
+
+            assertThat(allSnapshots.snapshots).withMessage()
+                .isEqualTo(snapshots.toModels())
+            assertThat(allSnapshots.nextCursor).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustStreamAllSnapshotsOrderedFromNewestToOldest() {
+        val owner = WalletAddress("aaa1")
+        val chainId = ChainId(1L)
+        val snapshots = listOf(
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt.plusMinutes(2L)),
+            snapshotRecord(chainId, owner, SnapshotStatus.FAILED, null, createdAt.plusMinutes(1L)),
+            snapshotRecord(chainId, owner, SnapshotStatus.PENDING, null, createdAt)
+        )
+        val otherOwnerSnapshot = snapshotRecord(chainId, WalletAddress("aaa2"), SnapshotStatus.PENDING, null)
+
+        suppose("all snapshots are stored into database") {
+            dslContext.batchInsert(snapshots.shuffled() + otherOwnerSnapshot).execute()
+        }
+
+        verify("all snapshots of the owner are streamed") {
+            val result = mutableListOf<Snapshot>()
+            repository.streamAllByChainIdOwnerAndStatuses(chainId, owner, emptySet()) { result.add(it) }
+
+            assertThat(result).withMessage()
+                .isEqualTo(snapshots.toModels())
+        }
+    }
+
     @Test
     fun mustReturnNullWhenFetchingNonExistentSnapshotById() {
         verify("null is returned when fetching non-existent snapshot") {
@@ -332,6 +446,10 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
             given(uuidProvider.getUuid()).willReturn(snapshotUuid)
         }
 
+        suppose("UTC date-time provider will return specified date-time") {
+            given(utcDateTimeProvider.getUtcDateTime()).willReturn(createdAt)
+        }
+
         val chainId = ChainId(1L)
         val name = "snapshot-name"
         val assetAddress = ContractAddress("a")
@@ -375,14 +493,15 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                         failureCause = null,
                         resultTree = null,
                         treeIpfsHash = null,
-                        totalAssetAmount = null
+                        totalAssetAmount = null,
+                        createdAt = createdAt
                     )
                 )
         }
     }
 
     @Test
-    fun mustCorrectlyFetchSinglePendingSnapshotFromDatabase() {
+    fun mustCorrectlyClaimSinglePendingSnapshot() {
         val snapshotUuid = UUID.randomUUID()
         val name = "snapshot-name"
         val chainId = ChainId(1L)
@@ -405,13 +524,16 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     failureCause = null,
                     resultTree = null,
                     treeIpfsHash = null,
-                    totalAssetAmount = null
+                    totalAssetAmount = null,
+                    createdAt = createdAt
                 )
             )
         }
 
-        verify("single pending snapshot is fetched from database") {
-            val result = repository.getPending()
+        val claimedAt = OffsetDateTime.now()
+
+        verify("single pending snapshot is claimed") {
+            val result = repository.claimPending(WORKER_ID, LEASE_DURATION)
 
             assertThat(result).withMessage()
                 .isEqualTo(
@@ -426,12 +548,208 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     )
                 )
         }
+
+        verify("snapshot is marked as processing by the claiming worker") {
+            val record = dslContext.selectFrom(SnapshotTable.SNAPSHOT)
+                .where(SnapshotTable.SNAPSHOT.ID.eq(snapshotUuid))
+                .fetchOne()
+
+            assertThat(record?.status).withMessage()
+                .isEqualTo(SnapshotStatus.PROCESSING.toDbEnum)
+            assertThat(record?.workerId).withMessage()
+                .isEqualTo(WORKER_ID)
+            assertThat(record?.leaseExpiresAt).withMessage()
+                .isBetween(
+                    claimedAt.plus(LEASE_DURATION).minus(CLOCK_TOLERANCE),
+                    OffsetDateTime.now().plus(LEASE_DURATION).plus(CLOCK_TOLERANCE)
+                )
+        }
+
+        verify("claimed snapshot is not claimed again while its lease is active") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION)).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustClaimOldestPendingSnapshotWhichIsNotExcluded() {
+        val chainId1 = ChainId(1L)
+        val chainId2 = ChainId(2L)
+        val owner = WalletAddress("b")
+        val oldest = snapshotRecord(chainId1, owner, SnapshotStatus.PENDING, null, createdAt.minusMinutes(2L))
+        val middle = snapshotRecord(
+            chainId = chainId1,
+            owner = owner,
+            status = SnapshotStatus.PENDING,
+            failureCause = null,
+            createdAt = createdAt.minusMinutes(1L),
+            blockNumber = BlockNumber(BigInteger("11"))
+        )
+        val newest = snapshotRecord(chainId2, owner, SnapshotStatus.PENDING, null, createdAt)
+        val failed = snapshotRecord(chainId2, owner, SnapshotStatus.FAILED, null, createdAt.minusMinutes(3L))
+
+        suppose("some snapshots are stored into database") {
+            dslContext.batchInsert(oldest, middle, newest, failed).execute()
+        }
+
+        verify("null is returned when all pending snapshots are excluded") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION, setOf(newest.id!!), setOf(chainId1)))
+                .withMessage()
+                .isNull()
+        }
+
+        verify("snapshots of excluded chains are skipped") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION, emptySet(), setOf(chainId1))?.id)
+                .withMessage()
+                .isEqualTo(newest.id)
+        }
+
+        verify("excluded snapshots are skipped") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION, setOf(oldest.id!!), emptySet())?.id)
+                .withMessage()
+                .isEqualTo(middle.id)
+        }
+
+        verify("oldest pending snapshot is claimed") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION)?.id).withMessage()
+                .isEqualTo(oldest.id)
+        }
+
+        verify("null is returned when all pending snapshots are claimed") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION)).withMessage()
+                .isNull()
+        }
+    }
+
+    @Test
+    fun mustNotClaimSnapshotWhichSharesCheckpointWithProcessingSnapshot() {
+        val owner = WalletAddress("b")
+        val first = snapshotRecord(ChainId(1L), owner, SnapshotStatus.PENDING, null, createdAt.minusMinutes(1L))
+        val second = snapshotRecord(ChainId(1L), owner, SnapshotStatus.PENDING, null, createdAt)
+        val otherWorkerId = "other-worker"
+
+        suppose("two pending snapshots of the same asset at the same block are stored into database") {
+            dslContext.batchInsert(first, second).execute()
+        }
+
+        suppose("first snapshot is claimed") {
+            repository.claimPending(WORKER_ID, LEASE_DURATION)
+        }
+
+        verify("second snapshot is not claimed while first snapshot is being processed") {
+            assertThat(repository.claimPending(otherWorkerId, LEASE_DURATION)).withMessage()
+                .isNull()
+        }
+
+        suppose("lease of the first snapshot has expired") {
+            expireLease(first.id!!)
+        }
+
+        verify("only one of the snapshots is claimed after the lease has expired") {
+            assertThat(repository.claimPending(otherWorkerId, LEASE_DURATION)?.id).withMessage()
+                .isEqualTo(first.id)
+            assertThat(repository.claimPending(otherWorkerId, LEASE_DURATION)).withMessage()
+                .isNull()
+        }
+
+        suppose("first snapshot fails") {
+            repository.failSnapshot(first.id!!, otherWorkerId, SnapshotFailureCause.OTHER)
+        }
+
+        verify("second snapshot is claimed after first snapshot is no longer processed") {
+            assertThat(repository.claimPending(WORKER_ID, LEASE_DURATION)?.id).withMessage()
+                .isEqualTo(second.id)
+        }
+    }
+
+    @Test
+    fun mustNotAllowProcessingOfTwoSnapshotsWhichShareCheckpoint() {
+        val owner = WalletAddress("b")
+        val first = snapshotRecord(ChainId(1L), owner, SnapshotStatus.PROCESSING, null, createdAt.minusMinutes(1L))
+        val second = snapshotRecord(ChainId(1L), owner, SnapshotStatus.PENDING, null, createdAt)
+
+        suppose("processing and pending snapshot of the same asset at the same block are stored into database") {
+            dslContext.batchInsert(first, second).execute()
+        }
+
+        verify("second snapshot cannot be marked as processing") {
+            assertThrows<DuplicateKeyException>(message) {
+                dslContext.update(SnapshotTable.SNAPSHOT)
+                    .set(SnapshotTable.SNAPSHOT.STATUS, DbSnapshotStatus.PROCESSING)
+                    .where(SnapshotTable.SNAPSHOT.ID.eq(second.id))
+                    .execute()
+            }
+        }
+    }
+
+    @Test
+    fun mustExtendLeasesAndReclaimSnapshotsWithExpiredLeases() {
+        val snapshot = snapshotRecord(ChainId(1L), WalletAddress("b"), SnapshotStatus.PENDING, null)
+        val otherWorkerId = "other-worker"
+
+        suppose("pending snapshot is stored into database") {
+            dslContext.executeInsert(snapshot)
+        }
+
+        suppose("snapshot is claimed") {
+            repository.claimPending(WORKER_ID, LEASE_DURATION)
+        }
+
+        verify("snapshot is not claimed by another worker before its lease expires") {
+            assertThat(repository.claimPending(otherWorkerId, LEASE_DURATION)).withMessage()
+                .isNull()
+        }
+
+        verify("lease is extended only by the worker which holds it") {
+            assertThat(repository.extendLeases(setOf(snapshot.id!!), otherWorkerId, LEASE_DURATION)).withMessage()
+                .isEmpty()
+            assertThat(repository.extendLeases(setOf(snapshot.id!!), WORKER_ID, LEASE_DURATION)).withMessage()
+                .containsExactly(snapshot.id)
+        }
+
+        suppose("lease has expired") {
+            expireLease(snapshot.id!!)
+        }
+
+        verify("snapshot is reclaimed by another worker") {
+            assertThat(repository.claimPending(otherWorkerId, LEASE_DURATION)?.id).withMessage()
+                .isEqualTo(snapshot.id)
+            assertThat(repository.extendLeases(setOf(snapshot.id!!), WORKER_ID, LEASE_DURATION)).withMessage()
+                .isEmpty()
+        }
+
+        verify("worker which lost the lease cannot store snapshot result") {
+            assertThat(repository.failSnapshot(snapshot.id!!, WORKER_ID, SnapshotFailureCause.OTHER)).withMessage()
+                .isNull()
+
+            val record = dslContext.selectFrom(SnapshotTable.SNAPSHOT)
+                .where(SnapshotTable.SNAPSHOT.ID.eq(snapshot.id))
+                .fetchOne()
+
+            assertThat(record?.status).withMessage()
+                .isEqualTo(SnapshotStatus.PROCESSING.toDbEnum)
+            assertThat(record?.workerId).withMessage()
+                .isEqualTo(otherWorkerId)
+        }
+
+        verify("lease is released when snapshot fails") {
+            repository.failSnapshot(snapshot.id!!, otherWorkerId, SnapshotFailureCause.OTHER)
+
+            val record = dslContext.selectFrom(SnapshotTable.SNAPSHOT)
+                .where(SnapshotTable.SNAPSHOT.ID.eq(snapshot.id))
+                .fetchOne()
+
+            assertThat(record?.workerId).withMessage()
+                .isNull()
+            assertThat(record?.leaseExpiresAt).withMessage()
+                .isNull()
+        }
     }
 
     @Test
     fun mustReturnNullWhenThereAreNoPendingSnapshots() {
-        verify("null is returned when fetching single pending snapshot") {
-            val result = repository.getPending()
+        verify("null is returned when claiming single pending snapshot") {
+            val result = repository.claimPending(WORKER_ID, LEASE_DURATION)
             assertThat(result).withMessage()
                 .isNull()
         }
@@ -445,6 +763,10 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
             given(uuidProvider.getUuid()).willReturn(snapshotUuid)
         }
 
+        suppose("UTC date-time provider will return specified date-time") {
+            given(utcDateTimeProvider.getUtcDateTime()).willReturn(createdAt)
+        }
+
         val name = "snapshot-name"
         val chainId = ChainId(1L)
         val assetAddress = ContractAddress("a")
@@ -470,9 +792,15 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                 .isEqualTo(snapshotUuid)
         }
 
+        suppose("snapshot is claimed") {
+            repository.claimPending(WORKER_ID, LEASE_DURATION)
+        }
+
         val treeUuid = UUID.randomUUID()
         val treeRootHash = Hash("tree-root-hash")
         val hashFn = HashFunction.IDENTITY
+        val treeDepth = 3
+        val treeLeafCount = 5
 
         suppose("some Merkle tree root exists in database") {
             dslContext.executeInsert(
@@ -482,7 +810,9 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                     assetAddress = assetAddress.rawValue,
                     blockNumber = payoutBlock.value,
                     hash = treeRootHash.value,
-                    hashFn = hashFn.toDbEnum
+                    hashFn = hashFn.toDbEnum,
+                    depth = treeDepth,
+                    leafCount = treeLeafCount
                 )
             )
         }
@@ -499,13 +829,17 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
             ownerAddress = ownerAddress,
             data = SuccessfulSnapshotData(
                 merkleTreeRootId = treeUuid,
+                merkleRootHash = treeRootHash,
+                merkleTreeDepth = treeDepth,
+                merkleTreeLeafCount = treeLeafCount,
+                hashFn = hashFn,
                 merkleTreeIpfsHash = treeIpfsHash,
                 totalAssetAmount = totalAssetAmount
             )
         )
 
         verify("snapshot is completed") {
-            val result = repository.completeSnapshot(snapshotUuid, treeUuid, treeIpfsHash, totalAssetAmount)
+            val result = repository.completeSnapshot(snapshotUuid, WORKER_ID, treeUuid, treeIpfsHash, totalAssetAmount)
 
             assertThat(result).withMessage()
                 .isEqualTo(expectedResult)
@@ -527,6 +861,10 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
             given(uuidProvider.getUuid()).willReturn(snapshotUuid)
         }
 
+        suppose("UTC date-time provider will return specified date-time") {
+            given(utcDateTimeProvider.getUtcDateTime()).willReturn(createdAt)
+        }
+
         val name = "snapshot-name"
         val chainId = ChainId(1L)
         val assetAddress = ContractAddress("a")
@@ -552,6 +890,10 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
                 .isEqualTo(snapshotUuid)
         }
 
+        suppose("snapshot is claimed") {
+            repository.claimPending(WORKER_ID, LEASE_DURATION)
+        }
+
         val expectedResult = Snapshot(
             id = snapshotUuid,
             name = name,
@@ -564,7 +906,7 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         )
 
         verify("snapshot failed") {
-            val result = repository.failSnapshot(snapshotUuid, SnapshotFailureCause.OTHER)
+            val result = repository.failSnapshot(snapshotUuid, WORKER_ID, SnapshotFailureCause.OTHER)
 
             assertThat(result).withMessage()
                 .isEqualTo(expectedResult)
@@ -578,26 +920,40 @@ class JooqSnapshotRepositoryIntegTest : TestBase() {
         }
     }
 
+    // lease expiry is computed using the database clock, so leases are expired directly in the database
+    private fun expireLease(snapshotId: UUID) {
+        dslContext.update(SnapshotTable.SNAPSHOT)
+            .set(SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT, OffsetDateTime.now().minus(LEASE_DURATION))
+            .where(SnapshotTable.SNAPSHOT.ID.eq(snapshotId))
+            .execute()
+    }
+
+    private fun getAllSnapshots(chainId: ChainId?, owner: WalletAddress?, statuses: Set<SnapshotStatus>) =
+        repository.getAllByChainIdOwnerAndStatuses(chainId, owner, statuses, null, null).snapshots
+
     private fun snapshotRecord(
         chainId: ChainId,
         owner: WalletAddress,
         status: SnapshotStatus,
-        failureCause: SnapshotFailureCause?
+        failureCause: SnapshotFailureCause?,
+        createdAt: OffsetDateTime = this.createdAt,
+        id: UUID = UUID.randomUUID(),
+        blockNumber: BlockNumber = BlockNumber(BigInteger.TEN)
     ): SnapshotRecord {
-        val id = UUID.randomUUID()
         return SnapshotRecord(
             id = id,
             name = "snapshot-$id",
             chainId = chainId.value,
             assetAddress = ContractAddress("a").rawValue,
-            blockNumber = BlockNumber(BigInteger.TEN).value,
+            blockNumber = blockNumber.value,
             ignoredHolderAddresses = emptyArray(),
             ownerAddress = owner.rawValue,
             status = status.toDbEnum,
             failureCause = failureCause?.toDbEnum,
             resultTree = null,
             treeIpfsHash = null,
-            totalAssetAmount = null
+            totalAssetAmount = null,
+            createdAt = createdAt
         )
     }
 
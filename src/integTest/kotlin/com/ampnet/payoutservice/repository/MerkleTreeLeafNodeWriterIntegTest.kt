@@ -0,0 +1,112 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
+import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeLeafNodeRecord
+import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeRootRecord
+import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.WalletAddress
+import org.assertj.core.api.Assertions.assertThat
+import org.jooq.DSLContext
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.jooq.JooqTest
+import java.math.BigInteger
+import java.util.UUID
+import com.ampnet.payoutservice.generated.jooq.enums.HashFunction as DbHashFunction
+
+@JooqTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MerkleTreeLeafNodeWriterIntegTest : TestBase() {
+
+    @Suppress("unused")
+    private val postgresContainer = PostgresTestContainer()
+
+    @Autowired
+    private lateinit var dslContext: DSLContext
+
+    @Test
+    fun mustCorrectlyCopyLeafNodesIntoDatabase() {
+        val rootId = suppose("some Merkle tree root is stored into database") {
+            storeRoot()
+        }
+
+        val records = leafRecords(rootId, 2_500)
+
+        suppose("leaf nodes are copied into database") {
+            MerkleTreeLeafNodeWriter(useCopy = true).write(dslContext, records.asSequence())
+        }
+
+        verify("all leaf nodes are correctly stored") {
+            assertThat(fetchLeafRecords(rootId)).withMessage()
+                .isEqualTo(records.associateBy { it.leafPosition })
+        }
+    }
+
+    @Test
+    fun mustCorrectlyInsertLeafNodesIntoDatabaseInChunks() {
+        val rootId = suppose("some Merkle tree root is stored into database") {
+            storeRoot()
+        }
+
+        val records = leafRecords(rootId, 2_500)
+
+        suppose("leaf nodes are inserted into database in chunks") {
+            MerkleTreeLeafNodeWriter(useCopy = false).write(dslContext, records.asSequence())
+        }
+
+        verify("all leaf nodes are correctly stored") {
+            assertThat(fetchLeafRecords(rootId)).withMessage()
+                .isEqualTo(records.associateBy { it.leafPosition })
+        }
+    }
+
+    private fun storeRoot(): UUID {
+        val rootId = UUID.randomUUID()
+
+        dslContext.executeInsert(
+            MerkleTreeRootRecord(
+                id = rootId,
+                chainId = 1L,
+                assetAddress = "a",
+                blockNumber = BigInteger.ONE,
+                hash = "root-hash-$rootId",
+                hashFn = DbHashFunction.KECCAK_256,
+                depth = 1,
+                leafCount = 1
+            )
+        )
+
+        return rootId
+    }
+
+    private fun leafRecords(rootId: UUID, count: Int): List<MerkleTreeLeafNodeRecord> {
+        val balances = listOf(
+            BigInteger.ZERO,
+            BigInteger.ONE,
+            BigInteger.valueOf(10_000L),
+            BigInteger.valueOf(100_000_000L),
+            BigInteger("123456789012345678901234567890"),
+            BigInteger.TWO.pow(256) - BigInteger.valueOf(count.toLong())
+        )
+
+        return List(count) {
+            MerkleTreeLeafNodeRecord(
+                merkleRoot = rootId,
+                pathDirections = if (it % 3 == 0) -it.toLong() else null,
+                leafPosition = it,
+                address = WalletAddress(it.toString(16)).bytes,
+                balance = Balance(balances[it % balances.size] + BigInteger.valueOf(it / balances.size.toLong())).bytes,
+                pathSiblings = if (it % 3 == 0) ByteArray(64) { byte -> (byte + it).toByte() } else null
+            )
+        }
+    }
+
+    private fun fetchLeafRecords(rootId: UUID): Map<Int?, MerkleTreeLeafNodeRecord> =
+        dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+            .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(rootId))
+            .fetch()
+            .associateBy { it.leafPosition }
+}
@@ -0,0 +1,64 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.testcontainers.PostgresTestContainer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties
+import org.springframework.boot.test.autoconfigure.jooq.JooqTest
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import javax.sql.DataSource
+
+@JooqTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PostgresSnapshotQueueListenerIntegTest : TestBase() {
+
+    companion object {
+        private const val MAX_NOTIFY_ATTEMPTS = 50
+        private const val NOTIFICATION_WAIT_MILLIS = 100L
+    }
+
+    @Suppress("unused")
+    private val postgresContainer = PostgresTestContainer()
+
+    @Autowired
+    private lateinit var dataSource: DataSource
+
+    @Autowired
+    private lateinit var dataSourceProperties: DataSourceProperties
+
+    @Test
+    fun mustReceiveNotificationAboutCreatedSnapshot() {
+        val listener = PostgresSnapshotQueueListener(dataSourceProperties)
+        val notificationReceived = CountDownLatch(1)
+
+        suppose("listener is started") {
+            listener.start { notificationReceived.countDown() }
+        }
+
+        // notifications are sent until listener has subscribed to the channel and received one of them
+        suppose("notification is sent on snapshot queue channel") {
+            var attempts = 0
+
+            do {
+                dataSource.connection.use { connection ->
+                    connection.createStatement().use { it.execute("NOTIFY ${PostgresSnapshotQueueListener.CHANNEL}") }
+                }
+                attempts += 1
+            } while (
+                !notificationReceived.await(NOTIFICATION_WAIT_MILLIS, TimeUnit.MILLISECONDS) &&
+                attempts < MAX_NOTIFY_ATTEMPTS
+            )
+        }
+
+        verify("notification is received") {
+            assertThat(notificationReceived.count).withMessage()
+                .isZero()
+        }
+
+        listener.stop()
+    }
+}
@@ -0,0 +1,59 @@
+package com.ampnet.payoutservice.util
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = ["-Xmx4g"])
+open class HashSortBenchmark {
+
+    companion object {
+        // ordering which was used by Hash before binary comparison was introduced
+        private val BIG_INTEGER_ORDER = Comparator<Hash> { first, second ->
+            val firstValue = BigInteger(first.value.replaceFirst("0x", ""), 16)
+            val secondValue = BigInteger(second.value.replaceFirst("0x", ""), 16)
+            firstValue.compareTo(secondValue)
+        }
+    }
+
+    @Param("1000000")
+    var size: Int = 0
+
+    private lateinit var hashes: List<Hash>
+    private lateinit var binaryHashes: Array<BinaryHash>
+
+    @Setup
+    fun setUp() {
+        val random = Random(0)
+        val bytes = List(size) { random.nextBytes(BinaryHash.SIZE_BYTES) }
+
+        hashes = bytes.map { Hash(Numeric.toHexString(it)) }
+        binaryHashes = bytes.map { BinaryHash.fromBytes(it) }.toTypedArray()
+    }
+
+    @Benchmark
+    fun sortHashesWithBigIntegerComparison(): List<Hash> = hashes.sortedWith(BIG_INTEGER_ORDER)
+
+    @Benchmark
+    fun sortHashes(): List<Hash> = hashes.sorted()
+
+    @Benchmark
+    fun sortBinaryHashes(): Array<BinaryHash> = binaryHashes.copyOf().apply { sort() }
+}
@@ -0,0 +1,52 @@
+package com.ampnet.payoutservice.util
+
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+
+/**
+ * Measures Merkle tree construction, including leaf indexing and leaf lookup maps. Run with the `gc` profiler to also
+ * measure allocation per tree construction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = ["-Xmx8g"])
+open class MerkleTreeBuildBenchmark {
+
+    @Param("10000", "100000", "1000000")
+    var size: Int = 0
+
+    private lateinit var balances: List<AccountBalance>
+
+    @Setup
+    fun setUp() {
+        val random = Random(0)
+        balances = List(size) {
+            AccountBalance(
+                address = WalletAddress(Numeric.toHexString(random.nextBytes(20))),
+                balance = Balance(BigInteger.valueOf(random.nextLong(1L, Long.MAX_VALUE)))
+            )
+        }
+    }
+
+    @Benchmark
+    fun buildNodeMerkleTree(): Int = NodeMerkleTree(balances, HashFunction.KECCAK_256).leafNodesByHash.size
+
+    @Benchmark
+    fun buildFlatMerkleTree(): Int = FlatMerkleTree(balances, HashFunction.KECCAK_256).leafNodesByHash.size
+}
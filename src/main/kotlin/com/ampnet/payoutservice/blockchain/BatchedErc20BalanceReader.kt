@@ -0,0 +1,153 @@
+package com.ampnet.payoutservice.blockchain
+
+import com.ampnet.payoutservice.exception.ErrorCode
+import com.ampnet.payoutservice.exception.InternalException
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import mu.KLogging
+import org.web3j.abi.FunctionEncoder
+import org.web3j.abi.FunctionReturnDecoder
+import org.web3j.abi.TypeReference
+import org.web3j.abi.Utils
+import org.web3j.abi.datatypes.Address
+import org.web3j.abi.datatypes.Function
+import org.web3j.abi.datatypes.generated.Uint256
+import org.web3j.protocol.Web3j
+import org.web3j.protocol.core.DefaultBlockParameter
+import org.web3j.protocol.core.methods.request.Transaction
+import org.web3j.protocol.core.methods.response.EthCall
+import org.web3j.protocol.exceptions.ClientConnectionException
+import java.io.IOException
+import java.math.BigInteger
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+
+/**
+ * Reads ERC20 balances using `eth_call` requests which are grouped into JSON-RPC batch requests of at most [batchSize]
+ * calls. Up to [parallelism] batches are sent concurrently on [executor]. Calls which fail within a batch are retried
+ * in a new batch, together with other failed calls of the same batch, at most [maxRetries] times.
+ */
+class BatchedErc20BalanceReader(
+    private val executor: ExecutorService,
+    private val batchSize: Int,
+    private val parallelism: Int,
+    private val maxRetries: Int
+) {
+
+    companion object : KLogging() {
+        private val BALANCE_OUTPUT: List<TypeReference<*>> = listOf(object : TypeReference<Uint256>() {})
+        private val DECODED_BALANCE_OUTPUT = Utils.convert(BALANCE_OUTPUT)
+    }
+
+    init {
+        require(batchSize > 0) { "Balance batch size must be positive" }
+        require(parallelism > 0) { "Balance batch parallelism must be positive" }
+        require(maxRetries >= 0) { "Balance batch max retries must not be negative" }
+    }
+
+    /**
+     * Reads balances of all [accounts] at [block]. Balances are passed to [onRead] each time a group of concurrently
+     * sent batches has been read.
+     */
+    fun readBalances(
+        web3j: Web3j,
+        contractAddress: ContractAddress,
+        accounts: Collection<WalletAddress>,
+        block: BlockNumber,
+        onRead: (List<AccountBalance>) -> Unit
+    ) {
+        accounts.chunked(batchSize * parallelism).forEach { accountGroup ->
+            val futures = accountGroup.chunked(batchSize).map { batch ->
+                executor.submit(Callable { readBatch(web3j, contractAddress, batch, block) })
+            }
+
+            val balances = try {
+                futures.flatMap { it.get() }
+            } catch (ex: ExecutionException) {
+                throw ex.cause ?: ex
+            } finally {
+                futures.forEach { it.cancel(true) }
+            }
+
+            onRead(balances)
+        }
+    }
+
+    private fun readBatch(
+        web3j: Web3j,
+        contractAddress: ContractAddress,
+        accounts: List<WalletAddress>,
+        block: BlockNumber
+    ): List<AccountBalance> {
+        val balances = ArrayList<AccountBalance>(accounts.size)
+        var remainingAccounts = accounts
+        var retries = 0
+
+        while (remainingAccounts.isNotEmpty()) {
+            val readBalances = sendBatch(web3j, contractAddress, remainingAccounts, block)
+            balances.addAll(readBalances)
+            remainingAccounts = remainingAccounts - readBalances.mapTo(HashSet()) { it.address }
+
+            if (remainingAccounts.isNotEmpty()) {
+                if (retries++ >= maxRetries) {
+                    throw InternalException(
+                        ErrorCode.BLOCKCHAIN_CONTRACT_READ_ERROR,
+                        "Unable to fetch balance for address: ${remainingAccounts.first()}"
+                    )
+                }
+
+                logger.warn { "Failed to read ${remainingAccounts.size} balances in batch, retrying..." }
+            }
+        }
+
+        return balances
+    }
+
+    // returns only successfully read balances
+    private fun sendBatch(
+        web3j: Web3j,
+        contractAddress: ContractAddress,
+        accounts: List<WalletAddress>,
+        block: BlockNumber
+    ): List<AccountBalance> {
+        val batch = web3j.newBatch()
+        val accountsByRequestId = accounts.associateBy { account ->
+            val function = Function("balanceOf", listOf(Address(account.rawValue)), BALANCE_OUTPUT)
+            val transaction = Transaction.createEthCallTransaction(
+                contractAddress.rawValue,
+                contractAddress.rawValue,
+                FunctionEncoder.encode(function)
+            )
+            val request = web3j.ethCall(transaction, DefaultBlockParameter.valueOf(block.value))
+
+            batch.add(request)
+            request.id
+        }
+
+        val responses = try {
+            batch.send().responses
+        } catch (ex: IOException) {
+            logger.warn("Failed RPC batch call", ex)
+            emptyList()
+        } catch (ex: ClientConnectionException) {
+            logger.warn("Failed RPC batch call", ex)
+            emptyList()
+        }
+
+        return responses.mapNotNull { response ->
+            val account = accountsByRequestId[response.id]
+            val balance = (response as? EthCall)?.takeUnless { it.hasError() }?.decodeBalance()
+
+            if (account != null && balance != null) AccountBalance(account, Balance(balance)) else null
+        }
+    }
+
+    private fun EthCall.decodeBalance(): BigInteger? =
+        value?.let { FunctionReturnDecoder.decode(it, DECODED_BALANCE_OUTPUT) }
+            ?.firstOrNull()
+            ?.let { it.value as BigInteger }
+}
@@ -2,6 +2,7 @@ package com.ampnet.payoutservice.blockchain
 
 import com.ampnet.payoutservice.model.params.GetPayoutsForAdminParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForInvestorParams
+import com.ampnet.payoutservice.model.result.ContractDeploymentBlock
 import com.ampnet.payoutservice.model.result.Payout
 import com.ampnet.payoutservice.model.result.PayoutForInvestor
 import com.ampnet.payoutservice.util.AccountBalance
@@ -11,12 +12,15 @@ import com.ampnet.payoutservice.util.ContractAddress
 import com.ampnet.payoutservice.util.WalletAddress
 
 interface BlockchainService {
+    @Suppress("LongParameterList")
     fun fetchErc20AccountBalances(
         chainId: ChainId,
         erc20ContractAddress: ContractAddress,
         ignoredErc20Addresses: Set<WalletAddress>,
         startBlock: BlockNumber?,
-        endBlock: BlockNumber
+        endBlock: BlockNumber,
+        checkpoint: Erc20BalancesCheckpoint,
+        holderIndex: Erc20HolderIndex? = null
     ): List<AccountBalance>
 
     fun getAssetOwner(chainId: ChainId, assetAddress: ContractAddress): WalletAddress
@@ -25,5 +29,5 @@ interface BlockchainService {
 
     fun getPayoutsForInvestor(params: GetPayoutsForInvestorParams): List<PayoutForInvestor>
 
-    fun findContractDeploymentBlockNumber(chainId: ChainId, contractAddress: ContractAddress): BlockNumber
+    fun findContractDeploymentBlockNumber(chainId: ChainId, contractAddress: ContractAddress): ContractDeploymentBlock
 }
@@ -0,0 +1,9 @@
+package com.ampnet.payoutservice.blockchain
+
+enum class Erc20BalanceSource {
+    // balances are read by calling balanceOf for each holder at the snapshot block, requires an archive node
+    BALANCE_OF,
+
+    // balances are summed up from Transfer events which are scanned to find holders, no additional RPC calls are made
+    TRANSFER_EVENTS
+}
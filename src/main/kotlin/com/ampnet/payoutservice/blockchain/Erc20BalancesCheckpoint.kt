@@ -0,0 +1,25 @@
+package com.ampnet.payoutservice.blockchain
+
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.WalletAddress
+
+/**
+ * Progress of fetching ERC20 account balances. Progress is stored after each scanned block range and after each chunk
+ * of fetched balances, so that fetching can be resumed from the last stored progress if it is interrupted. Balances
+ * which are derived from the scanned block range are stored together with it, so that no range is counted twice.
+ */
+interface Erc20BalancesCheckpoint {
+    val scannedToBlock: BlockNumber?
+    val holders: Set<WalletAddress>
+    val balances: Map<WalletAddress, Balance>
+
+    fun storeScannedBlocks(
+        toBlock: BlockNumber,
+        newHolders: Set<WalletAddress>,
+        balances: List<AccountBalance> = emptyList()
+    )
+
+    fun storeBalances(balances: List<AccountBalance>)
+}
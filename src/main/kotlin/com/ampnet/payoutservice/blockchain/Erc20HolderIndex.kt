@@ -0,0 +1,17 @@
+package com.ampnet.payoutservice.blockchain
+
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.WalletAddress
+
+/**
+ * Holders of an ERC20 asset which were found in block range `[fromBlock, indexedToBlock]`. Index is extended only up to
+ * blocks with enough confirmations, so it can be reused by all later snapshots of the same asset. Holder set of an
+ * index which extends beyond the snapshot block is a superset of holders at the snapshot block.
+ */
+interface Erc20HolderIndex {
+    val fromBlock: BlockNumber?
+    val indexedToBlock: BlockNumber?
+    val holders: Set<WalletAddress>
+
+    fun storeIndexedBlocks(fromBlock: BlockNumber, toBlock: BlockNumber, newHolders: Set<WalletAddress>)
+}
@@ -0,0 +1,39 @@
+package com.ampnet.payoutservice.blockchain
+
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.WalletAddress
+
+open class InMemoryErc20BalancesCheckpoint(
+    scannedToBlock: BlockNumber? = null,
+    holders: Set<WalletAddress> = emptySet(),
+    balances: Map<WalletAddress, Balance> = emptyMap()
+) : Erc20BalancesCheckpoint {
+
+    final override var scannedToBlock: BlockNumber? = scannedToBlock
+        private set
+
+    private val holderSet = HashSet(holders)
+    private val balancesByHolder = HashMap(balances)
+
+    override val holders: Set<WalletAddress>
+        get() = holderSet
+
+    override val balances: Map<WalletAddress, Balance>
+        get() = balancesByHolder
+
+    override fun storeScannedBlocks(
+        toBlock: BlockNumber,
+        newHolders: Set<WalletAddress>,
+        balances: List<AccountBalance>
+    ) {
+        holderSet.addAll(newHolders)
+        balances.forEach { balancesByHolder[it.address] = it.balance }
+        scannedToBlock = toBlock
+    }
+
+    override fun storeBalances(balances: List<AccountBalance>) {
+        balances.forEach { balancesByHolder[it.address] = it.balance }
+    }
+}
@@ -9,33 +9,65 @@ import com.ampnet.payoutservice.model.params.GetIssuerPayoutsParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForAdminParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForInvestorParams
 import com.ampnet.payoutservice.model.params.LoadPayoutManagerAndServiceParams
+import com.ampnet.payoutservice.model.result.ContractDeploymentBlock
 import com.ampnet.payoutservice.model.result.Payout
 import com.ampnet.payoutservice.model.result.PayoutForInvestor
 import com.ampnet.payoutservice.util.AccountBalance
 import com.ampnet.payoutservice.util.Balance
-import com.ampnet.payoutservice.util.BinarySearch
 import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.BlockRangeScanner
+import com.ampnet.payoutservice.util.BlockRangeScanner.BlockRange
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.KArySearch
 import com.ampnet.payoutservice.util.WalletAddress
+import io.micrometer.core.instrument.util.NamedThreadFactory
 import mu.KLogging
+import org.springframework.beans.factory.DisposableBean
 import org.springframework.stereotype.Service
+import org.web3j.abi.EventEncoder
+import org.web3j.abi.datatypes.Address
+import org.web3j.protocol.Web3j
 import org.web3j.protocol.core.DefaultBlockParameter
-import org.web3j.protocol.core.DefaultBlockParameterName
 import org.web3j.protocol.core.RemoteFunctionCall
 import org.web3j.protocol.core.Request
 import org.web3j.protocol.core.Response
+import org.web3j.protocol.core.methods.request.EthFilter
+import org.web3j.protocol.core.methods.response.Log
+import org.web3j.tx.Contract
 import org.web3j.tx.ReadonlyTransactionManager
 import org.web3j.tx.gas.DefaultGasProvider
+import java.io.IOException
 import java.math.BigInteger
+import java.util.concurrent.Executors
 
 @Service
 @Suppress("TooManyFunctions")
-class Web3jBlockchainService(applicationProperties: ApplicationProperties) : BlockchainService {
+class Web3jBlockchainService(applicationProperties: ApplicationProperties) : BlockchainService, DisposableBean {
 
-    companion object : KLogging()
+    companion object : KLogging() {
+        private val ZERO_ADDRESS = WalletAddress("0x0000000000000000000000000000000000000000")
+        private val ZERO_BALANCE = Balance(BigInteger.ZERO)
+    }
 
     private val chainHandler = ChainPropertiesHandler(applicationProperties)
+    private val erc20BalancesProperties = applicationProperties.erc20Balances
+    private val rpcExecutor = Executors.newCachedThreadPool(NamedThreadFactory("BlockchainRpc"))
+    private val balanceReader = BatchedErc20BalanceReader(
+        executor = rpcExecutor,
+        batchSize = erc20BalancesProperties.balanceBatchSize,
+        parallelism = erc20BalancesProperties.balanceBatchParallelism,
+        maxRetries = erc20BalancesProperties.balanceBatchMaxRetries
+    )
+    private val deploymentBlockSearch = KArySearch(
+        executor = rpcExecutor,
+        arity = erc20BalancesProperties.deploymentBlockSearchArity.coerceAtLeast(2)
+    )
+
+    override fun destroy() {
+        logger.info { "Shutting down blockchain RPC executor service..." }
+        rpcExecutor.shutdown()
+    }
 
     @Throws(InternalException::class)
     override fun fetchErc20AccountBalances(
@@ -43,40 +75,59 @@ class Web3jBlockchainService(applicationProperties: ApplicationProperties) : Blo
         erc20ContractAddress: ContractAddress,
         ignoredErc20Addresses: Set<WalletAddress>,
         startBlock: BlockNumber?,
-        endBlock: BlockNumber
+        endBlock: BlockNumber,
+        checkpoint: Erc20BalancesCheckpoint,
+        holderIndex: Erc20HolderIndex?
     ): List<AccountBalance> {
         logger.info {
             "Fetching balances for ERC20 contract: $erc20ContractAddress on chain: $chainId," +
                 " ignored addresses: $ignoredErc20Addresses"
         }
-        val blockchainProperties = chainHandler.getBlockchainProperties(chainId)
-        val contract = IERC20.load(
-            erc20ContractAddress.rawValue,
-            blockchainProperties.web3j,
-            ReadonlyTransactionManager(blockchainProperties.web3j, erc20ContractAddress.rawValue),
-            DefaultGasProvider()
-        )
 
-        val startBlockParameter =
-            startBlock?.value?.let(DefaultBlockParameter::valueOf) ?: DefaultBlockParameterName.EARLIEST
-        val endBlockParameter = DefaultBlockParameter.valueOf(endBlock.value)
+        val replayTransfers = erc20BalancesProperties.balanceSource == Erc20BalanceSource.TRANSFER_EVENTS
 
-        logger.debug { "Block range from: ${startBlockParameter.value} to: ${endBlockParameter.value}" }
+        // holder index does not contain balances, so it cannot be used when balances are derived from transfer events
+        if (holderIndex != null && !replayTransfers && checkpoint.scannedToBlock == null) {
+            seedCheckpointFromHolderIndex(chainId, erc20ContractAddress, startBlock, endBlock, checkpoint, holderIndex)
+        }
 
-        // TODO split this into 2k blocks for larger assets - TBD on sprint planning
-        val accounts = contract.findAccounts(startBlockParameter, endBlockParameter) - ignoredErc20Addresses
+        scanAccounts(chainId, erc20ContractAddress, startBlock, endBlock, checkpoint, replayTransfers)
 
-        logger.debug { "Found ${accounts.size} holder addresses for ERC20 contract: $erc20ContractAddress" }
+        val web3j = chainHandler.getBlockchainProperties(chainId).web3j
+        val accounts = checkpoint.holders - ignoredErc20Addresses
 
-        contract.setDefaultBlockParameter(endBlockParameter)
+        if (replayTransfers) {
+            logger.debug {
+                "Found ${accounts.size} holder addresses for ERC20 contract: $erc20ContractAddress," +
+                    " balances derived from transfer events"
+            }
 
-        return accounts.map { account ->
-            val balance =
-                contract.balanceOf(account.rawValue).sendSafely()?.let { Balance(it) } ?: throw InternalException(
-                    ErrorCode.BLOCKCHAIN_CONTRACT_READ_ERROR, "Unable to fetch balance for address: $account"
-                )
-            AccountBalance(account, balance)
-        }.filter { it.balance.rawValue > BigInteger.ZERO }
+            if (!transferBalancesMatchSample(web3j, erc20ContractAddress, accounts, endBlock, checkpoint)) {
+                logger.warn {
+                    "Balances derived from transfer events do not match balanceOf for ERC20 contract:" +
+                        " $erc20ContractAddress, fetching balances of all ${accounts.size} holders"
+                }
+                balanceReader.readBalances(web3j, erc20ContractAddress, accounts, endBlock, checkpoint::storeBalances)
+            }
+        } else {
+            val missingBalanceAccounts = accounts - checkpoint.balances.keys
+
+            logger.debug {
+                "Found ${accounts.size} holder addresses for ERC20 contract: $erc20ContractAddress," +
+                    " balances already fetched for ${accounts.size - missingBalanceAccounts.size} addresses"
+            }
+
+            balanceReader.readBalances(
+                web3j = web3j,
+                contractAddress = erc20ContractAddress,
+                accounts = missingBalanceAccounts,
+                block = endBlock,
+                onRead = checkpoint::storeBalances
+            )
+        }
+
+        return accounts.map { AccountBalance(it, checkpoint.balances[it] ?: ZERO_BALANCE) }
+            .filter { it.balance.rawValue > BigInteger.ZERO }
     }
 
     @Throws(InternalException::class)
@@ -140,52 +191,209 @@ class Web3jBlockchainService(applicationProperties: ApplicationProperties) : Blo
     }
 
     @Throws(InternalException::class)
-    override fun findContractDeploymentBlockNumber(chainId: ChainId, contractAddress: ContractAddress): BlockNumber {
+    override fun findContractDeploymentBlockNumber(
+        chainId: ChainId,
+        contractAddress: ContractAddress
+    ): ContractDeploymentBlock {
         val blockchainProperties = chainHandler.getBlockchainProperties(chainId)
+        val lowerBound = chainHandler.getChainProperties(chainId)?.startBlockNumber ?: BigInteger.ZERO
+        val upperBound = blockchainProperties.web3j.ethBlockNumber()
+            .trySend("Failed RPC call: ethBlockNumber()").blockNumber
+        val getTransactionCount = { block: BigInteger ->
+            blockchainProperties.web3j.ethGetTransactionCount(
+                contractAddress.rawValue,
+                DefaultBlockParameter.valueOf(block)
+            ).trySend("Failed RPC call: ethGetTransactionCount($contractAddress, $block)").transactionCount
+        }
 
-        return BinarySearch(
-            lowerBound = BigInteger.ZERO,
-            upperBound = blockchainProperties.web3j.ethBlockNumber()
-                .trySend("Failed RPC call: ethBlockNumber()").blockNumber,
-            getValue = { currentBlock ->
-                blockchainProperties.web3j.ethGetTransactionCount(
-                    contractAddress.rawValue,
-                    DefaultBlockParameter.valueOf(currentBlock)
-                ).trySend("Failed RPC call: ethGetTransactionCount($contractAddress, $currentBlock)").transactionCount
-            },
+        // probes are sent concurrently, so a lookup needs only about log_arity(n) sequential RPC round trips
+        val blockNumber = deploymentBlockSearch(
+            lowerBound = lowerBound,
+            upperBound = upperBound,
+            getValue = getTransactionCount,
             updateLowerBound = { txCount -> txCount == BigInteger.ZERO },
             updateUpperBound = { txCount -> txCount != BigInteger.ZERO }
-        ).let { BlockNumber(it) }
+        )
+
+        // result is clamped to the lower bound when contract was deployed before it, and it is just below the upper
+        // bound when contract was not deployed at all
+        val isFound = getTransactionCount(blockNumber) == BigInteger.ZERO &&
+            getTransactionCount(upperBound) != BigInteger.ZERO
+
+        return ContractDeploymentBlock(BlockNumber(blockNumber), isFound)
     }
 
-    private fun IERC20.findAccounts(
-        startBlockParameter: DefaultBlockParameter,
-        endBlockParameter: DefaultBlockParameter
-    ): Set<WalletAddress> {
-        val accounts = HashSet<WalletAddress>()
-        val errors = mutableListOf<InternalException>()
-
-        transferEventFlowable(startBlockParameter, endBlockParameter)
-            .subscribe(
-                { event ->
-                    accounts.add(WalletAddress(event.from))
-                    accounts.add(WalletAddress(event.to))
-                },
-                { error ->
-                    logger.error(error) { "Error processing contract transfer event" }
-                    errors += InternalException(
-                        ErrorCode.BLOCKCHAIN_CONTRACT_EVENT_READ_ERROR,
-                        "Error processing contract transfer event",
-                        error
-                    )
-                }
-            ).dispose()
+    // index is extended up to the snapshot block or up to the last confirmed block, whichever is lower, and its holders
+    // are stored into the checkpoint so that only blocks after the indexed range need to be scanned for the snapshot
+    @Suppress("LongParameterList")
+    private fun seedCheckpointFromHolderIndex(
+        chainId: ChainId,
+        erc20ContractAddress: ContractAddress,
+        startBlock: BlockNumber?,
+        endBlock: BlockNumber,
+        checkpoint: Erc20BalancesCheckpoint,
+        holderIndex: Erc20HolderIndex
+    ) {
+        val fromBlock = startBlock?.value ?: BigInteger.ZERO
+        val indexFromBlock = holderIndex.fromBlock?.value ?: fromBlock
+
+        if (indexFromBlock > fromBlock) {
+            logger.debug { "Holder index starts at block: $indexFromBlock, after block: $fromBlock, not using it" }
+            return
+        }
+
+        val web3j = chainHandler.getBlockchainProperties(chainId).web3j
+        val confirmations = chainHandler.getChainProperties(chainId)?.holderIndexConfirmations
+            ?: erc20BalancesProperties.holderIndexConfirmations
+        val confirmedBlock = web3j.ethBlockNumber().trySend("Failed RPC call: ethBlockNumber()").blockNumber -
+            BigInteger.valueOf(confirmations.coerceAtLeast(0L))
+        val indexToBlock = endBlock.value.min(confirmedBlock)
+        val nextIndexBlock = holderIndex.indexedToBlock?.value?.inc() ?: indexFromBlock
+
+        if (nextIndexBlock <= indexToBlock) {
+            logger.debug { "Extending holder index from block: $nextIndexBlock to block: $indexToBlock" }
+
+            web3j.scanTransfers(chainId, erc20ContractAddress, nextIndexBlock, indexToBlock) { range, transfers ->
+                holderIndex.storeIndexedBlocks(
+                    fromBlock = BlockNumber(indexFromBlock),
+                    toBlock = BlockNumber(range.to),
+                    newHolders = transfers.keys - holderIndex.holders
+                )
+            }
+        }
 
-        if (errors.isNotEmpty()) {
-            throw errors[0]
+        holderIndex.indexedToBlock?.let { indexedToBlock ->
+            checkpoint.storeScannedBlocks(
+                toBlock = BlockNumber(indexedToBlock.value.min(endBlock.value)),
+                newHolders = holderIndex.holders - checkpoint.holders
+            )
+        }
+    }
+
+    // block ranges which were already scanned according to the checkpoint are skipped
+    @Suppress("LongParameterList")
+    private fun scanAccounts(
+        chainId: ChainId,
+        erc20ContractAddress: ContractAddress,
+        startBlock: BlockNumber?,
+        endBlock: BlockNumber,
+        checkpoint: Erc20BalancesCheckpoint,
+        replayTransfers: Boolean
+    ) {
+        val web3j = chainHandler.getBlockchainProperties(chainId).web3j
+        val fromBlock = checkpoint.scannedToBlock?.value?.inc() ?: startBlock?.value ?: BigInteger.ZERO
+
+        web3j.scanTransfers(chainId, erc20ContractAddress, fromBlock, endBlock.value) { range, transfers ->
+            val balances = if (replayTransfers) {
+                checkpoint.applyTransfers(erc20ContractAddress, transfers)
+            } else {
+                emptyList()
+            }
+
+            checkpoint.storeScannedBlocks(BlockNumber(range.to), transfers.keys - checkpoint.holders, balances)
+        }
+    }
+
+    private fun Web3j.scanTransfers(
+        chainId: ChainId,
+        erc20ContractAddress: ContractAddress,
+        fromBlock: BigInteger,
+        toBlock: BigInteger,
+        onScanned: (BlockRange, Map<WalletAddress, BigInteger>) -> Unit
+    ) {
+        val parallelism = chainHandler.getChainProperties(chainId)?.logScanParallelism
+            ?: erc20BalancesProperties.logScanParallelism
+        val initialRangeSize = BigInteger.valueOf(erc20BalancesProperties.logScanInitialBlockRange.coerceAtLeast(1L))
+
+        logger.debug { "Block range from: $fromBlock to: $toBlock, parallelism: $parallelism" }
+
+        BlockRangeScanner(
+            executor = rpcExecutor,
+            parallelism = parallelism.coerceAtLeast(1),
+            initialRangeSize = initialRangeSize,
+            maxRangeSize = BigInteger.valueOf(erc20BalancesProperties.logScanMaxBlockRange).max(initialRangeSize),
+            isRangeTooLarge = erc20BalancesProperties::isLogRangeTooLarge
+        ).scan(
+            fromBlock = fromBlock,
+            toBlock = toBlock,
+            fetch = { findTransfers(erc20ContractAddress, it) },
+            onScanned = onScanned
+        )
+    }
+
+    // returns net amount transferred to each address which took part in some transfer within the block range
+    private fun Web3j.findTransfers(
+        contractAddress: ContractAddress,
+        range: BlockRange
+    ): Map<WalletAddress, BigInteger> {
+        val filter = EthFilter(
+            DefaultBlockParameter.valueOf(range.from),
+            DefaultBlockParameter.valueOf(range.to),
+            contractAddress.rawValue
+        ).addSingleTopic(EventEncoder.encode(IERC20.TRANSFER_EVENT))
+        val errorMessage = "Error fetching contract transfer events from block: ${range.from} to block: ${range.to}"
+        val response = try {
+            ethGetLogs(filter).send()
+        } catch (ex: IOException) {
+            throw InternalException(ErrorCode.BLOCKCHAIN_CONTRACT_EVENT_READ_ERROR, errorMessage, ex)
         }
 
-        return accounts
+        response.error?.let {
+            logger.warn { "$errorMessage: ${it.message}" }
+            throw InternalException(
+                ErrorCode.BLOCKCHAIN_CONTRACT_EVENT_READ_ERROR,
+                errorMessage,
+                IOException(it.message)
+            )
+        }
+
+        val transfers = HashMap<WalletAddress, BigInteger>()
+
+        response.logs.forEach { result ->
+            val event = Contract.staticExtractEventParameters(IERC20.TRANSFER_EVENT, result.get() as Log)
+                ?: return@forEach
+            val (from, to) = event.indexedValues.map { WalletAddress(it as Address) }
+            val value = event.nonIndexedValues.firstOrNull()?.value as? BigInteger ?: BigInteger.ZERO
+
+            transfers.merge(from, value.negate(), BigInteger::add)
+            transfers.merge(to, value, BigInteger::add)
+        }
+
+        return transfers
+    }
+
+    // zero address is skipped since its transfers represent minting and burning of tokens
+    private fun Erc20BalancesCheckpoint.applyTransfers(
+        contractAddress: ContractAddress,
+        transfers: Map<WalletAddress, BigInteger>
+    ): List<AccountBalance> =
+        transfers.filter { it.key != ZERO_ADDRESS && it.value.signum() != 0 }.map { (address, amount) ->
+            val balance = (balances[address]?.rawValue ?: BigInteger.ZERO) + amount
+
+            if (balance.signum() < 0) {
+                throw InternalException(
+                    ErrorCode.BLOCKCHAIN_CONTRACT_EVENT_READ_ERROR,
+                    "Transfer events of ERC20 contract: $contractAddress result in negative balance for address:" +
+                        " $address, balances cannot be derived from transfer events"
+                )
+            }
+
+            AccountBalance(address, Balance(balance))
+        }
+
+    private fun transferBalancesMatchSample(
+        web3j: Web3j,
+        contractAddress: ContractAddress,
+        accounts: Set<WalletAddress>,
+        block: BlockNumber,
+        checkpoint: Erc20BalancesCheckpoint
+    ): Boolean {
+        val sample = accounts.shuffled().take(erc20BalancesProperties.transferBalanceCheckSampleSize)
+        val sampledBalances = ArrayList<AccountBalance>(sample.size)
+
+        balanceReader.readBalances(web3j, contractAddress, sample, block) { sampledBalances.addAll(it) }
+
+        return sampledBalances.all { it.balance == (checkpoint.balances[it.address] ?: ZERO_BALANCE) }
     }
 
     private fun loadPayoutManagerAndService(
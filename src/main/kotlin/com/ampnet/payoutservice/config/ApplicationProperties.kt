@@ -1,8 +1,10 @@
 package com.ampnet.payoutservice.config
 
+import com.ampnet.payoutservice.blockchain.Erc20BalanceSource
 import org.springframework.boot.context.properties.ConfigurationProperties
 import org.springframework.context.annotation.Configuration
 import java.math.BigInteger
+import java.util.UUID
 
 @Configuration
 @ConfigurationProperties(prefix = "payoutservice")
@@ -11,6 +13,9 @@ class ApplicationProperties {
     val ipfs = IpfsProperties()
     val payout = PayoutProperties()
     val createPayoutQueue = QueueProperties()
+    val merkleTree = MerkleTreeProperties()
+    val snapshotList = SnapshotListProperties()
+    val erc20Balances = Erc20BalancesProperties()
     val chainEthereum = ChainProperties()
     val chainGoerli = ChainProperties()
     val chainMatic = ChainProperties()
@@ -47,10 +52,67 @@ class PayoutProperties {
 class ChainProperties {
     var startBlockNumber: BigInteger? = null
     var rpcUrlOverride: String = ""
+    var logScanParallelism: Int? = null
+    var holderIndexConfirmations: Long? = null
 }
 
 @Suppress("MagicNumber")
 class QueueProperties {
-    var polling: Long = 5_000L
+    var polling: Long = 30_000L
     var initialDelay: Long = 15_000L
+    var workers: Int = 4
+    var maxWorkersPerChain: Int = 2
+    var chainMaxWorkers: Map<Long, Int> = emptyMap()
+    var workerId: String = UUID.randomUUID().toString()
+    var leaseDuration: Long = 300_000L
+    var heartbeatInterval: Long = 60_000L
+    var listenForNotifications: Boolean = true
+    var checkpointMaxAge: Long = 604_800_000L
+    var checkpointCleanupInterval: Long = 3_600_000L
+}
+
+@Suppress("MagicNumber")
+class MerkleTreeProperties {
+    var parallelism: Int = Runtime.getRuntime().availableProcessors()
+    var parallelThreshold: Int = 16_384
+    var cacheMaxLeaves: Long = 1_000_000L
+    var leafFetchSize: Int = 10_000
+    // shared-leaf trees store each leaf once per asset, but no per-leaf paths, since a stored path belongs to a single
+    // tree; path lookups on such trees restore the whole tree from its stored node hashes instead of reading one row
+    var sharedLeaves: Boolean = false
+    var nodeHashBackfill: Boolean = true
+    var nodeHashBackfillBatchSize: Int = 10
+}
+
+@Suppress("MagicNumber")
+class SnapshotListProperties {
+    var maxPageSize: Int = 1_000
+}
+
+@Suppress("MagicNumber")
+class Erc20BalancesProperties {
+    var logScanParallelism: Int = 4
+    var logScanInitialBlockRange: Long = 2_000L
+    var logScanMaxBlockRange: Long = 100_000L
+    // only messages which providers return for oversized log ranges, so that rate limit errors do not split ranges
+    var logRangeTooLargeErrors: List<String> = listOf(
+        "log response size exceeded",
+        "query returned more than",
+        "block range is too wide",
+        "block range limit exceeded",
+        "exceed maximum block range"
+    )
+    var balanceBatchSize: Int = 100
+    var balanceBatchParallelism: Int = 4
+    var balanceBatchMaxRetries: Int = 3
+    var balanceSource: Erc20BalanceSource = Erc20BalanceSource.BALANCE_OF
+    var transferBalanceCheckSampleSize: Int = 0
+    var holderIndex: Boolean = false
+    var holderIndexConfirmations: Long = 64L
+    var deploymentBlockSearchArity: Int = 8
+
+    fun isLogRangeTooLarge(ex: Throwable): Boolean {
+        val messages = generateSequence(ex) { it.cause }.mapNotNull { it.message?.lowercase() }.toList()
+        return logRangeTooLargeErrors.any { error -> messages.any { it.contains(error.lowercase()) } }
+    }
 }
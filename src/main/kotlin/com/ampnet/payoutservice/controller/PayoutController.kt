@@ -3,7 +3,7 @@ package com.ampnet.payoutservice.controller
 import com.ampnet.payoutservice.blockchain.BlockchainService
 import com.ampnet.payoutservice.controller.response.InvestorPayoutResponse
 import com.ampnet.payoutservice.controller.response.InvestorPayoutsResponse
-import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForInvestorParams
 import com.ampnet.payoutservice.repository.MerkleTreeRepository
 import com.ampnet.payoutservice.util.ChainId
@@ -49,18 +49,21 @@ class PayoutController(
                 investor = WalletAddress(investorAddress)
             )
         )
-        val merkleTreeParams = payouts.mapTo(HashSet()) {
-            FetchMerkleTreeParams(it.payout.assetSnapshotMerkleRoot, chainIdValue, it.payout.asset)
+        val pathParams = payouts.map { payoutData ->
+            FetchMerkleTreePathParams(
+                rootHash = payoutData.payout.assetSnapshotMerkleRoot,
+                chainId = chainIdValue,
+                assetAddress = payoutData.payout.asset,
+                walletAddress = payoutData.investor
+            )
         }
-        val merkleTrees = merkleTreeParams.mapNotNull { merkleTreeRepository.fetchTree(it)?.tree }
-            .associateBy { it.root.hash }
-
-        val investorPayouts = payouts.mapNotNull { payoutData ->
-            val tree = merkleTrees[payoutData.payout.assetSnapshotMerkleRoot]
-            val accountBalance = tree?.leafNodesByAddress?.get(payoutData.investor)?.value?.data
-            val path = accountBalance?.let { tree.pathTo(it) }
+        val paths = merkleTreeRepository.fetchPaths(pathParams.toSet())
+        val investorPayouts = payouts.zip(pathParams).mapNotNull { (payoutData, params) ->
+            val accountBalanceWithPath = paths[params]
 
-            if (path != null) { // return only claimable (and already claimed) payouts for this investor
+            // return only claimable (and already claimed) payouts for this investor
+            if (accountBalanceWithPath != null) {
+                val (accountBalance, path) = accountBalanceWithPath
                 val totalRewardAmount = payoutData.payout.totalRewardAmount.rawValue
                 val balance = accountBalance.balance.rawValue
                 val totalAssetAmount = payoutData.payout.totalAssetAmount.rawValue
@@ -44,7 +44,6 @@ class PayoutInfoController(private val merkleTreeRepository: MerkleTreeRepositor
         return ResponseEntity.ok(FetchMerkleTreeResponse(tree))
     }
 
-    @Suppress("ThrowsCount")
     @GetMapping("/payout_info/{chainId}/{assetAddress}/tree/{rootHash}/path/{walletAddress}")
     fun getPayoutPath(
         @PathVariable chainId: Long,
@@ -60,27 +59,10 @@ class PayoutInfoController(private val merkleTreeRepository: MerkleTreeRepositor
         )
         logger.debug { "Fetching payout path for: $params" }
 
-        val payoutExists = merkleTreeRepository.containsAddress(params)
-
-        if (payoutExists.not()) {
-            throw ResourceNotFoundException(
-                ErrorCode.PAYOUT_NOT_FOUND_FOR_ACCOUNT,
-                "Payout does not exist for specified parameters or account is not included in payout"
-            )
-        }
-
-        val tree = merkleTreeRepository.fetchTree(params.toFetchMerkleTreeParams)?.tree
+        val (accountBalance, path) = merkleTreeRepository.fetchPath(params)
             ?: throw ResourceNotFoundException(
                 ErrorCode.PAYOUT_NOT_FOUND_FOR_ACCOUNT,
-                "Payout does not exist for specified parameters"
-            )
-
-        val (path, accountBalance) = tree.leafNodesByAddress[params.walletAddress]?.let {
-            tree.pathTo(it.value.data)?.let { path -> Pair(path, it.value.data) }
-        }
-            ?: throw ResourceNotFoundException(
-                ErrorCode.PAYOUT_NOT_FOUND_FOR_ACCOUNT,
-                "Account is not included in payout"
+                "Payout does not exist for specified parameters or account is not included in payout"
             )
 
         return ResponseEntity.ok(
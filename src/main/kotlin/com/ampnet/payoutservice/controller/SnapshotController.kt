@@ -5,15 +5,19 @@ import com.ampnet.payoutservice.controller.response.CreateSnapshotResponse
 import com.ampnet.payoutservice.controller.response.SnapshotResponse
 import com.ampnet.payoutservice.controller.response.SnapshotsResponse
 import com.ampnet.payoutservice.exception.ErrorCode
+import com.ampnet.payoutservice.exception.InvalidRequestException
 import com.ampnet.payoutservice.exception.ResourceNotFoundException
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.service.SnapshotQueueService
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
+import com.fasterxml.jackson.databind.ObjectMapper
 import mu.KLogging
+import org.springframework.http.MediaType
 import org.springframework.http.ResponseEntity
 import org.springframework.security.core.annotation.AuthenticationPrincipal
 import org.springframework.web.bind.annotation.GetMapping
@@ -22,10 +26,14 @@ import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody
 import java.util.UUID
 
 @RestController
-class SnapshotController(private val snapshotQueueService: SnapshotQueueService) {
+class SnapshotController(
+    private val snapshotQueueService: SnapshotQueueService,
+    private val objectMapper: ObjectMapper
+) {
 
     companion object : KLogging()
 
@@ -48,20 +56,71 @@ class SnapshotController(private val snapshotQueueService: SnapshotQueueService)
     fun getSnapshots(
         @RequestParam(required = false) chainId: Long?,
         @RequestParam(required = false) status: List<SnapshotStatus>?,
+        @RequestParam(required = false) cursor: String?,
+        @RequestParam(required = false) limit: Int?,
         @AuthenticationPrincipal ownerAddress: String
     ): ResponseEntity<SnapshotsResponse> {
-        logger.debug { "Get snapshots for owner, chainId: $chainId, ownerAddress: $ownerAddress, statuses: $status" }
+        logger.debug {
+            "Get snapshots for owner, chainId: $chainId, ownerAddress: $ownerAddress, statuses: $status," +
+                " cursor: $cursor, limit: $limit"
+        }
         val chainIdValue = chainId?.let { ChainId(it) }
         val ownerAddressValue = WalletAddress(ownerAddress)
         val statuses = status ?: emptyList()
+        val cursorValue = cursor?.let {
+            SnapshotCursor.decode(it) ?: throw InvalidRequestException(
+                ErrorCode.INVALID_SNAPSHOT_CURSOR,
+                "Invalid snapshot list cursor: $it"
+            )
+        }
 
         val snapshots = snapshotQueueService.getAllSnapshotsByChainIdOwnerAndStatuses(
             chainId = chainIdValue,
             owner = ownerAddressValue,
-            statuses = statuses.toSet()
+            statuses = statuses.toSet(),
+            cursor = cursorValue,
+            limit = limit
+        )
+
+        return ResponseEntity.ok(
+            SnapshotsResponse(
+                snapshots = snapshots.snapshots.map { it.toSnapshotResponse() },
+                nextCursor = snapshots.nextCursor?.encode()
+            )
         )
+    }
+
+    // all matching snapshots are written into the response as they are read from the database
+    @GetMapping("/snapshots/stream")
+    fun streamSnapshots(
+        @RequestParam(required = false) chainId: Long?,
+        @RequestParam(required = false) status: List<SnapshotStatus>?,
+        @AuthenticationPrincipal ownerAddress: String
+    ): ResponseEntity<StreamingResponseBody> {
+        logger.debug { "Stream snapshots for owner, chainId: $chainId, ownerAddress: $ownerAddress, statuses: $status" }
+        val chainIdValue = chainId?.let { ChainId(it) }
+        val ownerAddressValue = WalletAddress(ownerAddress)
+        val statuses = status ?: emptyList()
+
+        val body = StreamingResponseBody { outputStream ->
+            objectMapper.createGenerator(outputStream).use { generator ->
+                generator.writeStartObject()
+                generator.writeArrayFieldStart("snapshots")
+
+                snapshotQueueService.streamAllSnapshotsByChainIdOwnerAndStatuses(
+                    chainId = chainIdValue,
+                    owner = ownerAddressValue,
+                    statuses = statuses.toSet()
+                ) { generator.writeObject(it.toSnapshotResponse()) }
+
+                generator.writeEndArray()
+                generator.writeEndObject()
+            }
+        }
 
-        return ResponseEntity.ok(SnapshotsResponse(snapshots.map { it.toSnapshotResponse() }))
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body)
     }
 
     @PostMapping("/snapshots")
@@ -1,3 +1,3 @@
 package com.ampnet.payoutservice.controller.response
 
-data class SnapshotsResponse(val snapshots: List<SnapshotResponse>)
+data class SnapshotsResponse(val snapshots: List<SnapshotResponse>, val nextCursor: String? = null)
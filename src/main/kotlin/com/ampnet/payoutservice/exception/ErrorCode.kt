@@ -16,5 +16,6 @@ enum class ErrorCode(val categoryCode: String, var specificCode: String, var mes
     // Payout: 06
     SNAPSHOT_NOT_FOUND("06", "01", "Snapshot not found"),
     PAYOUT_MERKLE_TREE_NOT_FOUND("06", "02", "Merkle tree not found for specified payout parameters"),
-    PAYOUT_NOT_FOUND_FOR_ACCOUNT("06", "03", "Payout does not exist for specified account")
+    PAYOUT_NOT_FOUND_FOR_ACCOUNT("06", "03", "Payout does not exist for specified account"),
+    INVALID_SNAPSHOT_CURSOR("06", "04", "Invalid snapshot list cursor")
 }
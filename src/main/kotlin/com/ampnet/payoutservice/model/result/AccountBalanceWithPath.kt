@@ -0,0 +1,6 @@
+package com.ampnet.payoutservice.model.result
+
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathSegment
+
+data class AccountBalanceWithPath(val accountBalance: AccountBalance, val path: List<PathSegment>)
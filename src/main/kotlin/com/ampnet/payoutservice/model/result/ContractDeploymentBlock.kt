@@ -0,0 +1,7 @@
+package com.ampnet.payoutservice.model.result
+
+import com.ampnet.payoutservice.util.BlockNumber
+
+// block number is the block from which contract events should be scanned, it is an exact deployment block only when
+// contract deployment was found within the searched block range
+data class ContractDeploymentBlock(val blockNumber: BlockNumber, val isFound: Boolean)
@@ -4,6 +4,8 @@ import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.Hash
+import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.IpfsHash
 import com.ampnet.payoutservice.util.SnapshotFailureCause
 import com.ampnet.payoutservice.util.SnapshotStatus
@@ -28,6 +30,10 @@ sealed interface OptionalSnapshotData {
 
 data class SuccessfulSnapshotData(
     val merkleTreeRootId: UUID,
+    val merkleRootHash: Hash,
+    val merkleTreeDepth: Int,
+    val merkleTreeLeafCount: Int,
+    val hashFn: HashFunction,
     val merkleTreeIpfsHash: IpfsHash,
     val totalAssetAmount: Balance,
     override val status: SnapshotStatus = SnapshotStatus.SUCCESS,
@@ -0,0 +1,7 @@
+package com.ampnet.payoutservice.model.result
+
+import com.ampnet.payoutservice.util.SnapshotCursor
+
+data class SnapshotPage<T>(val snapshots: List<T>, val nextCursor: SnapshotCursor?) {
+    fun <R> map(transform: (T) -> R): SnapshotPage<R> = SnapshotPage(snapshots.map(transform), nextCursor)
+}
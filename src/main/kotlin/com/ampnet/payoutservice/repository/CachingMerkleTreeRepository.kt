@@ -0,0 +1,108 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
+import com.ampnet.payoutservice.model.result.MerkleTreeWithId
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.WalletAddress
+import com.github.benmanes.caffeine.cache.Cache
+import com.github.benmanes.caffeine.cache.Caffeine
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics
+import mu.KLogging
+import org.springframework.context.annotation.Primary
+import org.springframework.stereotype.Repository
+import java.util.UUID
+
+/**
+ * Caches Merkle trees fetched via [getById], [fetchTree] and [fetchTrees]. Stored trees never change, so cached trees
+ * are never invalidated; they are evicted according to Caffeine's W-TinyLFU policy once the total number of cached
+ * leaves exceeds the configured limit. Concurrent fetches of a tree which is not cached via [getById] or [fetchTree]
+ * trigger only a single fetch from [delegate]. Trees which were not found are not cached. Cache statistics are exposed
+ * as `merkle_tree_cache` metrics.
+ */
+@Primary
+@Repository
+class CachingMerkleTreeRepository(
+    private val delegate: JooqMerkleTreeRepository,
+    applicationProperties: ApplicationProperties,
+    meterRegistry: MeterRegistry
+) : MerkleTreeRepository {
+
+    companion object : KLogging() {
+        private const val CACHE_NAME = "merkle_tree_cache"
+    }
+
+    private val cache: Cache<FetchMerkleTreeParams, MerkleTreeWithId> = Caffeine.newBuilder()
+        .maximumWeight(applicationProperties.merkleTree.cacheMaxLeaves)
+        .weigher<FetchMerkleTreeParams, MerkleTreeWithId> { _, value -> value.tree.leafCount }
+        .recordStats()
+        .build()
+
+    init {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME)
+    }
+
+    // only tree parameters are fetched from delegate when the tree is already cached
+    override fun getById(treeId: UUID): MerkleTree? =
+        delegate.getParamsById(treeId)?.let { fetchTree(it)?.tree }
+
+    override fun storeTree(
+        tree: MerkleTree,
+        chainId: ChainId,
+        assetAddress: ContractAddress,
+        blockNumber: BlockNumber
+    ): UUID = delegate.storeTree(tree, chainId, assetAddress, blockNumber)
+
+    override fun fetchTree(params: FetchMerkleTreeParams): MerkleTreeWithId? =
+        cache.get(params) {
+            logger.debug { "Merkle tree is not cached, params: $params" }
+            delegate.fetchTree(it)
+        }
+
+    // trees which are not cached are fetched from delegate with a single call
+    override fun fetchTrees(params: Collection<FetchMerkleTreeParams>): Map<FetchMerkleTreeParams, MerkleTreeWithId> =
+        cache.getAll(params) { missingParams ->
+            logger.debug { "Merkle trees are not cached, params: $missingParams" }
+            delegate.fetchTrees(missingParams.toList())
+        }
+
+    // cached trees are used when present, but trees are not loaded into the cache for path lookups
+    override fun fetchPath(params: FetchMerkleTreePathParams): AccountBalanceWithPath? {
+        val tree = cache.getIfPresent(params.toFetchMerkleTreeParams)?.tree ?: return delegate.fetchPath(params)
+        return tree.accountBalanceWithPath(params.walletAddress)
+    }
+
+    override fun fetchPaths(
+        params: Collection<FetchMerkleTreePathParams>
+    ): Map<FetchMerkleTreePathParams, AccountBalanceWithPath> {
+        val paths = HashMap<FetchMerkleTreePathParams, AccountBalanceWithPath>()
+        val nonCachedParams = ArrayList<FetchMerkleTreePathParams>()
+
+        params.forEach {
+            val tree = cache.getIfPresent(it.toFetchMerkleTreeParams)?.tree
+
+            if (tree != null) {
+                tree.accountBalanceWithPath(it.walletAddress)?.let { path -> paths[it] = path }
+            } else {
+                nonCachedParams.add(it)
+            }
+        }
+
+        if (nonCachedParams.isNotEmpty()) {
+            paths.putAll(delegate.fetchPaths(nonCachedParams))
+        }
+
+        return paths
+    }
+
+    private fun MerkleTree.accountBalanceWithPath(walletAddress: WalletAddress): AccountBalanceWithPath? {
+        val accountBalance = leafNodesByAddress[walletAddress]?.value?.data
+        return accountBalance?.let { pathTo(it) }?.let { AccountBalanceWithPath(accountBalance, it) }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+
+interface ContractDeploymentBlockRepository {
+    fun getDeploymentBlock(chainId: ChainId, contractAddress: ContractAddress): BlockNumber?
+
+    fun storeDeploymentBlock(chainId: ChainId, contractAddress: ContractAddress, blockNumber: BlockNumber)
+}
@@ -0,0 +1,9 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.blockchain.Erc20HolderIndex
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+
+interface Erc20HolderIndexRepository {
+    fun getHolderIndex(chainId: ChainId, assetAddress: ContractAddress): Erc20HolderIndex
+}
@@ -0,0 +1,43 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.generated.jooq.tables.ContractDeploymentBlock
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import mu.KLogging
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import org.springframework.stereotype.Repository
+
+@Repository
+class JooqContractDeploymentBlockRepository(private val dslContext: DSLContext) : ContractDeploymentBlockRepository {
+
+    companion object : KLogging() {
+        private val DEPLOYMENT_BLOCK = ContractDeploymentBlock.CONTRACT_DEPLOYMENT_BLOCK
+    }
+
+    override fun getDeploymentBlock(chainId: ChainId, contractAddress: ContractAddress): BlockNumber? {
+        logger.debug { "Get deployment block for chainId: $chainId, contractAddress: $contractAddress" }
+        return dslContext.select(DEPLOYMENT_BLOCK.BLOCK_NUMBER)
+            .from(DEPLOYMENT_BLOCK)
+            .where(
+                DSL.and(
+                    DEPLOYMENT_BLOCK.CHAIN_ID.eq(chainId.value),
+                    DEPLOYMENT_BLOCK.CONTRACT_ADDRESS.eq(contractAddress.rawValue)
+                )
+            )
+            .fetchOne { BlockNumber(it.value1()!!) }
+    }
+
+    override fun storeDeploymentBlock(chainId: ChainId, contractAddress: ContractAddress, blockNumber: BlockNumber) {
+        logger.debug {
+            "Store deployment block for chainId: $chainId, contractAddress: $contractAddress, blockNumber: $blockNumber"
+        }
+        dslContext.insertInto(DEPLOYMENT_BLOCK)
+            .set(DEPLOYMENT_BLOCK.CHAIN_ID, chainId.value)
+            .set(DEPLOYMENT_BLOCK.CONTRACT_ADDRESS, contractAddress.rawValue)
+            .set(DEPLOYMENT_BLOCK.BLOCK_NUMBER, blockNumber.value)
+            .onConflictDoNothing()
+            .execute()
+    }
+}
@@ -0,0 +1,102 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.blockchain.Erc20HolderIndex
+import com.ampnet.payoutservice.generated.jooq.tables.AssetHolderIndex
+import com.ampnet.payoutservice.generated.jooq.tables.AssetHolderIndexHolder
+import com.ampnet.payoutservice.service.UuidProvider
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import mu.KLogging
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import org.springframework.stereotype.Repository
+import java.util.UUID
+
+@Repository
+class JooqErc20HolderIndexRepository(
+    private val dslContext: DSLContext,
+    private val uuidProvider: UuidProvider
+) : Erc20HolderIndexRepository {
+
+    companion object : KLogging() {
+        private const val CHUNK_SIZE = 1_000
+        private val INDEX = AssetHolderIndex.ASSET_HOLDER_INDEX
+        private val HOLDER = AssetHolderIndexHolder.ASSET_HOLDER_INDEX_HOLDER
+    }
+
+    override fun getHolderIndex(chainId: ChainId, assetAddress: ContractAddress): Erc20HolderIndex {
+        logger.debug { "Get holder index for chainId: $chainId, assetAddress: $assetAddress" }
+
+        dslContext.insertInto(INDEX)
+            .set(INDEX.ID, uuidProvider.getUuid())
+            .set(INDEX.CHAIN_ID, chainId.value)
+            .set(INDEX.ASSET_ADDRESS, assetAddress.rawValue)
+            .onConflictDoNothing()
+            .execute()
+
+        val index = dslContext.selectFrom(INDEX)
+            .where(
+                DSL.and(
+                    INDEX.CHAIN_ID.eq(chainId.value),
+                    INDEX.ASSET_ADDRESS.eq(assetAddress.rawValue)
+                )
+            )
+            .fetchSingle()
+        val holders = dslContext.select(HOLDER.ADDRESS)
+            .from(HOLDER)
+            .where(HOLDER.INDEX_ID.eq(index.id))
+            .fetch { WalletAddress(it.value1()!!) }
+
+        return JooqErc20HolderIndex(
+            indexId = index.id!!,
+            fromBlock = index.fromBlock?.let { BlockNumber(it) },
+            indexedToBlock = index.indexedToBlock?.let { BlockNumber(it) },
+            holders = holders.toHashSet()
+        )
+    }
+
+    private inner class JooqErc20HolderIndex(
+        private val indexId: UUID,
+        fromBlock: BlockNumber?,
+        indexedToBlock: BlockNumber?,
+        holders: Set<WalletAddress>
+    ) : Erc20HolderIndex {
+
+        override var fromBlock: BlockNumber? = fromBlock
+            private set
+
+        override var indexedToBlock: BlockNumber? = indexedToBlock
+            private set
+
+        private val holderSet = HashSet(holders)
+
+        override val holders: Set<WalletAddress>
+            get() = holderSet
+
+        // holders are inserted idempotently and indexed block is only ever increased, so multiple workers can extend
+        // the same index concurrently
+        override fun storeIndexedBlocks(fromBlock: BlockNumber, toBlock: BlockNumber, newHolders: Set<WalletAddress>) {
+            dslContext.transaction { configuration ->
+                val transactionContext = DSL.using(configuration)
+
+                newHolders.chunked(CHUNK_SIZE).forEach { chunk ->
+                    val insert = transactionContext.insertInto(HOLDER, HOLDER.INDEX_ID, HOLDER.ADDRESS)
+                    chunk.forEach { insert.values(indexId, it.rawValue) }
+                    insert.onConflictDoNothing().execute()
+                }
+
+                transactionContext.update(INDEX)
+                    .set(INDEX.FROM_BLOCK, DSL.coalesce(INDEX.FROM_BLOCK, fromBlock.value))
+                    .set(INDEX.INDEXED_TO_BLOCK, DSL.greatest(INDEX.INDEXED_TO_BLOCK, DSL.`val`(toBlock.value)))
+                    .where(INDEX.ID.eq(indexId))
+                    .execute()
+            }
+
+            holderSet.addAll(newHolders)
+            this.fromBlock = this.fromBlock ?: fromBlock
+            this.indexedToBlock = BlockNumber(this.indexedToBlock?.value?.max(toBlock.value) ?: toBlock.value)
+        }
+    }
+}
@@ -1,40 +1,73 @@
 package com.ampnet.payoutservice.repository
 
+import com.ampnet.payoutservice.config.ApplicationProperties
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
 import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeRoot
-import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeLeafNodeRecord
 import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeRootRecord
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
 import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
 import com.ampnet.payoutservice.model.result.MerkleTreeWithId
+import com.ampnet.payoutservice.repository.MerkleTreeLeafNodeReader.StoredLeafNodes
 import com.ampnet.payoutservice.service.UuidProvider
 import com.ampnet.payoutservice.util.AccountBalance
 import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.FlatMerkleTree
+import com.ampnet.payoutservice.util.Hash
 import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.PackedLeafIds
+import com.ampnet.payoutservice.util.PackedMerklePath
 import com.ampnet.payoutservice.util.WalletAddress
 import mu.KLogging
 import org.jooq.DSLContext
 import org.jooq.impl.DSL
 import org.springframework.stereotype.Repository
 import java.util.UUID
+import java.util.stream.Collectors
 
 @Repository
-class JooqMerkleTreeRepository(private val dslContext: DSLContext, private val uuidProvider: UuidProvider) :
-    MerkleTreeRepository {
+class JooqMerkleTreeRepository(
+    private val dslContext: DSLContext,
+    private val uuidProvider: UuidProvider,
+    applicationProperties: ApplicationProperties
+) : MerkleTreeRepository {
 
     companion object : KLogging()
 
+    private val leafNodeReader = MerkleTreeLeafNodeReader(applicationProperties.merkleTree.leafFetchSize)
+    private val leafNodeWriter = MerkleTreeLeafNodeWriter()
+    private val sharedLeafStorage = SharedMerkleTreeLeafStorage(applicationProperties.merkleTree.leafFetchSize)
+    private val useSharedLeaves = applicationProperties.merkleTree.sharedLeaves
+
     override fun getById(treeId: UUID): MerkleTree? {
         logger.debug { "Fetching Merkle tree, treeId: $treeId" }
 
         return dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
             .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(treeId))
             .fetchOne()
-            ?.let { rebuildTree(it) }
+            ?.let { rebuildTrees(listOf(it)).getValue(treeId) }
+    }
+
+    // used by the caching repository to look up trees by ID in its cache, which is keyed by tree parameters
+    fun getParamsById(treeId: UUID): FetchMerkleTreeParams? {
+        logger.debug { "Fetching Merkle tree params, treeId: $treeId" }
+
+        val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+
+        return dslContext.select(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH)
+            .from(root)
+            .where(root.ID.eq(treeId))
+            .fetchOne {
+                FetchMerkleTreeParams(
+                    rootHash = Hash(it.value3()!!),
+                    chainId = ChainId(it.value1()!!),
+                    assetAddress = ContractAddress(it.value2()!!)
+                )
+            }
     }
 
     override fun storeTree(
@@ -44,93 +77,254 @@ class JooqMerkleTreeRepository(private val dslContext: DSLContext, private val u
         blockNumber: BlockNumber
     ): UUID {
         logger.info {
-            "Storing Merkle tree with root hash: ${tree.root.hash} for chainId: $chainId," +
+            "Storing Merkle tree with root hash: ${tree.rootHash} for chainId: $chainId," +
                 " assetAddress: $assetAddress, blockNumber: $blockNumber"
         }
 
         val rootId = uuidProvider.getUuid()
 
-        dslContext.executeInsert(
-            MerkleTreeRootRecord(
-                id = rootId,
-                chainId = chainId.value,
-                assetAddress = assetAddress.rawValue,
-                blockNumber = blockNumber.value,
-                hash = tree.root.hash.value,
-                hashFn = tree.hashFn.toDbEnum
-            )
-        )
-
-        val insert = dslContext.insertQuery(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+        dslContext.transaction { configuration ->
+            val context = DSL.using(configuration)
+            val leafIds = if (useSharedLeaves) sharedLeafStorage.write(context, tree, chainId, assetAddress) else null
 
-        tree.leafNodesByHash.values.forEach {
-            insert.addRecord(
-                MerkleTreeLeafNodeRecord(
-                    id = uuidProvider.getUuid(),
-                    merkleRoot = rootId,
-                    address = it.value.data.address.rawValue,
-                    balance = it.value.data.balance.rawValue
+            context.executeInsert(
+                MerkleTreeRootRecord(
+                    id = rootId,
+                    chainId = chainId.value,
+                    assetAddress = assetAddress.rawValue,
+                    blockNumber = blockNumber.value,
+                    hash = tree.rootHash.value,
+                    hashFn = tree.hashFn.toDbEnum,
+                    depth = tree.depth,
+                    leafCount = tree.leafCount,
+                    nodeHashes = (tree as? FlatMerkleTree)?.nodeHashes,
+                    leafIds = leafIds?.bytes
                 )
             )
-        }
 
-        insert.execute()
+            if (leafIds == null) {
+                leafNodeWriter.write(context, tree, rootId)
+            }
+        }
 
         return rootId
     }
 
-    override fun fetchTree(params: FetchMerkleTreeParams): MerkleTreeWithId? {
-        logger.debug { "Fetching Merkle, params: $params" }
+    override fun fetchTree(params: FetchMerkleTreeParams): MerkleTreeWithId? = fetchTrees(listOf(params))[params]
 
-        val root = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+    override fun fetchTrees(params: Collection<FetchMerkleTreeParams>): Map<FetchMerkleTreeParams, MerkleTreeWithId> {
+        logger.debug { "Fetching Merkle trees, params: $params" }
+
+        val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+        val roots = dslContext.selectFrom(root)
             .where(
-                DSL.and(
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.CHAIN_ID.eq(params.chainId.value),
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.ASSET_ADDRESS.eq(params.assetAddress.rawValue),
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.HASH.eq(params.rootHash.value)
+                DSL.row(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH).`in`(
+                    params.map { DSL.row(it.chainId.value, it.assetAddress.rawValue, it.rootHash.value) }
                 )
             )
-            .fetchOne() ?: return null
+            .fetch()
+            .associateBy {
+                FetchMerkleTreeParams(
+                    rootHash = Hash(it.hash!!),
+                    chainId = ChainId(it.chainId!!),
+                    assetAddress = ContractAddress(it.assetAddress!!)
+                )
+            }
+        val trees = rebuildTrees(roots.values)
 
-        val tree = rebuildTree(root)
+        return roots.mapNotNull { (params, root) ->
+            val tree = trees.getValue(root.id!!)
 
-        return if (tree.root.hash == params.rootHash) {
-            logger.debug { "Successfully fetched and reconstructed Merkle tree, params: $params" }
-            MerkleTreeWithId(root.id!!, tree)
-        } else {
-            logger.error { "Failed to reconstruct Merkle tree, params: $params" }
-            null
-        }
+            if (tree.rootHash == params.rootHash) {
+                logger.debug { "Successfully fetched and reconstructed Merkle tree, params: $params" }
+                Pair(params, MerkleTreeWithId(root.id!!, tree))
+            } else {
+                logger.error { "Failed to reconstruct Merkle tree, params: $params" }
+                null
+            }
+        }.toMap()
     }
 
-    override fun containsAddress(params: FetchMerkleTreePathParams): Boolean {
-        logger.debug { "Checking if Merkle tree contains address, params: $params" }
+    override fun fetchPath(params: FetchMerkleTreePathParams): AccountBalanceWithPath? =
+        fetchPaths(listOf(params))[params]
 
-        val root = dslContext.selectFrom(MerkleTreeRoot.MERKLE_TREE_ROOT)
+    // leaves of trees with stored paths are fetched with a single query, other trees need to be reconstructed,
+    // including trees with shared leaves which are only looked up for parameters not found in the first query
+    override fun fetchPaths(
+        params: Collection<FetchMerkleTreePathParams>
+    ): Map<FetchMerkleTreePathParams, AccountBalanceWithPath> {
+        logger.debug { "Fetching Merkle tree paths, params: $params" }
+
+        val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+        val leafNode = MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE
+        val leafRecords = dslContext.select(listOf(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH) + leafNode.fields())
+            .from(leafNode)
+            .join(root)
+            .on(leafNode.MERKLE_ROOT.eq(root.ID))
             .where(
-                DSL.and(
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.CHAIN_ID.eq(params.chainId.value),
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.ASSET_ADDRESS.eq(params.assetAddress.rawValue),
-                    MerkleTreeRoot.MERKLE_TREE_ROOT.HASH.eq(params.rootHash.value)
+                DSL.row(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH, leafNode.ADDRESS).`in`(
+                    params.map {
+                        DSL.row(it.chainId.value, it.assetAddress.rawValue, it.rootHash.value, it.walletAddress.bytes)
+                    }
                 )
             )
-            .fetchOne() ?: return false
-
-        return dslContext.fetchExists(
-            dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-                .where(
-                    DSL.and(
-                        MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(root.id),
-                        MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.ADDRESS.eq(params.walletAddress.rawValue)
-                    )
+            .fetch { record ->
+                val leafRecord = record.into(leafNode)
+                val accountBalance = AccountBalance(
+                    address = WalletAddress.fromBytes(leafRecord.address!!),
+                    balance = Balance.fromBytes(leafRecord.balance!!)
                 )
+                val pathParams = FetchMerkleTreePathParams(
+                    rootHash = Hash(record.get(root.HASH)!!),
+                    chainId = ChainId(record.get(root.CHAIN_ID)!!),
+                    assetAddress = ContractAddress(record.get(root.ASSET_ADDRESS)!!),
+                    walletAddress = accountBalance.address
+                )
+                val path = leafRecord.pathSiblings?.let { siblings ->
+                    leafRecord.pathDirections?.let { PackedMerklePath(siblings, it).toPathSegments() }
+                }
+
+                Triple(pathParams, accountBalance, path)
+            }
+        val foundParams = leafRecords.mapTo(HashSet()) { it.first }
+        val sharedLeafParams = params.filterNot { it in foundParams }
+        val sharedLeafTreeParams = sharedLeafStorage.findTreesWithSharedLeaves(
+            dslContext = dslContext,
+            params = sharedLeafParams.map { it.toFetchMerkleTreeParams }
+        )
+        val trees = fetchTrees(
+            leafRecords.filter { it.third == null }.map { it.first.toFetchMerkleTreeParams }.toSet() +
+                sharedLeafTreeParams
         )
+        val leafPaths = leafRecords.mapNotNull { (pathParams, accountBalance, path) ->
+            (path ?: trees[pathParams.toFetchMerkleTreeParams]?.tree?.pathTo(accountBalance))
+                ?.let { Pair(pathParams, AccountBalanceWithPath(accountBalance, it)) }
+        }
+        val sharedLeafPaths = sharedLeafParams.mapNotNull { pathParams ->
+            trees[pathParams.toFetchMerkleTreeParams]?.tree?.let { tree ->
+                tree.leafNodesByAddress[pathParams.walletAddress]?.value?.data?.let { accountBalance ->
+                    tree.pathTo(accountBalance)?.let { Pair(pathParams, AccountBalanceWithPath(accountBalance, it)) }
+                }
+            }
+        }
+
+        return (leafPaths + sharedLeafPaths).toMap()
     }
 
-    private fun rebuildTree(root: MerkleTreeRootRecord): MerkleTree {
-        val leafNodes = dslContext.selectFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
-            .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(root.id))
-            .fetch { AccountBalance(WalletAddress(it.address!!), Balance(it.balance!!)) }
-        return MerkleTree(leafNodes, HashFunction.fromDbEnum(root.hashFn!!))
+    /**
+     * Stores node hashes, leaf positions and leaf paths of at most [batchSize] trees which were stored before they
+     * were persisted, ordered by tree ID and starting after [afterTreeId]. Returns ID of the last tree in the batch,
+     * which is then used to fetch the next batch, or `null` when there are no more such trees.
+     */
+    fun backfillNodeHashes(afterTreeId: UUID?, batchSize: Int): UUID? {
+        val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+        val roots = dslContext.selectFrom(root)
+            .where(
+                DSL.and(
+                    root.NODE_HASHES.isNull,
+                    afterTreeId?.let { root.ID.gt(it) } ?: DSL.noCondition()
+                )
+            )
+            .orderBy(root.ID.asc())
+            .limit(batchSize)
+            .fetch()
+        val trees = rebuildTrees(roots)
+
+        roots.forEach {
+            val tree = trees.getValue(it.id!!)
+
+            if (tree is FlatMerkleTree && tree.rootHash.value == it.hash) {
+                storeNodeHashes(it, tree)
+            } else {
+                logger.warn { "Node hashes cannot be stored for Merkle tree with id: ${it.id}" }
+            }
+        }
+
+        return roots.lastOrNull()?.id
+    }
+
+    // leaves of all trees are read with a single query, trees are then restored or rebuilt in parallel; rebuilt trees
+    // are never written back, node hashes of trees stored without them are stored by backfillNodeHashes
+    private fun rebuildTrees(roots: Collection<MerkleTreeRootRecord>): Map<UUID, MerkleTree> {
+        val (sharedLeafRoots, leafNodeRoots) = roots.partition { it.leafIds != null }
+        val leafNodes = leafNodeReader.read(dslContext, leafNodeRoots.map { it.id!! }) +
+            sharedLeafStorage.read(dslContext, sharedLeafRoots.associate { Pair(it.id!!, PackedLeafIds(it.leafIds!!)) })
+
+        return roots.parallelStream()
+            .map { root ->
+                val hashFn = HashFunction.fromDbEnum(root.hashFn!!)
+                val storedLeafNodes = leafNodes.getValue(root.id!!)
+                val tree = restoreTree(root, hashFn, storedLeafNodes) ?: MerkleTree(storedLeafNodes.leaves, hashFn)
+
+                Pair(root.id!!, tree)
+            }
+            .collect(Collectors.toList())
+            .toMap()
+    }
+
+    // trees with stored node hashes are restored without hashing, only their root hash is checked
+    private fun restoreTree(
+        root: MerkleTreeRootRecord,
+        hashFn: HashFunction,
+        leafNodes: StoredLeafNodes
+    ): FlatMerkleTree? {
+        val nodeHashes = root.nodeHashes
+
+        if (nodeHashes == null || !FlatMerkleTree.supports(hashFn) || !leafNodes.hasAllPositions) {
+            return null
+        }
+
+        return try {
+            val tree = FlatMerkleTree.fromNodeHashes(
+                leaves = leafNodes.leaves,
+                hashFn = hashFn,
+                nodeHashes = nodeHashes
+            )
+
+            if (tree.rootHash.value == root.hash) {
+                tree
+            } else {
+                logger.warn { "Stored node hashes do not match Merkle tree root, rebuilding tree with id: ${root.id}" }
+                null
+            }
+        } catch (e: IllegalArgumentException) {
+            logger.warn(e) { "Unable to restore Merkle tree from stored node hashes, treeId: ${root.id}" }
+            null
+        }
+    }
+
+    private fun storeNodeHashes(root: MerkleTreeRootRecord, tree: FlatMerkleTree) {
+        val rootId = root.id!!
+        logger.info { "Storing node hashes for Merkle tree with id: $rootId" }
+
+        // leaf nodes are re-inserted as updating leaf positions in place would violate the primary key; root row is
+        // locked so that backfills of the same tree running on multiple instances do not store it more than once
+        dslContext.transaction { configuration ->
+            val context = DSL.using(configuration)
+            val isBackfillNeeded = context.select(MerkleTreeRoot.MERKLE_TREE_ROOT.NODE_HASHES)
+                .from(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(rootId))
+                .forUpdate()
+                .fetchOne()
+                ?.let { it.value1() == null } ?: false
+
+            if (!isBackfillNeeded) {
+                logger.debug { "Node hashes were already stored for Merkle tree with id: $rootId" }
+                return@transaction
+            }
+
+            if (root.leafIds == null) {
+                context.deleteFrom(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE)
+                    .where(MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE.MERKLE_ROOT.eq(rootId))
+                    .execute()
+
+                leafNodeWriter.write(context, tree, rootId)
+            }
+
+            context.update(MerkleTreeRoot.MERKLE_TREE_ROOT)
+                .set(MerkleTreeRoot.MERKLE_TREE_ROOT.NODE_HASHES, tree.nodeHashes)
+                .where(MerkleTreeRoot.MERKLE_TREE_ROOT.ID.eq(rootId))
+                .execute()
+        }
     }
 }
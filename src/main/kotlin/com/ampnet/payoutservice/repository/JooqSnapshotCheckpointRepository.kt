@@ -0,0 +1,190 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.blockchain.InMemoryErc20BalancesCheckpoint
+import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus
+import com.ampnet.payoutservice.generated.jooq.tables.Snapshot
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpointHolder
+import com.ampnet.payoutservice.service.UuidProvider
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import mu.KLogging
+import org.jooq.Condition
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import org.springframework.stereotype.Repository
+import java.time.Duration
+import java.util.UUID
+import com.ampnet.payoutservice.generated.jooq.tables.SnapshotCheckpoint as SnapshotCheckpointTable
+
+@Repository
+class JooqSnapshotCheckpointRepository(
+    private val dslContext: DSLContext,
+    private val uuidProvider: UuidProvider
+) : SnapshotCheckpointRepository {
+
+    companion object : KLogging() {
+        private const val CHUNK_SIZE = 1_000
+        private val CHECKPOINT = SnapshotCheckpointTable.SNAPSHOT_CHECKPOINT
+        private val HOLDER = SnapshotCheckpointHolder.SNAPSHOT_CHECKPOINT_HOLDER
+        private val SNAPSHOT = Snapshot.SNAPSHOT
+
+        private fun checkpointCondition(
+            chainId: ChainId,
+            assetAddress: ContractAddress,
+            blockNumber: BlockNumber
+        ): Condition = DSL.and(
+            CHECKPOINT.CHAIN_ID.eq(chainId.value),
+            CHECKPOINT.ASSET_ADDRESS.eq(assetAddress.rawValue),
+            CHECKPOINT.BLOCK_NUMBER.eq(blockNumber.value)
+        )
+    }
+
+    override fun getCheckpoint(
+        chainId: ChainId,
+        assetAddress: ContractAddress,
+        blockNumber: BlockNumber
+    ): SnapshotCheckpoint {
+        logger.debug {
+            "Get snapshot checkpoint for chainId: $chainId, assetAddress: $assetAddress, blockNumber: $blockNumber"
+        }
+
+        dslContext.insertInto(CHECKPOINT)
+            .set(CHECKPOINT.ID, uuidProvider.getUuid())
+            .set(CHECKPOINT.CHAIN_ID, chainId.value)
+            .set(CHECKPOINT.ASSET_ADDRESS, assetAddress.rawValue)
+            .set(CHECKPOINT.BLOCK_NUMBER, blockNumber.value)
+            .onConflictDoNothing()
+            .execute()
+
+        val checkpoint = dslContext.selectFrom(CHECKPOINT)
+            .where(checkpointCondition(chainId, assetAddress, blockNumber))
+            .fetchSingle()
+        val holders = dslContext.select(HOLDER.ADDRESS, HOLDER.BALANCE)
+            .from(HOLDER)
+            .where(HOLDER.CHECKPOINT_ID.eq(checkpoint.id))
+            .fetch { Pair(WalletAddress(it.value1()!!), it.value2()?.let { balance -> Balance(balance) }) }
+
+        return JooqSnapshotCheckpoint(
+            checkpointId = checkpoint.id!!,
+            deploymentBlock = checkpoint.deploymentBlock?.let { BlockNumber(it) },
+            scannedToBlock = checkpoint.scannedToBlock?.let { BlockNumber(it) },
+            holders = holders.mapTo(HashSet()) { it.first },
+            balances = holders.mapNotNull { (address, balance) -> balance?.let { Pair(address, it) } }.toMap()
+        )
+    }
+
+    override fun deleteCheckpoint(chainId: ChainId, assetAddress: ContractAddress, blockNumber: BlockNumber) {
+        logger.debug {
+            "Delete snapshot checkpoint for chainId: $chainId, assetAddress: $assetAddress, blockNumber: $blockNumber"
+        }
+        dslContext.deleteFrom(CHECKPOINT)
+            .where(checkpointCondition(chainId, assetAddress, blockNumber))
+            .execute()
+    }
+
+    // checkpoints of snapshots which are still pending or processing are kept regardless of their age
+    override fun deleteStaleCheckpoints(maxAge: Duration): Int {
+        logger.debug { "Delete snapshot checkpoints not updated for: $maxAge" }
+
+        val snapshotUsingCheckpoint = DSL.selectOne()
+            .from(SNAPSHOT)
+            .where(
+                DSL.and(
+                    SNAPSHOT.CHAIN_ID.eq(CHECKPOINT.CHAIN_ID),
+                    SNAPSHOT.ASSET_ADDRESS.eq(CHECKPOINT.ASSET_ADDRESS),
+                    SNAPSHOT.BLOCK_NUMBER.eq(CHECKPOINT.BLOCK_NUMBER),
+                    SNAPSHOT.STATUS.`in`(SnapshotStatus.PENDING, SnapshotStatus.PROCESSING)
+                )
+            )
+
+        return dslContext.deleteFrom(CHECKPOINT)
+            .where(
+                DSL.and(
+                    CHECKPOINT.UPDATED_AT.lt(
+                        DSL.field(
+                            "now() - {0} * interval '1 millisecond'",
+                            SQLDataType.TIMESTAMPWITHTIMEZONE,
+                            DSL.inline(maxAge.toMillis())
+                        )
+                    ),
+                    DSL.notExists(snapshotUsingCheckpoint)
+                )
+            )
+            .execute()
+    }
+
+    private inner class JooqSnapshotCheckpoint(
+        private val checkpointId: UUID,
+        deploymentBlock: BlockNumber?,
+        scannedToBlock: BlockNumber?,
+        holders: Set<WalletAddress>,
+        balances: Map<WalletAddress, Balance>
+    ) : InMemoryErc20BalancesCheckpoint(scannedToBlock, holders, balances), SnapshotCheckpoint {
+
+        override var deploymentBlock: BlockNumber? = deploymentBlock
+            private set
+
+        override fun storeDeploymentBlock(deploymentBlock: BlockNumber) {
+            dslContext.update(CHECKPOINT)
+                .set(CHECKPOINT.DEPLOYMENT_BLOCK, deploymentBlock.value)
+                .set(CHECKPOINT.UPDATED_AT, DSL.currentOffsetDateTime())
+                .where(CHECKPOINT.ID.eq(checkpointId))
+                .execute()
+            this.deploymentBlock = deploymentBlock
+        }
+
+        // holders, balances and scanned block range are stored atomically so that no block range is skipped or
+        // counted twice when resuming
+        override fun storeScannedBlocks(
+            toBlock: BlockNumber,
+            newHolders: Set<WalletAddress>,
+            balances: List<AccountBalance>
+        ) {
+            dslContext.transaction { configuration ->
+                val transactionContext = DSL.using(configuration)
+
+                newHolders.chunked(CHUNK_SIZE).forEach { chunk ->
+                    val insert = transactionContext.insertInto(HOLDER, HOLDER.CHECKPOINT_ID, HOLDER.ADDRESS)
+                    chunk.forEach { insert.values(checkpointId, it.rawValue) }
+                    insert.onConflictDoNothing().execute()
+                }
+
+                transactionContext.updateBalances(balances)
+                transactionContext.update(CHECKPOINT)
+                    .set(CHECKPOINT.SCANNED_TO_BLOCK, toBlock.value)
+                    .set(CHECKPOINT.UPDATED_AT, DSL.currentOffsetDateTime())
+                    .where(CHECKPOINT.ID.eq(checkpointId))
+                    .execute()
+            }
+
+            super.storeScannedBlocks(toBlock, newHolders, balances)
+        }
+
+        override fun storeBalances(balances: List<AccountBalance>) {
+            dslContext.updateBalances(balances)
+            super.storeBalances(balances)
+        }
+
+        private fun DSLContext.updateBalances(balances: List<AccountBalance>) {
+            if (balances.isNotEmpty()) {
+                batch(
+                    balances.map {
+                        update(HOLDER)
+                            .set(HOLDER.BALANCE, it.balance.rawValue)
+                            .where(
+                                DSL.and(
+                                    HOLDER.CHECKPOINT_ID.eq(checkpointId),
+                                    HOLDER.ADDRESS.eq(it.address.rawValue)
+                                )
+                            )
+                    }
+                ).execute()
+            }
+        }
+    }
+}
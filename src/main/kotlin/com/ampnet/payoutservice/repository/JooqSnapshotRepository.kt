@@ -1,37 +1,104 @@
 package com.ampnet.payoutservice.repository
 
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeRoot
 import com.ampnet.payoutservice.generated.jooq.tables.records.SnapshotRecord
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.model.result.OtherSnapshotData
 import com.ampnet.payoutservice.model.result.PendingSnapshot
 import com.ampnet.payoutservice.model.result.Snapshot
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.model.result.SuccessfulSnapshotData
+import com.ampnet.payoutservice.service.UtcDateTimeProvider
 import com.ampnet.payoutservice.service.UuidProvider
 import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.Hash
+import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.IpfsHash
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotFailureCause
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
 import mu.KLogging
+import org.jooq.Condition
 import org.jooq.DSLContext
+import org.jooq.Field
+import org.jooq.Record
+import org.jooq.Record1
+import org.jooq.Select
 import org.jooq.impl.DSL
+import org.jooq.impl.SQLDataType
+import org.springframework.dao.DuplicateKeyException
 import org.springframework.stereotype.Repository
+import java.time.Duration
+import java.time.OffsetDateTime
 import java.util.UUID
 import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus as DbSnapshotStatus
 import com.ampnet.payoutservice.generated.jooq.tables.Snapshot as SnapshotTable
 
 @Repository
-class JooqSnapshotRepository(private val dslContext: DSLContext, private val uuidProvider: UuidProvider) :
-    SnapshotRepository {
+class JooqSnapshotRepository(
+    private val dslContext: DSLContext,
+    private val uuidProvider: UuidProvider,
+    private val utcDateTimeProvider: UtcDateTimeProvider,
+    private val applicationProperties: ApplicationProperties
+) : SnapshotRepository {
 
-    companion object : KLogging()
+    companion object : KLogging() {
+        private const val STREAM_FETCH_SIZE = 1_000
+        private val ROOT = MerkleTreeRoot.MERKLE_TREE_ROOT
+
+        private fun filterCondition(
+            chainId: ChainId?,
+            owner: WalletAddress?,
+            statuses: Set<SnapshotStatus>
+        ): Condition {
+            val chainIdCondition = chainId?.let { SnapshotTable.SNAPSHOT.CHAIN_ID.eq(it.value) }
+            val ownerCondition = owner?.let { SnapshotTable.SNAPSHOT.OWNER_ADDRESS.eq(it.rawValue) }
+            val dbStatuses = statuses.map { it.toDbEnum }
+            val statusesCondition = dbStatuses.takeIf { it.isNotEmpty() }
+                ?.let { SnapshotTable.SNAPSHOT.STATUS.`in`(it) }
+
+            return DSL.and(listOfNotNull(chainIdCondition, ownerCondition, statusesCondition))
+        }
+
+        // leases are compared by workers on different nodes, so they are always computed using the database clock
+        private fun leaseExpiresAt(leaseDuration: Duration): Field<OffsetDateTime> =
+            DSL.field(
+                "now() + {0} * interval '1 millisecond'",
+                SQLDataType.TIMESTAMPWITHTIMEZONE,
+                DSL.inline(leaseDuration.toMillis())
+            )
+
+        private fun processingSnapshotWithSharedCheckpoint(): Select<*> {
+            val other = SnapshotTable.SNAPSHOT.`as`("other")
+
+            return DSL.selectOne()
+                .from(other)
+                .where(
+                    DSL.and(
+                        other.CHAIN_ID.eq(SnapshotTable.SNAPSHOT.CHAIN_ID),
+                        other.ASSET_ADDRESS.eq(SnapshotTable.SNAPSHOT.ASSET_ADDRESS),
+                        other.BLOCK_NUMBER.eq(SnapshotTable.SNAPSHOT.BLOCK_NUMBER),
+                        other.ID.ne(SnapshotTable.SNAPSHOT.ID),
+                        other.STATUS.eq(DbSnapshotStatus.PROCESSING)
+                    )
+                )
+        }
+
+        private fun heldLeaseCondition(snapshotId: UUID, workerId: String): Condition = DSL.and(
+            SnapshotTable.SNAPSHOT.ID.eq(snapshotId),
+            SnapshotTable.SNAPSHOT.STATUS.eq(DbSnapshotStatus.PROCESSING),
+            SnapshotTable.SNAPSHOT.WORKER_ID.eq(workerId)
+        )
+    }
 
     override fun getById(snapshotId: UUID): Snapshot? {
         logger.debug { "Fetching snapshot, snapshotId: $snapshotId" }
-        return dslContext.selectFrom(SnapshotTable.SNAPSHOT)
+        return selectSnapshots(dslContext)
             .where(SnapshotTable.SNAPSHOT.ID.eq(snapshotId))
             .fetchOne()
             ?.toModel()
@@ -40,20 +107,49 @@ class JooqSnapshotRepository(private val dslContext: DSLContext, private val uui
     override fun getAllByChainIdOwnerAndStatuses(
         chainId: ChainId?,
         owner: WalletAddress?,
-        statuses: Set<SnapshotStatus>
-    ): List<Snapshot> {
-        logger.debug { "Fetching all snapshots for chainId: $chainId owner: $owner, statuses: $statuses" }
-
-        val chainIdCondition = chainId?.let { SnapshotTable.SNAPSHOT.CHAIN_ID.eq(it.value) }
-        val ownerCondition = owner?.let { SnapshotTable.SNAPSHOT.OWNER_ADDRESS.eq(it.rawValue) }
-        val dbStatuses = statuses.map { it.toDbEnum }
-        val statusesCondition = dbStatuses.takeIf { it.isNotEmpty() }
-            ?.let { SnapshotTable.SNAPSHOT.STATUS.`in`(it) }
-        val conditions = listOfNotNull(chainIdCondition, ownerCondition, statusesCondition)
-
-        return dslContext.selectFrom(SnapshotTable.SNAPSHOT)
-            .where(DSL.and(conditions))
-            .fetch { it.toModel() }
+        statuses: Set<SnapshotStatus>,
+        cursor: SnapshotCursor?,
+        limit: Int?
+    ): SnapshotPage<Snapshot> {
+        logger.debug {
+            "Fetching all snapshots for chainId: $chainId owner: $owner, statuses: $statuses, cursor: $cursor," +
+                " limit: $limit"
+        }
+
+        val cursorCondition = cursor?.let {
+            DSL.row(SnapshotTable.SNAPSHOT.CREATED_AT, SnapshotTable.SNAPSHOT.ID).lt(it.createdAt, it.id)
+        }
+        val query = selectSnapshots(dslContext)
+            .where(DSL.and(listOfNotNull(filterCondition(chainId, owner, statuses), cursorCondition)))
+            .orderBy(SnapshotTable.SNAPSHOT.CREATED_AT.desc(), SnapshotTable.SNAPSHOT.ID.desc())
+        // one extra record is fetched to determine if there is a next page
+        val records = limit?.let { query.limit(it + 1).fetch() } ?: query.fetch()
+        val pageSize = limit ?: records.size
+        val pageRecords = records.take(pageSize)
+        val nextCursor = pageRecords.lastOrNull()
+            ?.takeIf { records.size > pageSize }
+            ?.let { SnapshotCursor(it.get(SnapshotTable.SNAPSHOT.CREATED_AT)!!, it.get(SnapshotTable.SNAPSHOT.ID)!!) }
+
+        return SnapshotPage(pageRecords.map { it.toModel() }, nextCursor)
+    }
+
+    override fun streamAllByChainIdOwnerAndStatuses(
+        chainId: ChainId?,
+        owner: WalletAddress?,
+        statuses: Set<SnapshotStatus>,
+        action: (Snapshot) -> Unit
+    ) {
+        logger.debug { "Streaming all snapshots for chainId: $chainId owner: $owner, statuses: $statuses" }
+
+        // cursor is only used by the database driver when the query is executed within a transaction
+        dslContext.transaction { configuration ->
+            selectSnapshots(DSL.using(configuration))
+                .where(filterCondition(chainId, owner, statuses))
+                .orderBy(SnapshotTable.SNAPSHOT.CREATED_AT.desc(), SnapshotTable.SNAPSHOT.ID.desc())
+                .fetchSize(STREAM_FETCH_SIZE)
+                .fetchLazy()
+                .use { cursor -> cursor.forEach { action(it.toModel()) } }
+        }
     }
 
     override fun createSnapshot(params: CreateSnapshotParams): UUID {
@@ -73,20 +169,71 @@ class JooqSnapshotRepository(private val dslContext: DSLContext, private val uui
                 status = DbSnapshotStatus.PENDING,
                 resultTree = null,
                 treeIpfsHash = null,
-                totalAssetAmount = null
+                totalAssetAmount = null,
+                createdAt = utcDateTimeProvider.getUtcDateTime()
             )
         )
 
+        // notification is delivered once the surrounding transaction (if any) commits
+        if (applicationProperties.createPayoutQueue.listenForNotifications) {
+            dslContext.execute("NOTIFY ${PostgresSnapshotQueueListener.CHANNEL}")
+        }
+
         return snapshotId
     }
 
-    override fun getPending(): PendingSnapshot? {
-        return dslContext.selectFrom(SnapshotTable.SNAPSHOT)
-            .where(SnapshotTable.SNAPSHOT.STATUS.eq(DbSnapshotStatus.PENDING))
+    // oldest claimable snapshot is claimed first so that snapshots are processed in the order of their creation,
+    // processing snapshots with expired leases are claimable again as their worker is assumed to be gone; snapshots of
+    // the same asset at the same block share a checkpoint, so at most one of them is processed at a time, which is
+    // enforced by a partial unique index when two workers concurrently claim such snapshots
+    override fun claimPending(
+        workerId: String,
+        leaseDuration: Duration,
+        excludedSnapshotIds: Set<UUID>,
+        excludedChainIds: Set<ChainId>
+    ): PendingSnapshot? {
+        val claimableSnapshotId = DSL.select(SnapshotTable.SNAPSHOT.ID)
+            .from(SnapshotTable.SNAPSHOT)
+            .where(
+                DSL.and(
+                    DSL.or(
+                        SnapshotTable.SNAPSHOT.STATUS.eq(DbSnapshotStatus.PENDING),
+                        DSL.and(
+                            SnapshotTable.SNAPSHOT.STATUS.eq(DbSnapshotStatus.PROCESSING),
+                            SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT.lt(DSL.currentOffsetDateTime())
+                        )
+                    ),
+                    SnapshotTable.SNAPSHOT.ID.notIn(excludedSnapshotIds),
+                    SnapshotTable.SNAPSHOT.CHAIN_ID.notIn(excludedChainIds.map { it.value }),
+                    DSL.notExists(processingSnapshotWithSharedCheckpoint())
+                )
+            )
+            .orderBy(SnapshotTable.SNAPSHOT.CREATED_AT.asc(), SnapshotTable.SNAPSHOT.ID.asc())
             .limit(1)
             .forUpdate()
             .skipLocked()
+
+        return try {
+            claimSnapshot(claimableSnapshotId, workerId, leaseDuration)
+        } catch (e: DuplicateKeyException) {
+            logger.debug(e) { "Snapshot which shares checkpoint was concurrently claimed, workerId: $workerId" }
+            null
+        }
+    }
+
+    private fun claimSnapshot(
+        claimableSnapshotId: Select<out Record1<UUID?>>,
+        workerId: String,
+        leaseDuration: Duration
+    ): PendingSnapshot? =
+        dslContext.update(SnapshotTable.SNAPSHOT)
+            .set(SnapshotTable.SNAPSHOT.STATUS, DbSnapshotStatus.PROCESSING)
+            .set(SnapshotTable.SNAPSHOT.WORKER_ID, workerId)
+            .set(SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT, leaseExpiresAt(leaseDuration))
+            .where(SnapshotTable.SNAPSHOT.ID.eq(claimableSnapshotId))
+            .returning()
             .fetchOne()?.let {
+                logger.info { "Snapshot claimed, snapshotId: ${it.id}, workerId: $workerId" }
                 PendingSnapshot(
                     id = it.id!!,
                     name = it.name!!,
@@ -97,59 +244,93 @@ class JooqSnapshotRepository(private val dslContext: DSLContext, private val uui
                     ownerAddress = WalletAddress(it.ownerAddress!!)
                 )
             }
+
+    override fun extendLeases(snapshotIds: Set<UUID>, workerId: String, leaseDuration: Duration): Set<UUID> {
+        logger.debug { "Extending snapshot leases, snapshotIds: $snapshotIds, workerId: $workerId" }
+        return dslContext.update(SnapshotTable.SNAPSHOT)
+            .set(SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT, leaseExpiresAt(leaseDuration))
+            .where(
+                DSL.and(
+                    SnapshotTable.SNAPSHOT.ID.`in`(snapshotIds),
+                    SnapshotTable.SNAPSHOT.STATUS.eq(DbSnapshotStatus.PROCESSING),
+                    SnapshotTable.SNAPSHOT.WORKER_ID.eq(workerId)
+                )
+            )
+            .returningResult(SnapshotTable.SNAPSHOT.ID)
+            .fetch()
+            .mapTo(HashSet()) { it.value1()!! }
     }
 
+    // only the worker which still holds the lease can store the result, so that a worker whose lease was taken over by
+    // another worker cannot overwrite the result of the new one
     override fun completeSnapshot(
         snapshotId: UUID,
+        workerId: String,
         merkleTreeRootId: UUID,
         merkleTreeIpfsHash: IpfsHash,
         totalAssetAmount: Balance
     ): Snapshot? {
         logger.info {
-            "Marking snapshot as success, snapshotId: $snapshotId, merkleTreeRootId: $merkleTreeRootId," +
-                " merkleTreeIpfsHash: $merkleTreeIpfsHash, totalAssetAmount: $totalAssetAmount"
+            "Marking snapshot as success, snapshotId: $snapshotId, workerId: $workerId," +
+                " merkleTreeRootId: $merkleTreeRootId, merkleTreeIpfsHash: $merkleTreeIpfsHash, totalAssetAmount: $totalAssetAmount"
         }
-        return dslContext.update(SnapshotTable.SNAPSHOT)
+        val updatedRows = dslContext.update(SnapshotTable.SNAPSHOT)
             .set(SnapshotTable.SNAPSHOT.STATUS, DbSnapshotStatus.SUCCESS)
             .set(SnapshotTable.SNAPSHOT.RESULT_TREE, merkleTreeRootId)
             .set(SnapshotTable.SNAPSHOT.TREE_IPFS_HASH, merkleTreeIpfsHash.value)
             .set(SnapshotTable.SNAPSHOT.TOTAL_ASSET_AMOUNT, totalAssetAmount.rawValue)
-            .where(SnapshotTable.SNAPSHOT.ID.eq(snapshotId))
-            .returning()
-            .fetchOne()
-            ?.toModel()
+            .setNull(SnapshotTable.SNAPSHOT.WORKER_ID)
+            .setNull(SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT)
+            .where(heldLeaseCondition(snapshotId, workerId))
+            .execute()
+
+        return if (updatedRows > 0) getById(snapshotId) else null
     }
 
-    override fun failSnapshot(snapshotId: UUID, cause: SnapshotFailureCause): Snapshot? {
-        logger.info { "Marking snapshot as failed, snapshotId: $snapshotId" }
-        return dslContext.update(SnapshotTable.SNAPSHOT)
+    override fun failSnapshot(snapshotId: UUID, workerId: String, cause: SnapshotFailureCause): Snapshot? {
+        logger.info { "Marking snapshot as failed, snapshotId: $snapshotId, workerId: $workerId" }
+        val updatedRows = dslContext.update(SnapshotTable.SNAPSHOT)
             .set(SnapshotTable.SNAPSHOT.STATUS, DbSnapshotStatus.FAILED)
             .set(SnapshotTable.SNAPSHOT.FAILURE_CAUSE, cause.toDbEnum)
-            .where(SnapshotTable.SNAPSHOT.ID.eq(snapshotId))
-            .returning()
-            .fetchOne()
-            ?.toModel()
+            .setNull(SnapshotTable.SNAPSHOT.WORKER_ID)
+            .setNull(SnapshotTable.SNAPSHOT.LEASE_EXPIRES_AT)
+            .where(heldLeaseCondition(snapshotId, workerId))
+            .execute()
+
+        return if (updatedRows > 0) getById(snapshotId) else null
     }
 
-    private fun SnapshotRecord.toModel(): Snapshot {
-        val snapshotStatus = SnapshotStatus.fromDbEnum(status!!)
-        val snapshotFailureCause = failureCause?.let { SnapshotFailureCause.fromDbEnum(it) }
+    // Merkle tree root summary is joined so that successful snapshots can be returned without loading their trees
+    private fun selectSnapshots(context: DSLContext) =
+        context.select(listOf(ROOT.HASH, ROOT.DEPTH, ROOT.LEAF_COUNT, ROOT.HASH_FN) + SnapshotTable.SNAPSHOT.fields())
+            .from(SnapshotTable.SNAPSHOT)
+            .leftJoin(ROOT)
+            .on(SnapshotTable.SNAPSHOT.RESULT_TREE.eq(ROOT.ID))
+
+    private fun Record.toModel(): Snapshot {
+        val snapshot = into(SnapshotTable.SNAPSHOT)
+        val snapshotStatus = SnapshotStatus.fromDbEnum(snapshot.status!!)
+        val snapshotFailureCause = snapshot.failureCause?.let { SnapshotFailureCause.fromDbEnum(it) }
         val snapshotData = if (snapshotStatus == SnapshotStatus.SUCCESS) {
             SuccessfulSnapshotData(
-                merkleTreeRootId = resultTree!!,
-                merkleTreeIpfsHash = IpfsHash(treeIpfsHash!!),
-                totalAssetAmount = Balance(totalAssetAmount!!)
+                merkleTreeRootId = snapshot.resultTree!!,
+                merkleRootHash = Hash(get(ROOT.HASH)!!),
+                merkleTreeDepth = get(ROOT.DEPTH)!!,
+                merkleTreeLeafCount = get(ROOT.LEAF_COUNT)!!,
+                hashFn = HashFunction.fromDbEnum(get(ROOT.HASH_FN)!!),
+                merkleTreeIpfsHash = IpfsHash(snapshot.treeIpfsHash!!),
+                totalAssetAmount = Balance(snapshot.totalAssetAmount!!)
             )
         } else OtherSnapshotData(snapshotStatus, snapshotFailureCause)
 
         return Snapshot(
-            id = id!!,
-            name = name!!,
-            chainId = ChainId(chainId!!),
-            assetAddress = ContractAddress(assetAddress!!),
-            blockNumber = BlockNumber(blockNumber!!),
-            ignoredHolderAddresses = ignoredHolderAddresses!!.mapTo(HashSet()) { WalletAddress(it!!) },
-            ownerAddress = WalletAddress(ownerAddress!!),
+            id = snapshot.id!!,
+            name = snapshot.name!!,
+            chainId = ChainId(snapshot.chainId!!),
+            assetAddress = ContractAddress(snapshot.assetAddress!!),
+            blockNumber = BlockNumber(snapshot.blockNumber!!),
+            ignoredHolderAddresses = snapshot.ignoredHolderAddresses!!.mapTo(HashSet()) { WalletAddress(it!!) },
+            ownerAddress = WalletAddress(snapshot.ownerAddress!!),
             data = snapshotData
         )
     }
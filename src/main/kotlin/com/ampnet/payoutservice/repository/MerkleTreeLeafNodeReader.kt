@@ -0,0 +1,60 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.WalletAddress
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import java.util.UUID
+
+/**
+ * Reads leaf nodes of any number of Merkle trees with a single query, ordered by tree and leaf position. Records are
+ * read via server-side cursor, so at most [fetchSize] records are held in memory at once and each record is mapped
+ * into its [AccountBalance] as soon as it is read.
+ */
+class MerkleTreeLeafNodeReader(private val fetchSize: Int) {
+
+    /**
+     * Leaf nodes of a single Merkle tree, ordered by their leaf position.
+     */
+    class StoredLeafNodes {
+        private val leafNodes = ArrayList<AccountBalance>()
+
+        val leaves: List<AccountBalance>
+            get() = leafNodes
+
+        // restoring tree from stored node hashes is only possible when leaf positions are exactly [0, leafCount)
+        var hasAllPositions: Boolean = true
+            private set
+
+        internal fun add(leaf: AccountBalance, leafPosition: Int) {
+            hasAllPositions = hasAllPositions && leafPosition == leafNodes.size
+            leafNodes.add(leaf)
+        }
+    }
+
+    fun read(dslContext: DSLContext, rootIds: Collection<UUID>): Map<UUID, StoredLeafNodes> {
+        val leafNodes = rootIds.associateWith { StoredLeafNodes() }
+        val table = MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE
+
+        // cursor is only used by the database driver when the query is executed within a transaction
+        dslContext.transaction { configuration ->
+            DSL.using(configuration).select(table.MERKLE_ROOT, table.ADDRESS, table.BALANCE, table.LEAF_POSITION)
+                .from(table)
+                .where(table.MERKLE_ROOT.`in`(rootIds))
+                .orderBy(table.MERKLE_ROOT.asc(), table.LEAF_POSITION.asc())
+                .fetchSize(fetchSize)
+                .fetchLazy()
+                .use { cursor ->
+                    cursor.forEach {
+                        val address = WalletAddress.fromBytes(it.value2()!!)
+                        val balance = Balance.fromBytes(it.value3()!!)
+                        leafNodes.getValue(it.value1()!!).add(AccountBalance(address, balance), it.value4()!!)
+                    }
+                }
+        }
+
+        return leafNodes
+    }
+}
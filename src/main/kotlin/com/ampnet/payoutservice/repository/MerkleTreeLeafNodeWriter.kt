@@ -0,0 +1,153 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeafNode
+import com.ampnet.payoutservice.generated.jooq.tables.records.MerkleTreeLeafNodeRecord
+import com.ampnet.payoutservice.util.FlatMerkleTree
+import com.ampnet.payoutservice.util.MerkleTree
+import mu.KLogging
+import org.jooq.DSLContext
+import org.postgresql.PGConnection
+import org.postgresql.copy.PGCopyOutputStream
+import java.io.DataOutputStream
+import java.sql.Connection
+import java.util.UUID
+
+/**
+ * Inserts Merkle tree leaf nodes in bulk. Records are streamed into the database via PostgreSQL `COPY` in binary
+ * format when the underlying connection supports it, otherwise they are inserted using multi-row inserts of at most
+ * [CHUNK_SIZE] records. Records are consumed lazily, so the whole set of records never has to be in memory at once.
+ * Must be used within the same transaction as the root node insert.
+ */
+class MerkleTreeLeafNodeWriter(private val useCopy: Boolean = true) {
+
+    companion object : KLogging() {
+        private const val CHUNK_SIZE = 1_000
+        private const val COPY_BUFFER_SIZE = 65_536
+        private val COPY_SIGNATURE = "PGCOPY\n\u00ff\r\n\u0000".toByteArray(Charsets.ISO_8859_1)
+        private val TABLE = MerkleTreeLeafNode.MERKLE_TREE_LEAF_NODE
+        private val FIELDS = listOf(
+            TABLE.MERKLE_ROOT,
+            TABLE.PATH_DIRECTIONS,
+            TABLE.LEAF_POSITION,
+            TABLE.ADDRESS,
+            TABLE.BALANCE,
+            TABLE.PATH_SIBLINGS
+        )
+        private const val UUID_SIZE = 16
+        private const val INT_SIZE = 4
+        private const val LONG_SIZE = 8
+        private const val NULL_SIZE = -1
+    }
+
+    fun write(dslContext: DSLContext, tree: MerkleTree, rootId: UUID) = write(dslContext, leafRecords(tree, rootId))
+
+    fun write(dslContext: DSLContext, records: Sequence<MerkleTreeLeafNodeRecord>) =
+        dslContext.connection { connection ->
+            val pgConnection = if (useCopy) connection.pgConnection() else null
+
+            if (pgConnection != null) {
+                copy(dslContext, pgConnection, records)
+            } else {
+                insertInChunks(dslContext, records)
+            }
+        }
+
+    // leaf nodes of flat trees are stored together with their paths, other trees use leaf index as leaf position
+    private fun leafRecords(tree: MerkleTree, rootId: UUID): Sequence<MerkleTreeLeafNodeRecord> =
+        if (tree is FlatMerkleTree) {
+            (0 until tree.leafCount).asSequence().map { position ->
+                val leaf = tree.leafAt(position)
+                val path = tree.packedPathAt(position)
+
+                MerkleTreeLeafNodeRecord(
+                    merkleRoot = rootId,
+                    pathDirections = path.directions,
+                    leafPosition = position,
+                    address = leaf.address.bytes,
+                    balance = leaf.balance.bytes,
+                    pathSiblings = path.siblings
+                )
+            }
+        } else {
+            tree.leafNodesByHash.values.asSequence().map {
+                MerkleTreeLeafNodeRecord(
+                    merkleRoot = rootId,
+                    leafPosition = it.index,
+                    address = it.value.data.address.bytes,
+                    balance = it.value.data.balance.bytes
+                )
+            }
+        }
+
+    private fun Connection.pgConnection(): PGConnection? =
+        if (isWrapperFor(PGConnection::class.java)) {
+            unwrap(PGConnection::class.java)
+        } else {
+            logger.warn { "Connection does not support COPY, leaf nodes will be inserted in chunks" }
+            null
+        }
+
+    private fun copy(dslContext: DSLContext, connection: PGConnection, records: Sequence<MerkleTreeLeafNodeRecord>) {
+        val columns = FIELDS.joinToString(", ") { dslContext.render(it.unqualifiedName) }
+        val sql = "COPY ${dslContext.render(TABLE)} ($columns) FROM STDIN (FORMAT BINARY)"
+        val copyStream = PGCopyOutputStream(connection, sql, COPY_BUFFER_SIZE)
+
+        DataOutputStream(copyStream).use { output ->
+            output.write(COPY_SIGNATURE)
+            output.writeInt(0) // flags
+            output.writeInt(0) // header extension length
+
+            records.forEach {
+                output.writeShort(FIELDS.size)
+                output.writeUuidField(it.merkleRoot)
+                output.writeLongField(it.pathDirections)
+                output.writeIntField(it.leafPosition)
+                output.writeBytesField(it.address)
+                output.writeBytesField(it.balance)
+                output.writeBytesField(it.pathSiblings)
+            }
+
+            output.writeShort(NULL_SIZE) // trailer
+        }
+    }
+
+    private fun insertInChunks(dslContext: DSLContext, records: Sequence<MerkleTreeLeafNodeRecord>) =
+        records.chunked(CHUNK_SIZE).forEach { chunk ->
+            val insert = dslContext.insertQuery(TABLE)
+            chunk.forEach { insert.addRecord(it) }
+            insert.execute()
+        }
+
+    private fun DataOutputStream.writeUuidField(value: UUID?) =
+        if (value == null) {
+            writeInt(NULL_SIZE)
+        } else {
+            writeInt(UUID_SIZE)
+            writeLong(value.mostSignificantBits)
+            writeLong(value.leastSignificantBits)
+        }
+
+    private fun DataOutputStream.writeBytesField(value: ByteArray?) =
+        if (value == null) {
+            writeInt(NULL_SIZE)
+        } else {
+            writeInt(value.size)
+            write(value)
+        }
+
+    private fun DataOutputStream.writeIntField(value: Int?) =
+        if (value == null) {
+            writeInt(NULL_SIZE)
+        } else {
+            writeInt(INT_SIZE)
+            writeInt(value)
+        }
+
+    private fun DataOutputStream.writeLongField(value: Long?) =
+        if (value == null) {
+            writeInt(NULL_SIZE)
+        } else {
+            writeInt(LONG_SIZE)
+            writeLong(value)
+        }
+}
@@ -2,6 +2,7 @@ package com.ampnet.payoutservice.repository
 
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
 import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
 import com.ampnet.payoutservice.model.result.MerkleTreeWithId
 import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
@@ -13,5 +14,9 @@ interface MerkleTreeRepository {
     fun getById(treeId: UUID): MerkleTree?
     fun storeTree(tree: MerkleTree, chainId: ChainId, assetAddress: ContractAddress, blockNumber: BlockNumber): UUID
     fun fetchTree(params: FetchMerkleTreeParams): MerkleTreeWithId?
-    fun containsAddress(params: FetchMerkleTreePathParams): Boolean
+    fun fetchTrees(params: Collection<FetchMerkleTreeParams>): Map<FetchMerkleTreeParams, MerkleTreeWithId>
+    fun fetchPath(params: FetchMerkleTreePathParams): AccountBalanceWithPath?
+    fun fetchPaths(
+        params: Collection<FetchMerkleTreePathParams>
+    ): Map<FetchMerkleTreePathParams, AccountBalanceWithPath>
 }
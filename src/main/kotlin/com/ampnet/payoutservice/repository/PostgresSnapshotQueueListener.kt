@@ -0,0 +1,88 @@
+package com.ampnet.payoutservice.repository
+
+import mu.KLogging
+import org.postgresql.PGConnection
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties
+import org.springframework.stereotype.Component
+import java.sql.Connection
+import java.sql.DriverManager
+
+/**
+ * Listens for notifications which are sent on [CHANNEL] whenever a snapshot is created. Notifications are received on
+ * a dedicated database connection and a dedicated thread, so that snapshot queue workers can be woken up as soon as
+ * new snapshots are submitted instead of waiting for the next queue poll. The connection is opened outside of the
+ * connection pool, as it is held for as long as the listener is running.
+ */
+@Component
+class PostgresSnapshotQueueListener(private val dataSourceProperties: DataSourceProperties) : SnapshotQueueListener {
+
+    companion object : KLogging() {
+        const val CHANNEL = "payout_service_snapshot_queue"
+        private const val NOTIFICATION_TIMEOUT_MILLIS = 1_000
+        private const val RECONNECT_DELAY_MILLIS = 5_000L
+    }
+
+    @Volatile
+    private var isStopped = false
+
+    override fun start(onSnapshotCreated: () -> Unit) {
+        Thread({ listen(onSnapshotCreated) }, "SnapshotQueueListener").apply {
+            isDaemon = true
+            start()
+        }
+    }
+
+    override fun stop() {
+        isStopped = true
+    }
+
+    // notifications sent while the connection is being re-established are lost, such snapshots are picked up by the
+    // regular snapshot queue polling
+    @Suppress("TooGenericExceptionCaught")
+    private fun listen(onSnapshotCreated: () -> Unit) {
+        while (!isStopped) {
+            try {
+                openConnection().use { receiveNotifications(it, onSnapshotCreated) }
+            } catch (ex: Exception) {
+                logger.warn { "Snapshot queue listener failed, reconnecting: ${ex.message}" }
+                sleepBeforeReconnect()
+            }
+        }
+    }
+
+    private fun openConnection(): Connection =
+        DriverManager.getConnection(
+            dataSourceProperties.determineUrl(),
+            dataSourceProperties.determineUsername(),
+            dataSourceProperties.determinePassword()
+        )
+
+    private fun sleepBeforeReconnect() {
+        try {
+            Thread.sleep(RECONNECT_DELAY_MILLIS)
+        } catch (ex: InterruptedException) {
+            logger.warn { "Snapshot queue listener interrupted, stopping" }
+            isStopped = true
+        }
+    }
+
+    private fun receiveNotifications(connection: Connection, onSnapshotCreated: () -> Unit) {
+        val pgConnection = connection.unwrap(PGConnection::class.java)
+
+        connection.createStatement().use { it.execute("LISTEN $CHANNEL") }
+
+        if (!connection.autoCommit) {
+            connection.commit()
+        }
+
+        logger.info { "Listening for snapshot queue notifications on channel: $CHANNEL" }
+
+        while (!isStopped) {
+            if (!pgConnection.getNotifications(NOTIFICATION_TIMEOUT_MILLIS).isNullOrEmpty()) {
+                onSnapshotCreated()
+            }
+        }
+
+        connection.createStatement().use { it.execute("UNLISTEN $CHANNEL") }
+    }
+}
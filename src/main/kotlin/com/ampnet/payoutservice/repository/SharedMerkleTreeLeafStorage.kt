@@ -0,0 +1,148 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeLeaf
+import com.ampnet.payoutservice.generated.jooq.tables.MerkleTreeRoot
+import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.repository.MerkleTreeLeafNodeReader.StoredLeafNodes
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.FlatMerkleTree
+import com.ampnet.payoutservice.util.Hash
+import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.PackedLeafIds
+import com.ampnet.payoutservice.util.WalletAddress
+import org.jooq.DSLContext
+import org.jooq.impl.DSL
+import java.util.UUID
+
+/**
+ * Stores Merkle tree leaves so that each distinct (address, balance) leaf is stored only once per asset, no matter how
+ * many trees of that asset contain it. Trees refer to their leaves via [PackedLeafIds] which are stored on the tree
+ * root, so storing a tree only writes leaves which were not already present in some earlier tree of the same asset.
+ *
+ * Leaves stored this way carry no Merkle paths: a path depends on the whole tree, so sharing a leaf row between trees
+ * rules out storing its path on that row, and a per-tree path table would cost roughly `32 * depth` bytes per leaf per
+ * tree, which undoes the space saving. Path lookups on shared-leaf trees therefore read all tree leaves and restore the
+ * tree from its stored node hashes, which needs no hashing but is linear in the number of leaves.
+ */
+class SharedMerkleTreeLeafStorage(private val fetchSize: Int) {
+
+    companion object {
+        private const val CHUNK_SIZE = 5_000
+        private val TABLE = MerkleTreeLeaf.MERKLE_TREE_LEAF
+    }
+
+    /**
+     * Stores all leaves of the tree which are not yet stored for the specified asset and returns IDs of all tree
+     * leaves in leaf position order. Must be used within the same transaction as the root node insert.
+     */
+    fun write(
+        dslContext: DSLContext,
+        tree: MerkleTree,
+        chainId: ChainId,
+        assetAddress: ContractAddress
+    ): PackedLeafIds {
+        val leaves = if (tree is FlatMerkleTree) {
+            (0 until tree.leafCount).asSequence().map { tree.leafAt(it) }
+        } else {
+            tree.leafNodesByHash.values.sortedBy { it.index }.asSequence().map { it.value.data }
+        }
+        val leafIds = LongArray(tree.leafCount)
+        var position = 0
+
+        leaves.chunked(CHUNK_SIZE).forEach { chunk ->
+            val insert = dslContext.insertInto(TABLE, TABLE.CHAIN_ID, TABLE.ASSET_ADDRESS, TABLE.ADDRESS, TABLE.BALANCE)
+            chunk.forEach { insert.values(chainId.value, assetAddress.rawValue, it.address.bytes, it.balance.bytes) }
+            insert.onConflictDoNothing().execute()
+
+            val idsByLeaf = dslContext.select(TABLE.ID, TABLE.ADDRESS, TABLE.BALANCE)
+                .from(TABLE)
+                .where(
+                    DSL.and(
+                        TABLE.CHAIN_ID.eq(chainId.value),
+                        TABLE.ASSET_ADDRESS.eq(assetAddress.rawValue),
+                        DSL.row(TABLE.ADDRESS, TABLE.BALANCE).`in`(
+                            chunk.map { DSL.row(it.address.bytes, it.balance.bytes) }
+                        )
+                    )
+                )
+                .fetch {
+                    val leaf = AccountBalance(WalletAddress.fromBytes(it.value2()!!), Balance.fromBytes(it.value3()!!))
+                    Pair(leaf, it.value1()!!)
+                }
+                .toMap()
+
+            chunk.forEach { leafIds[position++] = idsByLeaf.getValue(it) }
+        }
+
+        return PackedLeafIds.pack(leafIds)
+    }
+
+    /**
+     * Reads leaves of any number of Merkle trees with a single query. Leaves are returned in leaf position order.
+     */
+    fun read(dslContext: DSLContext, leafIdsByRoot: Map<UUID, PackedLeafIds>): Map<UUID, StoredLeafNodes> {
+        val unpackedLeafIds = leafIdsByRoot.mapValues { it.value.unpack() }
+        val allLeafIds = unpackedLeafIds.values.flatMapTo(HashSet()) { it.asIterable() }
+        val leavesById = HashMap<Long, AccountBalance>(allLeafIds.size)
+
+        // cursor is only used by the database driver when the query is executed within a transaction
+        if (allLeafIds.isNotEmpty()) {
+            dslContext.transaction { configuration ->
+                DSL.using(configuration).select(TABLE.ID, TABLE.ADDRESS, TABLE.BALANCE)
+                    .from(TABLE)
+                    .where(TABLE.ID.eq(DSL.any(DSL.value(allLeafIds.toTypedArray()))))
+                    .fetchSize(fetchSize)
+                    .fetchLazy()
+                    .use { cursor ->
+                        cursor.forEach {
+                            leavesById[it.value1()!!] = AccountBalance(
+                                address = WalletAddress.fromBytes(it.value2()!!),
+                                balance = Balance.fromBytes(it.value3()!!)
+                            )
+                        }
+                    }
+            }
+        }
+
+        return unpackedLeafIds.mapValues { (_, leafIds) ->
+            StoredLeafNodes().apply {
+                leafIds.forEachIndexed { position, leafId -> leavesById[leafId]?.let { add(it, position) } }
+            }
+        }
+    }
+
+    /**
+     * Returns parameters of those specified Merkle trees which are stored with shared leaves.
+     */
+    fun findTreesWithSharedLeaves(
+        dslContext: DSLContext,
+        params: Collection<FetchMerkleTreeParams>
+    ): List<FetchMerkleTreeParams> {
+        if (params.isEmpty()) {
+            return emptyList()
+        }
+
+        val root = MerkleTreeRoot.MERKLE_TREE_ROOT
+
+        return dslContext.select(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH)
+            .from(root)
+            .where(
+                DSL.and(
+                    DSL.row(root.CHAIN_ID, root.ASSET_ADDRESS, root.HASH).`in`(
+                        params.map { DSL.row(it.chainId.value, it.assetAddress.rawValue, it.rootHash.value) }
+                    ),
+                    root.LEAF_IDS.isNotNull
+                )
+            )
+            .fetch {
+                FetchMerkleTreeParams(
+                    rootHash = Hash(it.value3()!!),
+                    chainId = ChainId(it.value1()!!),
+                    assetAddress = ContractAddress(it.value2()!!)
+                )
+            }
+    }
+}
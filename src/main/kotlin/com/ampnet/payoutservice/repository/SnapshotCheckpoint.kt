@@ -0,0 +1,10 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.blockchain.Erc20BalancesCheckpoint
+import com.ampnet.payoutservice.util.BlockNumber
+
+interface SnapshotCheckpoint : Erc20BalancesCheckpoint {
+    val deploymentBlock: BlockNumber?
+
+    fun storeDeploymentBlock(deploymentBlock: BlockNumber)
+}
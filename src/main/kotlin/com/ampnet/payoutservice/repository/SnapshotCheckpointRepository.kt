@@ -0,0 +1,14 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import java.time.Duration
+
+interface SnapshotCheckpointRepository {
+    fun getCheckpoint(chainId: ChainId, assetAddress: ContractAddress, blockNumber: BlockNumber): SnapshotCheckpoint
+
+    fun deleteCheckpoint(chainId: ChainId, assetAddress: ContractAddress, blockNumber: BlockNumber)
+
+    fun deleteStaleCheckpoints(maxAge: Duration): Int
+}
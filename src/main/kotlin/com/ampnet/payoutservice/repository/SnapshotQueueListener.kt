@@ -0,0 +1,6 @@
+package com.ampnet.payoutservice.repository
+
+interface SnapshotQueueListener {
+    fun start(onSnapshotCreated: () -> Unit)
+    fun stop()
+}
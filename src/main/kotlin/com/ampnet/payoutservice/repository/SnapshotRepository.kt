@@ -3,12 +3,15 @@ package com.ampnet.payoutservice.repository
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.model.result.PendingSnapshot
 import com.ampnet.payoutservice.model.result.Snapshot
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.IpfsHash
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotFailureCause
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
+import java.time.Duration
 import java.util.UUID
 
 interface SnapshotRepository {
@@ -17,18 +20,35 @@ interface SnapshotRepository {
     fun getAllByChainIdOwnerAndStatuses(
         chainId: ChainId?,
         owner: WalletAddress?,
-        statuses: Set<SnapshotStatus>
-    ): List<Snapshot>
+        statuses: Set<SnapshotStatus>,
+        cursor: SnapshotCursor?,
+        limit: Int?
+    ): SnapshotPage<Snapshot>
+
+    fun streamAllByChainIdOwnerAndStatuses(
+        chainId: ChainId?,
+        owner: WalletAddress?,
+        statuses: Set<SnapshotStatus>,
+        action: (Snapshot) -> Unit
+    )
 
     fun createSnapshot(params: CreateSnapshotParams): UUID
-    fun getPending(): PendingSnapshot?
+    fun claimPending(
+        workerId: String,
+        leaseDuration: Duration,
+        excludedSnapshotIds: Set<UUID> = emptySet(),
+        excludedChainIds: Set<ChainId> = emptySet()
+    ): PendingSnapshot?
+
+    fun extendLeases(snapshotIds: Set<UUID>, workerId: String, leaseDuration: Duration): Set<UUID>
 
     fun completeSnapshot(
         snapshotId: UUID,
+        workerId: String,
         merkleTreeRootId: UUID,
         merkleTreeIpfsHash: IpfsHash,
         totalAssetAmount: Balance
     ): Snapshot?
 
-    fun failSnapshot(snapshotId: UUID, cause: SnapshotFailureCause): Snapshot?
+    fun failSnapshot(snapshotId: UUID, workerId: String, cause: SnapshotFailureCause): Snapshot?
 }
@@ -0,0 +1,57 @@
+package com.ampnet.payoutservice.service
+
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.repository.JooqMerkleTreeRepository
+import mu.KLogging
+import org.springframework.beans.factory.DisposableBean
+import org.springframework.stereotype.Service
+import java.util.UUID
+
+/**
+ * Stores node hashes of Merkle trees which were stored before node hashes were persisted. Backfill runs once in the
+ * background after startup and processes trees in batches, so that reads of such trees never write into the database.
+ */
+@Service
+class MerkleTreeNodeHashBackfillService(
+    private val merkleTreeRepository: JooqMerkleTreeRepository,
+    applicationProperties: ApplicationProperties,
+    scheduledExecutorServiceProvider: ScheduledExecutorServiceProvider
+) : DisposableBean {
+
+    companion object : KLogging() {
+        const val THREAD_PREFIX = "MerkleTreeNodeHashBackfill"
+    }
+
+    private val batchSize = applicationProperties.merkleTree.nodeHashBackfillBatchSize.coerceAtLeast(1)
+    private val executorService = scheduledExecutorServiceProvider.newScheduledThreadPool(THREAD_PREFIX, 1)
+
+    @Volatile
+    private var isStopped = false
+
+    init {
+        if (applicationProperties.merkleTree.nodeHashBackfill) {
+            executorService.submit { backfillNodeHashes() }
+        }
+    }
+
+    override fun destroy() {
+        logger.info { "Shutting down Merkle tree node hash backfill executor service..." }
+        isStopped = true
+        executorService.shutdown()
+    }
+
+    @Suppress("TooGenericExceptionCaught")
+    private fun backfillNodeHashes() {
+        try {
+            var lastTreeId: UUID? = null
+
+            do {
+                lastTreeId = merkleTreeRepository.backfillNodeHashes(lastTreeId, batchSize)
+            } while (lastTreeId != null && !isStopped)
+
+            logger.info { "Finished backfill of Merkle tree node hashes" }
+        } catch (ex: Throwable) {
+            logger.error { "Failed to backfill Merkle tree node hashes: ${ex.message}" }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.ampnet.payoutservice.service
+
+import com.ampnet.payoutservice.config.QueueProperties
+import com.ampnet.payoutservice.model.result.PendingSnapshot
+import com.ampnet.payoutservice.util.ChainId
+import mu.KLogging
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Keeps track of pending snapshots which are currently being processed by snapshot queue workers, so that each
+ * snapshot is claimed by a single worker and no chain is processed by more workers than its configured limit.
+ */
+class ProcessingSnapshots(private val queueProperties: QueueProperties) {
+
+    companion object : KLogging()
+
+    private class ProcessingSnapshot(val chainId: ChainId, val thread: Thread) {
+        var isCancelled = false
+    }
+
+    private val processingBySnapshotId = HashMap<UUID, ProcessingSnapshot>()
+    private val activeWorkers = AtomicInteger()
+
+    @Volatile
+    private var isStopped = false
+
+    /**
+     * Keeps claiming and processing pending snapshots until there are no more snapshots which can be claimed or until
+     * [stop] is called. Claimed snapshot is released once it has been processed. Returns immediately when the
+     * configured number of workers is already draining, so that additional wakeups never exceed that number.
+     */
+    fun drain(
+        fetchPending: (excludedSnapshotIds: Set<UUID>, excludedChainIds: Set<ChainId>) -> PendingSnapshot?,
+        process: (PendingSnapshot) -> Unit
+    ) {
+        if (activeWorkers.incrementAndGet() > queueProperties.workers.coerceAtLeast(1)) {
+            activeWorkers.decrementAndGet()
+            return
+        }
+
+        try {
+            do {
+                val snapshot = if (isStopped) null else claim(fetchPending)
+                snapshot?.let { processClaimed(it, process) }
+            } while (snapshot != null)
+        } finally {
+            activeWorkers.decrementAndGet()
+        }
+    }
+
+    /**
+     * Extends leases of all snapshots which are currently being processed. Snapshots whose leases could not be extended
+     * have already been reclaimed by some other worker after their leases have expired, so their processing is
+     * cancelled by interrupting the worker which is processing them.
+     */
+    @Suppress("TooGenericExceptionCaught")
+    fun heartbeat(extendLeases: (snapshotIds: Set<UUID>) -> Set<UUID>) {
+        val snapshotIds = synchronized(this) {
+            processingBySnapshotId.filterValues { !it.isCancelled }.keys.toSet()
+        }
+
+        if (snapshotIds.isNotEmpty()) {
+            try {
+                val extendedSnapshotIds = extendLeases(snapshotIds)
+                val lostSnapshotIds = synchronized(this) {
+                    snapshotIds.filter { it !in extendedSnapshotIds && it in processingBySnapshotId }
+                        .onEach { processingBySnapshotId.getValue(it).cancel() }
+                }
+
+                if (lostSnapshotIds.isNotEmpty()) {
+                    logger.warn {
+                        "Leases of snapshots which are still being processed were lost, cancelling processing:" +
+                            " $lostSnapshotIds"
+                    }
+                }
+            } catch (ex: Throwable) {
+                logger.error { "Failed to extend leases of processing snapshots: ${ex.message}" }
+            }
+        }
+    }
+
+    fun isCancelled(snapshotId: UUID): Boolean = synchronized(this) {
+        processingBySnapshotId[snapshotId]?.isCancelled ?: false
+    }
+
+    fun stop() {
+        isStopped = true
+    }
+
+    private fun ProcessingSnapshot.cancel() {
+        isCancelled = true
+        thread.interrupt()
+    }
+
+    private fun claim(
+        fetchPending: (excludedSnapshotIds: Set<UUID>, excludedChainIds: Set<ChainId>) -> PendingSnapshot?
+    ): PendingSnapshot? = synchronized(this) {
+        val saturatedChainIds = processingBySnapshotId.values.groupingBy { it.chainId }.eachCount()
+            .filter { (chainId, count) -> count >= maxWorkers(chainId) }
+            .keys
+
+        fetchPending(processingBySnapshotId.keys.toSet(), saturatedChainIds)
+            ?.also { processingBySnapshotId[it.id] = ProcessingSnapshot(it.chainId, Thread.currentThread()) }
+    }
+
+    private fun processClaimed(snapshot: PendingSnapshot, process: (PendingSnapshot) -> Unit) {
+        try {
+            process(snapshot)
+        } finally {
+            synchronized(this) {
+                processingBySnapshotId.remove(snapshot.id)
+            }
+
+            // snapshot can no longer be cancelled once it is removed, so interrupt status can be safely cleared
+            Thread.interrupted()
+        }
+    }
+
+    private fun maxWorkers(chainId: ChainId): Int =
+        queueProperties.chainMaxWorkers[chainId.value] ?: queueProperties.maxWorkersPerChain
+}
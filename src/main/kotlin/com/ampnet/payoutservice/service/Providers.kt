@@ -2,6 +2,8 @@ package com.ampnet.payoutservice.service
 
 import io.micrometer.core.instrument.util.NamedThreadFactory
 import org.springframework.stereotype.Service
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
 import java.util.UUID
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
@@ -10,13 +12,18 @@ interface UuidProvider {
     fun getUuid(): UUID
 }
 
+interface UtcDateTimeProvider {
+    fun getUtcDateTime(): OffsetDateTime
+}
+
 interface FixedScheduler {
     fun scheduleAtFixedRate(command: Runnable, initialDelay: Long, period: Long, unit: TimeUnit)
+    fun submit(command: Runnable)
     fun shutdown()
 }
 
 interface ScheduledExecutorServiceProvider {
-    fun newSingleThreadScheduledExecutor(threadPrefix: String): FixedScheduler
+    fun newScheduledThreadPool(threadPrefix: String, poolSize: Int): FixedScheduler
 }
 
 @Service
@@ -24,16 +31,23 @@ class RandomUuidProvider : UuidProvider {
     override fun getUuid(): UUID = UUID.randomUUID()
 }
 
+@Service
+class CurrentUtcDateTimeProvider : UtcDateTimeProvider {
+    override fun getUtcDateTime(): OffsetDateTime = OffsetDateTime.now(ZoneOffset.UTC)
+}
+
 @Service
 class DefaultScheduledExecutorServiceProvider : ScheduledExecutorServiceProvider {
-    override fun newSingleThreadScheduledExecutor(threadPrefix: String): FixedScheduler =
+    override fun newScheduledThreadPool(threadPrefix: String, poolSize: Int): FixedScheduler =
         object : FixedScheduler {
-            private val executor = Executors.newSingleThreadScheduledExecutor(NamedThreadFactory(threadPrefix))
+            private val executor = Executors.newScheduledThreadPool(poolSize, NamedThreadFactory(threadPrefix))
 
             override fun scheduleAtFixedRate(command: Runnable, initialDelay: Long, period: Long, unit: TimeUnit) {
                 executor.scheduleAtFixedRate(command, initialDelay, period, unit)
             }
 
+            override fun submit(command: Runnable) = executor.execute(command)
+
             override fun shutdown() = executor.shutdown()
         }
 }
@@ -2,7 +2,9 @@ package com.ampnet.payoutservice.service
 
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.model.result.FullSnapshot
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
 import java.util.UUID
@@ -14,6 +16,15 @@ interface SnapshotQueueService {
     fun getAllSnapshotsByChainIdOwnerAndStatuses(
         chainId: ChainId?,
         owner: WalletAddress?,
-        statuses: Set<SnapshotStatus>
-    ): List<FullSnapshot>
+        statuses: Set<SnapshotStatus>,
+        cursor: SnapshotCursor?,
+        limit: Int?
+    ): SnapshotPage<FullSnapshot>
+
+    fun streamAllSnapshotsByChainIdOwnerAndStatuses(
+        chainId: ChainId?,
+        owner: WalletAddress?,
+        statuses: Set<SnapshotStatus>,
+        action: (FullSnapshot) -> Unit
+    )
 }
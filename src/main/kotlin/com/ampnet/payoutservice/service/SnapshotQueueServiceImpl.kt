@@ -11,30 +11,44 @@ import com.ampnet.payoutservice.model.result.FullSnapshotData
 import com.ampnet.payoutservice.model.result.OptionalSnapshotData
 import com.ampnet.payoutservice.model.result.PendingSnapshot
 import com.ampnet.payoutservice.model.result.Snapshot
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.model.result.SuccessfulSnapshotData
+import com.ampnet.payoutservice.repository.ContractDeploymentBlockRepository
+import com.ampnet.payoutservice.repository.Erc20HolderIndexRepository
 import com.ampnet.payoutservice.repository.MerkleTreeRepository
+import com.ampnet.payoutservice.repository.SnapshotCheckpointRepository
+import com.ampnet.payoutservice.repository.SnapshotQueueListener
 import com.ampnet.payoutservice.repository.SnapshotRepository
 import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
 import com.ampnet.payoutservice.util.ChainId
 import com.ampnet.payoutservice.util.ContractAddress
 import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.ParallelMerkleTreeBuild
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotFailureCause
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
 import mu.KLogging
 import org.springframework.beans.factory.DisposableBean
 import org.springframework.stereotype.Service
+import java.time.Duration
 import java.util.UUID
 import java.util.concurrent.TimeUnit
 
 @Service
+@Suppress("TooManyFunctions")
 class SnapshotQueueServiceImpl(
     private val merkleTreeRepository: MerkleTreeRepository,
     private val snapshotRepository: SnapshotRepository,
+    private val snapshotCheckpointRepository: SnapshotCheckpointRepository,
+    private val erc20HolderIndexRepository: Erc20HolderIndexRepository,
+    private val contractDeploymentBlockRepository: ContractDeploymentBlockRepository,
     private val ipfsService: IpfsService,
     private val blockchainService: BlockchainService,
     private val applicationProperties: ApplicationProperties,
+    private val snapshotQueueListener: SnapshotQueueListener,
     scheduledExecutorServiceProvider: ScheduledExecutorServiceProvider
 ) : SnapshotQueueService, DisposableBean {
 
@@ -42,20 +56,60 @@ class SnapshotQueueServiceImpl(
         const val QUEUE_NAME = "SnapshotQueue"
     }
 
-    private val executorService = scheduledExecutorServiceProvider.newSingleThreadScheduledExecutor(QUEUE_NAME)
+    private val queueProperties = applicationProperties.createPayoutQueue
+    private val workers = queueProperties.workers.coerceAtLeast(1)
+    private val leaseDuration = Duration.ofMillis(queueProperties.leaseDuration)
+    private val checkpointMaxAge = Duration.ofMillis(queueProperties.checkpointMaxAge)
+
+    // one additional thread is used to extend leases of snapshots while all workers are busy
+    private val executorService = scheduledExecutorServiceProvider.newScheduledThreadPool(QUEUE_NAME, workers + 1)
+    private val processingSnapshots = ProcessingSnapshots(queueProperties)
+    private val parallelMerkleTreeBuild = ParallelMerkleTreeBuild(
+        parallelism = applicationProperties.merkleTree.parallelism,
+        threshold = applicationProperties.merkleTree.parallelThreshold
+    )
 
     init {
+        repeat(workers) {
+            executorService.scheduleAtFixedRate(
+                { processSnapshots() },
+                queueProperties.initialDelay,
+                queueProperties.polling,
+                TimeUnit.MILLISECONDS
+            )
+        }
+
         executorService.scheduleAtFixedRate(
-            { processSnapshots() },
-            applicationProperties.createPayoutQueue.initialDelay,
-            applicationProperties.createPayoutQueue.polling,
+            {
+                processingSnapshots.heartbeat {
+                    snapshotRepository.extendLeases(it, queueProperties.workerId, leaseDuration)
+                }
+            },
+            queueProperties.heartbeatInterval,
+            queueProperties.heartbeatInterval,
             TimeUnit.MILLISECONDS
         )
+
+        // checkpoints of failed snapshots are kept for a while so that re-submitted snapshots can resume from them
+        executorService.scheduleAtFixedRate(
+            { deleteStaleCheckpoints() },
+            queueProperties.checkpointCleanupInterval,
+            queueProperties.checkpointCleanupInterval,
+            TimeUnit.MILLISECONDS
+        )
+
+        // polling is only a fallback when workers are woken up by notifications about created snapshots
+        if (queueProperties.listenForNotifications) {
+            snapshotQueueListener.start { executorService.submit { processSnapshots() } }
+        }
     }
 
     override fun destroy() {
         logger.info { "Shutting down snapshot queue executor service..." }
+        snapshotQueueListener.stop()
+        processingSnapshots.stop()
         executorService.shutdown()
+        parallelMerkleTreeBuild.shutdown()
     }
 
     override fun submitSnapshot(params: CreateSnapshotParams): UUID {
@@ -72,14 +126,32 @@ class SnapshotQueueServiceImpl(
     override fun getAllSnapshotsByChainIdOwnerAndStatuses(
         chainId: ChainId?,
         owner: WalletAddress?,
-        statuses: Set<SnapshotStatus>
-    ): List<FullSnapshot> {
-        logger.debug { "Fetching all snapshots for chainId: $chainId, owner: $owner, statuses: $statuses" }
+        statuses: Set<SnapshotStatus>,
+        cursor: SnapshotCursor?,
+        limit: Int?
+    ): SnapshotPage<FullSnapshot> {
+        logger.debug {
+            "Fetching all snapshots for chainId: $chainId, owner: $owner, statuses: $statuses, cursor: $cursor," +
+                " limit: $limit"
+        }
 
-        return snapshotRepository.getAllByChainIdOwnerAndStatuses(chainId, owner, statuses)
+        // snapshots are not paged unless page size is requested, which keeps the response of existing clients complete
+        val pageSize = limit?.coerceIn(1, applicationProperties.snapshotList.maxPageSize)
+
+        return snapshotRepository.getAllByChainIdOwnerAndStatuses(chainId, owner, statuses, cursor, pageSize)
             .map { it.toResponse() }
     }
 
+    override fun streamAllSnapshotsByChainIdOwnerAndStatuses(
+        chainId: ChainId?,
+        owner: WalletAddress?,
+        statuses: Set<SnapshotStatus>,
+        action: (FullSnapshot) -> Unit
+    ) {
+        logger.debug { "Streaming all snapshots for chainId: $chainId, owner: $owner, statuses: $statuses" }
+        snapshotRepository.streamAllByChainIdOwnerAndStatuses(chainId, owner, statuses) { action(it.toResponse()) }
+    }
+
     private fun Snapshot.toResponse(): FullSnapshot =
         FullSnapshot(
             id = id,
@@ -96,57 +168,97 @@ class SnapshotQueueServiceImpl(
 
     private fun OptionalSnapshotData.createSnapshotData(): FullSnapshotData? {
         return if (this is SuccessfulSnapshotData) {
-            val tree = merkleTreeRepository.getById(merkleTreeRootId)
-
-            tree?.let {
-                FullSnapshotData(
-                    totalAssetAmount = totalAssetAmount,
-                    merkleRootHash = it.root.hash,
-                    merkleTreeIpfsHash = merkleTreeIpfsHash,
-                    merkleTreeDepth = it.root.depth,
-                    hashFn = it.hashFn
-                )
-            }
+            FullSnapshotData(
+                totalAssetAmount = totalAssetAmount,
+                merkleRootHash = merkleRootHash,
+                merkleTreeIpfsHash = merkleTreeIpfsHash,
+                merkleTreeDepth = merkleTreeDepth,
+                hashFn = hashFn
+            )
         } else null
     }
 
+    // each worker keeps processing pending snapshots until there are no more snapshots which it is allowed to claim;
+    // any exception is caught so that the scheduled worker task is never cancelled by the executor
     @Suppress("TooGenericExceptionCaught")
     private fun processSnapshots() {
-        snapshotRepository.getPending()?.let { snapshot ->
-            try {
-                handlePendingSnapshot(snapshot)
-            } catch (ex: Throwable) {
-                logger.error { "Failed to handle pending snapshot, snapshotId: ${snapshot.id}: ${ex.message}" }
-
-                val cause = when (ex.cause?.message?.contains("Log response size exceeded")) {
-                    true -> SnapshotFailureCause.LOG_RESPONSE_LIMIT
-                    else -> SnapshotFailureCause.OTHER
+        try {
+            processingSnapshots.drain(
+                { excludedSnapshotIds, excludedChainIds ->
+                    snapshotRepository.claimPending(
+                        workerId = queueProperties.workerId,
+                        leaseDuration = leaseDuration,
+                        excludedSnapshotIds = excludedSnapshotIds,
+                        excludedChainIds = excludedChainIds
+                    )
                 }
+            ) { snapshot -> processSnapshot(snapshot) }
+        } catch (ex: Throwable) {
+            logger.error { "Failed to process pending snapshots: ${ex.message}" }
+        }
+    }
 
-                snapshotRepository.failSnapshot(snapshot.id, cause)
+    @Suppress("TooGenericExceptionCaught")
+    private fun processSnapshot(snapshot: PendingSnapshot) {
+        try {
+            handlePendingSnapshot(snapshot)
+        } catch (ex: Throwable) {
+            if (processingSnapshots.isCancelled(snapshot.id)) {
+                logger.warn { "Processing of snapshot was cancelled after its lease was lost, snapshotId: ${snapshot.id}" }
+                return
             }
+
+            logger.error { "Failed to handle pending snapshot, snapshotId: ${snapshot.id}: ${ex.message}" }
+
+            val cause = if (applicationProperties.erc20Balances.isLogRangeTooLarge(ex)) {
+                SnapshotFailureCause.LOG_RESPONSE_LIMIT
+            } else {
+                SnapshotFailureCause.OTHER
+            }
+
+            snapshotRepository.failSnapshot(snapshot.id, queueProperties.workerId, cause)
         }
     }
 
+    @Suppress("TooGenericExceptionCaught")
+    private fun deleteStaleCheckpoints() {
+        try {
+            val deletedCheckpoints = snapshotCheckpointRepository.deleteStaleCheckpoints(checkpointMaxAge)
+            logger.debug { "Deleted stale snapshot checkpoints: $deletedCheckpoints" }
+        } catch (ex: Throwable) {
+            logger.error { "Failed to delete stale snapshot checkpoints: ${ex.message}" }
+        }
+    }
+
+    // progress is stored into the checkpoint, so reclaimed or re-submitted snapshots continue where processing stopped
     private fun handlePendingSnapshot(snapshot: PendingSnapshot) {
-        val contractDeploymentBlock = blockchainService.findContractDeploymentBlockNumber(
+        val checkpoint = snapshotCheckpointRepository.getCheckpoint(
             chainId = snapshot.chainId,
-            contractAddress = snapshot.assetAddress
+            assetAddress = snapshot.assetAddress,
+            blockNumber = snapshot.blockNumber
         )
+        val contractDeploymentBlock = checkpoint.deploymentBlock
+            ?: findContractDeploymentBlock(snapshot.chainId, snapshot.assetAddress)
+                .also { checkpoint.storeDeploymentBlock(it) }
+        val holderIndex = if (applicationProperties.erc20Balances.holderIndex) {
+            erc20HolderIndexRepository.getHolderIndex(snapshot.chainId, snapshot.assetAddress)
+        } else null
         val balances = blockchainService.fetchErc20AccountBalances(
             chainId = snapshot.chainId,
             erc20ContractAddress = snapshot.assetAddress,
             ignoredErc20Addresses = snapshot.ignoredHolderAddresses,
             startBlock = contractDeploymentBlock,
-            endBlock = snapshot.blockNumber
+            endBlock = snapshot.blockNumber,
+            checkpoint = checkpoint,
+            holderIndex = holderIndex
         )
         val totalAssetAmount = Balance(balances.sumOf { it.balance.rawValue })
 
         logger.info { "Total sum of non-ignored asset balances: $totalAssetAmount" }
 
-        val tree = MerkleTree(balances, HashFunction.KECCAK_256)
+        val tree = MerkleTree(balances, HashFunction.KECCAK_256, parallelMerkleTreeBuild)
         val alreadyInsertedTree = merkleTreeRepository.fetchTree(
-            FetchMerkleTreeParams(tree.root.hash, snapshot.chainId, snapshot.assetAddress)
+            FetchMerkleTreeParams(tree.rootHash, snapshot.chainId, snapshot.assetAddress)
         )
 
         val rootId = if (alreadyInsertedTree != null) {
@@ -159,10 +271,38 @@ class SnapshotQueueServiceImpl(
 
         val ipfsHash = ipfsService.pinJsonToIpfs(tree)
 
-        snapshotRepository.completeSnapshot(snapshot.id, rootId, ipfsHash, totalAssetAmount)
+        val completedSnapshot = snapshotRepository.completeSnapshot(
+            snapshotId = snapshot.id,
+            workerId = queueProperties.workerId,
+            merkleTreeRootId = rootId,
+            merkleTreeIpfsHash = ipfsHash,
+            totalAssetAmount = totalAssetAmount
+        )
+
+        // checkpoint is still used by the worker which took over the lease, so it is only deleted by the lease holder
+        if (completedSnapshot == null) {
+            logger.warn { "Snapshot lease was lost before completion, result is discarded: ${snapshot.id}" }
+            return
+        }
+
+        snapshotCheckpointRepository.deleteCheckpoint(snapshot.chainId, snapshot.assetAddress, snapshot.blockNumber)
         logger.info { "Snapshot completed: ${snapshot.id}" }
     }
 
+    // deployment block of a contract never changes, so it is looked up on the blockchain only once per contract;
+    // blocks which are not actual deployment blocks depend on chain configuration and are looked up every time
+    private fun findContractDeploymentBlock(chainId: ChainId, assetAddress: ContractAddress): BlockNumber {
+        contractDeploymentBlockRepository.getDeploymentBlock(chainId, assetAddress)?.let { return it }
+
+        val deploymentBlock = blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress)
+
+        if (deploymentBlock.isFound) {
+            contractDeploymentBlockRepository.storeDeploymentBlock(chainId, assetAddress, deploymentBlock.blockNumber)
+        }
+
+        return deploymentBlock.blockNumber
+    }
+
     private fun checkAssetOwnerIfNeeded(
         chainId: ChainId,
         assetAddress: ContractAddress,
@@ -1,5 +1,14 @@
 package com.ampnet.payoutservice.util
 
 data class AccountBalance(val address: WalletAddress, val balance: Balance) {
+    companion object {
+        const val ABI_ENCODED_SIZE = 2 * ABI_WORD_SIZE
+    }
+
     fun abiEncode(): String = address.abiEncode() + balance.abiEncode()
+
+    fun abiEncodeInto(target: ByteArray, offset: Int = 0) {
+        address.abiEncodeInto(target, offset)
+        balance.abiEncodeInto(target, offset + ABI_WORD_SIZE)
+    }
 }
@@ -0,0 +1,114 @@
+package com.ampnet.payoutservice.util
+
+import org.web3j.utils.Numeric
+
+/**
+ * Binary representation of a 32 byte hash, stored as four big-endian 64-bit words. Hashes are compared as unsigned
+ * 256-bit integers without any allocation, which results in the same ordering as [Hash.compareTo]. Hex representation
+ * is only computed when [toHash] is called.
+ */
+class BinaryHash private constructor(
+    private val word0: Long,
+    private val word1: Long,
+    private val word2: Long,
+    private val word3: Long
+) : Comparable<BinaryHash> {
+
+    companion object {
+        const val SIZE_BYTES = 32
+        private const val WORD_SIZE_BYTES = 8
+        private const val WORD_2_OFFSET = 2 * WORD_SIZE_BYTES
+        private const val WORD_3_OFFSET = 3 * WORD_SIZE_BYTES
+        private const val BYTE_SIZE_BITS = 8
+        private const val BYTE_MASK = 0xff
+        private const val NIBBLE_SIZE_BITS = 4
+        private const val NIBBLE_MASK = 0x0f
+        private const val HEX_PREFIX = "0x"
+        private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+        fun fromBytes(bytes: ByteArray, offset: Int = 0): BinaryHash {
+            require(offset >= 0 && bytes.size - offset >= SIZE_BYTES) {
+                "Not enough bytes to read hash at offset $offset from array of size ${bytes.size}"
+            }
+
+            return BinaryHash(
+                word0 = readWord(bytes, offset),
+                word1 = readWord(bytes, offset + WORD_SIZE_BYTES),
+                word2 = readWord(bytes, offset + WORD_2_OFFSET),
+                word3 = readWord(bytes, offset + WORD_3_OFFSET)
+            )
+        }
+
+        fun fromHash(hash: Hash): BinaryHash {
+            val bytes = Numeric.hexStringToByteArray(hash.value)
+            require(bytes.size == SIZE_BYTES) { "Hash $hash is not $SIZE_BYTES bytes long" }
+            return fromBytes(bytes)
+        }
+
+        fun hexString(bytes: ByteArray, offset: Int, length: Int): String {
+            val chars = CharArray(HEX_PREFIX.length + length * 2)
+            HEX_PREFIX.toCharArray(chars)
+
+            for (i in 0 until length) {
+                val byte = bytes[offset + i].toInt() and BYTE_MASK
+                val charIndex = HEX_PREFIX.length + i * 2
+                chars[charIndex] = HEX_DIGITS[byte ushr NIBBLE_SIZE_BITS]
+                chars[charIndex + 1] = HEX_DIGITS[byte and NIBBLE_MASK]
+            }
+
+            return String(chars)
+        }
+
+        private fun readWord(bytes: ByteArray, offset: Int): Long {
+            var word = 0L
+
+            for (i in 0 until WORD_SIZE_BYTES) {
+                word = (word shl BYTE_SIZE_BITS) or (bytes[offset + i].toLong() and BYTE_MASK.toLong())
+            }
+
+            return word
+        }
+
+        private fun writeWord(word: Long, target: ByteArray, offset: Int) {
+            for (i in 0 until WORD_SIZE_BYTES) {
+                val shift = (WORD_SIZE_BYTES - 1 - i) * BYTE_SIZE_BITS
+                target[offset + i] = (word ushr shift).toByte()
+            }
+        }
+    }
+
+    @Volatile
+    private var hexValue: String? = null
+
+    fun writeTo(target: ByteArray, offset: Int = 0) {
+        writeWord(word0, target, offset)
+        writeWord(word1, target, offset + WORD_SIZE_BYTES)
+        writeWord(word2, target, offset + WORD_2_OFFSET)
+        writeWord(word3, target, offset + WORD_3_OFFSET)
+    }
+
+    fun toByteArray(): ByteArray = ByteArray(SIZE_BYTES).apply { writeTo(this) }
+
+    fun toHash(): Hash {
+        val hex = hexValue ?: toByteArray().let { hexString(it, 0, it.size) }.also { hexValue = it }
+        return Hash(hex)
+    }
+
+    override fun compareTo(other: BinaryHash): Int {
+        var result = word0.toULong().compareTo(other.word0.toULong())
+
+        if (result == 0) result = word1.toULong().compareTo(other.word1.toULong())
+        if (result == 0) result = word2.toULong().compareTo(other.word2.toULong())
+        if (result == 0) result = word3.toULong().compareTo(other.word3.toULong())
+
+        return result
+    }
+
+    override fun equals(other: Any?): Boolean =
+        other is BinaryHash && word0 == other.word0 && word1 == other.word1 &&
+            word2 == other.word2 && word3 == other.word3
+
+    override fun hashCode(): Int = word0.hashCode()
+
+    override fun toString(): String = "BinaryHash(value=${toHash().value})"
+}
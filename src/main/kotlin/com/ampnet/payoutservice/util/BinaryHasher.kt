@@ -0,0 +1,31 @@
+package com.ampnet.payoutservice.util
+
+import org.bouncycastle.crypto.digests.KeccakDigest
+
+/**
+ * Binary form of a [HashFunction] which produces [BinaryHash.SIZE_BYTES] byte hashes. Produces the same hash as
+ * the hash function called with hex encoding of the input bytes, but without any intermediate strings. Only hash
+ * functions with fixed-size output have a binary form, see [HashFunction.binaryHasher].
+ */
+fun interface BinaryHasher {
+
+    /**
+     * Hashes [length] bytes of [input] starting at [offset] and writes the resulting hash into [output] starting at
+     * [outputOffset].
+     */
+    fun hash(input: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int)
+}
+
+@Suppress("MagicNumber")
+internal object Keccak256BinaryHasher : BinaryHasher {
+
+    // digest instances are not thread safe, but can be reused after each doFinal() call
+    private val digest = ThreadLocal.withInitial { KeccakDigest(256) }
+
+    override fun hash(input: ByteArray, offset: Int, length: Int, output: ByteArray, outputOffset: Int) {
+        digest.get().apply {
+            update(input, offset, length)
+            doFinal(output, outputOffset)
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.ampnet.payoutservice.util
+
+import java.math.BigInteger
+import java.util.TreeMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+
+/**
+ * Scans block range `[fromBlock, toBlock]` in chunks which are fetched concurrently on [executor], at most
+ * [parallelism] of them at once. Chunks which fail because their range is too large (according to [isRangeTooLarge])
+ * are split in half and fetched again, and the size of new chunks is lowered accordingly. After each round without
+ * such failures chunk size is doubled, up to [maxRangeSize]. Results are reported in block order, each chunk only after
+ * all preceding blocks were scanned, so the last reported block can always be used to resume scanning.
+ */
+class BlockRangeScanner(
+    private val executor: ExecutorService,
+    private val parallelism: Int,
+    private val initialRangeSize: BigInteger,
+    private val maxRangeSize: BigInteger,
+    private val isRangeTooLarge: (Throwable) -> Boolean
+) {
+
+    init {
+        require(parallelism > 0) { "Block range scan parallelism must be positive" }
+        require(initialRangeSize > BigInteger.ZERO) { "Initial block range size must be positive" }
+        require(maxRangeSize >= initialRangeSize) { "Max block range size must not be lower than initial size" }
+    }
+
+    data class BlockRange(val from: BigInteger, val to: BigInteger) {
+        val size: BigInteger
+            get() = to - from + BigInteger.ONE
+
+        fun split(): Pair<BlockRange, BlockRange> {
+            val middle = from + size / BigInteger.TWO
+            return Pair(BlockRange(from, middle - BigInteger.ONE), BlockRange(middle, to))
+        }
+    }
+
+    fun <T> scan(
+        fromBlock: BigInteger,
+        toBlock: BigInteger,
+        fetch: (BlockRange) -> T,
+        onScanned: (BlockRange, T) -> Unit
+    ) {
+        val state = ScanState<T>(fromBlock, toBlock)
+
+        while (state.scannedTo < toBlock) {
+            val ranges = state.nextRanges()
+            val futures = ranges.map { range -> Pair(range, executor.submit(Callable { fetch(range) })) }
+
+            try {
+                futures.forEach { (range, future) -> state.complete(range, future) }
+            } finally {
+                futures.forEach { it.second.cancel(true) }
+            }
+
+            state.commit(onScanned)
+        }
+    }
+
+    private inner class ScanState<T>(fromBlock: BigInteger, private val toBlock: BigInteger) {
+        var scannedTo: BigInteger = fromBlock - BigInteger.ONE
+            private set
+
+        private var nextBlock = fromBlock
+        private var rangeSize = initialRangeSize
+        private var failedRangeSize: BigInteger? = null
+        private val splitRanges = TreeMap<BigInteger, BlockRange>()
+        private val completedRanges = TreeMap<BigInteger, Pair<BlockRange, T>>()
+
+        // split ranges always precede new ones, so they are fetched first to keep reported progress contiguous
+        fun nextRanges(): List<BlockRange> {
+            val ranges = ArrayList<BlockRange>(parallelism)
+
+            while (ranges.size < parallelism && splitRanges.isNotEmpty()) {
+                ranges.add(splitRanges.pollFirstEntry().value)
+            }
+
+            while (ranges.size < parallelism && nextBlock <= toBlock) {
+                val range = BlockRange(nextBlock, (nextBlock + rangeSize - BigInteger.ONE).min(toBlock))
+                ranges.add(range)
+                nextBlock = range.to + BigInteger.ONE
+            }
+
+            return ranges
+        }
+
+        fun complete(range: BlockRange, future: Future<T>) {
+            try {
+                completedRanges[range.from] = Pair(range, future.get())
+            } catch (ex: ExecutionException) {
+                val cause = ex.cause ?: ex
+
+                if (range.size == BigInteger.ONE || !isRangeTooLarge(cause)) {
+                    throw cause
+                }
+
+                val (lower, upper) = range.split()
+                splitRanges[lower.from] = lower
+                splitRanges[upper.from] = upper
+                failedRangeSize = (failedRangeSize ?: lower.size).min(lower.size)
+            }
+        }
+
+        fun commit(onScanned: (BlockRange, T) -> Unit) {
+            rangeSize = failedRangeSize?.min(rangeSize) ?: (rangeSize * BigInteger.TWO).min(maxRangeSize)
+            failedRangeSize = null
+
+            while (completedRanges.isNotEmpty() && completedRanges.firstKey() == scannedTo + BigInteger.ONE) {
+                val (range, result) = completedRanges.pollFirstEntry().value
+                onScanned(range, result)
+                scannedTo = range.to
+            }
+        }
+    }
+}
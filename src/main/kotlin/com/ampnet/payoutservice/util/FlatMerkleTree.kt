@@ -0,0 +1,168 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.util.FlatMerkleTreeBuilder.Companion.hashLeaf
+import com.ampnet.payoutservice.util.MerkleTree.Companion.LeafNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.MiddleNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.NilNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.Node
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathSegment
+import com.ampnet.payoutservice.util.MerkleTree.Companion.RootNode
+import com.ampnet.payoutservice.util.MerkleTreeLevels.Companion.HASH_SIZE
+
+/**
+ * Merkle tree which keeps node hashes in [MerkleTreeLevels] instead of building a graph of node objects. Leaf hashes
+ * are sorted in ascending order and every next level is built by hashing node pairs of the previous level, so the
+ * resulting tree is identical to the one built by [NodeMerkleTree]. Node graph is available via [root], but it is
+ * only constructed when accessed. When [ParallelMerkleTreeBuild] is provided, leaf hashing, leaf sorting and hashing
+ * of large tree levels is done in parallel. Computed node hashes are available via [nodeHashes] and can be used to
+ * restore the tree without hashing via [fromNodeHashes].
+ */
+class FlatMerkleTree private constructor(
+    override val hashFn: HashFunction,
+    private val binaryHasher: BinaryHasher,
+    private val leaves: Array<AccountBalance>,
+    internal val levels: MerkleTreeLevels
+) : MerkleTree() {
+
+    companion object {
+        fun supports(hashFn: HashFunction): Boolean = hashFn.binaryHasher != null
+
+        /**
+         * Restores Merkle tree from [leaves] and previously computed [nodeHashes] without hashing any nodes. Leaves
+         * must be ordered by their position in the leaf level of the original tree (see [leafAt]). Caller is
+         * responsible for checking that [rootHash] of the restored tree is the expected one.
+         */
+        fun fromNodeHashes(leaves: List<AccountBalance>, hashFn: HashFunction, nodeHashes: ByteArray): FlatMerkleTree {
+            val levels = MerkleTreeLevels.fromByteArray(nodeHashes, leaves.size)
+            return FlatMerkleTree(hashFn, binaryHasherOf(hashFn), leaves.toTypedArray(), levels)
+        }
+
+        private fun binaryHasherOf(hashFn: HashFunction): BinaryHasher =
+            requireNotNull(hashFn.binaryHasher) { "Hash function $hashFn does not produce $HASH_SIZE byte hashes" }
+    }
+
+    constructor(nodes: List<AccountBalance>, hashFn: HashFunction, parallelBuild: ParallelMerkleTreeBuild? = null) :
+        this(hashFn, binaryHasherOf(hashFn), nodes, parallelBuild)
+
+    private constructor(
+        hashFn: HashFunction,
+        binaryHasher: BinaryHasher,
+        nodes: List<AccountBalance>,
+        parallelBuild: ParallelMerkleTreeBuild?
+    ) : this(hashFn, binaryHasher, FlatMerkleTreeBuilder(binaryHasher, parallelBuild).build(nodes))
+
+    private constructor(hashFn: HashFunction, binaryHasher: BinaryHasher, result: FlatMerkleTreeBuilder.Result) :
+        this(hashFn, binaryHasher, result.leaves, result.levels)
+
+    override val depth: Int = levels.depth
+    override val rootHash: Hash = levels.hashAt(depth, 0)
+
+    override val leafCount: Int
+        get() = leaves.size
+
+    /**
+     * Hashes of all tree levels, concatenated starting from the leaf level.
+     */
+    val nodeHashes: ByteArray
+        get() = levels.toByteArray()
+
+    override val leafNodesByHash: Map<Hash, IndexedValue<LeafNode>> by lazy {
+        indexLeafNodes(
+            leafCount = leaves.size,
+            isRightChild = levels::isRightChild,
+            leafAt = { LeafNode(leaves[it], levels.hashAt(0, it)) }
+        ).associateBy { it.value.hash }
+    }
+
+    override val leafNodesByAddress: Map<WalletAddress, IndexedValue<LeafNode>> by lazy {
+        leafNodesByHash.values.associateBy { it.value.data.address }
+    }
+
+    override val root: RootNode by lazy {
+        RootNode(
+            left = materialize(depth - 1, levels.leftChild(depth, 0)),
+            right = materialize(depth - 1, levels.rightChild(depth, 0)),
+            hash = rootHash,
+            depth = depth
+        )
+    }
+
+    private val leafPositionsByAddress: Map<WalletAddress, Int> by lazy {
+        leaves.withIndex().associateBy({ it.value.address }, { it.index })
+    }
+
+    override fun pathTo(element: AccountBalance): List<PathSegment>? {
+        val elementHash = ByteArray(HASH_SIZE).apply {
+            binaryHasher.hashLeaf(element, ByteArray(AccountBalance.ABI_ENCODED_SIZE), this, 0)
+        }
+        val position = levels.findLeaf(elementHash) ?: return null
+
+        return pathFrom(position) { level, nodePosition -> levels.pathSegmentAt(level, nodePosition) }
+    }
+
+    // path segments above the leaf level are created only once for each node and shared between all returned paths
+    override fun pathsTo(addresses: Collection<WalletAddress>): Map<WalletAddress, List<PathSegment>> {
+        val sharedSegments = Array(depth) { HashMap<Int, PathSegment>() }
+
+        return addresses.mapNotNull { address ->
+            leafPositionsByAddress[address]?.let { position ->
+                val path = pathFrom(position) { level, nodePosition ->
+                    if (level == 0) {
+                        levels.pathSegmentAt(level, nodePosition)
+                    } else {
+                        sharedSegments[level].getOrPut(nodePosition) { levels.pathSegmentAt(level, nodePosition) }
+                    }
+                }
+
+                Pair(address, path)
+            }
+        }.toMap()
+    }
+
+    fun leafAt(position: Int): AccountBalance = leaves[position]
+
+    fun packedPathAt(position: Int): PackedMerklePath {
+        val siblings = ByteArray(depth * HASH_SIZE)
+        var directions = 0L
+
+        for (level in 0 until depth) {
+            val nodePosition = position shr level
+            levels.copyHash(level, nodePosition xor 1, siblings, level * HASH_SIZE)
+
+            if (levels.isRightChild(level, nodePosition)) {
+                directions = directions or (1L shl level)
+            }
+        }
+
+        return PackedMerklePath(siblings, directions)
+    }
+
+    // sibling positions are computed by flipping the lowest bit, parent positions by shifting it out
+    private inline fun pathFrom(
+        leafPosition: Int,
+        segmentAt: (level: Int, position: Int) -> PathSegment
+    ): List<PathSegment> {
+        val path = ArrayList<PathSegment>(depth)
+        var position = leafPosition
+
+        for (level in 0 until depth) {
+            path.add(segmentAt(level, position))
+            position = position shr 1
+        }
+
+        return path
+    }
+
+    private fun materialize(level: Int, position: Int): Node =
+        if (levels.isNil(level, position)) {
+            NilNode
+        } else if (level == 0) {
+            LeafNode(leaves[position], levels.hashAt(level, position))
+        } else {
+            MiddleNode(
+                left = materialize(level - 1, levels.leftChild(level, position)),
+                right = materialize(level - 1, levels.rightChild(level, position)),
+                hash = levels.hashAt(level, position)
+            )
+        }
+}
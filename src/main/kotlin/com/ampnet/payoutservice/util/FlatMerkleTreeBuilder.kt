@@ -0,0 +1,117 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.util.MerkleTreeLevels.Companion.HASH_SIZE
+import com.ampnet.payoutservice.util.MerkleTreeLevels.Companion.compareNodes
+
+/**
+ * Computes all node hashes of a [FlatMerkleTree] using [binaryHasher]. Leaf hashes are sorted in ascending order and
+ * every next level is built by hashing node pairs of the previous level. When [parallelBuild] is provided, leaf
+ * hashing, leaf sorting and hashing of large tree levels is done in parallel.
+ */
+internal class FlatMerkleTreeBuilder(
+    private val binaryHasher: BinaryHasher,
+    private val parallelBuild: ParallelMerkleTreeBuild?
+) {
+
+    companion object {
+        fun BinaryHasher.hashLeaf(leaf: AccountBalance, encodingBuffer: ByteArray, output: ByteArray, offset: Int) {
+            leaf.abiEncodeInto(encodingBuffer)
+            hash(encodingBuffer, 0, encodingBuffer.size, output, offset)
+        }
+
+        private fun copyNode(nodes: ByteArray, position: Int, target: ByteArray, offset: Int) {
+            val start = position * HASH_SIZE
+
+            if (start < nodes.size) {
+                nodes.copyInto(target, offset, start, start + HASH_SIZE)
+            } else {
+                target.fill(0, offset, offset + HASH_SIZE)
+            }
+        }
+    }
+
+    /**
+     * Leaves of the tree ordered by their position in the leaf level, together with hashes of all tree levels.
+     */
+    class Result(val leaves: Array<AccountBalance>, val levels: MerkleTreeLevels)
+
+    fun build(nodes: List<AccountBalance>): Result {
+        require(nodes.isNotEmpty()) { "Cannot build Merkle tree from empty list" }
+
+        val addresses = HashSet<WalletAddress>(nodes.size * 2)
+
+        nodes.forEach {
+            require(addresses.add(it.address)) { "Address collision while constructing leaf nodes: ${it.address}" }
+        }
+
+        val hashedLeaves = hashLeaves(nodes)
+
+        parallelBuild?.sort(hashedLeaves) ?: hashedLeaves.sort()
+
+        val leafHashes = ByteArray(nodes.size * HASH_SIZE)
+
+        hashedLeaves.forEachIndexed { position, hashedLeaf ->
+            val hash = hashedLeaf.hash
+            require(position == 0 || hashedLeaves[position - 1].hash != hash) {
+                "Hash collision while constructing leaf nodes: ${hash.toHash()}"
+            }
+            hash.writeTo(leafHashes, position * HASH_SIZE)
+        }
+
+        return Result(
+            leaves = Array(nodes.size) { hashedLeaves[it].leaf },
+            levels = buildLevels(leafHashes)
+        )
+    }
+
+    private fun hashLeaves(nodes: List<AccountBalance>): Array<HashedLeaf> {
+        val hashes = ByteArray(nodes.size * HASH_SIZE)
+
+        forEachChunk(nodes.size) { from, to ->
+            val encodingBuffer = ByteArray(AccountBalance.ABI_ENCODED_SIZE)
+
+            for (index in from until to) {
+                binaryHasher.hashLeaf(nodes[index], encodingBuffer, hashes, index * HASH_SIZE)
+            }
+        }
+
+        return Array(nodes.size) { HashedLeaf(BinaryHash.fromBytes(hashes, it * HASH_SIZE), nodes[it]) }
+    }
+
+    private fun buildLevels(leafHashes: ByteArray): MerkleTreeLevels {
+        val levels = mutableListOf(leafHashes)
+
+        do {
+            val nodes = levels.last()
+            val parentCount = MerkleTreeLevels.parentCount(nodes.size / HASH_SIZE)
+            val parents = ByteArray(parentCount * HASH_SIZE)
+
+            forEachChunk(parentCount) { from, to ->
+                val pairBuffer = ByteArray(2 * HASH_SIZE)
+
+                for (parent in from until to) {
+                    val first = parent * 2
+                    val second = first + 1
+                    val isOrdered = compareNodes(nodes, first, second) <= 0
+
+                    // node pair is copied into a single buffer which is then used as hash function input
+                    copyNode(nodes, if (isOrdered) first else second, pairBuffer, 0)
+                    copyNode(nodes, if (isOrdered) second else first, pairBuffer, HASH_SIZE)
+                    binaryHasher.hash(pairBuffer, 0, pairBuffer.size, parents, parent * HASH_SIZE)
+                }
+            }
+
+            levels.add(parents)
+        } while (parentCount > 1)
+
+        return MerkleTreeLevels(levels.toTypedArray())
+    }
+
+    // leaves are sorted together with their hashes, so no index array or comparator is needed to order them
+    private class HashedLeaf(val hash: BinaryHash, val leaf: AccountBalance) : Comparable<HashedLeaf> {
+        override fun compareTo(other: HashedLeaf): Int = hash.compareTo(other.hash)
+    }
+
+    private fun forEachChunk(count: Int, action: (from: Int, to: Int) -> Unit) =
+        parallelBuild?.forEachChunk(count, action) ?: action(0, count)
+}
@@ -0,0 +1,59 @@
+package com.ampnet.payoutservice.util
+
+import java.math.BigInteger
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+
+/**
+ * Generalization of binary search which splits the remaining interval into [arity] parts on each round. Values at all
+ * `arity - 1` split points are fetched concurrently on [executor], so the number of sequential rounds is reduced from
+ * `log2(n)` to `logk(n)`. Result is the same as the result of binary search for monotonic bound updates.
+ */
+class KArySearch(private val executor: ExecutorService, private val arity: Int) {
+
+    init {
+        require(arity >= 2) { "Search arity must be at least 2" }
+    }
+
+    operator fun <T> invoke(
+        lowerBound: BigInteger,
+        upperBound: BigInteger,
+        getValue: (BigInteger) -> T,
+        updateLowerBound: (T) -> Boolean,
+        updateUpperBound: (T) -> Boolean
+    ): BigInteger {
+        var lower = lowerBound
+        var upper = upperBound
+
+        while (upper - lower > BigInteger.ONE) {
+            val step = ((upper - lower) / BigInteger.valueOf(arity.toLong())).max(BigInteger.ONE)
+            val points = (1 until arity).map { lower + step * BigInteger.valueOf(it.toLong()) }
+                .takeWhile { it < upper }
+            val values = fetchValues(points, getValue)
+
+            // points are in ascending order, so the last point which raises the lower bound is the closest one to the
+            // searched value, and the first point which lowers the upper bound after it is the closest one from above
+            val newLower = points.indices.lastOrNull { updateLowerBound(values[it]) }?.let { points[it] } ?: lower
+            val newUpper = points.indices.firstOrNull { points[it] > newLower && updateUpperBound(values[it]) }
+                ?.let { points[it] } ?: upper
+
+            lower = newLower
+            upper = newUpper
+        }
+
+        return lower.min(upper)
+    }
+
+    private fun <T> fetchValues(points: List<BigInteger>, getValue: (BigInteger) -> T): List<T> {
+        val futures = points.map { executor.submit(Callable { getValue(it) }) }
+
+        return try {
+            futures.map { it.get() }
+        } catch (ex: ExecutionException) {
+            throw ex.cause ?: ex
+        } finally {
+            futures.forEach { it.cancel(true) }
+        }
+    }
+}
@@ -2,16 +2,10 @@ package com.ampnet.payoutservice.util
 
 import com.ampnet.payoutservice.util.json.MerkleTreeJsonSerializer
 import com.ampnet.payoutservice.util.json.PathSegmentJsonSerializer
-import com.ampnet.payoutservice.util.recursion.FlatMap
-import com.ampnet.payoutservice.util.recursion.Return
-import com.ampnet.payoutservice.util.recursion.Suspend
-import com.ampnet.payoutservice.util.recursion.Trampoline
 import com.fasterxml.jackson.databind.annotation.JsonSerialize
-import java.util.LinkedList
-import java.util.SortedMap
 
 @JsonSerialize(using = MerkleTreeJsonSerializer::class)
-class MerkleTree(nodes: List<AccountBalance>, val hashFn: HashFunction) {
+sealed class MerkleTree {
 
     companion object {
         sealed interface Node {
@@ -38,52 +32,91 @@ class MerkleTree(nodes: List<AccountBalance>, val hashFn: HashFunction) {
 
         @JsonSerialize(using = PathSegmentJsonSerializer::class)
         data class PathSegment(val siblingHash: Hash, val isLeft: Boolean)
-    }
-
-    val leafNodesByHash: Map<Hash, IndexedValue<LeafNode>>
-    val leafNodesByAddress: Map<WalletAddress, IndexedValue<LeafNode>>
-    val root: RootNode
-
-    init {
-        require(nodes.isNotEmpty()) { "Cannot build Merkle tree from empty list" }
 
-        val byAddress: Map<WalletAddress, LeafNode> = nodes.map { LeafNode(it, it.hash) }
-            .groupBy { it.data.address }
-            .mapValues {
-                require(it.value.size == 1) { "Address collision while constructing leaf nodes: ${it.key}" }
-                it.value.first()
+        /**
+         * Builds Merkle tree using the default engine for the specified hash function. Hash functions with fixed-size
+         * output are handled by [FlatMerkleTree], while the rest fall back to [NodeMerkleTree]. [parallelBuild] is
+         * only used by [FlatMerkleTree].
+         */
+        operator fun invoke(
+            nodes: List<AccountBalance>,
+            hashFn: HashFunction,
+            parallelBuild: ParallelMerkleTreeBuild? = null
+        ): MerkleTree =
+            if (FlatMerkleTree.supports(hashFn)) {
+                FlatMerkleTree(nodes, hashFn, parallelBuild)
+            } else {
+                NodeMerkleTree(nodes, hashFn)
             }
-        val bySortedHash: SortedMap<Hash, LeafNode> = byAddress.values
-            .groupBy { it.hash }
-            .mapValues {
-                require(it.value.size == 1) { "Hash collision while constructing leaf nodes: ${it.key}" }
-                it.value.first()
-            }.toSortedMap()
+    }
 
-        root = buildTree(bySortedHash.values.toList())
+    abstract val hashFn: HashFunction
+    abstract val rootHash: Hash
+    abstract val depth: Int
+    abstract val root: RootNode
+    abstract val leafNodesByHash: Map<Hash, IndexedValue<LeafNode>>
+    abstract val leafNodesByAddress: Map<WalletAddress, IndexedValue<LeafNode>>
+    open val leafCount: Int
+        get() = leafNodesByHash.size
+
+    abstract fun pathTo(element: AccountBalance): List<PathSegment>?
+
+    /**
+     * Returns Merkle tree paths for all leaf nodes which belong to the specified [addresses]. Addresses which are not
+     * contained in the tree are not present in the resulting map.
+     */
+    open fun pathsTo(addresses: Collection<WalletAddress>): Map<WalletAddress, List<PathSegment>> =
+        addresses.mapNotNull { address ->
+            leafNodesByAddress[address]?.let { leafNode -> pathTo(leafNode.value.data)?.let { Pair(address, it) } }
+        }.toMap()
+
+    /**
+     * Assigns indices to leaf nodes in a single top-down pass over node positions of each tree level, where nodes at
+     * positions `2p` and `2p + 1` are children of the node at position `p` of the level above. Leaf index is the
+     * sequence of moves from the root towards the leaf, where 0 is a left and 1 is a right move. Returned leaf nodes
+     * are ordered by their index.
+     */
+    protected fun indexLeafNodes(
+        leafCount: Int,
+        isRightChild: (level: Int, position: Int) -> Boolean,
+        leafAt: (position: Int) -> LeafNode
+    ): List<IndexedValue<LeafNode>> {
+        val nodeCounts = IntArray(depth + 1)
+        nodeCounts[0] = leafCount
+
+        for (level in 1..depth) {
+            nodeCounts[level] = (nodeCounts[level - 1] + 1) / 2
+        }
 
-        val indexedLeafNodes = indexLeafNodes()
+        var positions = IntArray(1)
+        var indices = IntArray(1)
 
-        leafNodesByHash = indexedLeafNodes.associateBy { it.value.hash }
-        leafNodesByAddress = indexedLeafNodes.associateBy { it.value.data.address }
-    }
+        for (level in depth - 1 downTo 0) {
+            val levelPositions = IntArray(nodeCounts[level])
+            val levelIndices = IntArray(nodeCounts[level])
+            var count = 0
 
-    fun pathTo(element: AccountBalance): List<PathSegment>? {
-        val index = leafNodesByHash[element.hash]?.index ?: return null
-        val moves = index.toString(2).padStart(root.depth, '0')
+            fun addChild(position: Int, index: Int) {
+                if (position < levelPositions.size) {
+                    levelPositions[count] = position
+                    levelIndices[count] = index
+                    count += 1
+                }
+            }
 
-        tailrec fun findPath(currentNode: Node, d: Int, path: LinkedList<PathSegment>): List<PathSegment> {
-            return if (currentNode is PathNode) {
-                val isLeft = moves[d] == '0'
-                val nextNode = if (isLeft) currentNode.left else currentNode.right
-                val siblingNode = if (isLeft.not()) currentNode.left else currentNode.right
-                findPath(nextNode, d + 1, path.withFirst(PathSegment(siblingNode.hash, isLeft.not())))
-            } else {
-                path
+            for (parent in positions.indices) {
+                val first = positions[parent] * 2
+                val left = if (isRightChild(level, first)) first + 1 else first
+
+                addChild(left, indices[parent] shl 1)
+                addChild(left xor 1, (indices[parent] shl 1) or 1)
             }
+
+            positions = levelPositions
+            indices = levelIndices
         }
 
-        return findPath(root, 0, LinkedList())
+        return positions.indices.map { IndexedValue(indices[it], leafAt(positions[it])) }
     }
 
     override fun equals(other: Any?): Boolean {
@@ -95,74 +128,10 @@ class MerkleTree(nodes: List<AccountBalance>, val hashFn: HashFunction) {
             return false
         }
 
-        return other.root == root
+        return other.hashFn == hashFn && other.depth == depth && other.rootHash == rootHash
     }
 
     override fun hashCode(): Int {
-        return root.hashCode()
-    }
-
-    private fun buildTree(leafNodes: List<LeafNode>): RootNode {
-        tailrec fun buildLayer(nodes: Collection<Node>, depth: Int): RootNode {
-            val pairs = nodes.pairwise()
-
-            return if (pairs.size == 1) {
-                val pair = pairs[0]
-                RootNode(pair.left, pair.right, pair.hash, depth)
-            } else {
-                val parentLayer = pairs.map { MiddleNode(it.left, it.right, it.hash) }
-                buildLayer(parentLayer, depth + 1)
-            }
-        }
-
-        return buildLayer(leafNodes, 1)
-    }
-
-    private fun indexLeafNodes(): List<IndexedValue<LeafNode>> {
-
-        fun indexPath(currentNode: Node, currentIndex: String): Trampoline<List<IndexedValue<LeafNode>>> {
-            return when (currentNode) {
-                is PathNode -> {
-                    val left = Suspend { indexPath(currentNode.left, currentIndex + "0") }
-                    val right = Suspend { indexPath(currentNode.right, currentIndex + "1") }
-
-                    FlatMap(left) { leftList ->
-                        FlatMap(right) { rightList ->
-                            Return(leftList + rightList)
-                        }
-                    }
-                }
-
-                is LeafNode -> {
-                    Return(listOf(IndexedValue(currentIndex.toInt(2), currentNode)))
-                }
-
-                else -> {
-                    Return(emptyList())
-                }
-            }
-        }
-
-        return Trampoline.run(indexPath(root, "0"))
-    }
-
-    private val AccountBalance.hash: Hash
-        get() = hashFn(abiEncode())
-
-    private val Pair<Node, Node>.left: Node
-        get() = if (first.hash <= second.hash) first else second
-
-    private val Pair<Node, Node>.right: Node
-        get() = if (first.hash <= second.hash) second else first
-
-    private val Pair<Node, Node>.hash: Hash
-        get() = hashFn((left.hash + right.hash).value)
-
-    private fun Collection<Node>.pairwise(): List<Pair<Node, Node>> =
-        this.chunked(2).map { Pair(it.first(), it.getOrNull(1) ?: NilNode) }
-
-    private fun LinkedList<PathSegment>.withFirst(first: PathSegment): LinkedList<PathSegment> {
-        addFirst(first)
-        return this
+        return rootHash.hashCode()
     }
 }
@@ -0,0 +1,151 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.util.MerkleTree.Companion.NilNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathSegment
+
+/**
+ * Node hashes of all Merkle tree levels, where each level is stored as a contiguous byte array of [HASH_SIZE] byte
+ * hashes. Level `0` contains leaf hashes and the last level contains only the root hash. Parent of the node at
+ * position `p` is located at position `p / 2` of the next level. Positions outside of the level represent [NilNode]
+ * padding, which is used when the level contains an odd number of nodes.
+ */
+internal class MerkleTreeLevels(private val levels: Array<ByteArray>) {
+
+    companion object {
+        const val HASH_SIZE = BinaryHash.SIZE_BYTES
+        private const val BYTE_MASK = 0xff
+        private val NIL_HASH = ByteArray(HASH_SIZE)
+
+        fun parentCount(nodeCount: Int): Int = (nodeCount + 1) / 2
+
+        /**
+         * Restores tree levels of a tree with [leafCount] leaves from bytes produced by [toByteArray]. No hashes are
+         * computed, so the caller is responsible for checking that the restored root hash is the expected one.
+         */
+        fun fromByteArray(bytes: ByteArray, leafCount: Int): MerkleTreeLevels {
+            require(leafCount > 0) { "Cannot restore Merkle tree levels without leaves" }
+
+            val levels = mutableListOf<ByteArray>()
+            var nodeCount = leafCount
+            var offset = 0
+
+            do {
+                val levelSize = nodeCount * HASH_SIZE
+                require(offset + levelSize <= bytes.size) { "Not enough node hashes for $leafCount leaves" }
+
+                levels.add(bytes.copyOfRange(offset, offset + levelSize))
+                offset += levelSize
+                nodeCount = parentCount(nodeCount)
+            } while (levels.size == 1 || levelSize > HASH_SIZE)
+
+            require(offset == bytes.size) { "Too many node hashes for $leafCount leaves" }
+
+            return MerkleTreeLevels(levels.toTypedArray())
+        }
+
+        fun compareHashes(first: ByteArray, firstPosition: Int, second: ByteArray, secondPosition: Int): Int {
+            val firstOffset = firstPosition * HASH_SIZE
+            val secondOffset = secondPosition * HASH_SIZE
+
+            for (i in 0 until HASH_SIZE) {
+                val firstByte = first[firstOffset + i].toInt() and BYTE_MASK
+                val secondByte = second[secondOffset + i].toInt() and BYTE_MASK
+
+                if (firstByte != secondByte) {
+                    return firstByte - secondByte
+                }
+            }
+
+            return 0
+        }
+
+        fun hashAt(hashes: ByteArray, position: Int): Hash =
+            if (position * HASH_SIZE >= hashes.size) {
+                NilNode.hash
+            } else {
+                Hash(BinaryHash.hexString(hashes, position * HASH_SIZE, HASH_SIZE))
+            }
+
+        // first node must be contained in the level, second one can be NilNode padding
+        fun compareNodes(nodes: ByteArray, first: Int, second: Int): Int =
+            if (second * HASH_SIZE < nodes.size) {
+                compareHashes(nodes, first, nodes, second)
+            } else {
+                compareHashes(nodes, first, NIL_HASH, 0)
+            }
+    }
+
+    val depth: Int
+        get() = levels.size - 1
+
+    fun nodeCount(level: Int): Int = levels[level].size / HASH_SIZE
+
+    fun isNil(level: Int, position: Int): Boolean = position >= nodeCount(level)
+
+    fun hashAt(level: Int, position: Int): Hash = hashAt(levels[level], position)
+
+    // levels are concatenated starting from the leaf level, sizes of all levels are determined by the leaf count
+    fun toByteArray(): ByteArray {
+        val bytes = ByteArray(levels.sumOf { it.size })
+        var offset = 0
+
+        levels.forEach {
+            it.copyInto(bytes, offset)
+            offset += it.size
+        }
+
+        return bytes
+    }
+
+    // NilNode padding is written as zero bytes
+    fun copyHash(level: Int, position: Int, target: ByteArray, offset: Int) {
+        val hashes = levels[level]
+        val start = position * HASH_SIZE
+
+        if (start < hashes.size) {
+            hashes.copyInto(target, offset, start, start + HASH_SIZE)
+        } else {
+            target.fill(0, offset, offset + HASH_SIZE)
+        }
+    }
+
+    // node with lower hash value is the left one in each node pair
+    fun isRightChild(level: Int, position: Int): Boolean =
+        if (position and 1 == 0) {
+            compareNodes(levels[level], position, position + 1) > 0
+        } else {
+            compareNodes(levels[level], position - 1, position) <= 0
+        }
+
+    // sibling is located at the neighbouring position and is on the left side when the node is a right child
+    fun pathSegmentAt(level: Int, position: Int): PathSegment =
+        PathSegment(hashAt(level, position xor 1), isRightChild(level, position))
+
+    fun leftChild(level: Int, position: Int): Int {
+        val first = position * 2
+        return if (isRightChild(level - 1, first)) first + 1 else first
+    }
+
+    fun rightChild(level: Int, position: Int): Int = leftChild(level, position) xor 1
+
+    fun findLeaf(leafHash: ByteArray): Int? {
+        val leafHashes = levels[0]
+        var low = 0
+        var high = nodeCount(0) - 1
+
+        while (low <= high) {
+            val middle = (low + high) ushr 1
+            val comparison = compareHashes(leafHashes, middle, leafHash, 0)
+
+            if (comparison == 0) {
+                return middle
+            } else if (comparison < 0) {
+                low = middle + 1
+            } else {
+                high = middle - 1
+            }
+        }
+
+        return null
+    }
+}
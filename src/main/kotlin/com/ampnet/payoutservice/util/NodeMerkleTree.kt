@@ -0,0 +1,123 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.util.MerkleTree.Companion.LeafNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.MiddleNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.NilNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.Node
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathNode
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathSegment
+import com.ampnet.payoutservice.util.MerkleTree.Companion.RootNode
+import java.util.SortedMap
+
+class NodeMerkleTree(nodes: List<AccountBalance>, override val hashFn: HashFunction) : MerkleTree() {
+
+    override val leafNodesByHash: Map<Hash, IndexedValue<LeafNode>>
+    override val leafNodesByAddress: Map<WalletAddress, IndexedValue<LeafNode>>
+    override val root: RootNode
+
+    override val rootHash: Hash
+        get() = root.hash
+
+    override val depth: Int
+        get() = root.depth
+
+    init {
+        require(nodes.isNotEmpty()) { "Cannot build Merkle tree from empty list" }
+
+        val byAddress: Map<WalletAddress, LeafNode> = nodes.map { LeafNode(it, it.hash) }
+            .groupBy { it.data.address }
+            .mapValues {
+                require(it.value.size == 1) { "Address collision while constructing leaf nodes: ${it.key}" }
+                it.value.first()
+            }
+        val bySortedHash: SortedMap<Hash, LeafNode> = byAddress.values
+            .groupBy { it.hash }
+            .mapValues {
+                require(it.value.size == 1) { "Hash collision while constructing leaf nodes: ${it.key}" }
+                it.value.first()
+            }.toSortedMap()
+
+        val sortedLeafNodes = bySortedHash.values.toList()
+        val rightChildFlags = ArrayList<BooleanArray>()
+
+        root = buildTree(sortedLeafNodes, rightChildFlags)
+
+        val indexedLeafNodes = indexLeafNodes(
+            leafCount = sortedLeafNodes.size,
+            isRightChild = { level, position -> rightChildFlags[level][position] },
+            leafAt = { sortedLeafNodes[it] }
+        )
+        val byHash = LinkedHashMap<Hash, IndexedValue<LeafNode>>(sortedLeafNodes.size * 2)
+        val byIndexedAddress = LinkedHashMap<WalletAddress, IndexedValue<LeafNode>>(sortedLeafNodes.size * 2)
+
+        indexedLeafNodes.forEach {
+            byHash[it.value.hash] = it
+            byIndexedAddress[it.value.data.address] = it
+        }
+
+        leafNodesByHash = byHash
+        leafNodesByAddress = byIndexedAddress
+    }
+
+    override fun pathTo(element: AccountBalance): List<PathSegment>? {
+        val index = leafNodesByHash[element.hash]?.index ?: return null
+        val path = ArrayList<PathSegment>(depth)
+        var currentNode: Node = root
+
+        // bits of the leaf index are moves from the root towards the leaf, starting with the most significant one
+        for (level in depth - 1 downTo 0) {
+            val pathNode = currentNode as PathNode
+            val isLeft = (index shr level) and 1 == 0
+            val siblingNode = if (isLeft) pathNode.right else pathNode.left
+
+            path.add(PathSegment(siblingNode.hash, isLeft.not()))
+            currentNode = if (isLeft) pathNode.left else pathNode.right
+        }
+
+        path.reverse()
+        return path
+    }
+
+    // rightChildFlags will contain a flag for each node of each layer which tells if the node is a right child
+    private fun buildTree(leafNodes: List<LeafNode>, rightChildFlags: MutableList<BooleanArray>): RootNode {
+        tailrec fun buildLayer(nodes: Collection<Node>, depth: Int): RootNode {
+            val pairs = nodes.pairwise()
+            val layerFlags = BooleanArray(nodes.size)
+
+            pairs.forEachIndexed { index, pair ->
+                val isOrdered = pair.first.hash <= pair.second.hash
+                val first = index * 2
+
+                layerFlags[first] = isOrdered.not()
+                if (first + 1 < layerFlags.size) layerFlags[first + 1] = isOrdered
+            }
+
+            rightChildFlags.add(layerFlags)
+
+            return if (pairs.size == 1) {
+                val pair = pairs[0]
+                RootNode(pair.left, pair.right, pair.hash, depth)
+            } else {
+                val parentLayer = pairs.map { MiddleNode(it.left, it.right, it.hash) }
+                buildLayer(parentLayer, depth + 1)
+            }
+        }
+
+        return buildLayer(leafNodes, 1)
+    }
+
+    private val AccountBalance.hash: Hash
+        get() = hashFn(abiEncode())
+
+    private val Pair<Node, Node>.left: Node
+        get() = if (first.hash <= second.hash) first else second
+
+    private val Pair<Node, Node>.right: Node
+        get() = if (first.hash <= second.hash) second else first
+
+    private val Pair<Node, Node>.hash: Hash
+        get() = hashFn((left.hash + right.hash).value)
+
+    private fun Collection<Node>.pairwise(): List<Pair<Node, Node>> =
+        this.chunked(2).map { Pair(it.first(), it.getOrNull(1) ?: NilNode) }
+}
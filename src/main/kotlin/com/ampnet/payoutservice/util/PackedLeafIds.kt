@@ -0,0 +1,78 @@
+package com.ampnet.payoutservice.util
+
+import java.io.ByteArrayOutputStream
+
+/**
+ * Sequence of leaf IDs, used to store which shared leaves belong to a Merkle tree and at which leaf positions. [bytes]
+ * contain the number of IDs followed by zigzag-encoded differences between consecutive IDs, where each value is written
+ * as a variable-length integer using 7 bits per byte. Size of each ID depends on its distance from the previous ID:
+ * leaves inserted by the same tree have consecutive IDs in position order and take a single byte each, while leaves
+ * shared with earlier trees are in effect randomly ordered and take up to `log128(2 * n)` bytes each, where `n` is the
+ * number of stored leaves of the asset. This is about 3 bytes for up to a million leaves, compared to 8 bytes of a
+ * `BIGINT` array element.
+ */
+class PackedLeafIds(val bytes: ByteArray) {
+
+    companion object {
+        private const val VALUE_BITS = 7
+        private const val VALUE_MASK = 0x7FL
+        private const val CONTINUATION_BIT = 0x80
+
+        fun pack(ids: LongArray): PackedLeafIds {
+            val output = ByteArrayOutputStream(ids.size * 2 + 1)
+            var previous = 0L
+
+            output.writeVarLong(ids.size.toLong())
+
+            ids.forEach {
+                val delta = it - previous
+                output.writeVarLong((delta shl 1) xor (delta shr Long.SIZE_BITS - 1))
+                previous = it
+            }
+
+            return PackedLeafIds(output.toByteArray())
+        }
+
+        private fun ByteArrayOutputStream.writeVarLong(value: Long) {
+            var remaining = value
+
+            while (remaining and VALUE_MASK.inv() != 0L) {
+                write(((remaining and VALUE_MASK).toInt()) or CONTINUATION_BIT)
+                remaining = remaining ushr VALUE_BITS
+            }
+
+            write(remaining.toInt())
+        }
+    }
+
+    fun unpack(): LongArray {
+        var offset = 0
+
+        fun readVarLong(): Long {
+            var result = 0L
+            var shift = 0
+
+            do {
+                require(offset < bytes.size) { "Packed leaf IDs are truncated" }
+                val byte = bytes[offset++].toInt()
+                result = result or ((byte.toLong() and VALUE_MASK) shl shift)
+                shift += VALUE_BITS
+            } while (byte and CONTINUATION_BIT != 0)
+
+            return result
+        }
+
+        val ids = LongArray(Math.toIntExact(readVarLong()))
+        var previous = 0L
+
+        for (index in ids.indices) {
+            val zigzag = readVarLong()
+            previous += (zigzag ushr 1) xor -(zigzag and 1L)
+            ids[index] = previous
+        }
+
+        require(offset == bytes.size) { "Packed leaf IDs contain trailing bytes" }
+
+        return ids
+    }
+}
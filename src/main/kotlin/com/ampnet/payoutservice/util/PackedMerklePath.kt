@@ -0,0 +1,28 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.util.MerkleTree.Companion.PathSegment
+import com.ampnet.payoutservice.util.MerkleTreeLevels.Companion.HASH_SIZE
+
+/**
+ * Compact representation of a Merkle tree path for trees with [HASH_SIZE] byte hashes. [siblings] contains
+ * concatenated sibling hashes ordered starting from the leaf level and bit `i` of [directions] is set when the sibling
+ * at level `i` is on the left side, which corresponds to [PathSegment.isLeft].
+ */
+class PackedMerklePath(val siblings: ByteArray, val directions: Long) {
+
+    init {
+        require(siblings.size % HASH_SIZE == 0) { "Sibling hashes must be $HASH_SIZE bytes long" }
+        require(depth < Long.SIZE_BITS) { "Path is too long to be packed: $depth" }
+    }
+
+    val depth: Int
+        get() = siblings.size / HASH_SIZE
+
+    fun toPathSegments(): List<PathSegment> =
+        List(depth) {
+            PathSegment(
+                siblingHash = MerkleTreeLevels.hashAt(siblings, it),
+                isLeft = (directions ushr it) and 1L == 1L
+            )
+        }
+}
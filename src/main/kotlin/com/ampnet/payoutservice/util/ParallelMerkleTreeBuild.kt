@@ -0,0 +1,66 @@
+package com.ampnet.payoutservice.util
+
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Configuration of parallel [FlatMerkleTree] construction. Leaf hashing, leaf sorting and hashing of each tree level
+ * are split across the owned [ForkJoinPool] when the number of processed nodes is at least [threshold]; smaller
+ * workloads are processed on the calling thread. Resulting tree is identical to the sequentially built one.
+ */
+class ParallelMerkleTreeBuild(parallelism: Int, val threshold: Int) {
+
+    companion object {
+        private const val MIN_CHUNK_SIZE = 1_024
+        private const val CHUNKS_PER_THREAD = 4
+    }
+
+    private val pool = ForkJoinPool(parallelism)
+
+    init {
+        require(threshold > 0) { "Parallel Merkle tree build threshold must be positive" }
+    }
+
+    fun isParallel(count: Int): Boolean = count >= threshold
+
+    /**
+     * Splits range `[0, count)` into chunks and invokes [action] for each of them. Chunks are processed in parallel
+     * when [count] is at least [threshold], so [action] must only write into its own part of any shared state.
+     */
+    fun forEachChunk(count: Int, action: (from: Int, to: Int) -> Unit) {
+        if (isParallel(count)) {
+            val chunkSize = maxOf(MIN_CHUNK_SIZE, count / (pool.parallelism * CHUNKS_PER_THREAD))
+            pool.invoke(ChunkAction(0, count, chunkSize, action))
+        } else {
+            action(0, count)
+        }
+    }
+
+    fun <T : Comparable<T>> sort(array: Array<T>) {
+        if (isParallel(array.size)) {
+            // parallel sort uses the pool of the invoking worker thread
+            pool.invoke(ForkJoinTask.adapt { java.util.Arrays.parallelSort(array) })
+        } else {
+            array.sort()
+        }
+    }
+
+    fun shutdown() = pool.shutdown()
+
+    private class ChunkAction(
+        private val from: Int,
+        private val to: Int,
+        private val chunkSize: Int,
+        private val action: (from: Int, to: Int) -> Unit
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from <= chunkSize) {
+                action(from, to)
+            } else {
+                val middle = (from + to) ushr 1
+                invokeAll(ChunkAction(from, middle, chunkSize, action), ChunkAction(middle, to, chunkSize, action))
+            }
+        }
+    }
+}
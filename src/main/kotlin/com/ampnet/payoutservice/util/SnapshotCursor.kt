@@ -0,0 +1,35 @@
+package com.ampnet.payoutservice.util
+
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import java.time.format.DateTimeParseException
+import java.util.Base64
+import java.util.UUID
+
+/**
+ * Position of the last snapshot of a snapshot list page. Snapshots are listed newest first, so the next page starts
+ * with the first snapshot which is ordered after ([createdAt], [id]). Cursor is passed to clients as an opaque token.
+ */
+data class SnapshotCursor(val createdAt: OffsetDateTime, val id: UUID) {
+    companion object {
+        private const val SEPARATOR = "|"
+        private val encoder = Base64.getUrlEncoder().withoutPadding()
+        private val decoder = Base64.getUrlDecoder()
+
+        fun decode(token: String): SnapshotCursor? =
+            try {
+                String(decoder.decode(token), Charsets.UTF_8).split(SEPARATOR)
+                    .takeIf { it.size == 2 }
+                    ?.let { SnapshotCursor(OffsetDateTime.parse(it[0]), UUID.fromString(it[1])) }
+            } catch (e: IllegalArgumentException) {
+                null
+            } catch (e: DateTimeParseException) {
+                null
+            }
+    }
+
+    fun encode(): String {
+        val utcCreatedAt = createdAt.withOffsetSameInstant(ZoneOffset.UTC)
+        return encoder.encodeToString("$utcCreatedAt$SEPARATOR$id".toByteArray(Charsets.UTF_8))
+    }
+}
@@ -4,6 +4,7 @@ import com.ampnet.payoutservice.generated.jooq.enums.SnapshotStatus as DbSnapsho
 
 enum class SnapshotStatus(val toDbEnum: DbSnapshotStatus) {
     PENDING(DbSnapshotStatus.PENDING),
+    PROCESSING(DbSnapshotStatus.PROCESSING),
     SUCCESS(DbSnapshotStatus.SUCCESS),
     FAILED(DbSnapshotStatus.FAILED);
 
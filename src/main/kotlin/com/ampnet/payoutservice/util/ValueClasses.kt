@@ -3,28 +3,54 @@ package com.ampnet.payoutservice.util
 import org.web3j.abi.TypeEncoder
 import org.web3j.abi.datatypes.Address
 import org.web3j.abi.datatypes.Uint
+import org.web3j.utils.Numeric
 import java.math.BigInteger
 
+internal const val ABI_WORD_SIZE = 32
+
 @JvmInline
 value class Hash private constructor(val value: String) : Comparable<Hash> {
     companion object {
-        private const val HEX_RADIX = 16
+        private const val HEX_PREFIX = "0x"
         operator fun invoke(value: String) = Hash(value.lowercase())
     }
 
-    operator fun plus(other: Hash): Hash = Hash(value + other.value.replaceFirst("0x", ""))
+    operator fun plus(other: Hash): Hash = Hash(value + other.value.removePrefix(HEX_PREFIX))
 
+    // compares hex values numerically without parsing them; lowercase hex digits are ordered the same as their values
     override fun compareTo(other: Hash): Int {
-        val thisValue = BigInteger(value.replaceFirst("0x", ""), HEX_RADIX)
-        val otherValue = BigInteger(other.value.replaceFirst("0x", ""), HEX_RADIX)
-        return thisValue.compareTo(otherValue)
+        val thisStart = value.firstSignificantDigit()
+        val otherStart = other.value.firstSignificantDigit()
+        val digits = value.length - thisStart
+        var result = digits.compareTo(other.value.length - otherStart)
+        var offset = 0
+
+        while (result == 0 && offset < digits) {
+            result = value[thisStart + offset].compareTo(other.value[otherStart + offset])
+            offset += 1
+        }
+
+        return result
+    }
+
+    private fun String.firstSignificantDigit(): Int {
+        var index = if (startsWith(HEX_PREFIX)) HEX_PREFIX.length else 0
+
+        while (index < length && this[index] == '0') {
+            index += 1
+        }
+
+        return index
     }
 }
 
 @JvmInline
 value class WalletAddress private constructor(val value: Address) : Comparable<WalletAddress> {
     companion object {
+        private const val SIZE_BYTES = Address.DEFAULT_LENGTH / Byte.SIZE_BITS
+
         operator fun invoke(value: Address) = WalletAddress(value.toString())
+        fun fromBytes(bytes: ByteArray) = WalletAddress(Numeric.toHexString(bytes))
     }
 
     constructor(value: String) : this(Address(value.lowercase()))
@@ -32,19 +58,37 @@ value class WalletAddress private constructor(val value: Address) : Comparable<W
     val rawValue: String
         get() = value.value
 
+    val bytes: ByteArray
+        get() = Numeric.toBytesPadded(value.toUint().value, SIZE_BYTES)
+
     fun abiEncode(): String = TypeEncoder.encode(value)
 
+    fun abiEncodeInto(target: ByteArray, offset: Int) = value.toUint().value.abiEncodeInto(target, offset)
+
     override fun compareTo(other: WalletAddress): Int = value.toUint().value.compareTo(other.value.toUint().value)
 }
 
 @JvmInline
 value class Balance(val value: Uint) {
+    companion object {
+        fun fromBytes(bytes: ByteArray) = Balance(BigInteger(1, bytes))
+    }
+
     constructor(value: BigInteger) : this(Uint(value))
 
     val rawValue: BigInteger
         get() = value.value
 
+    // big-endian unsigned value without leading zero bytes, zero is represented by a single zero byte
+    val bytes: ByteArray
+        get() {
+            val bytes = rawValue.toByteArray() // may contain a leading sign byte
+            return if (bytes.size > 1 && bytes[0] == 0.toByte()) bytes.copyOfRange(1, bytes.size) else bytes
+        }
+
     fun abiEncode(): String = TypeEncoder.encode(value)
+
+    fun abiEncodeInto(target: ByteArray, offset: Int) = rawValue.abiEncodeInto(target, offset)
 }
 
 @JvmInline
@@ -67,3 +111,13 @@ value class ContractAddress private constructor(val value: Address) {
 
 @JvmInline
 value class IpfsHash(val value: String)
+
+// writes unsigned value as a single zero-padded ABI word
+private fun BigInteger.abiEncodeInto(target: ByteArray, offset: Int) {
+    val bytes = toByteArray()
+    val length = minOf(bytes.size, ABI_WORD_SIZE)
+    val padding = ABI_WORD_SIZE - length
+
+    target.fill(0, offset, offset + padding)
+    bytes.copyInto(target, offset + padding, bytes.size - length, bytes.size)
+}
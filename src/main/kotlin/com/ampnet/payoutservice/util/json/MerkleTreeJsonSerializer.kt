@@ -1,10 +1,12 @@
 package com.ampnet.payoutservice.util.json
 
+import com.ampnet.payoutservice.util.FlatMerkleTree
 import com.ampnet.payoutservice.util.MerkleTree
 import com.ampnet.payoutservice.util.MerkleTree.Companion.LeafNode
 import com.ampnet.payoutservice.util.MerkleTree.Companion.NilNode
 import com.ampnet.payoutservice.util.MerkleTree.Companion.Node
 import com.ampnet.payoutservice.util.MerkleTree.Companion.PathNode
+import com.ampnet.payoutservice.util.NodeMerkleTree
 import com.fasterxml.jackson.core.JsonGenerator
 import com.fasterxml.jackson.databind.JsonSerializer
 import com.fasterxml.jackson.databind.SerializerProvider
@@ -15,12 +17,20 @@ class MerkleTreeJsonSerializer : JsonSerializer<MerkleTree>() {
         json.apply {
             writeStartObject()
 
-            writeNumberField("depth", value.root.depth)
-            writeStringField("hash", value.root.hash.value)
+            writeNumberField("depth", value.depth)
+            writeStringField("hash", value.rootHash.value)
             writeStringField("hash_fn", value.hashFn.name)
 
-            writeBranch("left", value.root.left)
-            writeBranch("right", value.root.right)
+            when (value) {
+                is NodeMerkleTree -> {
+                    writeBranch("left", value.root.left)
+                    writeBranch("right", value.root.right)
+                }
+                is FlatMerkleTree -> {
+                    writeBranch("left", value, value.depth - 1, value.levels.leftChild(value.depth, 0))
+                    writeBranch("right", value, value.depth - 1, value.levels.rightChild(value.depth, 0))
+                }
+            }
 
             writeEndObject()
         }
@@ -46,4 +56,28 @@ class MerkleTreeJsonSerializer : JsonSerializer<MerkleTree>() {
 
         writeEndObject()
     }
+
+    private fun JsonGenerator.writeBranch(fieldName: String, tree: FlatMerkleTree, level: Int, position: Int) {
+        val levels = tree.levels
+
+        writeObjectFieldStart(fieldName)
+        writeStringField("hash", levels.hashAt(level, position).value)
+
+        when {
+            levels.isNil(level, position) -> {}
+            level == 0 -> {
+                val data = tree.leafAt(position)
+                writeObjectFieldStart("data")
+                writeStringField("address", data.address.rawValue)
+                writeStringField("balance", data.balance.rawValue.toString())
+                writeEndObject()
+            }
+            else -> {
+                writeBranch("left", tree, level - 1, levels.leftChild(level, position))
+                writeBranch("right", tree, level - 1, levels.rightChild(level, position))
+            }
+        }
+
+        writeEndObject()
+    }
 }
@@ -0,0 +1,8 @@
+ALTER TYPE payout_service.SNAPSHOT_STATUS ADD VALUE 'PROCESSING' AFTER 'PENDING';
+
+-- snapshots are claimed by setting their status to PROCESSING together with a lease which is held by a single worker
+ALTER TABLE payout_service.snapshot ADD COLUMN worker_id VARCHAR DEFAULT NULL;
+ALTER TABLE payout_service.snapshot ADD COLUMN lease_expires_at TIMESTAMP WITH TIME ZONE DEFAULT NULL;
+
+CREATE INDEX snapshot_status_created_at_idx ON payout_service.snapshot(status, created_at, id);
+DROP INDEX payout_service.snapshot_status_idx;
@@ -0,0 +1,26 @@
+-- progress of snapshot processing, shared by all snapshots of the same asset at the same block so that processing of
+-- reclaimed snapshots and of snapshots which are re-submitted after a failure resumes from the stored progress
+CREATE TABLE payout_service.snapshot_checkpoint (
+    id               UUID        PRIMARY KEY,
+    chain_id         BIGINT      NOT NULL,
+    asset_address    VARCHAR     NOT NULL,
+    block_number     NUMERIC(78) NOT NULL,
+    deployment_block NUMERIC(78)     NULL,
+    scanned_to_block NUMERIC(78)     NULL
+);
+
+CREATE UNIQUE INDEX snapshot_checkpoint_asset_block_idx
+    ON payout_service.snapshot_checkpoint(chain_id, asset_address, block_number);
+
+-- asset holders discovered in already scanned block ranges, balance is set once it has been fetched
+CREATE TABLE payout_service.snapshot_checkpoint_holder (
+    checkpoint_id UUID        NOT NULL REFERENCES payout_service.snapshot_checkpoint(id) ON DELETE CASCADE,
+    address       VARCHAR     NOT NULL,
+    balance       NUMERIC(78)     NULL,
+    PRIMARY KEY (checkpoint_id, address)
+);
+
+-- at most one snapshot of the same asset at the same block is processed at a time, since they share the checkpoint
+CREATE UNIQUE INDEX snapshot_processing_asset_block_idx
+    ON payout_service.snapshot(chain_id, asset_address, block_number)
+    WHERE status = 'PROCESSING';
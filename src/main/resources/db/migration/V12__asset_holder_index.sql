@@ -0,0 +1,17 @@
+-- holders of an asset found in already indexed block ranges, shared by all snapshots of the same asset so that only
+-- blocks after the last indexed block need to be scanned for new holders
+CREATE TABLE payout_service.asset_holder_index (
+    id               UUID        PRIMARY KEY,
+    chain_id         BIGINT      NOT NULL,
+    asset_address    VARCHAR     NOT NULL,
+    from_block       NUMERIC(78)     NULL,
+    indexed_to_block NUMERIC(78)     NULL
+);
+
+CREATE UNIQUE INDEX asset_holder_index_asset_idx ON payout_service.asset_holder_index(chain_id, asset_address);
+
+CREATE TABLE payout_service.asset_holder_index_holder (
+    index_id UUID    NOT NULL REFERENCES payout_service.asset_holder_index(id) ON DELETE CASCADE,
+    address  VARCHAR NOT NULL,
+    PRIMARY KEY (index_id, address)
+);
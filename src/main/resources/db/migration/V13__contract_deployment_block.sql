@@ -0,0 +1,7 @@
+-- deployment block of a contract never changes, so it is looked up only once per contract
+CREATE TABLE payout_service.contract_deployment_block (
+    chain_id         BIGINT      NOT NULL,
+    contract_address VARCHAR     NOT NULL,
+    block_number     NUMERIC(78) NOT NULL,
+    PRIMARY KEY (chain_id, contract_address)
+);
@@ -0,0 +1,5 @@
+-- checkpoints of failed or abandoned snapshots are deleted once they have not been updated for a while
+ALTER TABLE payout_service.snapshot_checkpoint
+    ADD COLUMN updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
+
+CREATE INDEX snapshot_checkpoint_updated_at_idx ON payout_service.snapshot_checkpoint(updated_at);
@@ -0,0 +1,3 @@
+ALTER TABLE payout_service.merkle_tree_root ADD COLUMN node_hashes BYTEA DEFAULT NULL;
+
+ALTER TABLE payout_service.merkle_tree_leaf_node ADD COLUMN leaf_position INT DEFAULT NULL;
@@ -0,0 +1,3 @@
+ALTER TABLE payout_service.merkle_tree_leaf_node ADD COLUMN path_siblings BYTEA DEFAULT NULL;
+
+ALTER TABLE payout_service.merkle_tree_leaf_node ADD COLUMN path_directions BIGINT DEFAULT NULL;
@@ -0,0 +1,61 @@
+-- converts non-negative integer into big-endian bytes without leading zero bytes
+CREATE FUNCTION payout_service.numeric_to_bytea(value NUMERIC) RETURNS BYTEA AS $$
+DECLARE
+    result    BYTEA   := '\x'::BYTEA;
+    remaining NUMERIC := value;
+BEGIN
+    LOOP
+        result := set_byte('\x00'::BYTEA, 0, mod(remaining, 256)::INT) || result;
+        remaining := div(remaining, 256);
+        EXIT WHEN remaining = 0;
+    END LOOP;
+    RETURN result;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE STRICT;
+
+DROP INDEX payout_service.merkle_tree_leaf_node_root_idx;
+DROP INDEX payout_service.merkle_tree_leaf_node_address_idx;
+DROP INDEX payout_service.merkle_tree_leaf_node_exists_idx;
+ALTER TABLE payout_service.merkle_tree_leaf_node RENAME TO merkle_tree_leaf_node_old;
+ALTER INDEX payout_service.merkle_tree_leaf_node_pkey RENAME TO merkle_tree_leaf_node_old_pkey;
+ALTER TABLE payout_service.merkle_tree_leaf_node_old
+    RENAME CONSTRAINT merkle_tree_leaf_node_merkle_root_fkey TO merkle_tree_leaf_node_old_merkle_root_fkey;
+
+-- fixed-size columns are placed first to avoid alignment padding
+CREATE TABLE payout_service.merkle_tree_leaf_node (
+    merkle_root     UUID   NOT NULL REFERENCES payout_service.merkle_tree_root(id),
+    path_directions BIGINT DEFAULT NULL,
+    leaf_position   INT    NOT NULL,
+    address         BYTEA  NOT NULL CHECK (octet_length(address) = 20),
+    balance         BYTEA  NOT NULL CHECK (octet_length(balance) <= 32),
+    path_siblings   BYTEA  DEFAULT NULL,
+    PRIMARY KEY (merkle_root, leaf_position)
+) WITH (toast_tuple_target = 128);
+
+-- stored paths are only read when a single proof is served, while whole trees are read using address, balance and
+-- position only; paths are therefore moved out of the leaf rows into the TOAST table, and are not compressed as
+-- hashes are incompressible; default TOAST tuple target of roughly 2 kB would keep paths of trees with up to 60 levels
+-- inline, and storage is set before leaves are copied so that no rows need to be rewritten later
+ALTER TABLE payout_service.merkle_tree_leaf_node ALTER COLUMN path_siblings SET STORAGE EXTERNAL;
+
+-- leaves without stored positions are numbered in address order
+INSERT INTO payout_service.merkle_tree_leaf_node
+    (merkle_root, path_directions, leaf_position, address, balance, path_siblings)
+SELECT merkle_root,
+       path_directions,
+       (row_number() OVER (PARTITION BY merkle_root ORDER BY leaf_position, address) - 1)::INT,
+       decode(substring(address FROM 3), 'hex'),
+       payout_service.numeric_to_bytea(balance),
+       path_siblings
+FROM payout_service.merkle_tree_leaf_node_old;
+
+CREATE UNIQUE INDEX merkle_tree_leaf_node_address_idx ON payout_service.merkle_tree_leaf_node(merkle_root, address);
+
+-- node hashes are not valid for renumbered leaves, so these trees are rebuilt on fetch until they are backfilled in
+-- the background
+UPDATE payout_service.merkle_tree_root
+SET node_hashes = NULL
+WHERE id IN (SELECT merkle_root FROM payout_service.merkle_tree_leaf_node_old WHERE leaf_position IS NULL);
+
+DROP TABLE payout_service.merkle_tree_leaf_node_old;
+DROP FUNCTION payout_service.numeric_to_bytea(NUMERIC);
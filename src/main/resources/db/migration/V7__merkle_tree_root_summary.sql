@@ -0,0 +1,16 @@
+ALTER TABLE payout_service.merkle_tree_root ADD COLUMN depth INT DEFAULT NULL;
+ALTER TABLE payout_service.merkle_tree_root ADD COLUMN leaf_count INT DEFAULT NULL;
+
+-- tree depth is the bit length of (leaf_count - 1), but each tree has at least one level
+UPDATE payout_service.merkle_tree_root AS root
+SET leaf_count = leaves.leaf_count,
+    depth      = greatest(1, length(ltrim((leaves.leaf_count - 1)::BIT(32)::TEXT, '0')))
+FROM (
+    SELECT merkle_root, count(*)::INT AS leaf_count
+    FROM payout_service.merkle_tree_leaf_node
+    GROUP BY merkle_root
+) AS leaves
+WHERE root.id = leaves.merkle_root;
+
+ALTER TABLE payout_service.merkle_tree_root ALTER COLUMN depth SET NOT NULL;
+ALTER TABLE payout_service.merkle_tree_root ALTER COLUMN leaf_count SET NOT NULL;
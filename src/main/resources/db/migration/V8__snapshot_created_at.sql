@@ -0,0 +1,20 @@
+ALTER TABLE payout_service.snapshot ADD COLUMN created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now();
+ALTER TABLE payout_service.snapshot ALTER COLUMN created_at DROP DEFAULT;
+
+-- snapshots are listed newest first and (created_at, id) is used as the page cursor, so every listing filter needs an
+-- index which ends with (created_at DESC, id DESC); status indexes only serve single-status listings, listings with
+-- multiple statuses walk the index without status and filter on status, which still stops after one page
+DROP INDEX payout_service.snapshot_chain_id_owner_idx;
+DROP INDEX payout_service.snapshot_chain_id_idx;
+DROP INDEX payout_service.snapshot_owner_address_idx;
+
+CREATE INDEX snapshot_owner_created_at_idx
+    ON payout_service.snapshot(owner_address, created_at DESC, id DESC);
+CREATE INDEX snapshot_owner_status_created_at_idx
+    ON payout_service.snapshot(owner_address, status, created_at DESC, id DESC);
+CREATE INDEX snapshot_chain_id_created_at_idx
+    ON payout_service.snapshot(chain_id, created_at DESC, id DESC);
+CREATE INDEX snapshot_chain_id_owner_created_at_idx
+    ON payout_service.snapshot(chain_id, owner_address, created_at DESC, id DESC);
+CREATE INDEX snapshot_chain_id_owner_status_created_at_idx
+    ON payout_service.snapshot(chain_id, owner_address, status, created_at DESC, id DESC);
@@ -0,0 +1,14 @@
+-- leaves shared by all Merkle trees of the same asset, each distinct (address, balance) pair is stored only once
+CREATE TABLE payout_service.merkle_tree_leaf (
+    id            BIGINT  GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    chain_id      BIGINT  NOT NULL,
+    asset_address VARCHAR NOT NULL,
+    address       BYTEA   NOT NULL CHECK (octet_length(address) = 20),
+    balance       BYTEA   NOT NULL CHECK (octet_length(balance) <= 32)
+);
+
+CREATE UNIQUE INDEX merkle_tree_leaf_content_idx
+    ON payout_service.merkle_tree_leaf(chain_id, asset_address, address, balance);
+
+-- packed IDs of shared leaves in leaf position order, trees with leaf node rows have this set to NULL
+ALTER TABLE payout_service.merkle_tree_root ADD COLUMN leaf_ids BYTEA DEFAULT NULL;
@@ -5,13 +5,26 @@ import java.util.concurrent.TimeUnit
 
 class ManualFixedScheduler : FixedScheduler {
 
-    private var command: Runnable? = null
+    private val commands = ArrayList<Runnable>()
+    private val submittedCommands = ArrayList<Runnable>()
 
     override fun scheduleAtFixedRate(command: Runnable, initialDelay: Long, period: Long, unit: TimeUnit) {
-        this.command = command
+        commands.add(command)
+    }
+
+    override fun submit(command: Runnable) {
+        submittedCommands.add(command)
     }
 
     override fun shutdown() {}
 
-    fun execute() = command?.run()
+    fun execute() = commands.forEach { it.run() }
+
+    fun execute(commandIndex: Int) = commands[commandIndex].run()
+
+    fun executeSubmitted() {
+        val toExecute = submittedCommands.toList()
+        submittedCommands.clear()
+        toExecute.forEach { it.run() }
+    }
 }
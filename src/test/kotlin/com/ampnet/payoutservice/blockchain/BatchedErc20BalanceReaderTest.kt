@@ -0,0 +1,161 @@
+package com.ampnet.payoutservice.blockchain
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.exception.ErrorCode
+import com.ampnet.payoutservice.exception.InternalException
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.BlockNumber
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.WalletAddress
+import io.reactivex.Flowable
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.assertThrows
+import org.web3j.protocol.Web3j
+import org.web3j.protocol.Web3jService
+import org.web3j.protocol.core.BatchRequest
+import org.web3j.protocol.core.BatchResponse
+import org.web3j.protocol.core.Request
+import org.web3j.protocol.core.Response
+import org.web3j.protocol.core.methods.request.Transaction
+import org.web3j.protocol.core.methods.response.EthCall
+import org.web3j.protocol.websocket.events.Notification
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import java.util.Collections
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executors
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BatchedErc20BalanceReaderTest : TestBase() {
+
+    companion object {
+        private const val ADDRESS_HEX_LENGTH = 40
+        private const val WORD_HEX_LENGTH = 64
+        private val CONTRACT_ADDRESS = ContractAddress("a")
+        private val BLOCK = BlockNumber(BigInteger.TEN)
+        private val BALANCES = (1L..5L).map {
+            AccountBalance(WalletAddress(it.toString()), Balance(BigInteger.valueOf(it * 100L)))
+        }
+    }
+
+    private val executor = Executors.newFixedThreadPool(2)
+
+    @AfterAll
+    fun afterAll() {
+        executor.shutdown()
+    }
+
+    @Test
+    fun mustReadBalancesInBatches() {
+        val service = FakeBalanceService(failures = emptyMap())
+        val reader = BatchedErc20BalanceReader(executor, batchSize = 2, parallelism = 2, maxRetries = 0)
+        val readGroups = mutableListOf<List<AccountBalance>>()
+
+        suppose("balances are read") {
+            reader.readBalances(Web3j.build(service), CONTRACT_ADDRESS, BALANCES.map { it.address }, BLOCK) {
+                readGroups.add(it)
+            }
+        }
+
+        verify("balances are read in batches and reported for each group of concurrent batches") {
+            assertThat(service.batchSizes).withMessage()
+                .containsExactlyInAnyOrder(2, 2, 1)
+            assertThat(readGroups.map { it.size }).withMessage()
+                .containsExactly(4, 1)
+            assertThat(readGroups.flatten()).withMessage()
+                .containsExactlyInAnyOrderElementsOf(BALANCES)
+        }
+    }
+
+    @Test
+    fun mustRetryOnlyFailedCallsOfBatch() {
+        val service = FakeBalanceService(failures = mapOf(Pair(BALANCES[1].address, 2)))
+        val reader = BatchedErc20BalanceReader(executor, batchSize = 5, parallelism = 1, maxRetries = 2)
+        val readBalances = mutableListOf<AccountBalance>()
+
+        suppose("balances are read") {
+            reader.readBalances(Web3j.build(service), CONTRACT_ADDRESS, BALANCES.map { it.address }, BLOCK) {
+                readBalances.addAll(it)
+            }
+        }
+
+        verify("only failed calls are retried") {
+            assertThat(service.batchSizes).withMessage()
+                .containsExactly(5, 1, 1)
+            assertThat(readBalances).withMessage()
+                .containsExactlyInAnyOrderElementsOf(BALANCES)
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionWhenCallFailsMoreThanMaxRetries() {
+        val service = FakeBalanceService(failures = mapOf(Pair(BALANCES[1].address, 3)))
+        val reader = BatchedErc20BalanceReader(executor, batchSize = 5, parallelism = 1, maxRetries = 2)
+
+        verify("InternalException is thrown") {
+            val exception = assertThrows<InternalException>(message) {
+                reader.readBalances(Web3j.build(service), CONTRACT_ADDRESS, BALANCES.map { it.address }, BLOCK) {}
+            }
+            assertThat(exception.errorCode).withMessage()
+                .isEqualTo(ErrorCode.BLOCKCHAIN_CONTRACT_READ_ERROR)
+        }
+    }
+
+    private class FakeBalanceService(failures: Map<WalletAddress, Int>) : Web3jService {
+
+        private val remainingFailures = HashMap(failures)
+        private val balances = BALANCES.associate { Pair(it.address, it.balance) }
+
+        val batchSizes: MutableList<Int> = Collections.synchronizedList(mutableListOf())
+
+        @Synchronized
+        override fun sendBatch(batchRequest: BatchRequest): BatchResponse {
+            batchSizes.add(batchRequest.requests.size)
+
+            val responses = batchRequest.requests.map { request ->
+                val callData = (request.params[0] as Transaction).data
+                val account = WalletAddress("0x" + callData.takeLast(ADDRESS_HEX_LENGTH))
+                val failures = remainingFailures.getOrDefault(account, 0)
+
+                EthCall().apply {
+                    id = request.id
+
+                    if (failures > 0) {
+                        remainingFailures[account] = failures - 1
+                        error = Response.Error(-1, "test")
+                    } else {
+                        result = Numeric.toHexStringWithPrefixZeroPadded(
+                            balances.getValue(account).rawValue,
+                            WORD_HEX_LENGTH
+                        )
+                    }
+                }
+            }
+
+            return BatchResponse(batchRequest.requests, responses)
+        }
+
+        override fun <T : Response<*>> send(request: Request<*, out Response<*>>, responseType: Class<T>): T =
+            throw UnsupportedOperationException()
+
+        override fun <T : Response<*>> sendAsync(
+            request: Request<*, out Response<*>>,
+            responseType: Class<T>
+        ): CompletableFuture<T> = throw UnsupportedOperationException()
+
+        override fun sendBatchAsync(batchRequest: BatchRequest): CompletableFuture<BatchResponse> =
+            throw UnsupportedOperationException()
+
+        override fun <T : Notification<*>> subscribe(
+            request: Request<*, out Response<*>>,
+            unsubscribeMethod: String,
+            responseType: Class<T>
+        ): Flowable<T> = throw UnsupportedOperationException()
+
+        override fun close() {}
+    }
+}
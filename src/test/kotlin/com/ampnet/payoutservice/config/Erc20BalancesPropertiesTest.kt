@@ -0,0 +1,45 @@
+package com.ampnet.payoutservice.config
+
+import com.ampnet.payoutservice.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+
+class Erc20BalancesPropertiesTest : TestBase() {
+
+    private val properties = Erc20BalancesProperties()
+
+    @Test
+    fun mustRecognizeLogRangeTooLargeErrorsOfProviders() {
+        val messages = listOf(
+            "Log response size exceeded. You can make eth_getLogs requests with up to a 2K block range",
+            "query returned more than 10000 results",
+            "block range is too wide",
+            "Block range limit exceeded.",
+            "exceed maximum block range: 5000"
+        )
+
+        verify("log range too large errors are recognized in exception causes") {
+            messages.forEachIndexed { index, message ->
+                assertThat(properties.isLogRangeTooLarge(RuntimeException(RuntimeException(message))))
+                    .withIndexedMessage(index)
+                    .isTrue()
+            }
+        }
+    }
+
+    @Test
+    fun mustNotRecognizeRateLimitErrorsAsLogRangeTooLargeErrors() {
+        val messages = listOf(
+            "rate limit exceeded",
+            "daily request count limit exceeded",
+            "Your app has exceeded its compute units per second capacity"
+        )
+
+        verify("rate limit errors are not recognized as log range too large errors") {
+            messages.forEachIndexed { index, message ->
+                assertThat(properties.isLogRangeTooLarge(RuntimeException(message))).withIndexedMessage(index)
+                    .isFalse()
+            }
+        }
+    }
+}
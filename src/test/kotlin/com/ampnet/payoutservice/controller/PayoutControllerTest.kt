@@ -4,9 +4,9 @@ import com.ampnet.payoutservice.TestBase
 import com.ampnet.payoutservice.blockchain.BlockchainService
 import com.ampnet.payoutservice.controller.response.InvestorPayoutResponse
 import com.ampnet.payoutservice.controller.response.InvestorPayoutsResponse
-import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
 import com.ampnet.payoutservice.model.params.GetPayoutsForInvestorParams
-import com.ampnet.payoutservice.model.result.MerkleTreeWithId
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
 import com.ampnet.payoutservice.model.result.Payout
 import com.ampnet.payoutservice.model.result.PayoutForInvestor
 import com.ampnet.payoutservice.repository.MerkleTreeRepository
@@ -26,7 +26,6 @@ import org.mockito.kotlin.given
 import org.mockito.kotlin.mock
 import org.springframework.http.ResponseEntity
 import java.math.BigInteger
-import java.util.UUID
 
 class PayoutControllerTest : TestBase() {
 
@@ -81,24 +80,24 @@ class PayoutControllerTest : TestBase() {
 
         val merkleTreeRepository = mock<MerkleTreeRepository>()
 
-        suppose("some Merkle trees will be returned") {
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[0].root.hash, params.chainId, payouts[0].asset)
-                )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[0]))
-
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[1].root.hash, params.chainId, payouts[1].asset)
-                )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[1]))
+        suppose("some Merkle tree paths will be returned") {
+            val pathParams = List(3) {
+                FetchMerkleTreePathParams(trees[it].root.hash, params.chainId, payouts[it].asset, params.investor)
+            }
 
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[2].root.hash, params.chainId, payouts[2].asset)
+            given(merkleTreeRepository.fetchPaths(pathParams.toSet()))
+                .willReturn(
+                    mapOf(
+                        Pair(
+                            pathParams[0],
+                            AccountBalanceWithPath(accountBalances[0], trees[0].pathTo(accountBalances[0])!!)
+                        ),
+                        Pair(
+                            pathParams[1],
+                            AccountBalanceWithPath(accountBalances[1], trees[1].pathTo(accountBalances[1])!!)
+                        )
+                    )
                 )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[2]))
         }
 
         val controller = PayoutController(blockchainService, merkleTreeRepository)
@@ -192,24 +191,24 @@ class PayoutControllerTest : TestBase() {
 
         val merkleTreeRepository = mock<MerkleTreeRepository>()
 
-        suppose("some Merkle trees will be returned") {
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[0].root.hash, params.chainId, payouts[0].asset)
-                )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[0]))
-
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[1].root.hash, params.chainId, payouts[1].asset)
-                )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[1]))
+        suppose("some Merkle tree paths will be returned") {
+            val pathParams = List(3) {
+                FetchMerkleTreePathParams(trees[it].root.hash, params.chainId, payouts[it].asset, params.investor)
+            }
 
-            given(
-                merkleTreeRepository.fetchTree(
-                    FetchMerkleTreeParams(trees[2].root.hash, params.chainId, payouts[2].asset)
+            given(merkleTreeRepository.fetchPaths(pathParams.toSet()))
+                .willReturn(
+                    mapOf(
+                        Pair(
+                            pathParams[0],
+                            AccountBalanceWithPath(accountBalances[0], trees[0].pathTo(accountBalances[0])!!)
+                        ),
+                        Pair(
+                            pathParams[1],
+                            AccountBalanceWithPath(accountBalances[1], trees[1].pathTo(accountBalances[1])!!)
+                        )
+                    )
                 )
-            ).willReturn(MerkleTreeWithId(UUID.randomUUID(), trees[2]))
         }
 
         val controller = PayoutController(blockchainService, merkleTreeRepository)
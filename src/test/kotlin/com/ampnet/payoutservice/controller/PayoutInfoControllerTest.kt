@@ -6,6 +6,7 @@ import com.ampnet.payoutservice.controller.response.FetchMerkleTreeResponse
 import com.ampnet.payoutservice.exception.ResourceNotFoundException
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
 import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
 import com.ampnet.payoutservice.model.result.MerkleTreeWithId
 import com.ampnet.payoutservice.repository.MerkleTreeRepository
 import com.ampnet.payoutservice.util.AccountBalance
@@ -19,7 +20,6 @@ import com.ampnet.payoutservice.util.WalletAddress
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
-import org.mockito.kotlin.any
 import org.mockito.kotlin.given
 import org.mockito.kotlin.mock
 import org.springframework.http.ResponseEntity
@@ -96,20 +96,14 @@ class PayoutInfoControllerTest : TestBase() {
             assetAddress = ContractAddress("abc"),
             walletAddress = accountBalance.address
         )
-
-        suppose("request address is contained in some Merkle tree") {
-            given(repository.containsAddress(params))
-                .willReturn(true)
-        }
-
         val tree = MerkleTree(
             listOf(accountBalance),
             HashFunction.IDENTITY
         )
 
-        suppose("some Merkle tree is returned") {
-            given(repository.fetchTree(params.toFetchMerkleTreeParams))
-                .willReturn(tree.withRandomId())
+        suppose("some Merkle tree path is returned") {
+            given(repository.fetchPath(params))
+                .willReturn(AccountBalanceWithPath(accountBalance, tree.pathTo(accountBalance)!!))
         }
 
         val controller = PayoutInfoController(repository)
@@ -145,43 +139,8 @@ class PayoutInfoControllerTest : TestBase() {
             walletAddress = accountBalance.address
         )
 
-        suppose("request address is not contained in some Merkle tree") {
-            given(repository.containsAddress(params))
-                .willReturn(false)
-        }
-
-        val controller = PayoutInfoController(repository)
-
-        verify("exception is thrown") {
-            assertThrows<ResourceNotFoundException>(message) {
-                controller.getPayoutPath(
-                    chainId = params.chainId.value,
-                    assetAddress = params.assetAddress.rawValue,
-                    rootHash = params.rootHash.value,
-                    walletAddress = accountBalance.address.rawValue
-                )
-            }
-        }
-    }
-
-    @Test
-    fun mustThrowExceptionWhenFetchingPayoutPathForNonExistentPayout() {
-        val repository = mock<MerkleTreeRepository>()
-        val accountBalance = AccountBalance(WalletAddress("def"), Balance(BigInteger.ONE))
-        val params = FetchMerkleTreePathParams(
-            rootHash = Hash("test"),
-            chainId = ChainId(1L),
-            assetAddress = ContractAddress("abc"),
-            walletAddress = accountBalance.address
-        )
-
-        suppose("request address is contained in some Merkle tree") {
-            given(repository.containsAddress(params))
-                .willReturn(true)
-        }
-
-        suppose("null is returned when fetching Merkle tree") {
-            given(repository.fetchTree(params.toFetchMerkleTreeParams))
+        suppose("null is returned when fetching Merkle tree path") {
+            given(repository.fetchPath(params))
                 .willReturn(null)
         }
 
@@ -199,45 +158,5 @@ class PayoutInfoControllerTest : TestBase() {
         }
     }
 
-    @Test
-    fun mustThrowExceptionWhenPayoutPathDoesNotExist() {
-        val repository = mock<MerkleTreeRepository>()
-        val accountBalance = AccountBalance(WalletAddress("def"), Balance(BigInteger.ONE))
-        val params = FetchMerkleTreePathParams(
-            rootHash = Hash("test"),
-            chainId = ChainId(1L),
-            assetAddress = ContractAddress("abc"),
-            walletAddress = accountBalance.address
-        )
-
-        suppose("some address is contained in some Merkle tree") {
-            given(repository.containsAddress(any()))
-                .willReturn(true)
-        }
-
-        val tree = MerkleTree(
-            listOf(accountBalance),
-            HashFunction.IDENTITY
-        )
-
-        suppose("some Merkle tree is returned") {
-            given(repository.fetchTree(params.toFetchMerkleTreeParams))
-                .willReturn(tree.withRandomId())
-        }
-
-        val controller = PayoutInfoController(repository)
-
-        verify("exception is thrown") {
-            assertThrows<ResourceNotFoundException>(message) {
-                controller.getPayoutPath(
-                    chainId = params.chainId.value,
-                    assetAddress = params.assetAddress.rawValue,
-                    rootHash = params.rootHash.value,
-                    walletAddress = "fff"
-                )
-            }
-        }
-    }
-
     private fun MerkleTree.withRandomId(): MerkleTreeWithId = MerkleTreeWithId(UUID.randomUUID(), this)
 }
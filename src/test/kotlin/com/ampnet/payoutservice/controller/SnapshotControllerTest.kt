@@ -1,13 +1,16 @@
 package com.ampnet.payoutservice.controller
 
 import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.config.JsonConfig
 import com.ampnet.payoutservice.controller.request.CreateSnapshotRequest
 import com.ampnet.payoutservice.controller.response.CreateSnapshotResponse
 import com.ampnet.payoutservice.controller.response.SnapshotsResponse
+import com.ampnet.payoutservice.exception.InvalidRequestException
 import com.ampnet.payoutservice.exception.ResourceNotFoundException
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.model.result.FullSnapshot
 import com.ampnet.payoutservice.model.result.FullSnapshotData
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.service.SnapshotQueueService
 import com.ampnet.payoutservice.util.Balance
 import com.ampnet.payoutservice.util.BlockNumber
@@ -16,6 +19,7 @@ import com.ampnet.payoutservice.util.ContractAddress
 import com.ampnet.payoutservice.util.Hash
 import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.IpfsHash
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
 import org.assertj.core.api.Assertions.assertThat
@@ -25,11 +29,16 @@ import org.mockito.kotlin.any
 import org.mockito.kotlin.given
 import org.mockito.kotlin.mock
 import org.springframework.http.ResponseEntity
+import java.io.ByteArrayOutputStream
 import java.math.BigInteger
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
 import java.util.UUID
 
 class SnapshotControllerTest : TestBase() {
 
+    private val objectMapper = JsonConfig().objectMapper()
+
     @Test
     fun mustCorrectlyFetchSnapshotById() {
         val snapshotUuid = UUID.randomUUID()
@@ -53,7 +62,7 @@ class SnapshotControllerTest : TestBase() {
                 .willReturn(snapshot)
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("correct response is returned") {
             val controllerResponse = controller.getSnapshotById(snapshotUuid, snapshot.ownerAddress.rawValue)
@@ -78,7 +87,7 @@ class SnapshotControllerTest : TestBase() {
                 .willReturn(null)
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("exception is thrown") {
             assertThrows<ResourceNotFoundException>(message) {
@@ -102,19 +111,23 @@ class SnapshotControllerTest : TestBase() {
                 service.getAllSnapshotsByChainIdOwnerAndStatuses(
                     chainId = null,
                     owner = owner,
-                    statuses = emptySet()
+                    statuses = emptySet(),
+                    cursor = null,
+                    limit = null
                 )
             )
-                .willReturn(snapshots)
+                .willReturn(SnapshotPage(snapshots, null))
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("correct snapshots are returned") {
             val result = controller.getSnapshots(
                 chainId = null,
                 status = null,
-                ownerAddress = owner.rawValue
+                ownerAddress = owner.rawValue,
+                cursor = null,
+                limit = null
             )
 
             assertThat(result).withMessage()
@@ -138,19 +151,23 @@ class SnapshotControllerTest : TestBase() {
                 service.getAllSnapshotsByChainIdOwnerAndStatuses(
                     chainId = chainId,
                     owner = owner,
-                    statuses = emptySet()
+                    statuses = emptySet(),
+                    cursor = null,
+                    limit = null
                 )
             )
-                .willReturn(snapshots)
+                .willReturn(SnapshotPage(snapshots, null))
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("correct snapshots are returned") {
             val result = controller.getSnapshots(
                 chainId = chainId.value,
                 status = null,
                 ownerAddress = owner.rawValue,
+                cursor = null,
+                limit = null
             )
 
             assertThat(result).withMessage()
@@ -177,19 +194,23 @@ class SnapshotControllerTest : TestBase() {
                 service.getAllSnapshotsByChainIdOwnerAndStatuses(
                     chainId = null,
                     owner = owner,
-                    statuses = status.toSet()
+                    statuses = status.toSet(),
+                    cursor = null,
+                    limit = null
                 )
             )
-                .willReturn(snapshots)
+                .willReturn(SnapshotPage(snapshots, null))
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("correct snapshots are returned") {
             val result = controller.getSnapshots(
                 chainId = null,
                 status = status,
-                ownerAddress = owner.rawValue
+                ownerAddress = owner.rawValue,
+                cursor = null,
+                limit = null
             )
 
             assertThat(result).withMessage()
@@ -197,6 +218,111 @@ class SnapshotControllerTest : TestBase() {
         }
     }
 
+    @Test
+    fun mustCorrectlyFetchSnapshotsPageWithCursorAndLimit() {
+        val chainId = ChainId(123L)
+        val owner = WalletAddress("123")
+        val snapshots = listOf(
+            createSuccessfulSnapshot(0, chainId, owner),
+            createPendingSnapshot(1, chainId, owner)
+        )
+        val cursor = SnapshotCursor(OffsetDateTime.of(2022, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), UUID.randomUUID())
+        val nextCursor = SnapshotCursor(OffsetDateTime.of(2021, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC), snapshots[1].id)
+        val service = mock<SnapshotQueueService>()
+
+        suppose("some snapshots page will be returned") {
+            given(
+                service.getAllSnapshotsByChainIdOwnerAndStatuses(
+                    chainId = chainId,
+                    owner = owner,
+                    statuses = emptySet(),
+                    cursor = cursor,
+                    limit = 2
+                )
+            )
+                .willReturn(SnapshotPage(snapshots, nextCursor))
+        }
+
+        val controller = SnapshotController(service, objectMapper)
+
+        verify("correct snapshots and next page cursor are returned") {
+            val result = controller.getSnapshots(
+                chainId = chainId.value,
+                status = null,
+                cursor = cursor.encode(),
+                limit = 2,
+                ownerAddress = owner.rawValue
+            )
+
+            assertThat(result).withMessage()
+                .isEqualTo(
+                    ResponseEntity.ok(
+                        SnapshotsResponse(
+                            snapshots = snapshots.map { it.toSnapshotResponse() },
+                            nextCursor = nextCursor.encode()
+                        )
+                    )
+                )
+        }
+    }
+
+    @Test
+    fun mustThrowInvalidRequestExceptionForInvalidSnapshotsCursor() {
+        val controller = SnapshotController(mock(), objectMapper)
+
+        verify("exception is thrown") {
+            assertThrows<InvalidRequestException>(message) {
+                controller.getSnapshots(
+                    chainId = null,
+                    status = null,
+                    cursor = "invalid-cursor",
+                    limit = null,
+                    ownerAddress = "123"
+                )
+            }
+        }
+    }
+
+    @Test
+    fun mustCorrectlyStreamSnapshots() {
+        val chainId = ChainId(123L)
+        val owner = WalletAddress("123")
+        val snapshots = listOf(
+            createSuccessfulSnapshot(0, chainId, owner),
+            createPendingSnapshot(1, chainId, owner)
+        )
+        // stubbing via argument matchers is not possible as owner address is passed as unboxed value class
+        val service = suppose("some snapshots will be streamed") {
+            object : SnapshotQueueService by mock() {
+                override fun streamAllSnapshotsByChainIdOwnerAndStatuses(
+                    chainId: ChainId?,
+                    owner: WalletAddress?,
+                    statuses: Set<SnapshotStatus>,
+                    action: (FullSnapshot) -> Unit
+                ) {
+                    if (chainId == ChainId(123L) && owner == WalletAddress("123") && statuses.isEmpty()) {
+                        snapshots.forEach(action)
+                    }
+                }
+            }
+        }
+
+        val controller = SnapshotController(service, objectMapper)
+
+        verify("correct snapshots are streamed") {
+            val result = controller.streamSnapshots(
+                chainId = chainId.value,
+                status = null,
+                ownerAddress = owner.rawValue
+            )
+            val outputStream = ByteArrayOutputStream()
+            result.body?.writeTo(outputStream)
+
+            assertThat(objectMapper.readValue(outputStream.toByteArray(), SnapshotsResponse::class.java)).withMessage()
+                .isEqualTo(SnapshotsResponse(snapshots.map { it.toSnapshotResponse() }))
+        }
+    }
+
     @Test
     fun mustCorrectlyCreateSnapshotAndReturnAResponse() {
         val service = mock<SnapshotQueueService>()
@@ -230,7 +356,7 @@ class SnapshotControllerTest : TestBase() {
                 .willReturn(snapshotUuid)
         }
 
-        val controller = SnapshotController(service)
+        val controller = SnapshotController(service, objectMapper)
 
         verify("correct response is returned") {
             val controllerResponse = controller.createSnapshot(
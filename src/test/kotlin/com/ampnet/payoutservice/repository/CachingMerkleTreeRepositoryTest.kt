@@ -0,0 +1,325 @@
+package com.ampnet.payoutservice.repository
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.model.params.FetchMerkleTreePathParams
+import com.ampnet.payoutservice.model.result.AccountBalanceWithPath
+import com.ampnet.payoutservice.model.result.MerkleTreeWithId
+import com.ampnet.payoutservice.util.AccountBalance
+import com.ampnet.payoutservice.util.Balance
+import com.ampnet.payoutservice.util.ChainId
+import com.ampnet.payoutservice.util.ContractAddress
+import com.ampnet.payoutservice.util.Hash
+import com.ampnet.payoutservice.util.HashFunction
+import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.WalletAddress
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.mockito.kotlin.given
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verifyNoMoreInteractions
+import java.math.BigInteger
+import java.util.UUID
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import org.mockito.kotlin.verify as verifyMock
+
+class CachingMerkleTreeRepositoryTest : TestBase() {
+
+    private val params = FetchMerkleTreeParams(
+        rootHash = Hash("test"),
+        chainId = ChainId(1L),
+        assetAddress = ContractAddress("abc")
+    )
+    private val tree = MerkleTreeWithId(
+        UUID.randomUUID(),
+        MerkleTree(
+            listOf(
+                AccountBalance(WalletAddress("a"), Balance(BigInteger.ONE)),
+                AccountBalance(WalletAddress("b"), Balance(BigInteger.TWO))
+            ),
+            HashFunction.IDENTITY
+        )
+    )
+
+    @Test
+    fun mustFetchTreeFromDelegateOnlyOnce() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+
+        suppose("some Merkle tree is returned") {
+            given(delegate.fetchTree(params))
+                .willReturn(tree)
+        }
+
+        val meterRegistry = SimpleMeterRegistry()
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), meterRegistry)
+
+        verify("cached Merkle tree is returned") {
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isEqualTo(tree)
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isEqualTo(tree)
+
+            verifyMock(delegate, times(1))
+                .fetchTree(params)
+            verifyNoMoreInteractions(delegate)
+        }
+
+        verify("cache hits and misses are recorded") {
+            assertThat(cacheGets(meterRegistry, "hit")).withMessage()
+                .isEqualTo(1.0)
+            assertThat(cacheGets(meterRegistry, "miss")).withMessage()
+                .isEqualTo(1.0)
+        }
+    }
+
+    @Test
+    fun mustNotCacheNonExistentTree() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+
+        suppose("null is returned when fetching Merkle tree") {
+            given(delegate.fetchTree(params))
+                .willReturn(null)
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        verify("null is returned and not cached") {
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isNull()
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isNull()
+
+            verifyMock(delegate, times(2))
+                .fetchTree(params)
+        }
+    }
+
+    @Test
+    fun mustFetchTreeOnlyOnceForConcurrentRequests() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+        val threadCount = 8
+        val startLatch = CountDownLatch(1)
+
+        suppose("some Merkle tree is slowly returned") {
+            given(delegate.fetchTree(params))
+                .willAnswer {
+                    Thread.sleep(100L)
+                    tree
+                }
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        verify("Merkle tree is fetched from delegate only once") {
+            val executor = Executors.newFixedThreadPool(threadCount)
+            val results = List(threadCount) {
+                executor.submit<MerkleTreeWithId?> {
+                    startLatch.await()
+                    repository.fetchTree(params)
+                }
+            }
+
+            startLatch.countDown()
+
+            results.forEachIndexed { index, result ->
+                assertThat(result.get(5L, TimeUnit.SECONDS)).withIndexedMessage(index)
+                    .isEqualTo(tree)
+            }
+
+            executor.shutdown()
+
+            verifyMock(delegate, times(1))
+                .fetchTree(params)
+        }
+    }
+
+    @Test
+    fun mustFetchTreeByIdViaCache() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+
+        suppose("some Merkle tree and its params are returned") {
+            given(delegate.getParamsById(tree.treeId))
+                .willReturn(params)
+            given(delegate.fetchTree(params))
+                .willReturn(tree)
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        verify("cached Merkle tree is returned by ID") {
+            assertThat(repository.getById(tree.treeId)).withMessage()
+                .isEqualTo(tree.tree)
+            assertThat(repository.fetchTree(params)).withMessage()
+                .isEqualTo(tree)
+            assertThat(repository.getById(tree.treeId)).withMessage()
+                .isEqualTo(tree.tree)
+
+            verifyMock(delegate, times(1))
+                .fetchTree(params)
+            verifyMock(delegate, never())
+                .getById(tree.treeId)
+        }
+    }
+
+    @Test
+    fun mustReturnNullForNonExistentTreeId() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+        val treeId = UUID.randomUUID()
+
+        suppose("no Merkle tree params are returned") {
+            given(delegate.getParamsById(treeId))
+                .willReturn(null)
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        verify("null is returned") {
+            assertThat(repository.getById(treeId)).withMessage()
+                .isNull()
+
+            verifyMock(delegate)
+                .getParamsById(treeId)
+            verifyNoMoreInteractions(delegate)
+        }
+    }
+
+    @Test
+    fun mustFetchPathFromCachedTree() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+
+        suppose("some Merkle tree is returned") {
+            given(delegate.fetchTree(params))
+                .willReturn(tree)
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        suppose("Merkle tree is cached") {
+            repository.fetchTree(params)
+        }
+
+        verify("cached tree is used to fetch path") {
+            val accountBalance = tree.tree.leafNodesByAddress[WalletAddress("a")]!!.value.data
+
+            assertThat(repository.fetchPath(pathParams(WalletAddress("a")))).withMessage()
+                .isEqualTo(AccountBalanceWithPath(accountBalance, tree.tree.pathTo(accountBalance)!!))
+            assertThat(repository.fetchPath(pathParams(WalletAddress("c")))).withMessage()
+                .isNull()
+
+            verifyMock(delegate, never())
+                .fetchPath(pathParams(WalletAddress("a")))
+        }
+    }
+
+    @Test
+    fun mustFetchPathForNonCachedTreeViaDelegate() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+        val pathParams = pathParams(WalletAddress("a"))
+        val accountBalance = tree.tree.leafNodesByAddress[WalletAddress("a")]!!.value.data
+        val path = AccountBalanceWithPath(accountBalance, tree.tree.pathTo(accountBalance)!!)
+
+        suppose("some path is returned") {
+            given(delegate.fetchPath(pathParams))
+                .willReturn(path)
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        verify("delegate is used to fetch path") {
+            assertThat(repository.fetchPath(pathParams)).withMessage()
+                .isEqualTo(path)
+
+            verifyMock(delegate)
+                .fetchPath(pathParams)
+            verifyNoMoreInteractions(delegate)
+        }
+    }
+
+    @Test
+    fun mustFetchOnlyNonCachedTreesFromDelegate() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+        val otherParams = params.copy(rootHash = Hash("other"))
+        val nonExistentParams = params.copy(rootHash = Hash("non-existent"))
+        val otherTree = MerkleTreeWithId(
+            UUID.randomUUID(),
+            MerkleTree(listOf(AccountBalance(WalletAddress("c"), Balance(BigInteger.TEN))), HashFunction.IDENTITY)
+        )
+
+        suppose("some Merkle trees are returned") {
+            given(delegate.fetchTree(params))
+                .willReturn(tree)
+            given(delegate.fetchTrees(listOf(otherParams, nonExistentParams)))
+                .willReturn(mapOf(Pair(otherParams, otherTree)))
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        suppose("Merkle tree is cached") {
+            repository.fetchTree(params)
+        }
+
+        verify("cached and fetched Merkle trees are returned") {
+            assertThat(repository.fetchTrees(listOf(params, otherParams, nonExistentParams))).withMessage()
+                .isEqualTo(mapOf(Pair(params, tree), Pair(otherParams, otherTree)))
+
+            verifyMock(delegate)
+                .fetchTrees(listOf(otherParams, nonExistentParams))
+        }
+
+        verify("fetched Merkle tree is cached") {
+            assertThat(repository.fetchTrees(listOf(otherParams))).withMessage()
+                .isEqualTo(mapOf(Pair(otherParams, otherTree)))
+
+            verifyMock(delegate, times(1))
+                .fetchTree(params)
+            verifyMock(delegate, never())
+                .fetchTrees(listOf(otherParams))
+        }
+    }
+
+    @Test
+    fun mustFetchPathsFromCachedTreeAndViaDelegate() {
+        val delegate = mock<JooqMerkleTreeRepository>()
+        val otherPathParams = pathParams(WalletAddress("a")).copy(rootHash = Hash("other"))
+        val accountBalance = tree.tree.leafNodesByAddress[WalletAddress("a")]!!.value.data
+        val path = AccountBalanceWithPath(accountBalance, tree.tree.pathTo(accountBalance)!!)
+        val otherPath = AccountBalanceWithPath(accountBalance, emptyList())
+
+        suppose("some Merkle tree and path are returned") {
+            given(delegate.fetchTree(params))
+                .willReturn(tree)
+            given(delegate.fetchPaths(listOf(otherPathParams)))
+                .willReturn(mapOf(Pair(otherPathParams, otherPath)))
+        }
+
+        val repository = CachingMerkleTreeRepository(delegate, ApplicationProperties(), SimpleMeterRegistry())
+
+        suppose("Merkle tree is cached") {
+            repository.fetchTree(params)
+        }
+
+        verify("paths are fetched from cached tree and via delegate") {
+            val result = repository.fetchPaths(
+                listOf(pathParams(WalletAddress("a")), pathParams(WalletAddress("c")), otherPathParams)
+            )
+
+            assertThat(result).withMessage()
+                .isEqualTo(mapOf(Pair(pathParams(WalletAddress("a")), path), Pair(otherPathParams, otherPath)))
+
+            verifyMock(delegate)
+                .fetchPaths(listOf(otherPathParams))
+        }
+    }
+
+    private fun pathParams(walletAddress: WalletAddress) =
+        FetchMerkleTreePathParams(params.rootHash, params.chainId, params.assetAddress, walletAddress)
+
+    private fun cacheGets(meterRegistry: SimpleMeterRegistry, result: String): Double =
+        meterRegistry.get("cache.gets").tag("result", result).functionCounter().count()
+}
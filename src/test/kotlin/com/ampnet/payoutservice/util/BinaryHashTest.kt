@@ -0,0 +1,91 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import kotlin.random.Random
+
+class BinaryHashTest : TestBase() {
+
+    private val hashes = listOf(
+        "0x0000000000000000000000000000000000000000000000000000000000000000",
+        "0x0000000000000000000000000000000000000000000000000000000000000001",
+        "0x00000000000000000000000000000000000000000000000000000000000000ff",
+        "0x0000000000000000000000000000000000000000000000000000000000000100",
+        "0x000000000000000000000000000000000000000000000000ffffffffffffffff",
+        "0x0000000000000000000000000000000000000000000000010000000000000000",
+        "0x7fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+        "0x8000000000000000000000000000000000000000000000000000000000000000",
+        "0x8000000000000000000000000000000000000000000000000000000000000001",
+        "0xffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff"
+    ).map { Hash(it) }
+
+    @Test
+    fun mustThrowExceptionForHashOfWrongSize() {
+        verify("exception is thrown for hash which is not 32 bytes long") {
+            assertThrows<IllegalArgumentException>(message) {
+                BinaryHash.fromHash(Hash("0x1234"))
+            }
+        }
+    }
+
+    @Test
+    fun mustConvertToAndFromHash() {
+        verify("binary hash is correctly converted to and from hash") {
+            hashes.forEachIndexed { index, hash ->
+                assertThat(BinaryHash.fromHash(hash).toHash()).withIndexedMessage(index)
+                    .isEqualTo(hash)
+            }
+        }
+    }
+
+    @Test
+    fun mustConvertToAndFromBytes() {
+        val bytes = suppose("some bytes with an offset are present") {
+            Random(0).nextBytes(BinaryHash.SIZE_BYTES + 3)
+        }
+
+        verify("binary hash is correctly read from and written into bytes") {
+            val binaryHash = BinaryHash.fromBytes(bytes, 3)
+            val expectedBytes = bytes.copyOfRange(3, bytes.size)
+
+            assertThat(binaryHash.toByteArray()).withMessage()
+                .isEqualTo(expectedBytes)
+            assertThat(binaryHash.toHash()).withMessage()
+                .isEqualTo(Hash(Numeric.toHexString(expectedBytes)))
+        }
+    }
+
+    @Test
+    fun mustCompareHashesAsUnsignedNumbers() {
+        val randomHashes = suppose("some random hashes are present") {
+            val random = Random(0)
+            hashes + (1..100).map { Hash(Numeric.toHexString(random.nextBytes(BinaryHash.SIZE_BYTES))) }
+        }
+
+        verify("binary hashes are ordered in the same way as their numeric values") {
+            val expectedOrder = randomHashes.sortedBy { BigInteger(it.value.removePrefix("0x"), 16) }
+
+            assertThat(randomHashes.shuffled().map { BinaryHash.fromHash(it) }.sorted().map { it.toHash() })
+                .withMessage()
+                .isEqualTo(expectedOrder)
+        }
+
+        verify("hashes are ordered in the same way as their numeric values") {
+            val expectedOrder = randomHashes.sortedBy { BigInteger(it.value.removePrefix("0x"), 16) }
+
+            assertThat(randomHashes.shuffled().sorted()).withMessage()
+                .isEqualTo(expectedOrder)
+        }
+
+        verify("hashes of different lengths are compared by their numeric values") {
+            assertThat(Hash("0x00ff")).withMessage().isEqualByComparingTo(Hash("ff"))
+            assertThat(Hash("0x0100")).withMessage().isGreaterThan(Hash("0xff"))
+            assertThat(Hash("0x0")).withMessage().isEqualByComparingTo(Hash("0x"))
+            assertThat(Hash("0xABC")).withMessage().isLessThan(Hash("0xabd"))
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.util.BlockRangeScanner.BlockRange
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import org.junit.jupiter.api.assertThrows
+import java.math.BigInteger
+import java.util.concurrent.Executors
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class BlockRangeScannerTest : TestBase() {
+
+    companion object {
+        private const val TOO_LARGE = "range too large"
+
+        private fun range(from: Long, to: Long) = BlockRange(BigInteger.valueOf(from), BigInteger.valueOf(to))
+    }
+
+    private val executor = Executors.newFixedThreadPool(2)
+
+    @AfterAll
+    fun afterAll() {
+        executor.shutdown()
+    }
+
+    @Test
+    fun mustScanWholeRangeInOrderAndGrowRangeSize() {
+        val scanner = scanner(parallelism = 2, initialRangeSize = 10L, maxRangeSize = 40L)
+        val scannedRanges = mutableListOf<BlockRange>()
+        val results = mutableListOf<BlockRange>()
+
+        suppose("block range is scanned") {
+            scanner.scan(BigInteger.ZERO, BigInteger.valueOf(199L), { it }) { range, result ->
+                scannedRanges.add(range)
+                results.add(result)
+            }
+        }
+
+        verify("ranges are reported in order and their size grows up to max range size") {
+            assertThat(results).withMessage()
+                .isEqualTo(scannedRanges)
+            assertThat(scannedRanges).withMessage()
+                .containsExactly(
+                    range(0L, 9L),
+                    range(10L, 19L),
+                    range(20L, 39L),
+                    range(40L, 59L),
+                    range(60L, 99L),
+                    range(100L, 139L),
+                    range(140L, 179L),
+                    range(180L, 199L)
+                )
+        }
+    }
+
+    @Test
+    fun mustSplitRangesWhichAreTooLarge() {
+        val scanner = scanner(parallelism = 1, initialRangeSize = 10L, maxRangeSize = 10L)
+        val scannedRanges = mutableListOf<BlockRange>()
+
+        suppose("block range is scanned and ranges larger than 5 blocks fail") {
+            scanner.scan(
+                fromBlock = BigInteger.ZERO,
+                toBlock = BigInteger.valueOf(19L),
+                fetch = { if (it.size > BigInteger.valueOf(5L)) throw IllegalStateException(TOO_LARGE) else it }
+            ) { range, _ -> scannedRanges.add(range) }
+        }
+
+        verify("failed ranges are split and reported in order") {
+            assertThat(scannedRanges).withMessage()
+                .containsExactly(
+                    range(0L, 4L),
+                    range(5L, 9L),
+                    range(10L, 14L),
+                    range(15L, 19L)
+                )
+        }
+    }
+
+    @Test
+    fun mustNotReportRangesAfterFailedRangeBeforeItIsScanned() {
+        val scanner = scanner(parallelism = 2, initialRangeSize = 4L, maxRangeSize = 4L)
+        val scannedRanges = mutableListOf<BlockRange>()
+
+        suppose("block range is scanned and first range fails once") {
+            var failed = false
+
+            scanner.scan(
+                fromBlock = BigInteger.ZERO,
+                toBlock = BigInteger.valueOf(7L),
+                fetch = {
+                    synchronized(scannedRanges) {
+                        if (it.from == BigInteger.ZERO && !failed) {
+                            failed = true
+                            throw IllegalStateException(TOO_LARGE)
+                        }
+                    }
+                    it
+                }
+            ) { range, _ -> scannedRanges.add(range) }
+        }
+
+        verify("ranges are reported in block order") {
+            assertThat(scannedRanges).withMessage()
+                .containsExactly(
+                    range(0L, 1L),
+                    range(2L, 3L),
+                    range(4L, 7L)
+                )
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionWhenFetchingRangeFailsForOtherReason() {
+        val scanner = scanner(parallelism = 2, initialRangeSize = 10L, maxRangeSize = 10L)
+
+        verify("exception is thrown") {
+            assertThrows<IllegalStateException>(message) {
+                scanner.scan(
+                    fromBlock = BigInteger.ZERO,
+                    toBlock = BigInteger.valueOf(99L),
+                    fetch = { throw IllegalStateException("other") }
+                ) { _, _ -> }
+            }
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionWhenSingleBlockRangeIsTooLarge() {
+        val scanner = scanner(parallelism = 1, initialRangeSize = 2L, maxRangeSize = 2L)
+
+        verify("exception is thrown") {
+            assertThrows<IllegalStateException>(message) {
+                scanner.scan(BigInteger.ZERO, BigInteger.ONE, { throw IllegalStateException(TOO_LARGE) }) { _, _ -> }
+            }
+        }
+    }
+
+    private fun scanner(parallelism: Int, initialRangeSize: Long, maxRangeSize: Long) =
+        BlockRangeScanner(
+            executor = executor,
+            parallelism = parallelism,
+            initialRangeSize = BigInteger.valueOf(initialRangeSize),
+            maxRangeSize = BigInteger.valueOf(maxRangeSize),
+            isRangeTooLarge = { it.message == TOO_LARGE }
+        )
+}
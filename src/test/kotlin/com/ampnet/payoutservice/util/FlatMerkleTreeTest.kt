@@ -0,0 +1,236 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.module.kotlin.jacksonObjectMapper
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.math.BigInteger
+import java.util.Collections
+import java.util.IdentityHashMap
+
+class FlatMerkleTreeTest : TestBase() {
+
+    private val objectMapper = jacksonObjectMapper()
+    private val nonContainedBalance = AccountBalance(WalletAddress("0xffff"), Balance(BigInteger("99999999")))
+
+    @Test
+    fun mustThrowExceptionForEmptyNodeList() {
+        verify("exception is thrown when building Merkle tree from empty list") {
+            assertThrows<IllegalArgumentException>(message) {
+                FlatMerkleTree(emptyList(), HashFunction.KECCAK_256)
+            }
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionForUnsupportedHashFunction() {
+        verify("exception is thrown when hash function does not produce fixed size hashes") {
+            assertThrows<IllegalArgumentException>(message) {
+                FlatMerkleTree(
+                    listOf(AccountBalance(WalletAddress("0x1"), Balance(BigInteger("0")))),
+                    HashFunction.IDENTITY
+                )
+            }
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionForLeafNodeAddressCollision() {
+        verify("exception is thrown when address collision in leaf nodes occurs") {
+            assertThrows<IllegalArgumentException>(message) {
+                FlatMerkleTree(
+                    listOf(
+                        AccountBalance(WalletAddress("0x1"), Balance(BigInteger("0"))),
+                        AccountBalance(WalletAddress("0x1"), Balance(BigInteger("1")))
+                    ),
+                    HashFunction.KECCAK_256
+                )
+            }
+        }
+    }
+
+    @Test
+    fun mustBeDefaultEngineForKeccak256HashFunction() {
+        val tree = suppose("Merkle tree is created with Keccak-256 hash function") {
+            MerkleTree(
+                listOf(AccountBalance(WalletAddress("0x1"), Balance(BigInteger("0")))),
+                HashFunction.KECCAK_256
+            )
+        }
+
+        verify("flat Merkle tree is used") {
+            assertThat(tree).withMessage().isInstanceOf(FlatMerkleTree::class.java)
+        }
+    }
+
+    @Test
+    fun mustProduceSameTreeAsNodeMerkleTree() {
+        val sizes = (1..33) + listOf(64, 100, 257)
+
+        sizes.forEach { size ->
+            val balances = balances(size)
+            val flatTree = suppose("flat Merkle tree with $size elements is created") {
+                FlatMerkleTree(balances.shuffled(), HashFunction.KECCAK_256)
+            }
+            val nodeTree = suppose("node Merkle tree with $size elements is created") {
+                NodeMerkleTree(balances.shuffled(), HashFunction.KECCAK_256)
+            }
+
+            verify("flat Merkle tree has same structure as node Merkle tree") {
+                assertThat(flatTree.rootHash).withIndexedMessage(size).isEqualTo(nodeTree.rootHash)
+                assertThat(flatTree.depth).withIndexedMessage(size).isEqualTo(nodeTree.depth)
+                assertThat(flatTree.root).withIndexedMessage(size).isEqualTo(nodeTree.root)
+                assertThat(flatTree).withIndexedMessage(size).isEqualTo(nodeTree)
+            }
+
+            verify("flat Merkle tree has same leaf nodes as node Merkle tree") {
+                assertThat(flatTree.leafNodesByHash).withIndexedMessage(size).isEqualTo(nodeTree.leafNodesByHash)
+                assertThat(flatTree.leafNodesByAddress).withIndexedMessage(size)
+                    .isEqualTo(nodeTree.leafNodesByAddress)
+            }
+
+            verify("flat Merkle tree has same paths as node Merkle tree") {
+                balances.forEach {
+                    assertThat(flatTree.pathTo(it)).withIndexedMessage(size).isEqualTo(nodeTree.pathTo(it))
+                }
+                assertThat(flatTree.pathTo(nonContainedBalance)).withIndexedMessage(size).isNull()
+            }
+
+            verify("flat Merkle tree has same batch paths as node Merkle tree") {
+                val addresses = balances.map { it.address } + nonContainedBalance.address
+                val expectedPaths = balances.associate { Pair(it.address, nodeTree.pathTo(it)) }
+
+                assertThat(flatTree.pathsTo(addresses)).withIndexedMessage(size).isEqualTo(expectedPaths)
+                assertThat(nodeTree.pathsTo(addresses)).withIndexedMessage(size).isEqualTo(expectedPaths)
+            }
+
+            verify("flat Merkle tree is serialized into same JSON as node Merkle tree") {
+                assertThat(objectMapper.valueToTree<JsonNode>(flatTree)).withIndexedMessage(size)
+                    .isEqualTo(objectMapper.valueToTree<JsonNode>(nodeTree))
+            }
+        }
+    }
+
+    @Test
+    fun mustShareUpperLevelPathSegmentsBetweenBatchPaths() {
+        val balances = suppose("some balances are present") {
+            balances(8)
+        }
+        val tree = suppose("flat Merkle tree is created") {
+            FlatMerkleTree(balances, HashFunction.KECCAK_256)
+        }
+
+        verify("upper level path segments are shared between paths") {
+            val paths = tree.pathsTo(balances.map { it.address }).values.toList()
+            val distinctSegmentsPerLevel = (0 until tree.depth).map { level ->
+                paths.mapTo(Collections.newSetFromMap(IdentityHashMap())) { it[level] }.size
+            }
+
+            assertThat(paths).withMessage().hasSize(8)
+            assertThat(distinctSegmentsPerLevel).withMessage().isEqualTo(listOf(8, 4, 2))
+        }
+    }
+
+    @Test
+    fun mustProduceSameTreeWhenBuiltInParallel() {
+        val parallelBuild = suppose("parallel Merkle tree build with low threshold is configured") {
+            ParallelMerkleTreeBuild(parallelism = 4, threshold = 2)
+        }
+
+        try {
+            listOf(1, 2, 3, 5, 100, 2_049, 10_000).forEach { size ->
+                val balances = balances(size)
+                val parallelTree = suppose("flat Merkle tree with $size elements is built in parallel") {
+                    FlatMerkleTree(balances.shuffled(), HashFunction.KECCAK_256, parallelBuild)
+                }
+                val sequentialTree = suppose("flat Merkle tree with $size elements is built sequentially") {
+                    FlatMerkleTree(balances.shuffled(), HashFunction.KECCAK_256)
+                }
+
+                verify("parallel and sequential Merkle trees are the same") {
+                    assertThat(parallelTree.rootHash).withIndexedMessage(size).isEqualTo(sequentialTree.rootHash)
+                    assertThat(parallelTree.depth).withIndexedMessage(size).isEqualTo(sequentialTree.depth)
+                    assertThat(parallelTree.leafNodesByHash).withIndexedMessage(size)
+                        .isEqualTo(sequentialTree.leafNodesByHash)
+                }
+            }
+        } finally {
+            parallelBuild.shutdown()
+        }
+    }
+
+    @Test
+    fun mustRestoreSameTreeFromNodeHashes() {
+        val sizes = listOf(1, 2, 3, 7, 8, 33)
+
+        sizes.forEach { size ->
+            val tree = suppose("flat Merkle tree with $size elements is created") {
+                FlatMerkleTree(balances(size).shuffled(), HashFunction.KECCAK_256)
+            }
+
+            verify("tree restored from node hashes is same as original tree") {
+                val restoredTree = FlatMerkleTree.fromNodeHashes(
+                    List(tree.leafCount) { tree.leafAt(it) },
+                    HashFunction.KECCAK_256,
+                    tree.nodeHashes
+                )
+
+                assertThat(restoredTree).withIndexedMessage(size)
+                    .isEqualTo(tree)
+                assertThat(restoredTree.root).withIndexedMessage(size)
+                    .isEqualTo(tree.root)
+                assertThat(restoredTree.leafNodesByHash).withIndexedMessage(size)
+                    .isEqualTo(tree.leafNodesByHash)
+                assertThat(restoredTree.pathTo(tree.leafAt(size - 1))).withIndexedMessage(size)
+                    .isEqualTo(tree.pathTo(tree.leafAt(size - 1)))
+            }
+        }
+    }
+
+    @Test
+    fun mustProduceSamePathsWhenPacked() {
+        val sizes = listOf(1, 2, 3, 7, 8, 33, 100)
+
+        sizes.forEach { size ->
+            val tree = suppose("flat Merkle tree with $size elements is created") {
+                FlatMerkleTree(balances(size).shuffled(), HashFunction.KECCAK_256)
+            }
+
+            verify("packed paths are same as Merkle tree paths") {
+                for (position in 0 until tree.leafCount) {
+                    val packedPath = tree.packedPathAt(position)
+
+                    assertThat(packedPath.depth).withIndexedMessage(position)
+                        .isEqualTo(tree.depth)
+                    assertThat(packedPath.toPathSegments()).withIndexedMessage(position)
+                        .isEqualTo(tree.pathTo(tree.leafAt(position)))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionWhenNodeHashesDoNotMatchLeafCount() {
+        val tree = suppose("flat Merkle tree with 4 elements is created") {
+            FlatMerkleTree(balances(4), HashFunction.KECCAK_256)
+        }
+
+        verify("exception is thrown when there are too few or too many node hashes") {
+            val leaves = List(tree.leafCount) { tree.leafAt(it) }
+
+            assertThrows<IllegalArgumentException>(message) {
+                FlatMerkleTree.fromNodeHashes(leaves.dropLast(1), HashFunction.KECCAK_256, tree.nodeHashes)
+            }
+            assertThrows<IllegalArgumentException>(message) {
+                FlatMerkleTree.fromNodeHashes(leaves + nonContainedBalance, HashFunction.KECCAK_256, tree.nodeHashes)
+            }
+        }
+    }
+
+    private fun balances(size: Int): List<AccountBalance> =
+        (1..size).map {
+            AccountBalance(WalletAddress("0x" + it.toString(16)), Balance(BigInteger.valueOf(it * 1_000L)))
+        }
+}
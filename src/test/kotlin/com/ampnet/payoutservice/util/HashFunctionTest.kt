@@ -0,0 +1,85 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import kotlin.random.Random
+
+class HashFunctionTest : TestBase() {
+
+    @Test
+    fun mustProduceSameKeccak256HashForBinaryAndHexInput() {
+        val inputs = suppose("some inputs of various sizes are present") {
+            val random = Random(0)
+            listOf(0, 1, 31, 32, 64, 135, 136, 137, 1000).map { random.nextBytes(it) }
+        }
+
+        verify("binary and hex input produce same hash") {
+            inputs.forEachIndexed { index, input ->
+                val output = ByteArray(BinaryHash.SIZE_BYTES + 2)
+                HashFunction.KECCAK_256.binaryHasher?.hash(input, 0, input.size, output, 2)
+
+                assertThat(Hash(Numeric.toHexString(output.copyOfRange(2, output.size)))).withIndexedMessage(index)
+                    .isEqualTo(HashFunction.KECCAK_256(Numeric.toHexString(input)))
+            }
+        }
+    }
+
+    @Test
+    fun mustHashOnlySpecifiedInputRange() {
+        val input = suppose("some input is present") {
+            Random(0).nextBytes(100)
+        }
+
+        verify("only specified input range is hashed") {
+            val output = ByteArray(BinaryHash.SIZE_BYTES)
+            HashFunction.KECCAK_256.binaryHasher?.hash(input, 10, 64, output, 0)
+
+            assertThat(Hash(Numeric.toHexString(output))).withMessage()
+                .isEqualTo(HashFunction.KECCAK_256(Numeric.toHexString(input.copyOfRange(10, 74))))
+        }
+    }
+
+    @Test
+    fun mustNotHaveBinaryHasherForVariableSizeHashFunction() {
+        verify("hash functions without fixed output size have no binary hasher") {
+            listOf(HashFunction.IDENTITY, HashFunction.FIXED).forEachIndexed { index, hashFn ->
+                assertThat(hashFn.binaryHasher).withIndexedMessage(index)
+                    .isNull()
+            }
+        }
+    }
+
+    @Test
+    fun mustCorrectlyAbiEncodeAccountBalanceIntoBuffer() {
+        val balances = suppose("some account balances are present") {
+            listOf(
+                AccountBalance(WalletAddress("0x0"), Balance(BigInteger.ZERO)),
+                AccountBalance(WalletAddress("0x1"), Balance(BigInteger.ONE)),
+                AccountBalance(WalletAddress("0x7f"), Balance(BigInteger.valueOf(128L))),
+                AccountBalance(
+                    WalletAddress("0xffffffffffffffffffffffffffffffffffffffff"),
+                    Balance(BigInteger.TWO.pow(256) - BigInteger.ONE)
+                ),
+                AccountBalance(
+                    WalletAddress("0x8000000000000000000000000000000000000000"),
+                    Balance(BigInteger.TWO.pow(255))
+                )
+            )
+        }
+
+        verify("account balance is encoded same as with string ABI encoding") {
+            balances.forEachIndexed { index, balance ->
+                val buffer = ByteArray(AccountBalance.ABI_ENCODED_SIZE + 1) { -1 }
+                balance.abiEncodeInto(buffer, 1)
+
+                assertThat(Numeric.toHexStringNoPrefix(buffer.copyOfRange(1, buffer.size))).withIndexedMessage(index)
+                    .isEqualTo(balance.abiEncode())
+                assertThat(buffer[0]).withIndexedMessage(index)
+                    .isEqualTo((-1).toByte())
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.AfterAll
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.TestInstance
+import java.math.BigInteger
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class KArySearchTest : TestBase() {
+
+    companion object {
+        private enum class SearchDirection {
+            LOWER, UPPER
+        }
+
+        private fun withTarget(target: BigInteger): (BigInteger) -> SearchDirection =
+            { current -> if (current > target) SearchDirection.UPPER else SearchDirection.LOWER }
+
+        private val isLower: (SearchDirection) -> Boolean = { it == SearchDirection.LOWER }
+        private val isUpper: (SearchDirection) -> Boolean = { it == SearchDirection.UPPER }
+    }
+
+    private val executor = Executors.newFixedThreadPool(4)
+
+    @AfterAll
+    fun shutdown() {
+        executor.shutdown()
+    }
+
+    @Test
+    fun kArySearchFindsHighestValueNotAboveTargetForAllTargets() {
+        val lowerBound = BigInteger("98")
+        val upperBound = BigInteger("503")
+
+        verify("k-ary search finds target clamped to the searched interval for every target and arity") {
+            (2..9).forEach { arity ->
+                val search = KArySearch(executor, arity)
+
+                (90L..510L).forEach { target ->
+                    val result = search(
+                        lowerBound = lowerBound,
+                        upperBound = upperBound,
+                        getValue = withTarget(BigInteger.valueOf(target)),
+                        updateLowerBound = isLower,
+                        updateUpperBound = isUpper
+                    )
+
+                    // upper bound is exclusive, so the highest value which can be found is 502
+                    assertThat(result).withIndexedMessage(arity)
+                        .isEqualTo(BigInteger.valueOf(target.coerceIn(98L, 502L)))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun kArySearchFindsTargetBlock() {
+        val lowerBound = BigInteger.ZERO
+        val upperBound = BigInteger("14000000")
+
+        verify("k-ary search finds some concrete target blocks") {
+            listOf(BigInteger.ZERO, BigInteger("1"), BigInteger("9876543"), BigInteger("13999999"))
+                .forEachIndexed { index, target ->
+                    val result = KArySearch(executor, 8)(
+                        lowerBound = lowerBound,
+                        upperBound = upperBound,
+                        getValue = withTarget(target),
+                        updateLowerBound = isLower,
+                        updateUpperBound = isUpper
+                    )
+
+                    assertThat(result).withIndexedMessage(index)
+                        .isEqualTo(target)
+                }
+        }
+    }
+
+    @Test
+    fun kArySearchUsesFewerRoundsThanBinarySearch() {
+        val lowerBound = BigInteger.ZERO
+        val upperBound = BigInteger("16000000")
+        val target = BigInteger("12345678")
+        val rounds = AtomicInteger(0)
+        val arity = 8
+
+        verify("k-ary search needs fewer sequential rounds than binary search") {
+            val result = KArySearch(executor, arity)(
+                lowerBound = lowerBound,
+                upperBound = upperBound,
+                getValue = { current -> rounds.incrementAndGet(); withTarget(target)(current) },
+                updateLowerBound = isLower,
+                updateUpperBound = isUpper
+            )
+
+            assertThat(result).withMessage()
+                .isEqualTo(target)
+            // each round probes (arity - 1) points, binary search would need 24 rounds for this interval
+            assertThat(rounds.get() / (arity - 1)).withMessage()
+                .isLessThanOrEqualTo(9)
+        }
+    }
+
+    @Test
+    fun kArySearchReturnsLowerBoundForReversedBounds() {
+        val lowerBound = BigInteger("500")
+        val upperBound = BigInteger("100")
+        val target = BigInteger("400")
+
+        verify("k-ary search will return lower bound for reversed bounds") {
+            val result = KArySearch(executor, 4)(
+                lowerBound = lowerBound,
+                upperBound = upperBound,
+                getValue = withTarget(target),
+                updateLowerBound = isLower,
+                updateUpperBound = isUpper
+            )
+
+            assertThat(result).withMessage()
+                .isEqualTo(upperBound)
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ampnet.payoutservice.util
+
+import com.ampnet.payoutservice.TestBase
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import kotlin.random.Random
+
+class PackedLeafIdsTest : TestBase() {
+
+    @Test
+    fun mustCorrectlyPackAndUnpackLeafIds() {
+        val leafIds = longArrayOf(1L, 2L, 3L, 1_000L, 7L, 7L, Long.MAX_VALUE, 0L, 123_456_789L)
+
+        verify("leaf IDs are correctly unpacked") {
+            assertThat(PackedLeafIds.pack(leafIds).unpack()).withMessage()
+                .containsExactly(*leafIds)
+        }
+    }
+
+    @Test
+    fun mustCorrectlyPackAndUnpackEmptyLeafIds() {
+        verify("empty leaf IDs are correctly packed and unpacked") {
+            val packed = PackedLeafIds.pack(LongArray(0))
+
+            assertThat(packed.bytes).withMessage()
+                .containsExactly(0)
+            assertThat(packed.unpack()).withMessage()
+                .isEmpty()
+        }
+    }
+
+    @Test
+    fun mustUseSingleByteForSmallDifferencesBetweenLeafIds() {
+        val leafIds = LongArray(100) { 1_000_000L + it }
+
+        verify("each consecutive leaf ID is packed into a single byte") {
+            val packed = PackedLeafIds.pack(leafIds)
+
+            // count (1 byte) + first ID (3 bytes) + 99 consecutive IDs (1 byte each)
+            assertThat(packed.bytes).withMessage()
+                .hasSize(1 + 3 + 99)
+            assertThat(packed.unpack()).withMessage()
+                .containsExactly(*leafIds)
+        }
+    }
+
+    @Test
+    fun mustUseAtMostThreeBytesForRandomlyOrderedLeafIds() {
+        val leafCount = 100_000
+        val leafIds = LongArray(leafCount) { it + 1L }.apply { shuffle(Random(0)) }
+
+        verify("randomly ordered leaf IDs are packed into less than 3 bytes each on average") {
+            val packed = PackedLeafIds.pack(leafIds)
+
+            // differences are below 2^21 after zigzag encoding, so each of them takes at most 3 bytes
+            assertThat(packed.bytes.size).withMessage()
+                .isBetween(leafCount * 2, leafCount * 3)
+            assertThat(packed.unpack()).withMessage()
+                .containsExactly(*leafIds)
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionForTruncatedLeafIds() {
+        val packed = PackedLeafIds.pack(longArrayOf(1L, 1_000L))
+
+        verify("exception is thrown when unpacking truncated leaf IDs") {
+            assertThrows<IllegalArgumentException>(message) {
+                PackedLeafIds(packed.bytes.copyOf(packed.bytes.size - 1)).unpack()
+            }
+        }
+    }
+
+    @Test
+    fun mustThrowExceptionForLeafIdsWithTrailingBytes() {
+        val packed = PackedLeafIds.pack(longArrayOf(1L, 1_000L))
+
+        verify("exception is thrown when unpacking leaf IDs with trailing bytes") {
+            assertThrows<IllegalArgumentException>(message) {
+                PackedLeafIds(packed.bytes + 0.toByte()).unpack()
+            }
+        }
+    }
+}
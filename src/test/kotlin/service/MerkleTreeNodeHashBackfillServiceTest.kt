@@ -0,0 +1,87 @@
+package service
+
+import com.ampnet.payoutservice.ManualFixedScheduler
+import com.ampnet.payoutservice.TestBase
+import com.ampnet.payoutservice.config.ApplicationProperties
+import com.ampnet.payoutservice.repository.JooqMerkleTreeRepository
+import com.ampnet.payoutservice.service.MerkleTreeNodeHashBackfillService
+import com.ampnet.payoutservice.service.ScheduledExecutorServiceProvider
+import org.junit.jupiter.api.Test
+import org.mockito.kotlin.any
+import org.mockito.kotlin.given
+import org.mockito.kotlin.mock
+import org.mockito.kotlin.verifyNoInteractions
+import org.mockito.kotlin.verifyNoMoreInteractions
+import java.util.UUID
+import org.mockito.kotlin.verify as verifyMock
+
+class MerkleTreeNodeHashBackfillServiceTest : TestBase() {
+
+    @Test
+    fun mustBackfillNodeHashesInBatchesInBackground() {
+        val properties = ApplicationProperties().apply { merkleTree.nodeHashBackfillBatchSize = 2 }
+        val repository = mock<JooqMerkleTreeRepository>()
+        val firstBatchLastTreeId = UUID.randomUUID()
+        val secondBatchLastTreeId = UUID.randomUUID()
+
+        suppose("two batches of Merkle trees will be backfilled") {
+            given(repository.backfillNodeHashes(null, 2))
+                .willReturn(firstBatchLastTreeId)
+            given(repository.backfillNodeHashes(firstBatchLastTreeId, 2))
+                .willReturn(secondBatchLastTreeId)
+            given(repository.backfillNodeHashes(secondBatchLastTreeId, 2))
+                .willReturn(null)
+        }
+
+        val scheduler = ManualFixedScheduler()
+        val executorServiceProvider = executorServiceProvider(scheduler)
+
+        MerkleTreeNodeHashBackfillService(repository, properties, executorServiceProvider)
+
+        verify("backfill is not done on the calling thread") {
+            verifyNoInteractions(repository)
+        }
+
+        suppose("submitted backfill is executed") {
+            scheduler.executeSubmitted()
+        }
+
+        verify("all batches are backfilled") {
+            verifyMock(repository)
+                .backfillNodeHashes(null, 2)
+            verifyMock(repository)
+                .backfillNodeHashes(firstBatchLastTreeId, 2)
+            verifyMock(repository)
+                .backfillNodeHashes(secondBatchLastTreeId, 2)
+            verifyNoMoreInteractions(repository)
+        }
+    }
+
+    @Test
+    fun mustNotBackfillNodeHashesWhenDisabled() {
+        val properties = ApplicationProperties().apply { merkleTree.nodeHashBackfill = false }
+        val repository = mock<JooqMerkleTreeRepository>()
+        val scheduler = ManualFixedScheduler()
+
+        MerkleTreeNodeHashBackfillService(repository, properties, executorServiceProvider(scheduler))
+
+        suppose("submitted commands are executed") {
+            scheduler.executeSubmitted()
+        }
+
+        verify("no Merkle trees are backfilled") {
+            verifyNoInteractions(repository)
+        }
+    }
+
+    private fun executorServiceProvider(scheduler: ManualFixedScheduler): ScheduledExecutorServiceProvider {
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        return executorServiceProvider
+    }
+}
@@ -7,14 +7,20 @@ import com.ampnet.payoutservice.config.ApplicationProperties
 import com.ampnet.payoutservice.exception.InvalidRequestException
 import com.ampnet.payoutservice.model.params.CreateSnapshotParams
 import com.ampnet.payoutservice.model.params.FetchMerkleTreeParams
+import com.ampnet.payoutservice.model.result.ContractDeploymentBlock
 import com.ampnet.payoutservice.model.result.FullSnapshot
 import com.ampnet.payoutservice.model.result.FullSnapshotData
 import com.ampnet.payoutservice.model.result.MerkleTreeWithId
 import com.ampnet.payoutservice.model.result.OtherSnapshotData
 import com.ampnet.payoutservice.model.result.PendingSnapshot
 import com.ampnet.payoutservice.model.result.Snapshot
+import com.ampnet.payoutservice.model.result.SnapshotPage
 import com.ampnet.payoutservice.model.result.SuccessfulSnapshotData
+import com.ampnet.payoutservice.repository.ContractDeploymentBlockRepository
 import com.ampnet.payoutservice.repository.MerkleTreeRepository
+import com.ampnet.payoutservice.repository.SnapshotCheckpoint
+import com.ampnet.payoutservice.repository.SnapshotCheckpointRepository
+import com.ampnet.payoutservice.repository.SnapshotQueueListener
 import com.ampnet.payoutservice.repository.SnapshotRepository
 import com.ampnet.payoutservice.service.IpfsService
 import com.ampnet.payoutservice.service.ScheduledExecutorServiceProvider
@@ -27,6 +33,7 @@ import com.ampnet.payoutservice.util.ContractAddress
 import com.ampnet.payoutservice.util.HashFunction
 import com.ampnet.payoutservice.util.IpfsHash
 import com.ampnet.payoutservice.util.MerkleTree
+import com.ampnet.payoutservice.util.SnapshotCursor
 import com.ampnet.payoutservice.util.SnapshotFailureCause
 import com.ampnet.payoutservice.util.SnapshotStatus
 import com.ampnet.payoutservice.util.WalletAddress
@@ -34,11 +41,16 @@ import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
 import org.mockito.kotlin.any
+import org.mockito.kotlin.atLeastOnce
 import org.mockito.kotlin.given
 import org.mockito.kotlin.mock
+import org.mockito.kotlin.times
 import org.mockito.kotlin.verifyNoInteractions
 import org.mockito.kotlin.verifyNoMoreInteractions
 import java.math.BigInteger
+import java.time.Duration
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
 import java.util.UUID
 import org.mockito.kotlin.verify as verifyMock
 
@@ -60,7 +72,7 @@ class SnapshotQueueServiceTest : TestBase() {
 
         suppose("contract deployment block number is returned") {
             given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
-                .willReturn(startBlock)
+                .willReturn(ContractDeploymentBlock(startBlock, true))
         }
 
         val snapshotRepository = mock<SnapshotRepository>()
@@ -83,7 +95,7 @@ class SnapshotQueueServiceTest : TestBase() {
         }
 
         suppose("pending snapshot will be returned") {
-            given(snapshotRepository.getPending())
+            given(snapshotRepository.claimPending(any(), any(), any(), any()))
                 .willReturn(
                     PendingSnapshot(
                         id = snapshotUuid,
@@ -93,10 +105,19 @@ class SnapshotQueueServiceTest : TestBase() {
                         blockNumber = payoutBlock,
                         ignoredHolderAddresses = ignoredHolderAddresses,
                         ownerAddress = ownerAddress
-                    )
+                    ),
+                    null
                 )
         }
 
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
         val accountBalances = listOf(
             AccountBalance(WalletAddress("2"), Balance(BigInteger.ONE)),
             AccountBalance(WalletAddress("3"), Balance(BigInteger.TWO))
@@ -110,7 +131,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             ).willReturn(accountBalances)
         }
@@ -138,11 +160,6 @@ class SnapshotQueueServiceTest : TestBase() {
                 .willReturn(treeUuid)
         }
 
-        suppose("Merkle tree can be fetched by ID") {
-            given(merkleTreeRepository.getById(treeUuid))
-                .willReturn(tree)
-        }
-
         val properties = suppose("asset owner will be checked") {
             ApplicationProperties().apply { payout.checkAssetOwner = true }
         }
@@ -150,16 +167,20 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -170,28 +191,44 @@ class SnapshotQueueServiceTest : TestBase() {
                 .isEqualTo(snapshotUuid)
         }
 
+        val completedSnapshot = Snapshot(
+            id = snapshotUuid,
+            name = name,
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = payoutBlock,
+            ignoredHolderAddresses = ignoredHolderAddresses,
+            ownerAddress = ownerAddress,
+            data = SuccessfulSnapshotData(
+                merkleTreeRootId = treeUuid,
+                merkleRootHash = tree.rootHash,
+                merkleTreeDepth = tree.depth,
+                merkleTreeLeafCount = tree.leafCount,
+                hashFn = tree.hashFn,
+                merkleTreeIpfsHash = ipfsHash,
+                totalAssetAmount = totalAssetAmount
+            )
+        )
+
+        suppose("snapshot will be completed") {
+            given(
+                snapshotRepository.completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            ).willReturn(completedSnapshot)
+        }
+
         suppose("snapshot is processed") {
             scheduler.execute()
         }
 
         suppose("successful snapshot is returned from database") {
             given(snapshotRepository.getById(snapshotUuid))
-                .willReturn(
-                    Snapshot(
-                        id = snapshotUuid,
-                        name = name,
-                        chainId = chainId,
-                        assetAddress = assetAddress,
-                        blockNumber = payoutBlock,
-                        ignoredHolderAddresses = ignoredHolderAddresses,
-                        ownerAddress = ownerAddress,
-                        data = SuccessfulSnapshotData(
-                            merkleTreeRootId = treeUuid,
-                            merkleTreeIpfsHash = ipfsHash,
-                            totalAssetAmount = totalAssetAmount
-                        )
-                    )
-                )
+                .willReturn(completedSnapshot)
         }
 
         verify("snapshot is successfully processed") {
@@ -228,10 +265,14 @@ class SnapshotQueueServiceTest : TestBase() {
                 .createSnapshot(params)
 
             // processSnapshots()
-            verifyMock(snapshotRepository)
-                .getPending()
+            verifyMock(snapshotRepository, atLeastOnce())
+                .claimPending(any(), any(), any(), any())
 
             // handlePendingSnapshot()
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyMock(checkpoint)
+                .storeDeploymentBlock(startBlock)
             verifyMock(blockchainService)
                 .findContractDeploymentBlockNumber(chainId, assetAddress)
             verifyMock(blockchainService)
@@ -240,7 +281,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             verifyNoMoreInteractions(blockchainService)
 
@@ -253,15 +295,21 @@ class SnapshotQueueServiceTest : TestBase() {
             verifyNoMoreInteractions(ipfsService)
 
             verifyMock(snapshotRepository)
-                .completeSnapshot(snapshotUuid, treeUuid, ipfsHash, totalAssetAmount)
+                .completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            verifyMock(snapshotCheckpointRepository)
+                .deleteCheckpoint(chainId, assetAddress, payoutBlock)
 
             // getSnapshotById()
             verifyMock(snapshotRepository)
                 .getById(snapshotUuid)
             verifyNoMoreInteractions(snapshotRepository)
 
-            verifyMock(merkleTreeRepository)
-                .getById(treeUuid)
             verifyNoMoreInteractions(merkleTreeRepository)
         }
     }
@@ -282,7 +330,7 @@ class SnapshotQueueServiceTest : TestBase() {
 
         suppose("contract deployment block number is returned") {
             given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
-                .willReturn(startBlock)
+                .willReturn(ContractDeploymentBlock(startBlock, true))
         }
 
         val snapshotRepository = mock<SnapshotRepository>()
@@ -305,7 +353,7 @@ class SnapshotQueueServiceTest : TestBase() {
         }
 
         suppose("pending snapshot will be returned") {
-            given(snapshotRepository.getPending())
+            given(snapshotRepository.claimPending(any(), any(), any(), any()))
                 .willReturn(
                     PendingSnapshot(
                         id = snapshotUuid,
@@ -315,10 +363,19 @@ class SnapshotQueueServiceTest : TestBase() {
                         blockNumber = payoutBlock,
                         ignoredHolderAddresses = ignoredHolderAddresses,
                         ownerAddress = ownerAddress
-                    )
+                    ),
+                    null
                 )
         }
 
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
         suppose("fetching asset balances throws exception") {
             given(
                 blockchainService.fetchErc20AccountBalances(
@@ -326,7 +383,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             ).willThrow(RuntimeException())
         }
@@ -338,7 +396,7 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
@@ -348,9 +406,13 @@ class SnapshotQueueServiceTest : TestBase() {
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -409,10 +471,14 @@ class SnapshotQueueServiceTest : TestBase() {
                 .createSnapshot(params)
 
             // processSnapshots()
-            verifyMock(snapshotRepository)
-                .getPending()
+            verifyMock(snapshotRepository, atLeastOnce())
+                .claimPending(any(), any(), any(), any())
 
             // handlePendingSnapshot()
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyMock(checkpoint)
+                .storeDeploymentBlock(startBlock)
             verifyMock(blockchainService)
                 .findContractDeploymentBlockNumber(chainId, assetAddress)
             verifyMock(blockchainService)
@@ -421,12 +487,13 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             verifyNoMoreInteractions(blockchainService)
 
             verifyMock(snapshotRepository)
-                .failSnapshot(snapshotUuid, SnapshotFailureCause.OTHER)
+                .failSnapshot(snapshotUuid, properties.createPayoutQueue.workerId, SnapshotFailureCause.OTHER)
 
             // getSnapshotById()
             verifyMock(snapshotRepository)
@@ -454,7 +521,7 @@ class SnapshotQueueServiceTest : TestBase() {
 
         suppose("contract deployment block number is returned") {
             given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
-                .willReturn(startBlock)
+                .willReturn(ContractDeploymentBlock(startBlock, true))
         }
 
         val snapshotRepository = mock<SnapshotRepository>()
@@ -477,7 +544,7 @@ class SnapshotQueueServiceTest : TestBase() {
         }
 
         suppose("pending snapshot will be returned") {
-            given(snapshotRepository.getPending())
+            given(snapshotRepository.claimPending(any(), any(), any(), any()))
                 .willReturn(
                     PendingSnapshot(
                         id = snapshotUuid,
@@ -487,10 +554,19 @@ class SnapshotQueueServiceTest : TestBase() {
                         blockNumber = payoutBlock,
                         ignoredHolderAddresses = ignoredHolderAddresses,
                         ownerAddress = ownerAddress
-                    )
+                    ),
+                    null
                 )
         }
 
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
         suppose("fetching asset balances throws exception") {
             given(
                 blockchainService.fetchErc20AccountBalances(
@@ -498,7 +574,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             ).willThrow(RuntimeException(RuntimeException("Log response size exceeded")))
         }
@@ -510,7 +587,7 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
@@ -520,9 +597,13 @@ class SnapshotQueueServiceTest : TestBase() {
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -581,10 +662,14 @@ class SnapshotQueueServiceTest : TestBase() {
                 .createSnapshot(params)
 
             // processSnapshots()
-            verifyMock(snapshotRepository)
-                .getPending()
+            verifyMock(snapshotRepository, atLeastOnce())
+                .claimPending(any(), any(), any(), any())
 
             // handlePendingSnapshot()
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyMock(checkpoint)
+                .storeDeploymentBlock(startBlock)
             verifyMock(blockchainService)
                 .findContractDeploymentBlockNumber(chainId, assetAddress)
             verifyMock(blockchainService)
@@ -593,12 +678,17 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             verifyNoMoreInteractions(blockchainService)
 
             verifyMock(snapshotRepository)
-                .failSnapshot(snapshotUuid, SnapshotFailureCause.LOG_RESPONSE_LIMIT)
+                .failSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    SnapshotFailureCause.LOG_RESPONSE_LIMIT
+                )
 
             // getSnapshotById()
             verifyMock(snapshotRepository)
@@ -626,7 +716,7 @@ class SnapshotQueueServiceTest : TestBase() {
 
         suppose("contract deployment block number is returned") {
             given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
-                .willReturn(startBlock)
+                .willReturn(ContractDeploymentBlock(startBlock, true))
         }
 
         val snapshotRepository = mock<SnapshotRepository>()
@@ -649,7 +739,7 @@ class SnapshotQueueServiceTest : TestBase() {
         }
 
         suppose("pending snapshot will be returned") {
-            given(snapshotRepository.getPending())
+            given(snapshotRepository.claimPending(any(), any(), any(), any()))
                 .willReturn(
                     PendingSnapshot(
                         id = snapshotUuid,
@@ -659,10 +749,19 @@ class SnapshotQueueServiceTest : TestBase() {
                         blockNumber = payoutBlock,
                         ignoredHolderAddresses = ignoredHolderAddresses,
                         ownerAddress = ownerAddress
-                    )
+                    ),
+                    null
                 )
         }
 
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
         val accountBalances = listOf(
             AccountBalance(WalletAddress("2"), Balance(BigInteger.ONE)),
             AccountBalance(WalletAddress("3"), Balance(BigInteger.TWO))
@@ -676,7 +775,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             ).willReturn(accountBalances)
         }
@@ -703,11 +803,6 @@ class SnapshotQueueServiceTest : TestBase() {
                 .willReturn(treeUuid)
         }
 
-        suppose("Merkle tree can be fetched by ID") {
-            given(merkleTreeRepository.getById(treeUuid))
-                .willReturn(tree)
-        }
-
         val properties = suppose("asset owner will be checked") {
             ApplicationProperties().apply { payout.checkAssetOwner = true }
         }
@@ -715,16 +810,20 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -735,28 +834,44 @@ class SnapshotQueueServiceTest : TestBase() {
                 .isEqualTo(snapshotUuid)
         }
 
+        val completedSnapshot = Snapshot(
+            id = snapshotUuid,
+            name = name,
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = payoutBlock,
+            ignoredHolderAddresses = ignoredHolderAddresses,
+            ownerAddress = ownerAddress,
+            data = SuccessfulSnapshotData(
+                merkleTreeRootId = treeUuid,
+                merkleRootHash = tree.rootHash,
+                merkleTreeDepth = tree.depth,
+                merkleTreeLeafCount = tree.leafCount,
+                hashFn = tree.hashFn,
+                merkleTreeIpfsHash = ipfsHash,
+                totalAssetAmount = totalAssetAmount
+            )
+        )
+
+        suppose("snapshot will be completed") {
+            given(
+                snapshotRepository.completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            ).willReturn(completedSnapshot)
+        }
+
         suppose("snapshot is processed") {
             scheduler.execute()
         }
 
         suppose("successful snapshot is returned from database") {
             given(snapshotRepository.getById(snapshotUuid))
-                .willReturn(
-                    Snapshot(
-                        id = snapshotUuid,
-                        name = name,
-                        chainId = chainId,
-                        assetAddress = assetAddress,
-                        blockNumber = payoutBlock,
-                        ignoredHolderAddresses = ignoredHolderAddresses,
-                        ownerAddress = ownerAddress,
-                        data = SuccessfulSnapshotData(
-                            merkleTreeRootId = treeUuid,
-                            merkleTreeIpfsHash = ipfsHash,
-                            totalAssetAmount = totalAssetAmount
-                        )
-                    )
-                )
+                .willReturn(completedSnapshot)
         }
 
         verify("snapshot is successfully processed") {
@@ -793,10 +908,14 @@ class SnapshotQueueServiceTest : TestBase() {
                 .createSnapshot(params)
 
             // processSnapshots()
-            verifyMock(snapshotRepository)
-                .getPending()
+            verifyMock(snapshotRepository, atLeastOnce())
+                .claimPending(any(), any(), any(), any())
 
             // handlePendingSnapshot()
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyMock(checkpoint)
+                .storeDeploymentBlock(startBlock)
             verifyMock(blockchainService)
                 .findContractDeploymentBlockNumber(chainId, assetAddress)
             verifyMock(blockchainService)
@@ -805,7 +924,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             verifyNoMoreInteractions(blockchainService)
 
@@ -816,15 +936,21 @@ class SnapshotQueueServiceTest : TestBase() {
             verifyNoMoreInteractions(ipfsService)
 
             verifyMock(snapshotRepository)
-                .completeSnapshot(snapshotUuid, treeUuid, ipfsHash, totalAssetAmount)
+                .completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            verifyMock(snapshotCheckpointRepository)
+                .deleteCheckpoint(chainId, assetAddress, payoutBlock)
 
             // getSnapshotById()
             verifyMock(snapshotRepository)
                 .getById(snapshotUuid)
             verifyNoMoreInteractions(snapshotRepository)
 
-            verifyMock(merkleTreeRepository)
-                .getById(treeUuid)
             verifyNoMoreInteractions(merkleTreeRepository)
         }
     }
@@ -861,7 +987,7 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
@@ -871,9 +997,13 @@ class SnapshotQueueServiceTest : TestBase() {
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = mock(),
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -921,7 +1051,7 @@ class SnapshotQueueServiceTest : TestBase() {
         }
 
         suppose("pending snapshot will be returned") {
-            given(snapshotRepository.getPending())
+            given(snapshotRepository.claimPending(any(), any(), any(), any()))
                 .willReturn(
                     PendingSnapshot(
                         id = snapshotUuid,
@@ -931,10 +1061,19 @@ class SnapshotQueueServiceTest : TestBase() {
                         blockNumber = payoutBlock,
                         ignoredHolderAddresses = ignoredHolderAddresses,
                         ownerAddress = ownerAddress
-                    )
+                    ),
+                    null
                 )
         }
 
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
         val accountBalances = listOf(
             AccountBalance(WalletAddress("2"), Balance(BigInteger.ONE)),
             AccountBalance(WalletAddress("3"), Balance(BigInteger.TWO))
@@ -946,7 +1085,7 @@ class SnapshotQueueServiceTest : TestBase() {
 
         suppose("contract deployment block number is returned") {
             given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
-                .willReturn(startBlock)
+                .willReturn(ContractDeploymentBlock(startBlock, true))
         }
 
         suppose("some asset balances are fetched") {
@@ -956,7 +1095,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             ).willReturn(accountBalances)
         }
@@ -984,11 +1124,6 @@ class SnapshotQueueServiceTest : TestBase() {
                 .willReturn(treeUuid)
         }
 
-        suppose("Merkle tree can be fetched by ID") {
-            given(merkleTreeRepository.getById(treeUuid))
-                .willReturn(tree)
-        }
-
         val properties = suppose("asset owner will not be checked") {
             ApplicationProperties().apply { payout.checkAssetOwner = false }
         }
@@ -996,16 +1131,20 @@ class SnapshotQueueServiceTest : TestBase() {
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = ipfsService,
             blockchainService = blockchainService,
             applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
@@ -1016,28 +1155,44 @@ class SnapshotQueueServiceTest : TestBase() {
                 .isEqualTo(snapshotUuid)
         }
 
+        val completedSnapshot = Snapshot(
+            id = snapshotUuid,
+            name = name,
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = payoutBlock,
+            ignoredHolderAddresses = ignoredHolderAddresses,
+            ownerAddress = ownerAddress,
+            data = SuccessfulSnapshotData(
+                merkleTreeRootId = treeUuid,
+                merkleRootHash = tree.rootHash,
+                merkleTreeDepth = tree.depth,
+                merkleTreeLeafCount = tree.leafCount,
+                hashFn = tree.hashFn,
+                merkleTreeIpfsHash = ipfsHash,
+                totalAssetAmount = totalAssetAmount
+            )
+        )
+
+        suppose("snapshot will be completed") {
+            given(
+                snapshotRepository.completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            ).willReturn(completedSnapshot)
+        }
+
         suppose("snapshot is processed") {
             scheduler.execute()
         }
 
         suppose("successful snapshot is returned from database") {
             given(snapshotRepository.getById(snapshotUuid))
-                .willReturn(
-                    Snapshot(
-                        id = snapshotUuid,
-                        name = name,
-                        chainId = chainId,
-                        assetAddress = assetAddress,
-                        blockNumber = payoutBlock,
-                        ignoredHolderAddresses = ignoredHolderAddresses,
-                        ownerAddress = ownerAddress,
-                        data = SuccessfulSnapshotData(
-                            merkleTreeRootId = treeUuid,
-                            merkleTreeIpfsHash = ipfsHash,
-                            totalAssetAmount = totalAssetAmount
-                        )
-                    )
-                )
+                .willReturn(completedSnapshot)
         }
 
         verify("snapshot is successfully processed") {
@@ -1072,10 +1227,14 @@ class SnapshotQueueServiceTest : TestBase() {
                 .createSnapshot(params)
 
             // processSnapshots()
-            verifyMock(snapshotRepository)
-                .getPending()
+            verifyMock(snapshotRepository, atLeastOnce())
+                .claimPending(any(), any(), any(), any())
 
             // handlePendingSnapshot()
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyMock(checkpoint)
+                .storeDeploymentBlock(startBlock)
             verifyMock(blockchainService)
                 .findContractDeploymentBlockNumber(chainId, assetAddress)
             verifyMock(blockchainService)
@@ -1084,7 +1243,8 @@ class SnapshotQueueServiceTest : TestBase() {
                     erc20ContractAddress = assetAddress,
                     ignoredErc20Addresses = ignoredHolderAddresses,
                     startBlock = startBlock,
-                    endBlock = payoutBlock
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
                 )
             verifyNoMoreInteractions(blockchainService)
 
@@ -1097,19 +1257,583 @@ class SnapshotQueueServiceTest : TestBase() {
             verifyNoMoreInteractions(ipfsService)
 
             verifyMock(snapshotRepository)
-                .completeSnapshot(snapshotUuid, treeUuid, ipfsHash, totalAssetAmount)
+                .completeSnapshot(
+                    snapshotUuid,
+                    properties.createPayoutQueue.workerId,
+                    treeUuid,
+                    ipfsHash,
+                    totalAssetAmount
+                )
+            verifyMock(snapshotCheckpointRepository)
+                .deleteCheckpoint(chainId, assetAddress, payoutBlock)
 
             // getSnapshotById()
             verifyMock(snapshotRepository)
                 .getById(snapshotUuid)
             verifyNoMoreInteractions(snapshotRepository)
 
-            verifyMock(merkleTreeRepository)
-                .getById(treeUuid)
             verifyNoMoreInteractions(merkleTreeRepository)
         }
     }
 
+    @Test
+    fun mustNotClaimPendingSnapshotsOfChainWhichReachedWorkerLimit() {
+        val properties = suppose("two workers and at most one worker per chain will be used") {
+            ApplicationProperties().apply {
+                createPayoutQueue.workers = 2
+                createPayoutQueue.maxWorkersPerChain = 1
+            }
+        }
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val chainId = ChainId(1L)
+        val assetAddress = ContractAddress("a")
+        val snapshotRepository = mock<SnapshotRepository>()
+        val pendingSnapshot = PendingSnapshot(
+            id = UUID.randomUUID(),
+            name = "snapshot-name",
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = BlockNumber(BigInteger.TEN),
+            ignoredHolderAddresses = emptySet(),
+            ownerAddress = WalletAddress("b")
+        )
+
+        suppose("single pending snapshot will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(pendingSnapshot, null)
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        val blockchainService = mock<BlockchainService>()
+
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, pendingSnapshot.blockNumber))
+                .willReturn(mock())
+        }
+
+        suppose("second worker runs while the first one is processing snapshot") {
+            given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
+                .willAnswer {
+                    scheduler.execute(1)
+                    throw RuntimeException("test")
+                }
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = blockchainService,
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("first worker is executed") {
+            scheduler.execute(0)
+        }
+
+        verify("second worker did not claim snapshots of the chain which is already being processed") {
+            verifyMock(snapshotRepository)
+                .claimPending(workerId, leaseDuration, setOf(pendingSnapshot.id), setOf(chainId))
+            verifyMock(snapshotRepository)
+                .failSnapshot(pendingSnapshot.id, properties.createPayoutQueue.workerId, SnapshotFailureCause.OTHER)
+        }
+    }
+
+    @Test
+    fun mustExtendLeasesOfSnapshotsWhichAreBeingProcessed() {
+        val properties = suppose("single worker will be used") {
+            ApplicationProperties().apply { createPayoutQueue.workers = 1 }
+        }
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val chainId = ChainId(1L)
+        val assetAddress = ContractAddress("a")
+        val snapshotRepository = mock<SnapshotRepository>()
+        val pendingSnapshot = PendingSnapshot(
+            id = UUID.randomUUID(),
+            name = "snapshot-name",
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = BlockNumber(BigInteger.TEN),
+            ignoredHolderAddresses = emptySet(),
+            ownerAddress = WalletAddress("b")
+        )
+
+        suppose("single pending snapshot will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(pendingSnapshot, null)
+        }
+
+        suppose("snapshot lease will be extended") {
+            given(snapshotRepository.extendLeases(setOf(pendingSnapshot.id), workerId, leaseDuration))
+                .willReturn(setOf(pendingSnapshot.id))
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        val blockchainService = mock<BlockchainService>()
+
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, pendingSnapshot.blockNumber))
+                .willReturn(mock())
+        }
+
+        suppose("heartbeat runs while the worker is processing snapshot") {
+            given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
+                .willAnswer {
+                    scheduler.execute(1)
+                    throw RuntimeException("test")
+                }
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = blockchainService,
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("worker is executed") {
+            scheduler.execute(0)
+        }
+
+        suppose("heartbeat is executed after the snapshot was processed") {
+            scheduler.execute(1)
+        }
+
+        verify("lease is extended only while snapshot is being processed") {
+            verifyMock(snapshotRepository)
+                .extendLeases(setOf(pendingSnapshot.id), workerId, leaseDuration)
+            verifyMock(snapshotRepository)
+                .failSnapshot(pendingSnapshot.id, properties.createPayoutQueue.workerId, SnapshotFailureCause.OTHER)
+            verifyMock(snapshotRepository, times(2))
+                .claimPending(workerId, leaseDuration)
+            verifyNoMoreInteractions(snapshotRepository)
+        }
+    }
+
+    @Test
+    fun mustCancelProcessingOfSnapshotWhoseLeaseWasLost() {
+        val properties = suppose("single worker will be used") {
+            ApplicationProperties().apply { createPayoutQueue.workers = 1 }
+        }
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val chainId = ChainId(1L)
+        val assetAddress = ContractAddress("a")
+        val snapshotRepository = mock<SnapshotRepository>()
+        val pendingSnapshot = PendingSnapshot(
+            id = UUID.randomUUID(),
+            name = "snapshot-name",
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = BlockNumber(BigInteger.TEN),
+            ignoredHolderAddresses = emptySet(),
+            ownerAddress = WalletAddress("b")
+        )
+
+        suppose("single pending snapshot will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(pendingSnapshot, null)
+        }
+
+        suppose("snapshot lease was taken over by another worker") {
+            given(snapshotRepository.extendLeases(setOf(pendingSnapshot.id), workerId, leaseDuration))
+                .willReturn(emptySet())
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        val blockchainService = mock<BlockchainService>()
+
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+
+        suppose("snapshot checkpoint is returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, pendingSnapshot.blockNumber))
+                .willReturn(mock())
+        }
+
+        suppose("heartbeat runs while the worker is processing snapshot") {
+            given(blockchainService.findContractDeploymentBlockNumber(chainId, assetAddress))
+                .willAnswer {
+                    scheduler.execute(1)
+                    throw RuntimeException("test")
+                }
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = blockchainService,
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("worker is executed") {
+            scheduler.execute(0)
+        }
+
+        verify("cancelled snapshot is not marked as failed") {
+            verifyMock(snapshotRepository)
+                .extendLeases(setOf(pendingSnapshot.id), workerId, leaseDuration)
+            verifyMock(snapshotRepository, times(2))
+                .claimPending(workerId, leaseDuration)
+            verifyNoMoreInteractions(snapshotRepository)
+        }
+
+        verify("worker thread is no longer interrupted after processing") {
+            assertThat(Thread.currentThread().isInterrupted).withMessage()
+                .isFalse()
+        }
+    }
+
+    @Test
+    fun mustResumeSnapshotProcessingFromCheckpoint() {
+        val properties = suppose("single worker will be used") {
+            ApplicationProperties().apply { createPayoutQueue.workers = 1 }
+        }
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val chainId = ChainId(1L)
+        val assetAddress = ContractAddress("a")
+        val payoutBlock = BlockNumber(BigInteger.TEN)
+        val snapshotRepository = mock<SnapshotRepository>()
+        val pendingSnapshot = PendingSnapshot(
+            id = UUID.randomUUID(),
+            name = "snapshot-name",
+            chainId = chainId,
+            assetAddress = assetAddress,
+            blockNumber = payoutBlock,
+            ignoredHolderAddresses = emptySet(),
+            ownerAddress = WalletAddress("b")
+        )
+
+        suppose("single pending snapshot will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(pendingSnapshot, null)
+        }
+
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+        val startBlock = BlockNumber(BigInteger("6"))
+
+        suppose("snapshot checkpoint with stored deployment block is returned") {
+            given(checkpoint.deploymentBlock)
+                .willReturn(startBlock)
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, assetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
+        val blockchainService = mock<BlockchainService>()
+
+        suppose("fetching asset balances throws exception") {
+            given(
+                blockchainService.fetchErc20AccountBalances(
+                    chainId = chainId,
+                    erc20ContractAddress = assetAddress,
+                    ignoredErc20Addresses = emptySet(),
+                    startBlock = startBlock,
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
+                )
+            ).willThrow(RuntimeException())
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = blockchainService,
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("worker is executed") {
+            scheduler.execute(0)
+        }
+
+        verify("stored deployment block is used and checkpoint is kept for failed snapshot") {
+            verifyMock(blockchainService)
+                .fetchErc20AccountBalances(
+                    chainId = chainId,
+                    erc20ContractAddress = assetAddress,
+                    ignoredErc20Addresses = emptySet(),
+                    startBlock = startBlock,
+                    endBlock = payoutBlock,
+                    checkpoint = checkpoint
+                )
+            verifyNoMoreInteractions(blockchainService)
+
+            verifyMock(snapshotCheckpointRepository)
+                .getCheckpoint(chainId, assetAddress, payoutBlock)
+            verifyNoMoreInteractions(snapshotCheckpointRepository)
+
+            verifyMock(snapshotRepository)
+                .failSnapshot(pendingSnapshot.id, properties.createPayoutQueue.workerId, SnapshotFailureCause.OTHER)
+        }
+    }
+
+    @Test
+    fun mustOnlyCacheContractDeploymentBlockWhichWasFound() {
+        val properties = suppose("single worker will be used") {
+            ApplicationProperties().apply { createPayoutQueue.workers = 1 }
+        }
+        val chainId = ChainId(1L)
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val foundAssetAddress = ContractAddress("a")
+        val clampedAssetAddress = ContractAddress("c")
+        val payoutBlock = BlockNumber(BigInteger.TEN)
+        val snapshotRepository = mock<SnapshotRepository>()
+        val pendingSnapshots = listOf(foundAssetAddress, clampedAssetAddress).map {
+            PendingSnapshot(
+                id = UUID.randomUUID(),
+                name = "snapshot-name",
+                chainId = chainId,
+                assetAddress = it,
+                blockNumber = payoutBlock,
+                ignoredHolderAddresses = emptySet(),
+                ownerAddress = WalletAddress("b")
+            )
+        }
+
+        suppose("two pending snapshots will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(pendingSnapshots[0], pendingSnapshots[1], null)
+        }
+
+        val snapshotCheckpointRepository = mock<SnapshotCheckpointRepository>()
+        val checkpoint = mock<SnapshotCheckpoint>()
+
+        suppose("empty snapshot checkpoints are returned") {
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, foundAssetAddress, payoutBlock))
+                .willReturn(checkpoint)
+            given(snapshotCheckpointRepository.getCheckpoint(chainId, clampedAssetAddress, payoutBlock))
+                .willReturn(checkpoint)
+        }
+
+        val blockchainService = mock<BlockchainService>()
+        val foundBlock = BlockNumber(BigInteger("6"))
+        val clampedBlock = BlockNumber(BigInteger("2"))
+
+        suppose("deployment block is found for one contract and clamped to start block for the other one") {
+            given(blockchainService.findContractDeploymentBlockNumber(chainId, foundAssetAddress))
+                .willReturn(ContractDeploymentBlock(foundBlock, true))
+            given(blockchainService.findContractDeploymentBlockNumber(chainId, clampedAssetAddress))
+                .willReturn(ContractDeploymentBlock(clampedBlock, false))
+        }
+
+        suppose("fetching asset balances throws exception") {
+            listOf(Pair(foundAssetAddress, foundBlock), Pair(clampedAssetAddress, clampedBlock)).forEach {
+                given(
+                    blockchainService.fetchErc20AccountBalances(
+                        chainId = chainId,
+                        erc20ContractAddress = it.first,
+                        ignoredErc20Addresses = emptySet(),
+                        startBlock = it.second,
+                        endBlock = payoutBlock,
+                        checkpoint = checkpoint
+                    )
+                ).willThrow(RuntimeException())
+            }
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        val contractDeploymentBlockRepository = mock<ContractDeploymentBlockRepository>()
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = snapshotCheckpointRepository,
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = contractDeploymentBlockRepository,
+            ipfsService = mock(),
+            blockchainService = blockchainService,
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("worker is executed") {
+            scheduler.execute(0)
+        }
+
+        verify("only found deployment block is stored") {
+            verifyMock(contractDeploymentBlockRepository)
+                .getDeploymentBlock(chainId, foundAssetAddress)
+            verifyMock(contractDeploymentBlockRepository)
+                .getDeploymentBlock(chainId, clampedAssetAddress)
+            verifyMock(contractDeploymentBlockRepository)
+                .storeDeploymentBlock(chainId, foundAssetAddress, foundBlock)
+            verifyNoMoreInteractions(contractDeploymentBlockRepository)
+        }
+    }
+
+    @Test
+    fun mustClaimPendingSnapshotsWhenNotifiedAboutCreatedSnapshot() {
+        val properties = ApplicationProperties()
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val snapshotRepository = mock<SnapshotRepository>()
+
+        suppose("no pending snapshot will be claimed") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willReturn(null)
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        var snapshotCreatedCallback: (() -> Unit)? = null
+        val snapshotQueueListener = object : SnapshotQueueListener {
+            override fun start(onSnapshotCreated: () -> Unit) {
+                snapshotCreatedCallback = onSnapshotCreated
+            }
+
+            override fun stop() {}
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = mock(),
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = mock(),
+            applicationProperties = properties,
+            snapshotQueueListener = snapshotQueueListener,
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("notification about created snapshot is received") {
+            snapshotCreatedCallback?.invoke()
+        }
+
+        verify("snapshots are not claimed until worker is executed") {
+            verifyNoInteractions(snapshotRepository)
+        }
+
+        suppose("worker submitted by the notification is executed") {
+            scheduler.executeSubmitted()
+        }
+
+        verify("pending snapshots are claimed") {
+            verifyMock(snapshotRepository)
+                .claimPending(workerId, leaseDuration)
+            verifyNoMoreInteractions(snapshotRepository)
+        }
+    }
+
+    @Test
+    fun mustKeepClaimingPendingSnapshotsAfterClaimFails() {
+        val properties = ApplicationProperties()
+        val workerId = properties.createPayoutQueue.workerId
+        val leaseDuration = Duration.ofMillis(properties.createPayoutQueue.leaseDuration)
+        val snapshotRepository = mock<SnapshotRepository>()
+
+        suppose("claiming of pending snapshots will fail") {
+            given(snapshotRepository.claimPending(workerId, leaseDuration))
+                .willThrow(RuntimeException("Connection refused"))
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+        val scheduler = ManualFixedScheduler()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(scheduler)
+        }
+
+        SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = mock(),
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = mock(),
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        verify("worker does not throw exception when claiming fails") {
+            scheduler.execute(0)
+            scheduler.execute(0)
+        }
+
+        verify("pending snapshots are claimed on each worker execution") {
+            verifyMock(snapshotRepository, times(2))
+                .claimPending(workerId, leaseDuration)
+            verifyNoMoreInteractions(snapshotRepository)
+        }
+    }
+
     @Test
     fun mustCorrectlyFetchAllSnapshotsByChainIdOwnerAndStatuses() {
         val merkleTreeRepository = mock<MerkleTreeRepository>()
@@ -1119,11 +1843,6 @@ class SnapshotQueueServiceTest : TestBase() {
             HashFunction.KECCAK_256
         )
 
-        suppose("Merkle tree can be fetched by ID") {
-            given(merkleTreeRepository.getById(treeUuid))
-                .willReturn(tree)
-        }
-
         val snapshotRepository = mock<SnapshotRepository>()
         val chainId = ChainId(1L)
         val owner = WalletAddress("b")
@@ -1140,6 +1859,10 @@ class SnapshotQueueServiceTest : TestBase() {
                 ownerAddress = owner,
                 data = SuccessfulSnapshotData(
                     merkleTreeRootId = treeUuid,
+                    merkleRootHash = tree.rootHash,
+                    merkleTreeDepth = tree.depth,
+                    merkleTreeLeafCount = tree.leafCount,
+                    hashFn = tree.hashFn,
                     merkleTreeIpfsHash = ipfsHash,
                     totalAssetAmount = totalAssetAmount
                 )
@@ -1156,33 +1879,50 @@ class SnapshotQueueServiceTest : TestBase() {
             )
         )
         val statuses = setOf(SnapshotStatus.PENDING, SnapshotStatus.SUCCESS)
+        val cursor = SnapshotCursor(OffsetDateTime.now(ZoneOffset.UTC), UUID.randomUUID())
+        val nextCursor = SnapshotCursor(OffsetDateTime.now(ZoneOffset.UTC), snapshots[1].id)
+        val properties = ApplicationProperties()
 
         suppose("some snapshots are returned") {
-            given(snapshotRepository.getAllByChainIdOwnerAndStatuses(chainId, owner, statuses))
-                .willReturn(snapshots)
+            given(
+                snapshotRepository.getAllByChainIdOwnerAndStatuses(
+                    chainId = chainId,
+                    owner = owner,
+                    statuses = statuses,
+                    cursor = cursor,
+                    limit = null
+                )
+            )
+                .willReturn(SnapshotPage(snapshots, nextCursor))
         }
 
         val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
         val scheduler = ManualFixedScheduler()
 
         suppose("ManualFixedScheduler will be used") {
-            given(executorServiceProvider.newSingleThreadScheduledExecutor(any()))
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
                 .willReturn(scheduler)
         }
 
         val service = SnapshotQueueServiceImpl(
             merkleTreeRepository = merkleTreeRepository,
             snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = mock(),
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
             ipfsService = mock(),
             blockchainService = mock(),
-            applicationProperties = ApplicationProperties(),
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
             scheduledExecutorServiceProvider = executorServiceProvider
         )
 
         verify("snapshots are correctly fetched by chainId and owner") {
-            val response = service.getAllSnapshotsByChainIdOwnerAndStatuses(chainId, owner, statuses)
+            val response = service.getAllSnapshotsByChainIdOwnerAndStatuses(chainId, owner, statuses, cursor, null)
 
-            assertThat(response).withMessage()
+            assertThat(response.nextCursor).withMessage()
+                .isEqualTo(nextCursor)
+            assertThat(response.snapshots).withMessage()
                 .containsExactlyInAnyOrder(
                     FullSnapshot(
                         id = snapshots[0].id,
@@ -1216,5 +1956,76 @@ class SnapshotQueueServiceTest : TestBase() {
                     )
                 )
         }
+
+        verify("Merkle trees are not fetched") {
+            verifyNoInteractions(merkleTreeRepository)
+        }
+    }
+
+    @Test
+    fun mustLimitSnapshotPageSize() {
+        val snapshotRepository = mock<SnapshotRepository>()
+        val chainId = ChainId(1L)
+        val owner = WalletAddress("b")
+        val properties = ApplicationProperties()
+
+        suppose("no snapshots are returned") {
+            given(
+                snapshotRepository.getAllByChainIdOwnerAndStatuses(
+                    chainId = chainId,
+                    owner = owner,
+                    statuses = emptySet(),
+                    cursor = null,
+                    limit = properties.snapshotList.maxPageSize
+                )
+            )
+                .willReturn(SnapshotPage(emptyList(), null))
+            given(snapshotRepository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, 1))
+                .willReturn(SnapshotPage(emptyList(), null))
+            given(snapshotRepository.getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, null))
+                .willReturn(SnapshotPage(emptyList(), null))
+        }
+
+        val executorServiceProvider = mock<ScheduledExecutorServiceProvider>()
+
+        suppose("ManualFixedScheduler will be used") {
+            given(executorServiceProvider.newScheduledThreadPool(any(), any()))
+                .willReturn(ManualFixedScheduler())
+        }
+
+        val service = SnapshotQueueServiceImpl(
+            merkleTreeRepository = mock(),
+            snapshotRepository = snapshotRepository,
+            snapshotCheckpointRepository = mock(),
+            erc20HolderIndexRepository = mock(),
+            contractDeploymentBlockRepository = mock(),
+            ipfsService = mock(),
+            blockchainService = mock(),
+            applicationProperties = properties,
+            snapshotQueueListener = mock(),
+            scheduledExecutorServiceProvider = executorServiceProvider
+        )
+
+        suppose("snapshots are fetched with too large and too small page sizes") {
+            service.getAllSnapshotsByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, Int.MAX_VALUE)
+            service.getAllSnapshotsByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, 0)
+        }
+
+        suppose("snapshots are fetched without page size") {
+            service.getAllSnapshotsByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, null)
+        }
+
+        verify("page size is limited to the allowed range") {
+            verifyMock(snapshotRepository)
+                .getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, properties.snapshotList.maxPageSize)
+            verifyMock(snapshotRepository)
+                .getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, 1)
+        }
+
+        verify("snapshots are not paged when page size is not specified") {
+            verifyMock(snapshotRepository)
+                .getAllByChainIdOwnerAndStatuses(chainId, owner, emptySet(), null, null)
+            verifyNoMoreInteractions(snapshotRepository)
+        }
     }
 }